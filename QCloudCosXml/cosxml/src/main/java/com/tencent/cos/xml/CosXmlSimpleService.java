@@ -3,6 +3,7 @@ package com.tencent.cos.xml;
 import android.content.Context;
 
 import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.common.COSRequestHeaderKey;
 import com.tencent.cos.xml.exception.CosXmlClientException;
 import com.tencent.cos.xml.exception.CosXmlServiceException;
 import com.tencent.cos.xml.listener.CosXmlResultListener;
@@ -20,6 +21,8 @@ import com.tencent.cos.xml.model.object.DeleteObjectResult;
 import com.tencent.cos.xml.model.object.GetObjectBytesRequest;
 import com.tencent.cos.xml.model.object.GetObjectBytesResult;
 import com.tencent.cos.xml.model.object.GetObjectRequest;
+import com.tencent.cos.xml.model.object.GetObjectStreamRequest;
+import com.tencent.cos.xml.model.object.GetObjectStreamResult;
 import com.tencent.cos.xml.model.object.GetObjectResult;
 import com.tencent.cos.xml.model.object.HeadObjectRequest;
 import com.tencent.cos.xml.model.object.HeadObjectResult;
@@ -35,7 +38,9 @@ import com.tencent.cos.xml.model.object.UploadPartCopyRequest;
 import com.tencent.cos.xml.model.object.UploadPartCopyResult;
 import com.tencent.cos.xml.model.object.UploadPartRequest;
 import com.tencent.cos.xml.model.object.UploadPartResult;
+import com.tencent.cos.xml.transfer.ObjectCache;
 import com.tencent.cos.xml.transfer.ResponseBytesConverter;
+import com.tencent.cos.xml.transfer.ResponseSinkConverter;
 import com.tencent.cos.xml.transfer.ResponseFileBodySerializer;
 import com.tencent.cos.xml.transfer.ResponseXmlS3BodySerializer;
 import com.tencent.cos.xml.utils.URLEncodeUtils;
@@ -49,6 +54,7 @@ import com.tencent.qcloud.core.common.QCloudClientException;
 import com.tencent.qcloud.core.common.QCloudResultListener;
 import com.tencent.qcloud.core.common.QCloudServiceException;
 import com.tencent.qcloud.core.http.HttpConstants;
+import com.tencent.qcloud.core.http.HttpRequest;
 import com.tencent.qcloud.core.http.HttpResult;
 import com.tencent.qcloud.core.http.HttpTask;
 import com.tencent.qcloud.core.http.NetworkClient;
@@ -56,6 +62,7 @@ import com.tencent.qcloud.core.http.OkHttpClientImpl;
 import com.tencent.qcloud.core.http.QCloudHttpClient;
 import com.tencent.qcloud.core.http.QCloudHttpRequest;
 import com.tencent.qcloud.core.http.QCloudHttpRetryHandler;
+import com.tencent.qcloud.core.http.ResponseBodyConverter;
 import com.tencent.qcloud.core.logger.FileLogAdapter;
 import com.tencent.qcloud.core.logger.QCloudLogger;
 import com.tencent.qcloud.core.task.RetryStrategy;
@@ -67,6 +74,7 @@ import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.Executor;
 
 
@@ -82,6 +90,7 @@ public class CosXmlSimpleService implements SimpleCosXml {
     protected String signerType = "CosXmlSigner";
     protected CosXmlServiceConfig config;
     public static String appCachePath;      // 用于缓存临时文件
+    protected volatile ObjectCache objectCache;
 
     /**
      * cos android SDK 服务
@@ -169,6 +178,20 @@ public class CosXmlSimpleService implements SimpleCosXml {
         }
     }
 
+    /**
+     * 启用本地对象缓存, GetObjectRequest 和 GetObjectBytesRequest 下载完整对象时会先用缓存的 ETag 向服务端确认,
+     * 对象未变化时直接使用本地内容. 传入 null 关闭缓存.
+     *
+     * @param objectCache 对象缓存 {@link ObjectCache}
+     */
+    public void setObjectCache(ObjectCache objectCache) {
+        this.objectCache = objectCache;
+    }
+
+    public ObjectCache getObjectCache() {
+        return objectCache;
+    }
+
     public void addVerifiedHost(String hostName) {
         client.addVerifiedHost(hostName);
     }
@@ -225,11 +248,32 @@ public class CosXmlSimpleService implements SimpleCosXml {
             httpRequestBuilder.body(cosXmlRequest.getRequestBody());
         }
 
+        ObjectCache objectCache = this.objectCache;
         if (cosXmlRequest instanceof GetObjectRequest) {
-            String absolutePath = ((GetObjectRequest) cosXmlRequest).getDownloadPath();
-            httpRequestBuilder.converter(new ResponseFileBodySerializer<T2>((GetObjectResult) cosXmlResult, absolutePath, ((GetObjectRequest) cosXmlRequest).getFileOffset()));
+            GetObjectRequest getObjectRequest = (GetObjectRequest) cosXmlRequest;
+            String absolutePath = getObjectRequest.getDownloadPath();
+            ResponseFileBodySerializer<T2> fileBodySerializer = new ResponseFileBodySerializer<T2>((GetObjectResult) cosXmlResult,
+                    absolutePath, getObjectRequest.getFileOffset(), getObjectRequest.isWriteInPlace());
+            fileBodySerializer.setDurability(getObjectRequest.getDurability());
+            fileBodySerializer.setRestartFileOffset(getObjectRequest.getRestartFileOffset());
+            fileBodySerializer.setOnResponseStartListener(getObjectRequest.getOnResponseStartListener());
+            if (objectCache != null && getObjectRequest.getFileOffset() == 0 && !getObjectRequest.isWriteInPlace()
+                    && isCacheable(cosXmlRequest)) {
+                String cacheKey = cacheKey(cosXmlRequest);
+                fileBodySerializer.setObjectCache(objectCache, cacheKey, revalidate(httpRequestBuilder, objectCache, cacheKey));
+            }
+            httpRequestBuilder.converter(fileBodySerializer);
         } else if (cosXmlRequest instanceof GetObjectBytesRequest) {
-            httpRequestBuilder.converter(new ResponseBytesConverter<T2>((GetObjectBytesResult) cosXmlResult));
+            ResponseBytesConverter<T2> bytesConverter = new ResponseBytesConverter<T2>((GetObjectBytesResult) cosXmlResult);
+            if (objectCache != null && isCacheable(cosXmlRequest)) {
+                String cacheKey = cacheKey(cosXmlRequest);
+                bytesConverter.setObjectCache(objectCache, cacheKey, revalidate(httpRequestBuilder, objectCache, cacheKey));
+            }
+            httpRequestBuilder.converter(bytesConverter);
+        } else if (cosXmlRequest instanceof GetObjectStreamRequest) {
+            GetObjectStreamRequest getObjectStreamRequest = (GetObjectStreamRequest) cosXmlRequest;
+            httpRequestBuilder.converter(new ResponseSinkConverter<T2>((GetObjectStreamResult) cosXmlResult,
+                    getObjectStreamRequest.getSink(), getObjectStreamRequest.getProgressListener()));
         } else {
             httpRequestBuilder.converter(new ResponseXmlS3BodySerializer<T2>(cosXmlResult));
         }
@@ -237,13 +281,59 @@ public class CosXmlSimpleService implements SimpleCosXml {
         return httpRequest;
     }
 
+    /**
+     * 只缓存完整的对象, 调用方自己设置了条件请求头时也不经过缓存
+     */
+    private boolean isCacheable(CosXmlRequest cosXmlRequest) {
+        Map<String, List<String>> headers = cosXmlRequest.getRequestHeaders();
+        return !headers.containsKey(COSRequestHeaderKey.RANGE)
+                && !headers.containsKey(COSRequestHeaderKey.IF_NONE_MATCH)
+                && !headers.containsKey(COSRequestHeaderKey.IF_MODIFIED_SINCE);
+    }
+
+    private String cacheKey(CosXmlRequest cosXmlRequest) {
+        return ObjectCache.key(cosXmlRequest.getBucket(), cosXmlRequest.getPath(config),
+                cosXmlRequest.getQueryString().get("versionId"));
+    }
+
+    /**
+     * 命中缓存时带上条件请求头, 对象未变化时服务端只返回 304;
+     * 命中的缓存项在请求结束前保持固定, 见 {@link #releaseCachedEntry(HttpRequest)}
+     */
+    private ObjectCache.Entry revalidate(QCloudHttpRequest.Builder<?> httpRequestBuilder, ObjectCache objectCache, String cacheKey) {
+        ObjectCache.Entry entry = objectCache.acquire(cacheKey);
+        if (entry != null) {
+            httpRequestBuilder.addHeader(COSRequestHeaderKey.IF_NONE_MATCH, entry.getETag());
+            if (entry.getLastModified() != null) {
+                httpRequestBuilder.addHeader(COSRequestHeaderKey.IF_MODIFIED_SINCE, entry.getLastModified());
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 请求结束后解除缓存项的固定, 转换器正常结束时已经解除, 这里处理请求失败或取消的情况
+     */
+    private static void releaseCachedEntry(HttpRequest<?> httpRequest) {
+        if (httpRequest == null) {
+            return;
+        }
+        ResponseBodyConverter<?> converter = httpRequest.getResponseBodyConverter();
+        if (converter instanceof ResponseFileBodySerializer) {
+            ((ResponseFileBodySerializer<?>) converter).releaseCachedEntry();
+        } else if (converter instanceof ResponseBytesConverter) {
+            ((ResponseBytesConverter<?>) converter).releaseCachedEntry();
+        }
+    }
+
     /**
      * 同步执行
      */
     protected <T1 extends CosXmlRequest, T2 extends CosXmlResult> T2 execute(T1 cosXmlRequest, T2 cosXmlResult)
             throws CosXmlClientException, CosXmlServiceException {
+        QCloudHttpRequest<T2> httpRequest = null;
         try {
-            QCloudHttpRequest<T2> httpRequest = buildHttpRequest(cosXmlRequest, cosXmlResult);
+            httpRequest = buildHttpRequest(cosXmlRequest, cosXmlResult);
             HttpTask<T2> httpTask;
 
             httpTask = client.resolveRequest(httpRequest, credentialProvider);
@@ -296,6 +386,8 @@ public class CosXmlSimpleService implements SimpleCosXml {
                 MTAProxy.getInstance().reportCosXmlClientException(cosXmlRequest.getClass().getSimpleName(), reportMessage);
                 throw new CosXmlClientException(ClientErrorCode.INTERNAL_ERROR.getCode(), e);
             }
+        } finally {
+            releaseCachedEntry(httpRequest);
         }
     }
 
@@ -327,8 +419,9 @@ public class CosXmlSimpleService implements SimpleCosXml {
             }
         };
 
+        QCloudHttpRequest<T2> httpRequest = null;
         try {
-            QCloudHttpRequest<T2> httpRequest = buildHttpRequest(cosXmlRequest, cosXmlResult);
+            httpRequest = buildHttpRequest(cosXmlRequest, cosXmlResult);
 
             HttpTask<T2> httpTask;
             if (cosXmlRequest instanceof PostObjectRequest) {
@@ -351,6 +444,19 @@ public class CosXmlSimpleService implements SimpleCosXml {
                 httpTask.addProgressListener(((PostObjectRequest) cosXmlRequest).getProgressListener());
             }
 
+            final QCloudHttpRequest<T2> scheduledRequest = httpRequest;
+            httpTask.addResultListener(new QCloudResultListener<HttpResult<T2>>() {
+                @Override
+                public void onSuccess(HttpResult<T2> result) {
+                    releaseCachedEntry(scheduledRequest);
+                }
+
+                @Override
+                public void onFailure(QCloudClientException clientException, QCloudServiceException serviceException) {
+                    releaseCachedEntry(scheduledRequest);
+                }
+            });
+
             Executor executor = config.getExecutor();
             if(executor != null){
                 httpTask.scheduleOn(executor);
@@ -361,6 +467,7 @@ public class CosXmlSimpleService implements SimpleCosXml {
             httpTask.addResultListener(qCloudResultListener);
             MTAProxy.getInstance().reportSendAction(cosXmlRequest.getClass().getSimpleName());
         } catch (QCloudClientException e) {
+            releaseCachedEntry(httpRequest);
             if (e instanceof CosXmlClientException) {
                 String reportMessage = String.format(Locale.ENGLISH, "%d %s", ((CosXmlClientException) e).errorCode, e.getCause() == null ?
                         e.getClass().getSimpleName() : e.getCause().getClass().getSimpleName());
@@ -613,6 +720,30 @@ public class CosXmlSimpleService implements SimpleCosXml {
         schedule(request, new GetObjectResult(), cosXmlResultListener);
     }
 
+    /**
+     * <p>
+     * 以流的方式获取 COS 对象的同步方法.&nbsp;
+     * <p>
+     * 详细介绍，请查看:{@link  SimpleCosXml#getObjectStream(GetObjectStreamRequest request)}
+     * </p>
+     */
+    @Override
+    public GetObjectStreamResult getObjectStream(GetObjectStreamRequest request) throws CosXmlClientException, CosXmlServiceException {
+        return execute(request, new GetObjectStreamResult());
+    }
+
+    /**
+     * <p>
+     * 以流的方式获取 COS 对象的异步方法.&nbsp;
+     * <p>
+     * 详细介绍，请查看:{@link  SimpleCosXml#getObjectStreamAsync(GetObjectStreamRequest request, CosXmlResultListener cosXmlResultListener)}
+     * </p>
+     */
+    @Override
+    public void getObjectStreamAsync(GetObjectStreamRequest request, CosXmlResultListener cosXmlResultListener) {
+        schedule(request, new GetObjectStreamResult(), cosXmlResultListener);
+    }
+
     /**
      * <p>
      * 简单上传的同步方法.&nbsp;
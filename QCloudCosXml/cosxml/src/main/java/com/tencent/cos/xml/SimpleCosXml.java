@@ -15,6 +15,8 @@ import com.tencent.cos.xml.model.object.DeleteObjectRequest;
 import com.tencent.cos.xml.model.object.DeleteObjectResult;
 import com.tencent.cos.xml.model.object.GetObjectRequest;
 import com.tencent.cos.xml.model.object.GetObjectResult;
+import com.tencent.cos.xml.model.object.GetObjectStreamRequest;
+import com.tencent.cos.xml.model.object.GetObjectStreamResult;
 import com.tencent.cos.xml.model.object.HeadObjectRequest;
 import com.tencent.cos.xml.model.object.HeadObjectResult;
 import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
@@ -688,6 +690,35 @@ public interface SimpleCosXml {
      */
     void getObjectAsync(GetObjectRequest request, final CosXmlResultListener cosXmlResultListener);
 
+    /**
+     * <p>
+     * 以流的方式获取 COS 对象的同步方法.&nbsp;
+     * </p>
+     * <p>
+     * 数据直接写入 {@link GetObjectStreamRequest} 中的 sink, 可以是 {@link okio.Sink}、{@link java.io.OutputStream}、
+     * {@link java.nio.channels.WritableByteChannel} 或 {@link com.tencent.cos.xml.listener.CosXmlChunkListener},
+     * 不经过本地文件, 也不会把整个对象读入内存. sink 写得慢时下载也随之变慢.
+     * 下载结束后 sink 不会被关闭; 请求失败时 sink 中可能已有部分数据, 不会自动重试.
+     * </p>
+     *
+     * @param request 流式获取 COS 对象的请求 {@link GetObjectStreamRequest}
+     * @return 流式获取 COS 对象的返回结果 {@link GetObjectStreamResult}
+     * @throws CosXmlClientException 抛出的客户端异常
+     * @throws CosXmlServiceException 抛出的服务端异常
+     */
+    GetObjectStreamResult getObjectStream(GetObjectStreamRequest request) throws CosXmlClientException, CosXmlServiceException;
+
+    /**
+     * <p>
+     * 以流的方式获取 COS 对象的异步方法.&nbsp;
+     * </p>
+     * 详细介绍，请查看:{@link #getObjectStream(GetObjectStreamRequest)}
+     *
+     * @param request 流式获取 COS 对象的请求 {@link GetObjectStreamRequest}
+     * @param cosXmlResultListener 请求回调结果 {@link CosXmlResultListener}
+     */
+    void getObjectStreamAsync(GetObjectStreamRequest request, final CosXmlResultListener cosXmlResultListener);
+
     /**
      * <p>
      * 简单上传的同步方法.&nbsp;
@@ -28,6 +28,7 @@ final public class COSRequestHeaderKey {
     public final static String IF_UNMODIFIED_SINCE = "If-Unmodified-Since";
     public final static String IF_MATCH = "If-Match";
     public final static String IF_NONE_MATCH = "If-None-Match";
+    public final static String IF_RANGE = "If-Range";
     public final static String APPLICATION_XML = "application/xml";
     public final static String TEXT_PLAIN = "text/plain";
     public final static String APPLICATION_OCTET_STREAM = "application/octet-stream";
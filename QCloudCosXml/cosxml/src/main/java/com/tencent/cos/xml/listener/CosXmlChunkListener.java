@@ -0,0 +1,21 @@
+package com.tencent.cos.xml.listener;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * 流式下载的数据块回调, 请参阅 {@link #onChunk(byte[], int, int)}.
+ * 回调在网络线程中同步执行, 回调返回前不会继续读取网络数据, 处理慢时下载会相应变慢.
+ * data 在回调返回后会被复用, 需要保留数据时请自行拷贝.
+ * </p>
+ */
+public interface CosXmlChunkListener {
+
+    /**
+     * @param data 数据
+     * @param offset 本次数据在 data 中的起始位置
+     * @param length 本次数据的长度
+     * @throws IOException 抛出异常会中断下载
+     */
+    void onChunk(byte[] data, int offset, int length) throws IOException;
+}
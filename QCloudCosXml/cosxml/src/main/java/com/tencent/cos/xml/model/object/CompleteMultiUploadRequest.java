@@ -1,6 +1,5 @@
 package com.tencent.cos.xml.model.object;
 
-import com.tencent.cos.xml.common.COSRequestHeaderKey;
 import com.tencent.cos.xml.common.ClientErrorCode;
 import com.tencent.cos.xml.common.RequestMethod;
 import com.tencent.cos.xml.exception.CosXmlClientException;
@@ -10,9 +9,6 @@ import com.tencent.cos.xml.model.tag.CompleteMultipartUpload;
 import com.tencent.cos.xml.transfer.XmlSlimBuilder;
 import com.tencent.qcloud.core.http.RequestBodySerializer;
 
-import org.xmlpull.v1.XmlPullParserException;
-
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Map;
 
@@ -126,15 +122,7 @@ final public class CompleteMultiUploadRequest extends BaseMultipartUploadRequest
      */
     @Override
     public RequestBodySerializer getRequestBody() throws CosXmlClientException {
-        try {
-//            return RequestBodySerializer.string(COSRequestHeaderKey.APPLICATION_XML,
-//                    XmlSlimBuilder.buildCompleteMultipartUpload(completeMultipartUpload));
-            return RequestBodySerializer.bytes(COSRequestHeaderKey.APPLICATION_XML, XmlSlimBuilder.buildCompleteMultipartUpload(completeMultipartUpload).getBytes("utf-8"));
-        } catch (IOException e) {
-            throw new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(), e);
-        } catch (XmlPullParserException e) {
-            throw new CosXmlClientException(ClientErrorCode.INVALID_ARGUMENT.getCode(), e);
-        }
+        return XmlSlimBuilder.completeMultipartUploadBody(completeMultipartUpload);
     }
 
     /**
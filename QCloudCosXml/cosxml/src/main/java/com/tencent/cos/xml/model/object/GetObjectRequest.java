@@ -6,8 +6,10 @@ import com.tencent.cos.xml.common.RequestMethod;
 import com.tencent.cos.xml.listener.CosXmlProgressListener;
 import com.tencent.cos.xml.model.CosXmlRequest;
 import com.tencent.qcloud.core.http.RequestBodySerializer;
+import com.tencent.qcloud.core.http.ResponseFileConverter;
 
 import java.io.File;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -27,6 +29,10 @@ public class GetObjectRequest extends ObjectRequest {
     private String versionId;
     private Range range;
     private long fileOffset = 0L;
+    private boolean writeInPlace;
+    private ResponseFileConverter.Durability durability = ResponseFileConverter.Durability.NONE;
+    private long restartFileOffset = -1L;
+    private OnResponseStartListener onResponseStartListener;
 
     private CosXmlProgressListener progressListener;
     private String savePath;
@@ -70,6 +76,31 @@ public class GetObjectRequest extends ObjectRequest {
         }
     }
 
+    /**
+     * 设置是否按 fileOffset 写入已有的本地文件而不截断文件,
+     * 用于多个范围并行写入同一个预先分配好的文件
+     * @param writeInPlace 是否原地写入
+     */
+    public void setWriteInPlace(boolean writeInPlace) {
+        this.writeInPlace = writeInPlace;
+    }
+
+    public boolean isWriteInPlace() {
+        return writeInPlace;
+    }
+
+    /**
+     * 设置下载文件的刷盘策略, 默认不主动刷盘
+     * @param durability {@link ResponseFileConverter.Durability}
+     */
+    public void setDurability(ResponseFileConverter.Durability durability) {
+        this.durability = durability;
+    }
+
+    public ResponseFileConverter.Durability getDurability() {
+        return durability;
+    }
+
 
 
     public void setVersionId(String versionId) {
@@ -186,6 +217,8 @@ public class GetObjectRequest extends ObjectRequest {
     public void setRange(long start, long end) {
         if(start < 0) start = 0;
         Range range = new Range(start, end);
+        // 只保留一个 Range, 替换之前设置的, 也不修改通过 setRequestHeaders 传入的列表
+        requestHeaders.remove(COSRequestHeaderKey.RANGE);
         addHeader(COSRequestHeaderKey.RANGE,range.getRange());
         this.range = range;
     }
@@ -234,6 +267,41 @@ public class GetObjectRequest extends ObjectRequest {
         }
     }
 
+    /**
+     * 设置下载请求的 If-Range 头部.<br>
+     * 对象的 ETag 与 ifRange 一致时按 Range 返回部分内容 (206), 否则返回整个对象 (200),
+     * 此时从 restartFileOffset 开始截断并重写本地文件.
+     * 只适用于下载整个对象的请求, 从中间续传时用来代替一次 HEAD 请求.
+     *
+     * @param ifRange 上次下载时对象的 ETag
+     * @param restartFileOffset 返回整个对象时写入本地文件的起点
+     */
+    public void setIfRange(String ifRange, long restartFileOffset){
+        if(ifRange != null){
+            addHeader(COSRequestHeaderKey.IF_RANGE, ifRange);
+            this.restartFileOffset = Math.max(restartFileOffset, 0L);
+        }
+    }
+
+    /**
+     * @return 设置了 If-Range 时返回整个对象时的写入起点, 否则返回 -1
+     */
+    public long getRestartFileOffset() {
+        return restartFileOffset;
+    }
+
+    /**
+     * 设置响应开始的监听器, 在写入本地文件之前回调
+     * @param onResponseStartListener {@link OnResponseStartListener}
+     */
+    public void setOnResponseStartListener(OnResponseStartListener onResponseStartListener) {
+        this.onResponseStartListener = onResponseStartListener;
+    }
+
+    public OnResponseStartListener getOnResponseStartListener() {
+        return onResponseStartListener;
+    }
+
     /**
      * 设置进度监听器
      * @param progressListener
@@ -352,4 +420,15 @@ public class GetObjectRequest extends ObjectRequest {
         return null;
     }
 
+    /**
+     * 响应开始的回调, 在网络线程中执行, 回调返回后才开始写入本地文件
+     */
+    public interface OnResponseStartListener {
+        /**
+         * @param httpCode 响应码
+         * @param headers 响应头
+         * @param isRestarted If-Range 不匹配, 改为从头写入整个对象
+         */
+        void onResponseStart(int httpCode, Map<String, List<String>> headers, boolean isRestarted);
+    }
 }
@@ -0,0 +1,192 @@
+package com.tencent.cos.xml.model.object;
+
+import com.tencent.cos.xml.common.COSRequestHeaderKey;
+import com.tencent.cos.xml.common.Range;
+import com.tencent.cos.xml.common.RequestMethod;
+import com.tencent.cos.xml.listener.CosXmlChunkListener;
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.qcloud.core.http.RequestBodySerializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+
+import okio.Buffer;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * <p>
+ * 将 Bucket 中的文件（Object）以流的方式下载到调用方提供的 sink 中, 不经过本地文件.
+ * 数据在网络线程中同步写入 sink, sink 写得慢时网络读取也随之变慢.
+ * 下载结束后 sink 会被 flush, 但不会被关闭, 由调用方负责关闭.
+ * 数据写入 sink 后无法撤回, 因此该请求失败后不会自动重试, 需要由调用方重新发起.
+ * </p>
+ */
+public class GetObjectStreamRequest extends ObjectRequest {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Sink sink;
+    private String versionId;
+    private Range range;
+    private CosXmlProgressListener progressListener;
+
+    /**
+     * @param bucket 存储桶名称(cos v5 的 bucket格式为：xxx-appid, 如 test-1253960454)
+     * @param cosPath 远端路径，即存储到 COS 上的绝对路径
+     * @param sink 数据写入的 sink
+     */
+    public GetObjectStreamRequest(String bucket, String cosPath, Sink sink){
+        super(bucket, cosPath);
+        this.sink = sink;
+    }
+
+    /**
+     * @param outputStream 数据写入的输出流
+     */
+    public GetObjectStreamRequest(String bucket, String cosPath, OutputStream outputStream){
+        this(bucket, cosPath, outputStream == null ? null : Okio.sink(outputStream));
+    }
+
+    /**
+     * @param channel 数据写入的通道
+     */
+    public GetObjectStreamRequest(String bucket, String cosPath, final WritableByteChannel channel){
+        this(bucket, cosPath, channel == null ? null : new ChunkSink(new CosXmlChunkListener() {
+            @Override
+            public void onChunk(byte[] data, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+                while (buffer.hasRemaining()){
+                    channel.write(buffer);
+                }
+            }
+        }));
+    }
+
+    /**
+     * @param chunkListener 数据块回调
+     */
+    public GetObjectStreamRequest(String bucket, String cosPath, CosXmlChunkListener chunkListener){
+        this(bucket, cosPath, chunkListener == null ? null : new ChunkSink(chunkListener));
+    }
+
+    public Sink getSink() {
+        return sink;
+    }
+
+    /**
+     * 设置下载的版本
+     * @param versionId 版本号
+     */
+    public void setVersionId(String versionId) {
+        this.versionId = versionId;
+    }
+
+    /**
+     * 设置下载的范围
+     *
+     * @param start 起点
+     * @param end 终点
+     */
+    public void setRange(long start, long end) {
+        if(start < 0) start = 0;
+        Range range = new Range(start, end);
+        addHeader(COSRequestHeaderKey.RANGE,range.getRange());
+        this.range = range;
+    }
+
+    /**
+     * 设置下载的范围
+     * @param start 起点
+     */
+    public void setRange(long start) {
+        setRange(start, -1);
+    }
+
+    public Range getRange(){
+        return range;
+    }
+
+    public void setIfMatch(String ifMatch){
+        if(ifMatch != null){
+            addHeader(COSRequestHeaderKey.IF_MATCH,ifMatch);
+        }
+    }
+
+    public void setIfModifiedSince(String ifModifiedSince){
+        if(ifModifiedSince != null){
+            addHeader(COSRequestHeaderKey.IF_MODIFIED_SINCE,ifModifiedSince);
+        }
+    }
+
+    /**
+     * 设置进度监听器
+     * @param progressListener
+     */
+    public void setProgressListener(CosXmlProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public CosXmlProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    @Override
+    public String getMethod() {
+        return RequestMethod.GET;
+    }
+
+    @Override
+    public Map<String, String> getQueryString() {
+        if(versionId != null){
+            queryParameters.put("versionId",versionId);
+        }
+        return super.getQueryString();
+    }
+
+    @Override
+    public RequestBodySerializer getRequestBody() {
+        return null;
+    }
+
+    /**
+     * 把写入的数据按块交给 {@link CosXmlChunkListener}, 块缓冲区复用
+     */
+    private static final class ChunkSink implements Sink {
+
+        private final CosXmlChunkListener chunkListener;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+
+        ChunkSink(CosXmlChunkListener chunkListener){
+            this.chunkListener = chunkListener;
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            while (byteCount > 0){
+                int length = source.read(chunk, 0, (int) Math.min(chunk.length, byteCount));
+                if(length <= 0) break;
+                chunkListener.onChunk(chunk, 0, length);
+                byteCount -= length;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
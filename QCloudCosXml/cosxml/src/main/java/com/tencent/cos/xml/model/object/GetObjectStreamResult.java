@@ -0,0 +1,22 @@
+package com.tencent.cos.xml.model.object;
+
+import com.tencent.cos.xml.model.CosXmlResult;
+
+/**
+ * <p>
+ * 流式下载的返回结果, 数据已经写入 {@link GetObjectStreamRequest} 中的 sink.
+ * </p>
+ */
+public class GetObjectStreamResult extends CosXmlResult {
+
+    /** 写入 sink 的字节数 */
+    public long bytesTransferred;
+
+    /**
+     *  @see CosXmlResult#printResult()
+     */
+    @Override
+    public String printResult() {
+        return super.printResult() + "\n" + "bytesTransferred:" + bytesTransferred;
+    }
+}
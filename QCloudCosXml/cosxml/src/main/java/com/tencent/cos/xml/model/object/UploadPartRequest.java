@@ -27,6 +27,7 @@ final public class UploadPartRequest extends BaseMultipartUploadRequest {
     private String uploadId;
     private String srcPath;
     private byte[] data;
+    private int dataLength = -1;
     private InputStream inputStream;
     private long fileOffset = -1L;
     private long fileContentLength = -1L;
@@ -64,6 +65,14 @@ final public class UploadPartRequest extends BaseMultipartUploadRequest {
         fileContentLength = -1L;
     }
 
+    /**
+     * 上传字节数组的前 length 个字节, 便于复用分片缓冲区
+     */
+    public UploadPartRequest(String bucket, String cosPath, int partNumber, byte[] data, int length, String uploadId){
+        this(bucket, cosPath, partNumber, data, uploadId);
+        this.dataLength = length;
+    }
+
     public UploadPartRequest(String bucket, String cosPath, int partNumber, InputStream inputStream, String uploadId) throws CosXmlClientException {
         this(bucket, cosPath);
         this.partNumber = partNumber;
@@ -133,7 +142,7 @@ final public class UploadPartRequest extends BaseMultipartUploadRequest {
                return RequestBodySerializer.file(null, new File(srcPath));
             }
         }else if(data != null){
-            return RequestBodySerializer.bytes(null, data);
+            return RequestBodySerializer.bytes(null, data, 0L, dataLength);
         }else if(inputStream != null){
             return RequestBodySerializer.stream(null, new File(CosXmlSimpleService.appCachePath),
                     inputStream);
@@ -203,6 +212,7 @@ final public class UploadPartRequest extends BaseMultipartUploadRequest {
      */
     public void setData(byte[] data) {
         this.data = data;
+        this.dataLength = -1;
     }
 
     /**
@@ -219,7 +229,7 @@ final public class UploadPartRequest extends BaseMultipartUploadRequest {
      */
     public long getFileLength() {
         if(data != null){
-            fileContentLength =  data.length;
+            fileContentLength = dataLength >= 0 ? dataLength : data.length;
         }else if(srcPath != null && fileContentLength == -1L){
             fileContentLength = new File(srcPath).length();
         }
@@ -0,0 +1,350 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.CosXmlResult;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量上传任务.
+ * <p>
+ * 所有对象共享同一个并发预算: 简单上传占用 1 个名额, 分片上传占用 maxConcurrentParts 个名额,
+ * 预算用完后等前面的对象完成再继续, 上传源按需从迭代器中取出, 目录可以边遍历边上传.
+ * 失败的对象会被记录下来, 可以通过 {@link #retryFailed()} 只重传失败的部分.
+ * 调度在循环中进行: 上传在启动时同步失败(如文件不存在)会再次触发调度, 此时只标记需要重新调度,
+ * 由正在调度的循环继续, 不会递归, 大量无效文件也不会耗尽调用栈.
+ * </p>
+ */
+public final class COSXMLBatchUploadTask {
+
+    private final TransferManager transferManager;
+    private final String bucket;
+    private final long multiUploadSizeDivision;
+    private final int partWeight;
+    private final int concurrencyBudget;
+
+    private final Iterator<UploadSource> sources;
+    /** 已从迭代器取出但因预算不足尚未开始的上传源 */
+    private UploadSource pendingSource;
+    private final Deque<UploadSource> retrySources = new ArrayDeque<>();
+    private final List<UploadSource> failedSources = new ArrayList<>();
+    private final List<COSXMLUploadTask> runningTasks = new ArrayList<>();
+    private int usedBudget;
+    private boolean isCanceled;
+    private boolean isFinished;
+    /** 是否有线程正在调度 */
+    private boolean isScheduling;
+    /** 调度期间有对象结束, 需要再调度一轮 */
+    private boolean needsReschedule;
+
+    private final BatchUploadListener batchUploadListener;
+
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicLong completedBytes = new AtomicLong(0L);
+    private final AtomicLong inFlightBytes = new AtomicLong(0L);
+    private int succeedCount;
+    private int failedCount;
+
+    COSXMLBatchUploadTask(TransferManager transferManager, TransferConfig transferConfig, String bucket,
+                          Iterator<UploadSource> sources, BatchUploadListener batchUploadListener){
+        this.transferManager = transferManager;
+        this.bucket = bucket;
+        this.sources = sources;
+        this.batchUploadListener = batchUploadListener;
+        this.multiUploadSizeDivision = transferConfig.divisionForUpload;
+        this.concurrencyBudget = Math.max(transferConfig.batchConcurrency, 1);
+        this.partWeight = Math.min(Math.max(transferConfig.maxConcurrentParts, 1), concurrencyBudget);
+    }
+
+    void start(){
+        scheduleNext();
+    }
+
+    /**
+     * 重新上传所有失败的对象, 已成功的对象不会重传
+     */
+    public void retryFailed(){
+        synchronized (this){
+            if(isCanceled) return;
+            retrySources.addAll(failedSources);
+            failedCount -= failedSources.size();
+            failedSources.clear();
+            isFinished = false;
+        }
+        scheduleNext();
+    }
+
+    /**
+     * 取消所有进行中的上传, 不再调度剩下的对象
+     */
+    public void cancel(){
+        List<COSXMLUploadTask> tasks;
+        synchronized (this){
+            if(isCanceled) return;
+            isCanceled = true;
+            tasks = new ArrayList<>(runningTasks);
+            runningTasks.clear();
+        }
+        for(COSXMLUploadTask task : tasks){
+            task.cancel();
+        }
+    }
+
+    /**
+     * @return 当前失败的上传源
+     */
+    public synchronized List<UploadSource> getFailedSources(){
+        return new ArrayList<>(failedSources);
+    }
+
+    /**
+     * @return 当前的汇总统计
+     */
+    public synchronized BatchUploadStats getStats(){
+        long elapsed = Math.max(System.currentTimeMillis() - startTime, 1L);
+        long transferred = completedBytes.get() + inFlightBytes.get();
+        return new BatchUploadStats(succeedCount, failedCount, runningTasks.size(),
+                transferred, transferred * 1000 / elapsed);
+    }
+
+    private void scheduleNext(){
+        synchronized (this){
+            if(isScheduling){
+                needsReschedule = true;
+                return;
+            }
+            isScheduling = true;
+        }
+        boolean finished = false;
+        while (true){
+            finished |= scheduleRound();
+            synchronized (this){
+                if(!needsReschedule){
+                    isScheduling = false;
+                    break;
+                }
+                needsReschedule = false;
+            }
+        }
+        if(finished && batchUploadListener != null){
+            batchUploadListener.onFinished(getStats());
+        }
+    }
+
+    /**
+     * 在预算内启动尽可能多的上传
+     * @return 是否所有上传源都已处理完
+     */
+    private boolean scheduleRound(){
+        List<UploadSource> nextSources = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        boolean finished = false;
+        synchronized (this){
+            while (!isCanceled){
+                UploadSource source = peekSource();
+                if(source == null){
+                    break;
+                }
+                int weight = new File(source.srcPath).length() >= multiUploadSizeDivision ? partWeight : 1;
+                if(usedBudget + weight > concurrencyBudget){
+                    break;
+                }
+                pollSource();
+                usedBudget += weight;
+                nextSources.add(source);
+                weights.add(weight);
+            }
+            if(!isCanceled && !isFinished && usedBudget == 0 && nextSources.isEmpty() && peekSource() == null){
+                isFinished = true;
+                finished = true;
+            }
+        }
+        for(int i = 0; i < nextSources.size(); i ++){
+            startUpload(nextSources.get(i), weights.get(i));
+        }
+        return finished;
+    }
+
+    private UploadSource peekSource(){
+        if(!retrySources.isEmpty()){
+            return retrySources.peek();
+        }
+        if(pendingSource == null && sources.hasNext()){
+            pendingSource = sources.next();
+        }
+        return pendingSource;
+    }
+
+    private void pollSource(){
+        if(!retrySources.isEmpty()){
+            retrySources.poll();
+        }else {
+            pendingSource = null;
+        }
+    }
+
+    private void startUpload(final UploadSource source, final int weight){
+        // 先设置回调再开始, 开始时同步失败的回调不会错过
+        final COSXMLUploadTask task = transferManager.newUploadTask(bucket, source.cosPath, source.srcPath, null);
+        final AtomicLong taskProgress = new AtomicLong(0L);
+        synchronized (this){
+            runningTasks.add(task);
+        }
+        task.setCosXmlProgressListener(new CosXmlProgressListener() {
+            @Override
+            public void onProgress(long complete, long target) {
+                inFlightBytes.addAndGet(complete - taskProgress.getAndSet(complete));
+                if(batchUploadListener != null){
+                    batchUploadListener.onProgress(getStats());
+                }
+            }
+        });
+        task.setCosXmlResultListener(new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                long fileLength = new File(source.srcPath).length();
+                synchronized (COSXMLBatchUploadTask.this){
+                    if(!runningTasks.remove(task)) return;
+                    usedBudget -= weight;
+                    succeedCount ++;
+                    inFlightBytes.addAndGet(-taskProgress.getAndSet(0L));
+                    completedBytes.addAndGet(fileLength);
+                }
+                if(batchUploadListener != null){
+                    batchUploadListener.onSuccess(source, (COSXMLUploadTask.COSXMLUploadTaskResult) result);
+                }
+                scheduleNext();
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                synchronized (COSXMLBatchUploadTask.this){
+                    if(!runningTasks.remove(task)) return;
+                    usedBudget -= weight;
+                    failedCount ++;
+                    failedSources.add(source);
+                    inFlightBytes.addAndGet(-taskProgress.getAndSet(0L));
+                }
+                if(batchUploadListener != null){
+                    batchUploadListener.onFail(source, exception, serviceException);
+                }
+                scheduleNext();
+            }
+        });
+        task.upload();
+    }
+
+    /**
+     * 按需遍历本地目录, 每个文件对应 cosPathPrefix + 相对路径
+     */
+    static Iterator<UploadSource> walkDirectory(final File directory, final String cosPathPrefix){
+        return new Iterator<UploadSource>() {
+            private final Deque<File> pendingDirs = new ArrayDeque<>(Collections.singleton(directory));
+            private final Deque<File> pendingFiles = new ArrayDeque<>();
+            private final String rootPath = directory.getAbsolutePath();
+
+            @Override
+            public boolean hasNext() {
+                while (pendingFiles.isEmpty() && !pendingDirs.isEmpty()){
+                    File[] children = pendingDirs.poll().listFiles();
+                    if(children == null) continue;
+                    for(File child : children){
+                        if(child.isDirectory()){
+                            pendingDirs.add(child);
+                        }else {
+                            pendingFiles.add(child);
+                        }
+                    }
+                }
+                return !pendingFiles.isEmpty();
+            }
+
+            @Override
+            public UploadSource next() {
+                if(!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                File file = pendingFiles.poll();
+                String relativePath = file.getAbsolutePath().substring(rootPath.length() + 1)
+                        .replace(File.separatorChar, '/');
+                String prefix = cosPathPrefix == null ? "" : cosPathPrefix;
+                if(prefix.length() > 0 && !prefix.endsWith("/")){
+                    prefix = prefix + "/";
+                }
+                return new UploadSource(prefix + relativePath, file.getAbsolutePath());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * 上传源: 本地文件及其在存储桶上的位置
+     */
+    public static class UploadSource {
+        public final String cosPath;
+        public final String srcPath;
+
+        public UploadSource(String cosPath, String srcPath){
+            this.cosPath = cosPath;
+            this.srcPath = srcPath;
+        }
+
+        @Override
+        public String toString() {
+            return srcPath + " -> " + cosPath;
+        }
+    }
+
+    /**
+     * 批量上传的汇总统计
+     */
+    public static class BatchUploadStats {
+        /** 已成功的对象数 */
+        public final int succeedCount;
+        /** 已失败的对象数 */
+        public final int failedCount;
+        /** 进行中的对象数 */
+        public final int runningCount;
+        /** 已发送的字节数 */
+        public final long transferredBytes;
+        /** 平均吞吐, 字节每秒 */
+        public final long bytesPerSecond;
+
+        BatchUploadStats(int succeedCount, int failedCount, int runningCount, long transferredBytes, long bytesPerSecond){
+            this.succeedCount = succeedCount;
+            this.failedCount = failedCount;
+            this.runningCount = runningCount;
+            this.transferredBytes = transferredBytes;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+    }
+
+    public interface BatchUploadListener {
+        void onSuccess(UploadSource source, COSXMLUploadTask.COSXMLUploadTaskResult result);
+
+        void onFail(UploadSource source, CosXmlClientException exception, CosXmlServiceException serviceException);
+
+        void onProgress(BatchUploadStats stats);
+
+        /**
+         * 所有上传源都已处理完（可能有失败的）, 调用 {@link #retryFailed()} 后会再次回调
+         */
+        void onFinished(BatchUploadStats stats);
+    }
+}
@@ -23,13 +23,18 @@ import com.tencent.cos.xml.model.object.UploadPartCopyResult;
 import com.tencent.cos.xml.model.tag.ListParts;
 import com.tencent.qcloud.core.common.QCloudTaskStateListener;
 import com.tencent.qcloud.core.http.HttpTask;
+import com.tencent.qcloud.core.logger.QCloudLogger;
+import com.tencent.qcloud.core.task.TaskExecutors;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by bradyxiao on 2018/9/19.
@@ -38,12 +43,32 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public final class COSXMLCopyTask extends COSXMLTask {
 
+    private static final String TAG = "COSXMLCopyTask";
+
+    /** 分片数上限 */
+    private static final int MAX_PART_COUNT = 10000;
+    /** 自动放大分片时, 分片数尽量不超过该值 */
+    private static final int TARGET_PART_COUNT = 1000;
+    /** 分片大小上限 5G */
+    private static final long MAX_SLICE_SIZE = 5L * 1024 * 1024 * 1024;
+    /** 自动计算的分片大小按 1M 对齐 */
+    private static final long SLICE_SIZE_ALIGNMENT = 1024 * 1024;
+    /** 单个分片失败后的重试次数 */
+    private static final int MAX_PART_RETRY_TIMES = 2;
+    /** 分片第一次重试前的等待时间, 之后每次翻倍 */
+    private static final long PART_RETRY_INIT_BACKOFF = 1000;
+    /** 分片重试前的最长等待时间 */
+    private static final long PART_RETRY_MAX_BACKOFF = 8000;
+    private static final Random RETRY_JITTER = new Random();
+
     /** 是否分片拷贝Limit */
     protected long multiCopySizeDivision;
     /** 拷贝的数据源 */
     private CopyObjectRequest.CopySourceStruct copySourceStruct;
     /** 数据源的长度 */
     private long fileLength;
+    /** 数据源的 ETag, 分片拷贝时要求源对象不变 */
+    private String sourceETag;
     /** 获取源文件属性 */
     private HeadObjectRequest headObjectRequest;
 
@@ -58,21 +83,35 @@ public final class COSXMLCopyTask extends COSXMLTask {
     private InitMultipartUploadRequest initMultipartUploadRequest;
     private ListPartsRequest listPartsRequest;
     protected long sliceSize;
-    private Map<Integer, CopyPartStruct> copyPartStructMap; //必须有序
-    private List<UploadPartCopyRequest> uploadPartCopyRequestList;
+    /** 分片状态表 */
+    private PartStateTable partStateTable;
+    /** 进行中的拷贝分片 */
+    private Set<UploadPartCopyRequest> runningUploadPartCopyRequests;
+    /** 同时拷贝的分片数上限 */
+    protected int maxConcurrentParts;
+    /** 下一个待发起的分片下标, 以及进行中的分片数 */
+    private int nextPartIndex;
+    private int runningPartCount;
+    /** 断点日志目录, 为 null 时不记录断点 */
+    protected String checkpointDir;
+    /** 分片拷贝断点日志 */
+    private UploadCheckpointJournal checkpointJournal;
+    /** 本次是否从断点日志中恢复 */
+    private boolean isResumedFromCheckpoint;
     /** 完成所有上传分片 */
     private CompleteMultiUploadRequest completeMultiUploadRequest;
     private AtomicBoolean IS_EXIT;
-    private AtomicInteger UPLOAD_PART_COUNT;
     private Object SYNC_UPLOAD_PART = new Object();
     private LargeCopyStateListener largeCopyStateListenerHandler = new LargeCopyStateListener(){
         @Override
         public void onInit() {
+            beginCheckpoint();
             uploadPartCopy(cosXmlService);
         }
 
         @Override
         public void onListParts() {
+            beginCheckpoint();
             uploadPartCopy(cosXmlService);
         }
 
@@ -84,8 +123,11 @@ public final class COSXMLCopyTask extends COSXMLTask {
         @Override
         public void onCompleted(CosXmlRequest cosXmlRequest, CosXmlResult cosXmlResult) {
             IS_EXIT.set(true);
+            if(checkpointJournal != null){
+                checkpointJournal.delete();
+            }
             if(updateState(TransferState.COMPLETED)){
-                mResult = buildCOSXMLTaskResult(cosXmlResult);
+                setResult(buildCOSXMLTaskResult(cosXmlResult));
                 if(cosXmlResultListener != null){
                     cosXmlResultListener.onSuccess(buildCOSXMLTaskRequest(cosXmlRequest), mResult);
                 }
@@ -96,8 +138,17 @@ public final class COSXMLCopyTask extends COSXMLTask {
         @Override
         public void onFailed(CosXmlRequest cosXmlRequest, CosXmlClientException exception, CosXmlServiceException serviceException) {
             IS_EXIT.set(true);
+            if(checkpointJournal != null){
+                // 断点中的 uploadId 已失效, 下次重新初始化分片拷贝
+                if(isResumedFromCheckpoint && serviceException != null
+                        && "NoSuchUpload".equals(serviceException.getErrorCode())){
+                    checkpointJournal.delete();
+                }else {
+                    checkpointJournal.flush();
+                }
+            }
             if(updateState(TransferState.FAILED)){
-                mException = exception == null ? serviceException : exception;
+                setException(exception == null ? serviceException : exception);
                 if(cosXmlResultListener != null){
                     cosXmlResultListener.onFail(buildCOSXMLTaskRequest(cosXmlRequest), exception, serviceException);
                 }
@@ -153,7 +204,7 @@ public final class COSXMLCopyTask extends COSXMLTask {
             public void onSuccess(CosXmlRequest request, CosXmlResult result) {
                 if(updateState(TransferState.COMPLETED)){
                     // complete -> success
-                    mResult = buildCOSXMLTaskResult(result);
+                    setResult(buildCOSXMLTaskResult(result));
                     if(cosXmlResultListener != null){
                         cosXmlResultListener.onSuccess(buildCOSXMLTaskRequest(request), mResult);
                     }
@@ -168,7 +219,7 @@ public final class COSXMLCopyTask extends COSXMLTask {
                     if(updateState(TransferState.FAILED)){
                         // failed -> error
 //                           QCloudLogger.d(TAG, taskState.name());
-                        mException = exception == null ? serviceException : exception;
+                        setException(exception == null ? serviceException : exception);
                         if(cosXmlResultListener != null){
                             cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, serviceException);
                         }
@@ -179,7 +230,27 @@ public final class COSXMLCopyTask extends COSXMLTask {
     }
 
     private void largeFileCopy(CosXmlSimpleService cosXmlService){
-        initCopyPart();
+        isResumedFromCheckpoint = false;
+        if(checkpointJournal != null){
+            checkpointJournal.close();
+        }
+        checkpointJournal = UploadCheckpointJournal.openForCopy(checkpointDir, bucket, cosPath, sourceIdentity(),
+                fileLength, sourceETag);
+        if(checkpointJournal != null && checkpointJournal.load()
+                && (uploadId == null || uploadId.equals(checkpointJournal.getUploadId()))){
+            // 从本地断点恢复, 不再需要 ListParts
+            isResumedFromCheckpoint = true;
+            uploadId = checkpointJournal.getUploadId();
+            sliceSize = checkpointJournal.getSliceSize();
+            partStateTable = PartStateTable.split(fileLength, sliceSize);
+            checkpointJournal.restore(partStateTable);
+            checkpointJournal.reopen();
+            updateState(TransferState.IN_PROGRESS); // running
+            uploadPartCopy(cosXmlService);
+            return;
+        }
+        sliceSize = sliceSizeFor(fileLength, sliceSize);
+        partStateTable = PartStateTable.split(fileLength, sliceSize);
         if(uploadId == null){
             //重新跑
             initMultiUpload(cosXmlService);
@@ -189,6 +260,25 @@ public final class COSXMLCopyTask extends COSXMLTask {
         }
     }
 
+    /**
+     * 根据源对象的长度选择分片大小: 不小于配置的分片大小, 对象较大时放大分片使分片数不超过 TARGET_PART_COUNT,
+     * 每个分片都是一次服务端拷贝请求, 分片越少请求开销越小; 同时保证分片数不超过 MAX_PART_COUNT.
+     */
+    static long sliceSizeFor(long length, long sliceSize){
+        long minSliceSize = (length + TARGET_PART_COUNT - 1) / TARGET_PART_COUNT;
+        if(sliceSize >= minSliceSize){
+            return sliceSize;
+        }
+        minSliceSize = (minSliceSize + SLICE_SIZE_ALIGNMENT - 1) / SLICE_SIZE_ALIGNMENT * SLICE_SIZE_ALIGNMENT;
+        long limitSliceSize = (length + MAX_PART_COUNT - 1) / MAX_PART_COUNT;
+        return Math.max(Math.min(minSliceSize, MAX_SLICE_SIZE), limitSliceSize);
+    }
+
+    private String sourceIdentity(){
+        return copySourceStruct.appid + "_" + copySourceStruct.bucket + "_" + copySourceStruct.region
+                + "_" + copySourceStruct.cosPath + "_" + copySourceStruct.versionId;
+    }
+
     private void initMultiUpload(CosXmlSimpleService cosXmlService){
         initMultipartUploadRequest = new InitMultipartUploadRequest(bucket, cosPath);
         initMultipartUploadRequest.setRegion(region);
@@ -228,26 +318,6 @@ public final class COSXMLCopyTask extends COSXMLTask {
         });
     }
 
-    private synchronized void initCopyPart() {
-        int count = (int) (fileLength / sliceSize);
-        int i = 1;
-        for(; i < count; ++ i){
-            CopyPartStruct slicePartStruct = new CopyPartStruct();
-            slicePartStruct.isAlreadyUpload = false;
-            slicePartStruct.partNumber = i;
-            slicePartStruct.start = (i - 1) * sliceSize;
-            slicePartStruct.end = i * sliceSize - 1;
-            copyPartStructMap.put(i, slicePartStruct);
-        }
-        CopyPartStruct slicePartStruct = new CopyPartStruct();
-        slicePartStruct.isAlreadyUpload = false;
-        slicePartStruct.partNumber = i;
-        slicePartStruct.start = (i - 1) * sliceSize;
-        slicePartStruct.end = fileLength - 1;
-        copyPartStructMap.put(i, slicePartStruct);
-        UPLOAD_PART_COUNT.set(i);
-    }
-
     private void listMultiUpload(CosXmlSimpleService cosXmlService){
         listPartsRequest = new ListPartsRequest(bucket, cosPath, uploadId);
 
@@ -291,81 +361,209 @@ public final class COSXMLCopyTask extends COSXMLTask {
             List<ListParts.Part> parts = listPartsResult.listParts.parts;
             if(parts != null){
                 for(ListParts.Part part : parts){
-                    if(copyPartStructMap.containsKey(Integer.valueOf(part.partNumber))){
-                        CopyPartStruct slicePartStruct = copyPartStructMap.get(Integer.valueOf(part.partNumber));
-                        slicePartStruct.isAlreadyUpload = true;
-                        slicePartStruct.eTag = part.eTag;
-                        UPLOAD_PART_COUNT.decrementAndGet();
+                    int index = partStateTable.indexOf(Integer.valueOf(part.partNumber));
+                    // 分片大小随源对象长度变化, 调用方传入的 uploadId 可能按其他分片大小拷贝过,
+                    // 大小与当前分片不一致的分片需要重新拷贝
+                    if(index >= 0 && partSize(part) == partStateTable.size(index)){
+                        partStateTable.markCompleted(index, part.eTag);
                     }
                 }
             }
         }
     }
 
+    private static long partSize(ListParts.Part part){
+        try {
+            return Long.parseLong(part.size);
+        } catch (NumberFormatException e){
+            return -1L;
+        }
+    }
+
     private void uploadPartCopy(CosXmlSimpleService cosXmlService){
-        boolean isCopyFinished = true;
-        for(Map.Entry<Integer, CopyPartStruct> entry : copyPartStructMap.entrySet()){
-            final CopyPartStruct copyPartStruct = entry.getValue();
-            if(!copyPartStruct.isAlreadyUpload && !IS_EXIT.get()){
-                isCopyFinished = false;
-                UploadPartCopyRequest uploadPartCopyRequest = new UploadPartCopyRequest(bucket,
-                        cosPath, copyPartStruct.partNumber, uploadId, copySourceStruct, copyPartStruct.start,
-                        copyPartStruct.end);
-                uploadPartCopyRequest.setRegion(region);
-
-                uploadPartCopyRequest.setRequestHeaders(headers);
-
-                if(onSignatureListener != null){
-                    uploadPartCopyRequest.setSign(onSignatureListener.onGetSign(uploadPartCopyRequest));
+        //是否已拷贝完
+        if(partStateTable.isAllCompleted()){
+            if(IS_EXIT.get())return;
+            largeCopyStateListenerHandler.onUploadPartCopy();
+            return;
+        }
+        synchronized (SYNC_UPLOAD_PART){
+            nextPartIndex = 0;
+            runningPartCount = 0;
+        }
+        copyNextParts(cosXmlService);
+    }
+
+    /**
+     * 补足拷贝窗口, 进行中的分片数不超过 maxConcurrentParts
+     */
+    private void copyNextParts(CosXmlSimpleService cosXmlService){
+        List<Integer> nextParts = new ArrayList<>();
+        synchronized (SYNC_UPLOAD_PART){
+            int windowSize = Math.max(maxConcurrentParts, 1);
+            while(!IS_EXIT.get() && runningPartCount < windowSize
+                    && (nextPartIndex = partStateTable.nextPending(nextPartIndex)) >= 0){
+                runningPartCount ++;
+                nextParts.add(nextPartIndex ++);
+            }
+            if(nextPartIndex < 0){
+                nextPartIndex = partStateTable.size();
+            }
+        }
+        for(int index : nextParts){
+            copyPart(cosXmlService, index, 0);
+        }
+    }
+
+    /**
+     * @param retryTimes 该分片已重试的次数
+     */
+    private void copyPart(final CosXmlSimpleService cosXmlService, final int index, final int retryTimes){
+        //是否已经failed了，则就不要在继续了
+        if(IS_EXIT.get())return;
+        final UploadPartCopyRequest uploadPartCopyRequest = new UploadPartCopyRequest(bucket,
+                cosPath, partStateTable.partNumber(index), uploadId, copySourceStruct, partStateTable.offset(index),
+                partStateTable.end(index));
+        uploadPartCopyRequest.setRegion(region);
+
+        uploadPartCopyRequest.setRequestHeaders(headers);
+        if(!hasCopySourceCondition()){
+            // 拷贝过程中源对象被修改时返回 412, 避免拼出新旧混合的对象
+            uploadPartCopyRequest.setCopyIfMatch(sourceETag);
+        }
+
+        if(onSignatureListener != null){
+            uploadPartCopyRequest.setSign(onSignatureListener.onGetSign(uploadPartCopyRequest));
+        }
+
+        getHttpMetrics(uploadPartCopyRequest, "UploadPartCopyRequest");
+
+        uploadPartCopyRequest.setTaskStateListener(new QCloudTaskStateListener() {
+            @Override
+            public void onStateChanged(String taskId, int state) {
+                if(state == HttpTask.STATE_EXECUTING){
+                    updateState(TransferState.IN_PROGRESS); // running
                 }
+            }
+        });
 
-                getHttpMetrics(uploadPartCopyRequest, "UploadPartCopyRequest");
+        runningUploadPartCopyRequests.add(uploadPartCopyRequest);
 
-                uploadPartCopyRequest.setTaskStateListener(new QCloudTaskStateListener() {
-                    @Override
-                    public void onStateChanged(String taskId, int state) {
-                        if(state == HttpTask.STATE_EXECUTING){
-                            updateState(TransferState.IN_PROGRESS); // running
-                        }
-                    }
-                });
-
-                uploadPartCopyRequestList.add(uploadPartCopyRequest);
-
-                cosXmlService.copyObjectAsync(uploadPartCopyRequest, new CosXmlResultListener() {
-                    @Override
-                    public void onSuccess(CosXmlRequest request, CosXmlResult result) {
-                        copyPartStruct.eTag = ((UploadPartCopyResult)result).copyObject.eTag;
-                        copyPartStruct.isAlreadyUpload = true;
-                        synchronized (SYNC_UPLOAD_PART){
-                            UPLOAD_PART_COUNT.decrementAndGet();
-                            if(UPLOAD_PART_COUNT.get() == 0){
-                                if(IS_EXIT.get())return;
-                                largeCopyStateListenerHandler.onUploadPartCopy();
-                            }
-                        }
-                    }
+        cosXmlService.copyObjectAsync(uploadPartCopyRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                // 已完成的分片不再需要被 pause 或 cancel
+                runningUploadPartCopyRequests.remove(uploadPartCopyRequest);
+                String eTag = ((UploadPartCopyResult)result).copyObject.eTag;
+                boolean isCopyFinished;
+                synchronized (SYNC_UPLOAD_PART){
+                    runningPartCount --;
+                    isCopyFinished = partStateTable.markCompleted(index, eTag)
+                            && partStateTable.isAllCompleted();
+                }
+                if(checkpointJournal != null){
+                    checkpointJournal.recordPart(partStateTable.partNumber(index), partStateTable.offset(index),
+                            partStateTable.size(index), eTag);
+                }
+                if(IS_EXIT.get())return;
+                if(isCopyFinished){
+                    largeCopyStateListenerHandler.onUploadPartCopy();
+                }else {
+                    copyNextParts(cosXmlService);
+                }
+            }
 
-                    @Override
-                    public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
-                        if(IS_EXIT.get())return;//已经上报失败了
-                        largeCopyStateListenerHandler.onFailed(request, exception, serviceException);
-                    }
-                });
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                runningUploadPartCopyRequests.remove(uploadPartCopyRequest);
+                if(IS_EXIT.get())return;//已经上报失败了
+                if(retryTimes < MAX_PART_RETRY_TIMES && isRetryable(exception, serviceException)){
+                    // 只重试失败的分片, 占用的窗口名额不变
+                    QCloudLogger.w(TAG, "retry part %d, %s", partStateTable.partNumber(index),
+                            exception == null ? serviceException.getMessage() : exception.getMessage());
+                    retryPart(cosXmlService, index, retryTimes + 1);
+                    return;
+                }
+                largeCopyStateListenerHandler.onFailed(request, exception, serviceException);
             }
+        });
+    }
+
+    /**
+     * 等待一段时间后重试分片, 限流时立即重试只会再次失败. 等待期间暂停、取消或重新开始的, 不再重试
+     */
+    private void retryPart(final CosXmlSimpleService cosXmlService, final int index, final int retryTimes){
+        final PartStateTable table = partStateTable;
+        TaskExecutors.RETRY_SCHEDULER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if(IS_EXIT.get() || table != partStateTable)return;
+                copyPart(cosXmlService, index, retryTimes);
+            }
+        }, retryBackoff(retryTimes), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 第 retryTimes 次重试前的等待时间: 按指数增长并且不超过 PART_RETRY_MAX_BACKOFF, 再随机取其中的后一半,
+     * 避免同时失败的分片在同一时刻一起重试
+     */
+    static long retryBackoff(int retryTimes){
+        long backoff = PART_RETRY_MAX_BACKOFF;
+        if(retryTimes <= 4){
+            backoff = Math.min(PART_RETRY_INIT_BACKOFF << Math.max(retryTimes - 1, 0), PART_RETRY_MAX_BACKOFF);
         }
-        if(isCopyFinished && !IS_EXIT.get()){
-            largeCopyStateListenerHandler.onUploadPartCopy();
+        return backoff / 2 + (long) (RETRY_JITTER.nextDouble() * (backoff / 2));
+    }
+
+    /**
+     * 调用方是否已经设置了源对象的拷贝条件, 已设置时不再追加 If-Match, 避免条件冲突
+     */
+    private boolean hasCopySourceCondition(){
+        if(headers == null) return false;
+        for(String key : headers.keySet()){
+            if(key != null && key.toLowerCase().startsWith("x-cos-copy-source-if-")){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 网络错误、服务端 5xx 和限流可以重试, 参数错误、412 等重试也不会成功
+     */
+    private static boolean isRetryable(CosXmlClientException exception, CosXmlServiceException serviceException){
+        if(serviceException != null){
+            int statusCode = serviceException.getStatusCode();
+            return statusCode >= 500 || statusCode == 429 || "SlowDown".equals(serviceException.getErrorCode())
+                    || "RequestTimeout".equals(serviceException.getErrorCode());
+        }
+        if(exception == null) return false;
+        int errorCode = exception.errorCode;
+        return errorCode != ClientErrorCode.INVALID_ARGUMENT.getCode()
+                && errorCode != ClientErrorCode.INVALID_CREDENTIALS.getCode()
+                && errorCode != ClientErrorCode.BAD_REQUEST.getCode()
+                && errorCode != ClientErrorCode.USER_CANCELLED.getCode();
+    }
+
+    /**
+     * 以当前的 uploadId 和分片表重新开始断点记录
+     */
+    private void beginCheckpoint(){
+        if(checkpointJournal == null) return;
+        checkpointJournal.begin(uploadId, sliceSize);
+        for(int i = 0, size = partStateTable.size(); i < size; i ++){
+            if(partStateTable.isCompleted(i)){
+                checkpointJournal.recordPart(partStateTable.partNumber(i), partStateTable.offset(i),
+                        partStateTable.size(i), partStateTable.eTag(i));
+            }
         }
+        checkpointJournal.flush();
     }
 
     private void completeMultiUpload(CosXmlSimpleService cosXmlService){
         completeMultiUploadRequest = new CompleteMultiUploadRequest(bucket, cosPath,
                 uploadId, null);
-        for(Map.Entry<Integer, CopyPartStruct> entry : copyPartStructMap.entrySet()){
-            CopyPartStruct copyPartStruct = entry.getValue();
-            completeMultiUploadRequest.setPartNumberAndETag(copyPartStruct.partNumber, copyPartStruct.eTag);
-        }
+        partStateTable.fillCompleteRequest(completeMultiUploadRequest);
 
         completeMultiUploadRequest.setNeedMD5(isNeedMd5);
         completeMultiUploadRequest.setRequestHeaders(headers);
@@ -421,11 +619,11 @@ public final class COSXMLCopyTask extends COSXMLTask {
             cosXmlService.cancel(listPartsRequest);
             listPartsRequest = null;
         }
-        if(uploadPartCopyRequestList != null) {
-            for (UploadPartCopyRequest uploadPartCopyRequest : uploadPartCopyRequestList) {
+        if(runningUploadPartCopyRequests != null) {
+            for (UploadPartCopyRequest uploadPartCopyRequest : runningUploadPartCopyRequests) {
                 cosXmlService.cancel(uploadPartCopyRequest);
             }
-            uploadPartCopyRequestList.clear();
+            runningUploadPartCopyRequests.clear();
         }
         if(completeMultiUploadRequest != null){
             cosXmlService.cancel(completeMultiUploadRequest);
@@ -477,6 +675,9 @@ public final class COSXMLCopyTask extends COSXMLTask {
             if(isLargeCopy){
                 IS_EXIT.set(true);
                 cancelAllRequest(cosXmlService);
+                if(checkpointJournal != null){
+                    checkpointJournal.flush();
+                }
             }else {
                 cosXmlService.cancel(headObjectRequest);
                 headObjectRequest = null;
@@ -490,7 +691,7 @@ public final class COSXMLCopyTask extends COSXMLTask {
     public void cancel() {
         if(updateState(TransferState.CANCELED)){
             CosXmlClientException cosXmlClientException = new CosXmlClientException(ClientErrorCode.USER_CANCELLED.getCode(), "canceled by user");
-            mException = cosXmlClientException;
+            setException(cosXmlClientException);
             if(cosXmlResultListener != null){
                 cosXmlResultListener.onFail(buildCOSXMLTaskRequest(null), cosXmlClientException, null);
             }
@@ -498,6 +699,9 @@ public final class COSXMLCopyTask extends COSXMLTask {
                 IS_EXIT.set(true);
                 cancelAllRequest(cosXmlService);
                 abortMultiUpload(cosXmlService);
+                if(checkpointJournal != null){
+                    checkpointJournal.delete();
+                }
                 clear();
             }else {
                 cosXmlService.cancel(headObjectRequest);
@@ -573,6 +777,8 @@ public final class COSXMLCopyTask extends COSXMLTask {
                 if(contentLengths != null && contentLengths.size() > 0){
                     fileLength = Long.parseLong(contentLengths.get(0));
                 }
+                List<String> eTags = result.headers.get("ETag");
+                sourceETag = eTags != null && eTags.size() > 0 ? eTags.get(0) : null;
                 if(fileLength > multiCopySizeDivision){
                     if(IS_EXIT != null){
                         IS_EXIT.set(false);
@@ -580,21 +786,7 @@ public final class COSXMLCopyTask extends COSXMLTask {
                         IS_EXIT = new AtomicBoolean(false);
                     }
                     isLargeCopy = true;
-                    if(copyPartStructMap != null){
-                        copyPartStructMap.clear();
-                    }else {
-                        copyPartStructMap = new LinkedHashMap<>();
-                    }
-                    if(uploadPartCopyRequestList != null){
-                        uploadPartCopyRequestList.clear();
-                    }else {
-                        uploadPartCopyRequestList = new ArrayList<>();
-                    }
-                    if(UPLOAD_PART_COUNT != null){
-                        UPLOAD_PART_COUNT.set(0);
-                    }else {
-                        UPLOAD_PART_COUNT = new AtomicInteger(0);
-                    }
+                    runningUploadPartCopyRequests = Collections.newSetFromMap(new ConcurrentHashMap<UploadPartCopyRequest, Boolean>());
                     largeFileCopy(cosXmlService);
                 }else {
                     smallFileCopy();
@@ -609,7 +801,7 @@ public final class COSXMLCopyTask extends COSXMLTask {
                     if(updateState(TransferState.FAILED)){
                         // failed -> error
 //                           QCloudLogger.d(TAG, taskState.name());
-                        mException = exception == null ? serviceException : exception;
+                        setException(exception == null ? serviceException : exception);
                         if(cosXmlResultListener != null){
                             cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, serviceException);
                         }
@@ -627,14 +819,6 @@ public final class COSXMLCopyTask extends COSXMLTask {
         void onFailed(CosXmlRequest cosXmlRequest, CosXmlClientException exception, CosXmlServiceException serviceException);
     }
 
-    private static class CopyPartStruct{
-        public int partNumber;
-        public boolean isAlreadyUpload;
-        public long start;
-        public long end;
-        public String eTag;
-    }
-
     public static class COSXMLCopyTaskResult extends CosXmlResult{
         protected COSXMLCopyTaskResult(){}
         public String eTag;
@@ -2,7 +2,6 @@ package com.tencent.cos.xml.transfer;
 
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -16,17 +15,23 @@ import com.tencent.cos.xml.listener.CosXmlResultListener;
 import com.tencent.cos.xml.model.CosXmlRequest;
 import com.tencent.cos.xml.model.CosXmlResult;
 import com.tencent.cos.xml.model.object.GetObjectRequest;
-import com.tencent.cos.xml.model.object.HeadObjectRequest;
-import com.tencent.cos.xml.utils.DigestUtils;
 import com.tencent.qcloud.core.common.QCloudTaskStateListener;
 import com.tencent.qcloud.core.http.HttpTask;
+import com.tencent.qcloud.core.http.ResponseFileConverter;
 import com.tencent.qcloud.core.logger.QCloudLogger;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by bradyxiao on 2018/8/23.
@@ -45,10 +50,62 @@ public final class COSXMLDownloadTask extends COSXMLTask{
     private long rangeEnd = -1L;
     private long fileOffset = 0L;
     private String eTag;
-    private long hasWriteDataLen = 0L;
-    private HeadObjectRequest headObjectRequest;
+    /** 对象的长度, 从响应的 Content-Range 或 Content-Length 中得到 */
+    private long objectLength = -1L;
+    private volatile long hasWriteDataLen = 0L;
     private GetObjectRequest getObjectRequest;
-    private SharedPreferences sharedPreferences;
+    /** 本次下载是否从断点续传, 续传时对象已变化则从头重新下载一次 */
+    private boolean isResumedDownload;
+    private final QCloudTaskStateListener inProgressListener = new QCloudTaskStateListener() {
+        @Override
+        public void onStateChanged(String taskId, int state) {
+            if(state == HttpTask.STATE_EXECUTING){
+                if(updateState(TransferState.IN_PROGRESS)){ // running
+                    QCloudLogger.d(TAG, taskState.name());
+                }
+            }
+        }
+    };
+
+    /** 断点记录, 顺序下载每写入 CHECKPOINT_STEP 记录一次已写入的区间 */
+    private static final long CHECKPOINT_STEP = ResponseFileConverter.CHECKPOINT_BYTES;
+    private DownloadCheckpoint downloadCheckpoint;
+    /** 顺序下载当前请求的起点, 以及已写入、已记录的长度 */
+    private long serialRangeStart;
+    private volatile long serialWriteDataLen;
+    private long serialRecordedLen;
+
+    /** 分段并行下载 */
+    private static final long MIN_RANGE_SIZE = 1048576; // 1M
+    private static final long MAX_RANGE_SIZE = 16777216; // 16M
+    /** 每个连接平均分到的范围数, 多切几段可以让快的连接多下载一些 */
+    private static final int RANGES_PER_CONNECTION = 4;
+    private static final int MAX_RANGE_RETRY = 2;
+    /** 大于等于该长度的对象分段并行下载 */
+    protected long multiDownloadSizeDivision;
+    /** 同时下载的范围数上限 */
+    protected int maxConcurrentRanges;
+    /** 进度回调的最小间隔和最小步长 */
+    protected long progressIntervalMillis;
+    protected float progressStepPercent;
+    /** 范围状态表, 只包含断点中尚未写入的区间 */
+    private PartStateTable rangeStateTable;
+    private int[] rangeRetries;
+    private int nextRangeIndex;
+    private int runningRangeCount;
+    private AtomicBoolean rangeExit;
+    private final Object SYNC_DOWNLOAD_RANGE = new Object();
+    private Set<GetObjectRequest> runningRangeRequests;
+    private ProgressAggregator progressAggregator;
+    private final CosXmlProgressListener progressDispatcher = new CosXmlProgressListener() {
+        @Override
+        public void onProgress(long complete, long target) {
+            CosXmlProgressListener progressListener = cosXmlProgressListener;
+            if(progressListener != null){
+                progressListener.onProgress(complete, target);
+            }
+        }
+    };
 
     COSXMLDownloadTask(Context context, CosXmlSimpleService cosXmlService, String region, String bucket, String cosPath, String localSaveDirPath, String localSaveFileName){
         this.region = region;
@@ -57,9 +114,6 @@ public final class COSXMLDownloadTask extends COSXMLTask{
         this.localSaveDirPath = localSaveDirPath;
         this.localSaveFileName = localSaveFileName;
         this.cosXmlService = cosXmlService;
-        if(context != null){
-            sharedPreferences = context.getSharedPreferences("COSXMLDOWNLOADTASK", 0);
-        }
     }
 
     COSXMLDownloadTask(Context context, CosXmlSimpleService cosXmlService, GetObjectRequest getObjectRequest){
@@ -88,15 +142,31 @@ public final class COSXMLDownloadTask extends COSXMLTask{
         run();
     }
 
-    private void realDownload(long rangeStart, long rangeEnd, final long fileOffset){
+    /**
+     * 顺序下载 [rangeStart, rangeEnd] 并写入本地文件的 fileOffset 处.
+     * 从中间续传下载整个对象时带上 If-Range, 对象已变化时服务端直接返回整个对象, 从头重写,
+     * 不需要先发 HEAD 确认; 下载指定范围时改用 If-Match, 对象已变化则返回 412.
+     * @param isProbe 是否为首个分段, 完成后根据对象长度决定如何下载剩余部分
+     */
+    private void realDownload(long rangeStart, long rangeEnd, final long fileOffset, final boolean isProbe){
         getObjectRequest = new GetObjectRequest(bucket, cosPath, localSaveDirPath, localSaveFileName);
         getObjectRequest.setRegion(region);
+        getObjectRequest.setQueryParameters(queries);
+        // 先设置调用方的请求头, 续传的 Range 不能被调用方原始的 Range 覆盖
+        getObjectRequest.setRequestHeaders(headers);
         if(rangeEnd > 0 || rangeStart > 0){
             getObjectRequest.setRange(rangeStart, rangeEnd);
         }
         getObjectRequest.setFileOffset(fileOffset);
-        getObjectRequest.setQueryParameters(queries);
-        getObjectRequest.setRequestHeaders(headers);
+        getObjectRequest.setDurability(durability());
+        if(hasWriteDataLen > 0){
+            if(this.rangeStart == 0L && this.rangeEnd == -1L){
+                getObjectRequest.setIfRange(eTag, this.fileOffset);
+            }else {
+                // 续传时对象已变化则返回 412, 避免拼出新旧混合的文件
+                getObjectRequest.setIfMatch(eTag);
+            }
+        }
 
         if(onSignatureListener != null){
             getObjectRequest.setSign(onSignatureListener.onGetSign(getObjectRequest));
@@ -104,27 +174,36 @@ public final class COSXMLDownloadTask extends COSXMLTask{
 
         getHttpMetrics(getObjectRequest, "GetObjectRequest");
 
+        serialRangeStart = rangeStart;
+        serialWriteDataLen = 0L;
+        serialRecordedLen = 0L;
+        getObjectRequest.setTaskStateListener(inProgressListener);
+        getObjectRequest.setOnResponseStartListener(new GetObjectRequest.OnResponseStartListener() {
+            @Override
+            public void onResponseStart(int httpCode, Map<String, List<String>> headers, boolean isRestarted) {
+                onSerialResponseStart(httpCode, headers, isRestarted);
+            }
+        });
         getObjectRequest.setProgressListener(new CosXmlProgressListener() {
             @Override
             public void onProgress(long complete, long target) {
+                serialWriteDataLen = complete;
+                if(complete - serialRecordedLen >= CHECKPOINT_STEP){
+                    recordSerialProgress();
+                }
                 if(cosXmlProgressListener != null){
-
-                    cosXmlProgressListener.onProgress(hasWriteDataLen + complete, hasWriteDataLen + target);
+                    long total = isProbe && objectLength > 0 ? objectLength : hasWriteDataLen + target;
+                    cosXmlProgressListener.onProgress(hasWriteDataLen + complete, total);
                 }
             }
         });
         cosXmlService.getObjectAsync(getObjectRequest, new CosXmlResultListener() {
             @Override
             public void onSuccess(CosXmlRequest request, CosXmlResult result) {
-                if(updateState(TransferState.COMPLETED)){
-                    // complete -> success
-                    clear();
-                    QCloudLogger.d(TAG, taskState.name());
-                    mResult = buildCOSXMLTaskResult(result);
-                    if(cosXmlResultListener != null){
-                        cosXmlResultListener.onSuccess(buildCOSXMLTaskRequest(request), mResult);
-                    }
-
+                if(isProbe){
+                    onProbeCompleted(request, result);
+                }else {
+                    onDownloadCompleted(request, result);
                 }
             }
 
@@ -133,28 +212,142 @@ public final class COSXMLDownloadTask extends COSXMLTask{
 //                Log.e("STATE", exception != null ? exception.getMessage() : "null");
                 if(exception != null && exception.getMessage().toUpperCase().contains("CANCELED")){
                     return;
-                }else {
-                    if(updateState(TransferState.FAILED)){
-                        // failed -> error
+                }
+                if(serviceException != null){
+                    if(serviceException.getStatusCode() == 412 && isResumedDownload){
+                        restartDownload();
+                        return;
+                    }
+                    if(serviceException.getStatusCode() == 416 && isProbe){
+                        // 空对象不能按范围下载
+                        onEmptyObject(request);
+                        return;
+                    }
+                }
+                if(updateState(TransferState.FAILED)){
+                    // failed -> error
 //                           QCloudLogger.d(TAG, taskState.name());
-                        mException = exception == null ? serviceException : exception;
-                        if(cosXmlResultListener != null){
-                            cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, serviceException);
-                        }
+                    recordInterruptedProgress(true);
+                    closeCheckpoint();
+                    setException(exception == null ? serviceException : exception);
+                    if(cosXmlResultListener != null){
+                        cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, serviceException);
                     }
                 }
             }
         });
     }
 
+    /**
+     * 顺序下载的响应开始, 在写入文件之前执行: 首次请求从响应头得到 ETag 和对象长度并开始记录断点,
+     * If-Range 不匹配改为从头下载时重新开始记录断点
+     */
+    private void onSerialResponseStart(int httpCode, Map<String, List<String>> headers, boolean isRestarted){
+        if(!isRestarted && eTag != null){
+            return;
+        }
+        if(isRestarted){
+            QCloudLogger.i(TAG, "%s changed since last download, restart from the beginning", cosPath);
+            hasWriteDataLen = 0L;
+            serialRangeStart = rangeStart;
+            isResumedDownload = false;
+        }
+        eTag = header(headers, "ETag");
+        objectLength = objectLength(httpCode, headers);
+        DownloadCheckpoint checkpoint = downloadCheckpoint;
+        if(checkpoint != null){
+            checkpoint.begin(eTag, objectLength, rangeStart, rangeEnd, fileOffset);
+        }
+    }
+
+    /**
+     * 首个分段下载完成: 对象不大于分段时直接完成, 否则按对象长度分段并行或顺序下载剩余部分
+     */
+    private void onProbeCompleted(CosXmlRequest request, CosXmlResult result){
+        long written = Math.min(rangeSizeFor(multiDownloadSizeDivision), objectLength);
+        if(result.httpCode == 200 || objectLength < 0 || written >= objectLength){
+            onDownloadCompleted(request, result);
+            return;
+        }
+        if(taskState != TransferState.IN_PROGRESS){
+            return;
+        }
+        serialWriteDataLen = written;
+        recordSerialProgress();
+        getObjectRequest = null;
+        if(isRangeDownloadEnabled(objectLength)){
+            rangeDownload(request, objectLength, false);
+        }else {
+            hasWriteDataLen = written;
+            realDownload(written, -1L, written, false);
+        }
+    }
+
+    private void onEmptyObject(CosXmlRequest request){
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(getDownloadPath(), "rw");
+            randomAccessFile.setLength(0L);
+        } catch (IOException e) {
+            if(updateState(TransferState.FAILED)){
+                CosXmlClientException exception = new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(), e);
+                setException(exception);
+                if(cosXmlResultListener != null){
+                    cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, null);
+                }
+            }
+            return;
+        } finally {
+            if(randomAccessFile != null){
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        objectLength = 0L;
+        onDownloadCompleted(request, null);
+    }
+
+    private void onDownloadCompleted(CosXmlRequest request, CosXmlResult result){
+        if(updateState(TransferState.COMPLETED)){
+            // complete -> success
+            deleteCheckpoint();
+            QCloudLogger.d(TAG, taskState.name());
+            setResult(buildCOSXMLTaskResult(result));
+            if(cosXmlResultListener != null){
+                cosXmlResultListener.onSuccess(buildCOSXMLTaskRequest(request), mResult);
+            }
+        }
+    }
+
+    /**
+     * 续传时发现对象已变化, 丢弃断点从头下载
+     */
+    private void restartDownload(){
+        synchronized (this){
+            if(taskState != TransferState.IN_PROGRESS) return;
+        }
+        QCloudLogger.i(TAG, "%s changed since last download, restart from the beginning", cosPath);
+        rangeStateTable = null;
+        getObjectRequest = null;
+        deleteCheckpoint();
+        run();
+    }
+
     @Override
     public void pause() {
         if(updateState(TransferState.PAUSED)){
             QCloudLogger.d(TAG, taskState.name());
-            cosXmlService.cancel(headObjectRequest);
-            headObjectRequest = null;
-            cosXmlService.cancel(getObjectRequest);
-            getObjectRequest = null;
+            cancelAllRanges();
+            boolean isSerial = getObjectRequest != null;
+            if(isSerial){
+                cosXmlService.cancel(getObjectRequest);
+                getObjectRequest = null;
+            }
+            recordInterruptedProgress(isSerial);
+            closeCheckpoint();
         }
     }
 
@@ -163,15 +356,15 @@ public final class COSXMLDownloadTask extends COSXMLTask{
         if(updateState(TransferState.CANCELED)){
             QCloudLogger.d(TAG, taskState.name());
             CosXmlClientException cosXmlClientException = new CosXmlClientException(ClientErrorCode.USER_CANCELLED.getCode(), "canceled by user");
-            mException = cosXmlClientException;
-            clear();
+            setException(cosXmlClientException);
             if(cosXmlResultListener != null){
                 cosXmlResultListener.onFail(buildCOSXMLTaskRequest(null), cosXmlClientException, null);
             }
-            cosXmlService.cancel(headObjectRequest);
-            headObjectRequest = null;
+            cancelAllRanges();
+            rangeStateTable = null;
             cosXmlService.cancel(getObjectRequest);
             getObjectRequest = null;
+            deleteCheckpoint();
         }
     }
 
@@ -197,49 +390,130 @@ public final class COSXMLDownloadTask extends COSXMLTask{
             cosxmlDownloadTaskResult.httpCode = sourceResult.httpCode;
             cosxmlDownloadTaskResult.httpMessage = sourceResult.httpMessage;
             cosxmlDownloadTaskResult.headers = sourceResult.headers;
-            cosxmlDownloadTaskResult.eTag = eTag;
             cosxmlDownloadTaskResult.accessUrl = sourceResult.accessUrl;
         }
+        cosxmlDownloadTaskResult.eTag = eTag;
         return cosxmlDownloadTaskResult;
     }
 
-    private String getKey(){
-        StringBuffer stringBuffer = new StringBuffer();
-        stringBuffer.append("download").append("_")
-                .append(region).append("_")
-                .append(bucket).append("_")
-                .append(cosPath).append("_")
-                .append(rangeStart).append("_")
-                .append(rangeEnd).append("_")
-                .append(fileOffset).append("_")
-                .append(localSaveDirPath).append("_")
-                .append(localSaveFileName).append("_")
-                .append(eTag);
+    private static String header(Map<String, List<String>> headers, String name){
+        if(headers == null) return null;
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @return 对象的长度, 206 时取 Content-Range 中的总长度, 200 时取 Content-Length, 未知时返回 -1
+     */
+    private static long objectLength(int httpCode, Map<String, List<String>> headers){
+        String value = null;
+        if(httpCode == 206){
+            String contentRange = header(headers, "Content-Range");
+            int index = contentRange == null ? -1 : contentRange.lastIndexOf('/');
+            if(index >= 0){
+                value = contentRange.substring(index + 1).trim();
+            }
+        }else {
+            value = header(headers, "Content-Length");
+        }
+        if(value == null || "*".equals(value)) return -1L;
         try {
-            return DigestUtils.getSha1(stringBuffer.toString());
-        } catch (CosXmlClientException e) {
-            return stringBuffer.toString();
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * 断点按 CHECKPOINT_STEP 记录, 数据也按同样的间隔刷盘, 保证断点记录的区间确实已写入存储;
+     * 暂停或失败时请求没有执行结束时的刷盘, 由 {@link #recordInterruptedProgress(boolean)} 先刷盘再记录;
+     * 没有断点时续传无从谈起, 不主动刷盘
+     */
+    private ResponseFileConverter.Durability durability(){
+        return downloadCheckpoint != null ? ResponseFileConverter.Durability.CHECKPOINT
+                : ResponseFileConverter.Durability.NONE;
+    }
+
+    /**
+     * 记录顺序下载当前请求已写入的区间
+     */
+    private void recordSerialProgress(){
+        DownloadCheckpoint checkpoint = downloadCheckpoint;
+        long writeDataLen = serialWriteDataLen;
+        if(checkpoint != null && writeDataLen > serialRecordedLen){
+            checkpoint.recordExtent(serialRangeStart, serialRangeStart + writeDataLen);
+            serialRecordedLen = writeDataLen;
+        }
+    }
+
+    /**
+     * 暂停或失败时记录已写入的区间: 顺序下载当前请求和分段下载中未完成的范围已写入的部分。
+     * 先取已写入的长度, 再把文件刷盘, 最后记录, 保证记录的区间都已写入存储; 刷盘失败时不记录
+     * @param isSerial 是否记录顺序下载当前请求的区间
+     */
+    private void recordInterruptedProgress(boolean isSerial){
+        DownloadCheckpoint checkpoint = downloadCheckpoint;
+        if(checkpoint == null) return;
+        List<long[]> extents = new ArrayList<>();
+        long writeDataLen = serialWriteDataLen;
+        if(isSerial && writeDataLen > serialRecordedLen){
+            extents.add(new long[]{serialRangeStart, serialRangeStart + writeDataLen});
+        }
+        PartStateTable stateTable = rangeStateTable;
+        if(stateTable != null){
+            for(int i = 0, size = stateTable.size(); i < size; i ++){
+                long written = Math.min(stateTable.progress(i), stateTable.size(i));
+                if(!stateTable.isCompleted(i) && written > 0){
+                    extents.add(new long[]{stateTable.offset(i), stateTable.offset(i) + written});
+                }
+            }
+        }
+        if(extents.isEmpty() || !syncDownloadFile()) return;
+        for(long[] extent : extents){
+            checkpoint.recordExtent(extent[0], extent[1]);
+        }
+        if(isSerial){
+            serialRecordedLen = writeDataLen;
         }
     }
 
-    private synchronized String hasExisted(){
-        if(sharedPreferences != null){
-            return sharedPreferences.getString(getKey(), null);
+    /**
+     * 把下载文件已写入的数据刷到存储上, 刷盘作用于整个文件, 与由哪个文件描述符写入无关
+     */
+    private boolean syncDownloadFile(){
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(getDownloadPath(), "r");
+            randomAccessFile.getChannel().force(false);
+            return true;
+        } catch (IOException e) {
+            QCloudLogger.w(TAG, e, "sync %s failed, skip recording the checkpoint", getDownloadPath());
+            return false;
+        } finally {
+            if(randomAccessFile != null){
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
         }
-        return null;
     }
 
-    private synchronized void clear(){
-        if(sharedPreferences != null){
-            sharedPreferences.edit().remove(getKey()).commit();
+    private void closeCheckpoint(){
+        DownloadCheckpoint checkpoint = downloadCheckpoint;
+        if(checkpoint != null){
+            checkpoint.close();
         }
     }
 
-    private synchronized void save(String absolutePath){
-        if(sharedPreferences != null){
-            sharedPreferences.edit().putString(getKey(), absolutePath).commit();
+    private void deleteCheckpoint(){
+        DownloadCheckpoint checkpoint = downloadCheckpoint;
+        if(checkpoint != null){
+            checkpoint.delete();
         }
     }
+
     private String getDownloadPath(){
         String path  = null;
         if(localSaveDirPath != null){
@@ -268,83 +542,290 @@ public final class COSXMLDownloadTask extends COSXMLTask{
         return path;
     }
 
-    protected void run() {
-        updateState(TransferState.WAITING); // waiting
-        QCloudLogger.d(TAG, taskState.name());
-        headObjectRequest = new HeadObjectRequest(bucket, cosPath);
-        headObjectRequest.setRegion(region);
+    /**
+     * 未指定下载范围和文件偏移, 且对象足够大时才分段并行下载
+     */
+    private boolean isRangeDownloadEnabled(long contentLength){
+        return isRangeDownloadPossible() && contentLength >= multiDownloadSizeDivision;
+    }
+
+    private boolean isRangeDownloadPossible(){
+        return maxConcurrentRanges > 1 && multiDownloadSizeDivision > 0
+                && rangeStart == 0L && rangeEnd == -1L && fileOffset == 0L;
+    }
+
+    /**
+     * 分段大小随对象长度变化: 每个连接平均分到 RANGES_PER_CONNECTION 段,
+     * 单段不小于 MIN_RANGE_SIZE, 不大于 MAX_RANGE_SIZE
+     */
+    private long rangeSizeFor(long contentLength){
+        long rangeCount = (long) maxConcurrentRanges * RANGES_PER_CONNECTION;
+        long rangeSize = (contentLength + rangeCount - 1) / rangeCount;
+        return Math.min(Math.max(rangeSize, MIN_RANGE_SIZE), MAX_RANGE_SIZE);
+    }
+
+    /**
+     * 分段并行下载: 预先分配本地文件, 把断点中尚未写入的区间切成多个范围并发下载,
+     * 每个范围写入文件的对应偏移, 失败的范围单独重试.
+     * @param isResumed 是否从断点续传, 否则本地文件只包含首个分段
+     */
+    private void rangeDownload(final CosXmlRequest headRequest, long contentLength, boolean isResumed){
+        File downloadFile = new File(getDownloadPath());
+        DownloadCheckpoint checkpoint = downloadCheckpoint;
+        long fileLength = downloadFile.length();
+        // 首个分段下载中暂停时文件还没有预分配, 比对象短; 已记录的区间都在文件内时断点仍然可信
+        if(isResumed && fileLength != contentLength
+                && (checkpoint == null || fileLength > contentLength || checkpoint.recordedEnd() > fileLength)){
+            // 文件被改动过, 断点不可信
+            if(checkpoint != null){
+                checkpoint.begin(eTag, contentLength, rangeStart, rangeEnd, fileOffset);
+            }
+            isResumed = false;
+        }
+        if(!isResumed || fileLength != contentLength){
+            RandomAccessFile randomAccessFile = null;
+            try {
+                randomAccessFile = new RandomAccessFile(downloadFile, "rw");
+                randomAccessFile.setLength(contentLength);
+            } catch (IOException e) {
+                onRangeDownloadFailed(headRequest, new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(), e), null);
+                return;
+            } finally {
+                if(randomAccessFile != null){
+                    try {
+                        randomAccessFile.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+        List<long[]> gaps = checkpoint != null ? checkpoint.gaps(0L, contentLength)
+                : Collections.singletonList(new long[]{0L, contentLength});
+        PartStateTable stateTable = PartStateTable.split(gaps, rangeSizeFor(contentLength));
+        rangeStateTable = stateTable;
+        QCloudLogger.d(TAG, "download %s in %d ranges, resumed: %s", cosPath, stateTable.size(), isResumed);
+        rangeRetries = new int[stateTable.size()];
+        runningRangeRequests = Collections.newSetFromMap(new ConcurrentHashMap<GetObjectRequest, Boolean>());
+        progressAggregator = new ProgressAggregator(progressDispatcher, contentLength, progressIntervalMillis, progressStepPercent);
+        long pendingLength = 0L;
+        for(int i = 0, size = stateTable.size(); i < size; i ++){
+            pendingLength += stateTable.size(i);
+        }
+        progressAggregator.add(contentLength - pendingLength);
+        AtomicBoolean exit = new AtomicBoolean(false);
+        synchronized (SYNC_DOWNLOAD_RANGE){
+            rangeExit = exit;
+            nextRangeIndex = 0;
+            runningRangeCount = 0;
+        }
+        if(stateTable.size() == 0){
+            onRangesCompleted(exit, headRequest, null);
+            return;
+        }
+        downloadNextRanges(exit);
+    }
+
+    /**
+     * 补足下载窗口, 进行中的范围数不超过 maxConcurrentRanges
+     */
+    private void downloadNextRanges(AtomicBoolean exit){
+        List<Integer> nextRanges = new ArrayList<>();
+        PartStateTable stateTable = rangeStateTable;
+        synchronized (SYNC_DOWNLOAD_RANGE){
+            while (!exit.get() && runningRangeCount < maxConcurrentRanges
+                    && (nextRangeIndex = stateTable.nextPending(nextRangeIndex)) >= 0){
+                runningRangeCount ++;
+                nextRanges.add(nextRangeIndex ++);
+            }
+            if(nextRangeIndex < 0){
+                nextRangeIndex = stateTable.size();
+            }
+        }
+        for(int index : nextRanges){
+            downloadRange(exit, stateTable, index);
+        }
+    }
+
+    private void downloadRange(final AtomicBoolean exit, final PartStateTable stateTable, final int index){
+        if(exit.get()) return;
+        final GetObjectRequest rangeRequest = new GetObjectRequest(bucket, cosPath, localSaveDirPath, localSaveFileName);
+        rangeRequest.setRegion(region);
+        rangeRequest.setQueryParameters(queries);
+        rangeRequest.setRequestHeaders(headers);
+        rangeRequest.setRange(stateTable.offset(index), stateTable.end(index));
+        rangeRequest.setFileOffset(stateTable.offset(index));
+        rangeRequest.setWriteInPlace(true);
+        rangeRequest.setDurability(durability());
+        // 对象在下载过程中被覆盖时, 范围请求返回 412, 避免拼出新旧混合的文件
+        rangeRequest.setIfMatch(eTag);
 
         if(onSignatureListener != null){
-            headObjectRequest.setSign(onSignatureListener.onGetSign(headObjectRequest));
+            rangeRequest.setSign(onSignatureListener.onGetSign(rangeRequest));
         }
 
-        getHttpMetrics(headObjectRequest, "HeadObjectRequest");
+        getHttpMetrics(rangeRequest, "GetObjectRequest");
 
-        headObjectRequest.setTaskStateListener(new QCloudTaskStateListener() {
+        rangeRequest.setTaskStateListener(inProgressListener);
+        rangeRequest.setProgressListener(new CosXmlProgressListener() {
             @Override
-            public void onStateChanged(String taskId, int state) {
-                if(state == HttpTask.STATE_EXECUTING){
-                    updateState(TransferState.IN_PROGRESS); // running
-                    QCloudLogger.d(TAG, taskState.name());
-                }
+            public void onProgress(long complete, long target) {
+                if(exit.get()) return;
+                progressAggregator.add(stateTable.updateProgress(index, complete));
             }
         });
-
-        cosXmlService.headObjectAsync(headObjectRequest, new CosXmlResultListener() {
+        runningRangeRequests.add(rangeRequest);
+        cosXmlService.getObjectAsync(rangeRequest, new CosXmlResultListener() {
             @Override
             public void onSuccess(CosXmlRequest request, CosXmlResult result) {
-                List<String> eTags = result.headers.get("ETag");
-                if(eTags != null && eTags.size() > 0){
-                    eTag = eTags.get(0);
+                runningRangeRequests.remove(rangeRequest);
+                if(exit.get()) return;
+                stateTable.markCompleted(index, null);
+                DownloadCheckpoint checkpoint = downloadCheckpoint;
+                if(checkpoint != null){
+                    checkpoint.recordExtent(stateTable.offset(index), stateTable.offset(index) + stateTable.size(index));
                 }
-                String absolutePath = hasExisted();
-                if(absolutePath != null){
-                    File file = new File(absolutePath);
-                    if(file.exists()){
-                        long fileLength = file.length();
-                        List<String> contentLengths = result.headers.get("Content-Length");
-                        if(contentLengths != null && contentLengths.size() > 0 && Long.valueOf(contentLengths.get(0)) == fileLength){
-                            if(updateState(TransferState.COMPLETED)){
-                                if(cosXmlProgressListener != null){
-                                    cosXmlProgressListener.onProgress(fileLength, fileLength);
-                                }
-                                if(cosXmlResultListener != null){
-                                    cosXmlResultListener.onSuccess(request, result);
-                                }
-                            }
-                            clear();
-                            return;
-                        }else {
-                            hasWriteDataLen = fileLength - fileOffset;
-                            realDownload(rangeStart + hasWriteDataLen, rangeEnd, fileOffset + hasWriteDataLen);
-                            return;
-                        }
-                    }
+                progressAggregator.add(stateTable.updateProgress(index, stateTable.size(index)));
+                boolean isAllCompleted;
+                synchronized (SYNC_DOWNLOAD_RANGE){
+                    runningRangeCount --;
+                    isAllCompleted = stateTable.isAllCompleted();
+                }
+                if(isAllCompleted){
+                    onRangesCompleted(exit, request, result);
+                }else {
+                    downloadNextRanges(exit);
                 }
-                save(getDownloadPath());
-                hasWriteDataLen = 0L;
-                realDownload(rangeStart, rangeEnd, fileOffset);
             }
 
             @Override
             public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
-//                Log.e("STATE", exception != null ? exception.getMessage() : "null");
-                if(exception != null && exception.getMessage().toUpperCase().contains("CANCELED")){
+                runningRangeRequests.remove(rangeRequest);
+                if(exit.get()) return;
+                if(exception != null && exception.getMessage() != null
+                        && exception.getMessage().toUpperCase().contains("CANCELED")){
                     return;
-                }else {
-                    if(updateState(TransferState.FAILED)){
-                        // failed -> error
-//                           QCloudLogger.d(TAG, taskState.name());
-                        mException = exception == null ? serviceException : exception;
-                        if(cosXmlResultListener != null){
-                            cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, serviceException);
-                        }
+                }
+                if(serviceException != null && serviceException.getStatusCode() == 412 && isResumedDownload){
+                    // 断点记录的对象已变化
+                    if(exit.compareAndSet(false, true)){
+                        cancelAllRanges();
+                        restartDownload();
                     }
+                    return;
+                }
+                // 服务端明确拒绝（如 412 对象已变化）时不再重试
+                boolean isRetryable = serviceException == null || serviceException.getStatusCode() >= 500;
+                if(isRetryable && rangeRetries[index] < MAX_RANGE_RETRY){
+                    rangeRetries[index] ++;
+                    QCloudLogger.w(TAG, "retry range %d of %s, attempts %d", index, cosPath, rangeRetries[index]);
+                    progressAggregator.add(stateTable.updateProgress(index, 0L));
+                    downloadRange(exit, stateTable, index);
+                    return;
+                }
+                if(exit.compareAndSet(false, true)){
+                    cancelAllRanges();
+                    onRangeDownloadFailed(request, exception, serviceException);
                 }
             }
         });
     }
 
+    private void onRangesCompleted(AtomicBoolean exit, CosXmlRequest request, CosXmlResult result){
+        if(!exit.compareAndSet(false, true)) return;
+        if(updateState(TransferState.COMPLETED)){
+            rangeStateTable = null;
+            deleteCheckpoint();
+            progressAggregator.flush();
+            QCloudLogger.d(TAG, taskState.name());
+            setResult(buildCOSXMLTaskResult(result));
+            if(cosXmlResultListener != null){
+                cosXmlResultListener.onSuccess(buildCOSXMLTaskRequest(request), mResult);
+            }
+        }
+    }
+
+    private void onRangeDownloadFailed(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException){
+        if(updateState(TransferState.FAILED)){
+            recordInterruptedProgress(false);
+            closeCheckpoint();
+            rangeStateTable = null;
+            setException(exception == null ? serviceException : exception);
+            if(cosXmlResultListener != null){
+                cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, serviceException);
+            }
+        }
+    }
+
+    private void cancelAllRanges(){
+        AtomicBoolean exit;
+        synchronized (SYNC_DOWNLOAD_RANGE){
+            exit = rangeExit;
+        }
+        if(exit != null){
+            exit.set(true);
+        }
+        Set<GetObjectRequest> runningRequests = runningRangeRequests;
+        if(runningRequests != null){
+            for(GetObjectRequest request : runningRequests){
+                cosXmlService.cancel(request);
+            }
+            runningRequests.clear();
+        }
+    }
+
+    /**
+     * 开始下载, 不再先发 HEAD: 有断点时用断点记录的 ETag 直接续传,
+     * 没有断点时从第一个请求的响应头得到 ETag 和对象长度.
+     */
+    protected void run() {
+        updateState(TransferState.WAITING); // waiting
+        QCloudLogger.d(TAG, taskState.name());
+        String downloadPath = getDownloadPath();
+        closeCheckpoint();
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(downloadPath);
+        downloadCheckpoint = checkpoint;
+        hasWriteDataLen = 0L;
+        isResumedDownload = false;
+        eTag = null;
+        objectLength = -1L;
+
+        if(checkpoint != null && new File(downloadPath).exists()
+                && checkpoint.loadSaved(rangeStart, rangeEnd, fileOffset)){
+            checkpoint.reopen();
+            eTag = checkpoint.getETag();
+            objectLength = checkpoint.getObjectLength();
+            isResumedDownload = true;
+            if(isRangeDownloadEnabled(objectLength)){
+                rangeDownload(null, objectLength, true);
+                return;
+            }
+            // 只信任断点中记录的、且本地文件确实包含的连续区间
+            long fileLength = new File(downloadPath).length();
+            hasWriteDataLen = Math.max(Math.min(checkpoint.coveredEnd(rangeStart) - rangeStart,
+                    fileLength - fileOffset), 0L);
+            long spanEnd = rangeEnd >= 0 ? Math.min(rangeEnd + 1, objectLength) : objectLength;
+            if(objectLength >= 0 && hasWriteDataLen > 0 && rangeStart + hasWriteDataLen >= spanEnd){
+                updateState(TransferState.IN_PROGRESS);
+                if(cosXmlProgressListener != null){
+                    cosXmlProgressListener.onProgress(hasWriteDataLen, hasWriteDataLen);
+                }
+                onDownloadCompleted(null, null);
+                return;
+            }
+            realDownload(rangeStart + hasWriteDataLen, rangeEnd, fileOffset + hasWriteDataLen, false);
+            return;
+        }
+
+        if(isRangeDownloadPossible() && cosXmlService.getObjectCache() == null){
+            // 先下载第一个分段, 小对象一次请求完成, 大对象从响应中得到长度后再并行下载剩余部分;
+            // 配置了对象缓存时不分段, 整个对象的请求才能命中缓存
+            realDownload(0L, rangeSizeFor(multiDownloadSizeDivision) - 1, 0L, true);
+        }else {
+            realDownload(rangeStart, rangeEnd, fileOffset, false);
+        }
+    }
+
     public static class COSXMLDownloadTaskRequest extends GetObjectRequest{
 
         protected COSXMLDownloadTaskRequest(String region, String bucket, String cosPath, String savePath, String saveFileName, Map<String, List<String>> headers,
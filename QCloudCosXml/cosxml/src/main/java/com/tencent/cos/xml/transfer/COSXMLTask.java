@@ -22,10 +22,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by bradyxiao on 2018/8/23.
@@ -133,6 +138,104 @@ public abstract class COSXMLTask {
         return mException;
     }
 
+    protected synchronized void setResult(CosXmlResult result){
+        mResult = result;
+        notifyAll();
+    }
+
+    protected synchronized void setException(Exception exception){
+        mException = exception;
+        notifyAll();
+    }
+
+    /**
+     * 获取任务的 Future, 可以阻塞等待、轮询或超时等待任务结束.
+     * 任务完成、失败或取消后 Future 结束; 暂停的任务不会结束 Future, 恢复后继续等待.
+     * <p>
+     * get() 在任务失败时抛出 {@link ExecutionException}, cause 为 {@link CosXmlClientException}
+     * 或 {@link CosXmlServiceException}; 任务取消时抛出 {@link CancellationException}.
+     * </p>
+     * @return Future
+     */
+    public Future<CosXmlResult> getFuture(){
+        return new Future<CosXmlResult>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                if(isDone()){
+                    return false;
+                }
+                COSXMLTask.this.cancel();
+                return isCancelled();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                synchronized (COSXMLTask.this){
+                    return taskState == TransferState.CANCELED;
+                }
+            }
+
+            @Override
+            public boolean isDone() {
+                synchronized (COSXMLTask.this){
+                    return isFinished();
+                }
+            }
+
+            @Override
+            public CosXmlResult get() throws InterruptedException, ExecutionException {
+                synchronized (COSXMLTask.this){
+                    while (!isFinished()){
+                        COSXMLTask.this.wait();
+                    }
+                    return finishedResult();
+                }
+            }
+
+            @Override
+            public CosXmlResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+                long deadline = System.nanoTime() + unit.toNanos(timeout);
+                synchronized (COSXMLTask.this){
+                    while (!isFinished()){
+                        long remainNanos = deadline - System.nanoTime();
+                        if(remainNanos <= 0){
+                            throw new TimeoutException("transfer task is " + taskState);
+                        }
+                        // 不足 1 毫秒的剩余时间也要等待, 不能提前超时
+                        TimeUnit.NANOSECONDS.timedWait(COSXMLTask.this, remainNanos);
+                    }
+                    return finishedResult();
+                }
+            }
+        };
+    }
+
+    /**
+     * 任务是否已结束, 结果或异常已经设置好
+     */
+    private boolean isFinished(){
+        switch (taskState){
+            case COMPLETED:
+                return mResult != null;
+            case FAILED:
+                return mException != null;
+            case CANCELED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private CosXmlResult finishedResult() throws ExecutionException {
+        if(taskState == TransferState.COMPLETED){
+            return mResult;
+        }
+        if(taskState == TransferState.CANCELED){
+            throw new CancellationException("transfer task is canceled");
+        }
+        throw new ExecutionException(mException);
+    }
+
     protected abstract CosXmlRequest buildCOSXMLTaskRequest(CosXmlRequest sourceRequest); // 构造COSXMLTask返回的Request
 
     protected abstract CosXmlResult buildCOSXMLTaskResult(CosXmlResult sourceResult); //构造COSXMLTask返回的Result
@@ -149,6 +252,14 @@ public abstract class COSXMLTask {
      * @return boolean
      */
     protected synchronized boolean updateState(TransferState newTaskState){
+        boolean isUpdated = updateStateInternal(newTaskState);
+        if(isUpdated){
+            notifyAll();
+        }
+        return isUpdated;
+    }
+
+    private boolean updateStateInternal(TransferState newTaskState){
         switch (newTaskState){
             case WAITING:
                 if(taskState != TransferState.WAITING){
@@ -21,19 +21,24 @@ import com.tencent.cos.xml.model.object.UploadPartRequest;
 import com.tencent.cos.xml.model.object.UploadPartResult;
 import com.tencent.cos.xml.model.tag.ListParts;
 import com.tencent.qcloud.core.common.QCloudTaskStateListener;
+import com.tencent.qcloud.core.http.HttpConstants;
 import com.tencent.qcloud.core.http.HttpTask;
+import com.tencent.qcloud.core.task.TaskExecutors;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -43,6 +48,9 @@ import java.util.concurrent.atomic.AtomicLong;
 
 public final class COSXMLUploadTask extends COSXMLTask {
 
+    /** 分片编号上限 */
+    private static final int MAX_PART_NUMBER = 10000;
+
     /** 满足分片上传的文件最小长度 */
     protected long multiUploadSizeDivision;
     /** 源文件的本地路径 */
@@ -71,21 +79,71 @@ public final class COSXMLUploadTask extends COSXMLTask {
     private ListPartsRequest listPartsRequest;
     /** 完成所有上传分片 */
     private CompleteMultiUploadRequest completeMultiUploadRequest;
-    /** 上传分片块 */
-    private Map<UploadPartRequest,Long> uploadPartRequestLongMap;
-    private Map<Integer, SlicePartStruct> partStructMap;
-    private AtomicInteger UPLOAD_PART_COUNT;
-    private AtomicLong ALREADY_SEND_DATA_LEN;
+    /** 进行中的上传分片块 */
+    private Set<UploadPartRequest> runningUploadPartRequests;
+    /** 分片状态表 */
+    private PartStateTable partStateTable;
+    /** 同时上传的分片数上限 */
+    protected int maxConcurrentParts;
+    /** 分片 MD5 预计算 */
+    private PartDigestPipeline partDigestPipeline;
+    /** 下一个待发起的分片下标, 以及进行中的分片数 */
+    private int nextPartIndex;
+    private int runningPartCount;
+    /** 进度回调的最小间隔和最小步长 */
+    protected long progressIntervalMillis;
+    protected float progressStepPercent;
+    /** 各分片进度汇总 */
+    private ProgressAggregator progressAggregator;
+    private final CosXmlProgressListener progressDispatcher = new CosXmlProgressListener() {
+        @Override
+        public void onProgress(long complete, long target) {
+            CosXmlProgressListener progressListener = cosXmlProgressListener;
+            if(progressListener != null){
+                progressListener.onProgress(complete, target);
+            }
+        }
+    };
     private AtomicBoolean IS_EXIT;
     private Object SYNC_UPLOAD_PART = new Object();
+    /** 断点日志目录, 为 null 时不记录断点 */
+    protected String checkpointDir;
+    /** 分片上传断点日志 */
+    private UploadCheckpointJournal checkpointJournal;
+    /** 本次是否从断点日志中恢复 */
+    private boolean isResumedFromCheckpoint;
+    /** 流式分片上传, 字节流按分片读入缓冲区后立即上传, 不落临时文件 */
+    private boolean isStreamUpload = false;
+    /** 可复用的分片缓冲区 */
+    private Deque<byte[]> freeStreamBuffers;
+    /** 已读入缓冲区但尚未上传的分片, 按 partNumber 排序 */
+    private Deque<StreamPart> pendingStreamParts;
+    /** 流式上传已完成分片的 ETag, 按 partNumber 排序 */
+    private Map<Integer, String> streamPartETags;
+    /** 已读取的分片数和数据长度 */
+    private int streamPartCount;
+    private long streamReadLength;
+    private boolean isStreamReading;
+    private boolean isStreamEnd;
+    private boolean isStreamCompleted;
     private MultiUploadsStateListener multiUploadsStateListenerHandler = new MultiUploadsStateListener() {
         @Override
         public void onInit() {
+            if(isStreamUpload){
+                // 开头读入的分片交给读取线程上传, 网络回调线程中不读取字节流
+                synchronized (SYNC_UPLOAD_PART){
+                    isStreamReading = false;
+                }
+                scheduleStreamRead(cosXmlService);
+                return;
+            }
+            beginCheckpoint();
             multiUploadPart(cosXmlService);
         }
 
         @Override
         public void onListParts() {
+            beginCheckpoint();
             multiUploadPart(cosXmlService);
         }
 
@@ -97,8 +155,11 @@ public final class COSXMLUploadTask extends COSXMLTask {
         @Override
         public void onCompleted(CosXmlRequest cosXmlRequest, CosXmlResult cosXmlResult) {
             IS_EXIT.set(true);
+            if(checkpointJournal != null){
+                checkpointJournal.delete();
+            }
             if(updateState(TransferState.COMPLETED)){
-                mResult = buildCOSXMLTaskResult(cosXmlResult);
+                setResult(buildCOSXMLTaskResult(cosXmlResult));
                 if(cosXmlResultListener != null){
                     cosXmlResultListener.onSuccess(buildCOSXMLTaskRequest(cosXmlRequest), mResult);
                 }
@@ -108,12 +169,26 @@ public final class COSXMLUploadTask extends COSXMLTask {
         @Override
         public void onFailed(CosXmlRequest cosXmlRequest, CosXmlClientException exception, CosXmlServiceException serviceException) {
             IS_EXIT.set(true);
+            if(checkpointJournal != null){
+                // 断点中的 uploadId 已失效, 下次重新初始化分片上传
+                if(isResumedFromCheckpoint && serviceException != null
+                        && "NoSuchUpload".equals(serviceException.getErrorCode())){
+                    checkpointJournal.delete();
+                }else {
+                    checkpointJournal.flush();
+                }
+            }
             if(updateState(TransferState.FAILED)){
-                mException = exception == null ? serviceException : exception;
+                setException(exception == null ? serviceException : exception);
                 if(cosXmlResultListener != null){
                     cosXmlResultListener.onFail(buildCOSXMLTaskRequest(buildCOSXMLTaskRequest(cosXmlRequest)), exception, serviceException);
                 }
                 cancelAllRequest(cosXmlService);
+                if(isStreamUpload){
+                    // 字节流无法续传, 终止分片上传, 不在服务端留下已上传的分片
+                    closeInputStream();
+                    abortMultiUpload(cosXmlService);
+                }
             }
         }
     };
@@ -197,7 +272,7 @@ public final class COSXMLUploadTask extends COSXMLTask {
             public void onSuccess(CosXmlRequest request, CosXmlResult result) {
                 if(updateState(TransferState.COMPLETED)){
                     // complete -> success
-                    mResult = buildCOSXMLTaskResult(result);
+                    setResult(buildCOSXMLTaskResult(result));
                     if(cosXmlResultListener != null){
                         cosXmlResultListener.onSuccess(buildCOSXMLTaskRequest(null), mResult);
                     }
@@ -212,7 +287,7 @@ public final class COSXMLUploadTask extends COSXMLTask {
                     if(updateState(TransferState.FAILED)){
                         // failed -> error
 //                           QCloudLogger.d(TAG, taskState.name());
-                        mException = exception == null ? serviceException : exception;
+                        setException(exception == null ? serviceException : exception);
                         if(cosXmlResultListener != null){
                             cosXmlResultListener.onFail(buildCOSXMLTaskRequest(request), exception, serviceException);
                         }
@@ -223,7 +298,21 @@ public final class COSXMLUploadTask extends COSXMLTask {
     }
 
     private void multiUpload(CosXmlSimpleService cosXmlService){
-        initSlicePart(fileLength, 1);
+        isResumedFromCheckpoint = false;
+        if(checkpointJournal != null && checkpointJournal.load()
+                && (uploadId == null || uploadId.equals(checkpointJournal.getUploadId()))){
+            // 从本地断点恢复, 不再需要 ListParts
+            isResumedFromCheckpoint = true;
+            uploadId = checkpointJournal.getUploadId();
+            sliceSize = checkpointJournal.getSliceSize();
+            partStateTable = PartStateTable.split(fileLength, sliceSize);
+            progressAggregator.add(checkpointJournal.restore(partStateTable));
+            checkpointJournal.reopen();
+            updateState(TransferState.IN_PROGRESS); // running
+            multiUploadPart(cosXmlService);
+            return;
+        }
+        partStateTable = PartStateTable.split(fileLength, sliceSize);
         if(uploadId != null){
             listMultiUpload(cosXmlService);
         }else {
@@ -310,77 +399,418 @@ public final class COSXMLUploadTask extends COSXMLTask {
 
     private void multiUploadPart(CosXmlSimpleService cosXmlService){
         //是否已上传完
-        boolean isUploadFinished = true;
-        // 循环进行
-        for(final Map.Entry<Integer, SlicePartStruct> entry : partStructMap.entrySet()){
-            final SlicePartStruct slicePartStruct = entry.getValue();
-            //是否已经failed了，则就不要在继续了
-            if(!slicePartStruct.isAlreadyUpload && !IS_EXIT.get()){
-                isUploadFinished = false;
-                final UploadPartRequest uploadPartRequest = new UploadPartRequest(bucket, cosPath, slicePartStruct.partNumber,
-                        srcPath, slicePartStruct.offset, slicePartStruct.sliceSize,  uploadId);
-
-                uploadPartRequest.setNeedMD5(isNeedMd5);
-                uploadPartRequest.setRequestHeaders(headers);
-
-                if(onSignatureListener != null){
-                    uploadPartRequest.setSign(onSignatureListener.onGetSign(uploadPartRequest));
-                }
-
-                getHttpMetrics(uploadPartRequest, "UploadPartRequest");
-
-                uploadPartRequestLongMap.put(uploadPartRequest, 0L);
-                uploadPartRequest.setProgressListener(new CosXmlProgressListener() {
-                    @Override
-                    public void onProgress(long complete, long target) {
-                        if(IS_EXIT.get())return;//已经上报失败了
-                        try {
-                            long dataLen = ALREADY_SEND_DATA_LEN.addAndGet(complete - uploadPartRequestLongMap.get(uploadPartRequest));
-                            uploadPartRequestLongMap.put(uploadPartRequest, complete);
-                            if(cosXmlProgressListener != null){
-                                cosXmlProgressListener.onProgress(dataLen, fileLength);
-                            }
-                        }catch (Exception e){
-                            //cause by cancel or pause
-                        }
+        if(partStateTable.isAllCompleted()){
+            if(IS_EXIT.get())return;
+            if(cosXmlProgressListener != null){
+                cosXmlProgressListener.onProgress(fileLength, fileLength);
+            }
+            multiUploadsStateListenerHandler.onUploadParts();
+            return;
+        }
+        synchronized (SYNC_UPLOAD_PART){
+            nextPartIndex = 0;
+            runningPartCount = 0;
+        }
+        if(isNeedMd5){
+            partDigestPipeline = new PartDigestPipeline(srcPath, partStateTable, maxConcurrentParts);
+        }
+        uploadNextParts(cosXmlService);
+    }
+
+    /**
+     * 补足上传窗口, 进行中的分片数不超过 maxConcurrentParts
+     */
+    private void uploadNextParts(final CosXmlSimpleService cosXmlService){
+        List<Integer> nextParts = new ArrayList<>();
+        synchronized (SYNC_UPLOAD_PART){
+            int windowSize = Math.max(maxConcurrentParts, 1);
+            while(!IS_EXIT.get() && runningPartCount < windowSize
+                    && (nextPartIndex = partStateTable.nextPending(nextPartIndex)) >= 0){
+                runningPartCount ++;
+                nextParts.add(nextPartIndex ++);
+            }
+            if(nextPartIndex < 0){
+                nextPartIndex = partStateTable.size();
+            }
+        }
+        final PartDigestPipeline digestPipeline = partDigestPipeline;
+        if(digestPipeline == null){
+            for(int index : nextParts){
+                uploadPart(cosXmlService, index, null);
+            }
+            return;
+        }
+        // MD5 计算完成后再发起上传, 同时为后续分片提前计算
+        for(int index : nextParts){
+            digestPipeline.prepare(index, new PartDigestPipeline.OnPreparedListener() {
+                @Override
+                public void onPrepared(int index, String md5) {
+                    uploadPart(cosXmlService, index, md5);
+                }
+            });
+        }
+        if(!nextParts.isEmpty()){
+            digestPipeline.prefetch(nextParts.get(nextParts.size() - 1) + 1);
+        }
+    }
+
+    /**
+     * @param contentMd5 预先计算好的 Content-MD5, 为 null 时按 isNeedMd5 由请求自己计算
+     */
+    private void uploadPart(final CosXmlSimpleService cosXmlService, final int index, String contentMd5){
+        //是否已经failed了，则就不要在继续了
+        if(IS_EXIT.get())return;
+        final UploadPartRequest uploadPartRequest = new UploadPartRequest(bucket, cosPath, partStateTable.partNumber(index),
+                srcPath, partStateTable.offset(index), partStateTable.size(index),  uploadId);
+
+        uploadPartRequest.setNeedMD5(isNeedMd5);
+        uploadPartRequest.setRequestHeaders(headers);
+        if(contentMd5 != null){
+            try {
+                uploadPartRequest.setRequestHeaders(HttpConstants.Header.CONTENT_MD5, contentMd5, false);
+                uploadPartRequest.setNeedMD5(false);
+            } catch (CosXmlClientException e) {
+                // 由请求自己计算
+            }
+        }
+
+        if(onSignatureListener != null){
+            uploadPartRequest.setSign(onSignatureListener.onGetSign(uploadPartRequest));
+        }
+
+        getHttpMetrics(uploadPartRequest, "UploadPartRequest");
+
+        runningUploadPartRequests.add(uploadPartRequest);
+        uploadPartRequest.setProgressListener(new CosXmlProgressListener() {
+            @Override
+            public void onProgress(long complete, long target) {
+                if(IS_EXIT.get())return;//已经上报失败了
+                progressAggregator.add(partStateTable.updateProgress(index, complete));
+            }
+        });
+        cosXmlService.uploadPartAsync(uploadPartRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                // 已完成的分片不再需要被 pause 或 cancel
+                runningUploadPartRequests.remove(uploadPartRequest);
+                boolean isUploadFinished;
+                synchronized (SYNC_UPLOAD_PART){
+                    runningPartCount --;
+                    isUploadFinished = partStateTable.markCompleted(index, ((UploadPartResult)result).eTag)
+                            && partStateTable.isAllCompleted();
+                }
+                if(checkpointJournal != null){
+                    checkpointJournal.recordPart(partStateTable.partNumber(index), partStateTable.offset(index),
+                            partStateTable.size(index), ((UploadPartResult)result).eTag);
+                }
+                if(IS_EXIT.get())return;
+                if(isUploadFinished){
+                    progressAggregator.flush();
+                    multiUploadsStateListenerHandler.onUploadParts();
+                }else {
+                    uploadNextParts(cosXmlService);
+                }
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                if(IS_EXIT.get())return;//已经上报失败了
+                multiUploadsStateListenerHandler.onFailed(request, exception, serviceException);
+            }
+        });
+    }
+
+    /**
+     * 以当前的 uploadId 和分片表重新开始断点记录
+     */
+    private void beginCheckpoint(){
+        if(checkpointJournal == null) return;
+        checkpointJournal.begin(uploadId, sliceSize);
+        for(int i = 0, size = partStateTable.size(); i < size; i ++){
+            if(partStateTable.isCompleted(i)){
+                checkpointJournal.recordPart(partStateTable.partNumber(i), partStateTable.offset(i),
+                        partStateTable.size(i), partStateTable.eTag(i));
+            }
+        }
+        checkpointJournal.flush();
+    }
+
+    /**
+     * 流式分片上传: 字节流按 sliceSize 读入缓冲区, 每读满一个分片就发起上传,
+     * 同时进行中的分片数不超过 maxConcurrentParts, 读到流末尾后完成上传.
+     * 与文件上传一样, 不足 multiUploadSizeDivision 的字节流直接简单上传.
+     * 字节流的读取可能长时间阻塞, 在单独的读取线程中进行.
+     */
+    private void streamUpload(final CosXmlSimpleService cosXmlService){
+        isStreamUpload = true;
+        isSliceUpload = true;
+        IS_EXIT = new AtomicBoolean(false);
+        // 读到流末尾之前总长度未知
+        progressAggregator = new ProgressAggregator(progressDispatcher, -1L, progressIntervalMillis, progressStepPercent);
+        runningUploadPartRequests = Collections.newSetFromMap(new ConcurrentHashMap<UploadPartRequest, Boolean>());
+        freeStreamBuffers = new ArrayDeque<>();
+        pendingStreamParts = new ArrayDeque<>();
+        streamPartETags = new TreeMap<>();
+        streamPartCount = 0;
+        streamReadLength = 0L;
+        isStreamReading = false;
+        isStreamEnd = false;
+        isStreamCompleted = false;
+        synchronized (SYNC_UPLOAD_PART){
+            runningPartCount = 0;
+        }
+        scheduleStreamRead(cosXmlService);
+    }
+
+    /**
+     * 在读取线程中继续读取字节流, 同一时刻只有一个线程读取
+     */
+    private void scheduleStreamRead(final CosXmlSimpleService cosXmlService){
+        synchronized (SYNC_UPLOAD_PART){
+            if(isStreamReading || IS_EXIT.get() || (isStreamEnd && pendingStreamParts.isEmpty())){
+                return;
+            }
+            isStreamReading = true;
+        }
+        TaskExecutors.STREAM_READ_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if(uploadId == null){
+                    readStreamHead(cosXmlService);
+                }else {
+                    readStreamParts(cosXmlService);
+                }
+            }
+        });
+    }
+
+    /**
+     * 读取字节流开头的 multiUploadSizeDivision 字节, 读到流末尾时简单上传,
+     * 否则异步初始化分片上传, 已读入的分片在初始化完成后上传
+     */
+    private void readStreamHead(CosXmlSimpleService cosXmlService){
+        List<byte[]> buffers = new ArrayList<>();
+        long headLength = 0L;
+        int lastLength;
+        boolean isEnd;
+        try {
+            do {
+                byte[] buffer = new byte[(int) sliceSize];
+                lastLength = readFully(inputStream, buffer);
+                isEnd = lastLength < buffer.length;
+                buffers.add(buffer);
+                headLength += lastLength;
+            } while (!isEnd && headLength < multiUploadSizeDivision);
+        } catch (IOException e) {
+            onStreamReadFailed(e);
+            return;
+        }
+        if(IS_EXIT.get())return;
+        if(isEnd && headLength < multiUploadSizeDivision){
+            // 数据不足分片上传的界限, 简单上传即可
+            bytes = new byte[(int) headLength];
+            int offset = 0;
+            for(byte[] buffer : buffers){
+                int length = (int) Math.min(buffer.length, headLength - offset);
+                System.arraycopy(buffer, 0, bytes, offset, length);
+                offset += length;
+            }
+            closeInputStream();
+            isSliceUpload = false;
+            isStreamUpload = false;
+            simpleUpload(cosXmlService);
+            return;
+        }
+        synchronized (SYNC_UPLOAD_PART){
+            for(int i = 0, size = buffers.size(); i < size; i ++){
+                int length = i < size - 1 ? (int) sliceSize : lastLength;
+                if(length > 0){
+                    pendingStreamParts.add(new StreamPart(++ streamPartCount, buffers.get(i), length));
+                    streamReadLength += length;
+                }else {
+                    freeStreamBuffers.push(buffers.get(i));
+                }
+            }
+            if(isEnd){
+                isStreamEnd = true;
+                progressAggregator.setTotal(streamReadLength);
+            }
+        }
+        if(isEnd){
+            closeInputStream();
+        }
+        updateState(TransferState.IN_PROGRESS); // running
+        // 初始化完成后在 onInit 中继续, 读取线程不等待网络请求
+        initMultiUpload(cosXmlService);
+    }
+
+    private void readStreamParts(CosXmlSimpleService cosXmlService){
+        int windowSize = Math.max(maxConcurrentParts, 1);
+        while (true){
+            StreamPart part;
+            byte[] buffer = null;
+            synchronized (SYNC_UPLOAD_PART){
+                if(IS_EXIT.get() || runningPartCount >= windowSize
+                        || (isStreamEnd && pendingStreamParts.isEmpty())){
+                    isStreamReading = false;
+                    return;
+                }
+                runningPartCount ++;
+                part = pendingStreamParts.poll();
+                if(part == null){
+                    buffer = freeStreamBuffers.poll();
+                }
+            }
+            if(part == null){
+                if(buffer == null){
+                    buffer = new byte[(int) sliceSize];
+                }
+                int length;
+                try {
+                    length = readFully(inputStream, buffer);
+                } catch (IOException e) {
+                    onStreamReadFailed(e);
+                    return;
+                }
+                boolean isEnd = length < buffer.length;
+                boolean isUploadFinished = false;
+                synchronized (SYNC_UPLOAD_PART){
+                    if(length > 0){
+                        part = new StreamPart(++ streamPartCount, buffer, length);
+                        streamReadLength += length;
+                    }else {
+                        runningPartCount --;
+                        freeStreamBuffers.push(buffer);
                     }
-                });
-                cosXmlService.uploadPartAsync(uploadPartRequest, new CosXmlResultListener() {
-                    @Override
-                    public void onSuccess(CosXmlRequest request, CosXmlResult result) {
-                        slicePartStruct.eTag = ((UploadPartResult)result).eTag;
-                        slicePartStruct.isAlreadyUpload = true;
-                        synchronized (SYNC_UPLOAD_PART){
-                            UPLOAD_PART_COUNT.decrementAndGet();
-                            if(UPLOAD_PART_COUNT.get() == 0){
-                                if(IS_EXIT.get())return;
-                                multiUploadsStateListenerHandler.onUploadParts();
-                            }
-                        }
+                    if(isEnd){
+                        isStreamEnd = true;
+                        progressAggregator.setTotal(streamReadLength);
+                        isUploadFinished = isStreamUploadFinished();
                     }
-
-                    @Override
-                    public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
-                        if(IS_EXIT.get())return;//已经上报失败了
-                        multiUploadsStateListenerHandler.onFailed(request, exception, serviceException);
+                }
+                if(isEnd){
+                    closeInputStream();
+                }
+                if(part == null){
+                    if(isUploadFinished && !IS_EXIT.get()){
+                        onStreamPartsUploaded();
                     }
-                });
+                    continue;
+                }
             }
+            if(IS_EXIT.get())return;
+            if(part.partNumber > MAX_PART_NUMBER){
+                multiUploadsStateListenerHandler.onFailed(null, new CosXmlClientException(ClientErrorCode.INVALID_ARGUMENT.getCode(),
+                        "stream is too large, part count exceeds " + MAX_PART_NUMBER + ", please increase slice size"), null);
+                return;
+            }
+            uploadStreamPart(cosXmlService, part.partNumber, part.buffer, part.length);
         }
-        if(isUploadFinished && !IS_EXIT.get()){
-            if(cosXmlProgressListener != null){
-                cosXmlProgressListener.onProgress(fileLength, fileLength);
+    }
+
+    /**
+     * 字节流已读完且所有分片都已上传, 只返回一次 true, 调用时需持有 SYNC_UPLOAD_PART
+     */
+    private boolean isStreamUploadFinished(){
+        if(isStreamEnd && runningPartCount == 0 && pendingStreamParts.isEmpty() && !isStreamCompleted){
+            isStreamCompleted = true;
+            return true;
+        }
+        return false;
+    }
+
+    private void uploadStreamPart(final CosXmlSimpleService cosXmlService, final int partNumber, final byte[] buffer, int length){
+        if(IS_EXIT.get())return;
+        final UploadPartRequest uploadPartRequest = new UploadPartRequest(bucket, cosPath, partNumber,
+                buffer, length, uploadId);
+
+        uploadPartRequest.setNeedMD5(isNeedMd5);
+        uploadPartRequest.setRequestHeaders(headers);
+
+        if(onSignatureListener != null){
+            uploadPartRequest.setSign(onSignatureListener.onGetSign(uploadPartRequest));
+        }
+
+        getHttpMetrics(uploadPartRequest, "UploadPartRequest");
+
+        runningUploadPartRequests.add(uploadPartRequest);
+        final AtomicLong partProgress = new AtomicLong(0L);
+        uploadPartRequest.setProgressListener(new CosXmlProgressListener() {
+            @Override
+            public void onProgress(long complete, long target) {
+                if(IS_EXIT.get())return;//已经上报失败了
+                progressAggregator.add(complete - partProgress.getAndSet(complete));
             }
-            multiUploadsStateListenerHandler.onUploadParts();
+        });
+        cosXmlService.uploadPartAsync(uploadPartRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                runningUploadPartRequests.remove(uploadPartRequest);
+                boolean isUploadFinished;
+                synchronized (SYNC_UPLOAD_PART){
+                    runningPartCount --;
+                    freeStreamBuffers.push(buffer);
+                    streamPartETags.put(partNumber, ((UploadPartResult)result).eTag);
+                    isUploadFinished = isStreamUploadFinished();
+                }
+                if(IS_EXIT.get())return;
+                if(isUploadFinished){
+                    onStreamPartsUploaded();
+                }else {
+                    scheduleStreamRead(cosXmlService);
+                }
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                if(IS_EXIT.get())return;//已经上报失败了
+                multiUploadsStateListenerHandler.onFailed(request, exception, serviceException);
+            }
+        });
+    }
+
+    private void onStreamPartsUploaded(){
+        progressAggregator.flush();
+        multiUploadsStateListenerHandler.onUploadParts();
+    }
+
+    private void onStreamReadFailed(IOException e){
+        closeInputStream();
+        if(IS_EXIT.get())return;
+        multiUploadsStateListenerHandler.onFailed(null, new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(), e), null);
+    }
+
+    private void closeInputStream(){
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            // ignore
         }
     }
 
+    /**
+     * 读满缓冲区, 返回值小于缓冲区长度说明已读到流末尾
+     */
+    private static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int length = 0;
+        int readLen;
+        while (length < buffer.length && (readLen = inputStream.read(buffer, length, buffer.length - length)) != -1){
+            length += readLen;
+        }
+        return length;
+    }
+
     private void completeMultiUpload(CosXmlSimpleService cosXmlService){
         completeMultiUploadRequest = new CompleteMultiUploadRequest(bucket, cosPath,
                 uploadId, null);
-        for(Map.Entry<Integer, SlicePartStruct> entry : partStructMap.entrySet()){
-            SlicePartStruct slicePartStruct = entry.getValue();
-            completeMultiUploadRequest.setPartNumberAndETag(slicePartStruct.partNumber, slicePartStruct.eTag);
+        if(isStreamUpload){
+            synchronized (SYNC_UPLOAD_PART){
+                for(Map.Entry<Integer, String> entry : streamPartETags.entrySet()){
+                    completeMultiUploadRequest.setPartNumberAndETag(entry.getKey(), entry.getValue());
+                }
+            }
+        }else {
+            partStateTable.fillCompleteRequest(completeMultiUploadRequest);
         }
 
         completeMultiUploadRequest.setNeedMD5(isNeedMd5);
@@ -408,6 +838,9 @@ public final class COSXMLUploadTask extends COSXMLTask {
     }
 
     private void cancelAllRequest(CosXmlSimpleService cosXmlService){
+        if(partDigestPipeline != null){
+            partDigestPipeline.cancel();
+        }
         if(putObjectRequest != null){
             cosXmlService.cancel(putObjectRequest);
             putObjectRequest = null;
@@ -420,13 +853,11 @@ public final class COSXMLUploadTask extends COSXMLTask {
             cosXmlService.cancel(initMultipartUploadRequest);
             listPartsRequest = null;
         }
-        if(uploadPartRequestLongMap != null){
-            Set<UploadPartRequest> set = uploadPartRequestLongMap.keySet();
-            Iterator<UploadPartRequest> iterator = set.iterator();
-            while(iterator.hasNext()){
-                cosXmlService.cancel(iterator.next());
+        if(runningUploadPartRequests != null){
+            for(UploadPartRequest uploadPartRequest : runningUploadPartRequests){
+                cosXmlService.cancel(uploadPartRequest);
             }
-            uploadPartRequestLongMap.clear();
+            runningUploadPartRequests.clear();
         }
 
         if(completeMultiUploadRequest != null){
@@ -472,6 +903,14 @@ public final class COSXMLUploadTask extends COSXMLTask {
             if(isSliceUpload){
                 IS_EXIT.set(true);
                 cancelAllRequest(cosXmlService);
+                if(checkpointJournal != null){
+                    checkpointJournal.flush();
+                }
+                if(isStreamUpload){
+                    // 字节流无法续传, 暂停时终止分片上传
+                    closeInputStream();
+                    abortMultiUpload(cosXmlService);
+                }
             }else {
                 cosXmlService.cancel(putObjectRequest);
                 putObjectRequest = null;
@@ -483,7 +922,7 @@ public final class COSXMLUploadTask extends COSXMLTask {
     public void cancel() {
         if(updateState(TransferState.CANCELED)){
             CosXmlClientException cosXmlClientException = new CosXmlClientException(ClientErrorCode.USER_CANCELLED.getCode(), "canceled by user");
-            mException = cosXmlClientException;
+            setException(cosXmlClientException);
             if(cosXmlResultListener != null){
                 cosXmlResultListener.onFail(buildCOSXMLTaskRequest(null), cosXmlClientException, null);
             }
@@ -491,6 +930,9 @@ public final class COSXMLUploadTask extends COSXMLTask {
                 IS_EXIT.set(true);
                 cancelAllRequest(cosXmlService);
                 abortMultiUpload(cosXmlService);
+                if(checkpointJournal != null){
+                    checkpointJournal.delete();
+                }
             }else {
                 cosXmlService.cancel(putObjectRequest);
                 putObjectRequest = null;
@@ -503,7 +945,7 @@ public final class COSXMLUploadTask extends COSXMLTask {
         if(updateState(TransferState.RESUMED_WAITING)){
             if(inputStream != null){
                 CosXmlClientException cosXmlClientException = new CosXmlClientException(ClientErrorCode.SINK_SOURCE_NOT_FOUND.getCode(), "inputStream closed");
-                mException = cosXmlClientException;
+                setException(cosXmlClientException);
                 if(cosXmlResultListener != null){
                     cosXmlResultListener.onFail(buildCOSXMLTaskRequest(null), cosXmlClientException, null);
                 }
@@ -545,29 +987,6 @@ public final class COSXMLUploadTask extends COSXMLTask {
         return uploadId;
     }
 
-    /**
-     * init slice part
-     */
-    private void initSlicePart(long fileLength, int startNumber){
-        int count = (int) (fileLength / sliceSize);
-        for(; startNumber < count; ++ startNumber){
-            SlicePartStruct slicePartStruct = new SlicePartStruct();
-            slicePartStruct.isAlreadyUpload = false;
-            slicePartStruct.partNumber = startNumber;
-            slicePartStruct.offset = (startNumber - 1) * sliceSize;
-            slicePartStruct.sliceSize = sliceSize;
-            partStructMap.put(startNumber, slicePartStruct);
-        }
-        SlicePartStruct slicePartStruct = new SlicePartStruct();
-        slicePartStruct.isAlreadyUpload = false;
-        slicePartStruct.partNumber = startNumber;
-        slicePartStruct.offset = (startNumber - 1) * sliceSize;
-        slicePartStruct.sliceSize = fileLength - slicePartStruct.offset;
-        partStructMap.put(startNumber, slicePartStruct);
-        UPLOAD_PART_COUNT.set(startNumber);
-        if(IS_EXIT.get())return;
-    }
-
     /**
      * 需要做如下判断，已上传的分片大小和请求设置分片大小是否一致
      * 1）若是一致，则可以乱序续传
@@ -582,12 +1001,9 @@ public final class COSXMLUploadTask extends COSXMLTask {
             if(parts != null && parts.size() > 0){
                 if(isFixSliceSize(parts)){
                     for(ListParts.Part part : parts){
-                        if(partStructMap.containsKey(Integer.valueOf(part.partNumber))){
-                            SlicePartStruct slicePartStruct = partStructMap.get(Integer.valueOf(part.partNumber));
-                            slicePartStruct.isAlreadyUpload = true;
-                            slicePartStruct.eTag = part.eTag;
-                            UPLOAD_PART_COUNT.decrementAndGet();
-                            ALREADY_SEND_DATA_LEN.addAndGet(Long.parseLong(part.size));
+                        int index = partStateTable.indexOf(Integer.valueOf(part.partNumber));
+                        if(index >= 0 && partStateTable.markCompleted(index, part.eTag)){
+                            progressAggregator.add(Long.parseLong(part.size));
                         }
                     }
                 }else {
@@ -608,25 +1024,16 @@ public final class COSXMLUploadTask extends COSXMLTask {
                     if(index < 0){
                         return;
                     }
-                    partStructMap.clear();
-                    long completed = 0L;
+                    long[] uploadedSizes = new long[index + 1];
                     for(int i = 0; i <= index; i ++){
-                        ListParts.Part part = parts.get(i);
-                        SlicePartStruct slicePartStruct = new SlicePartStruct();
-                        slicePartStruct.partNumber = i + 1;
-                        slicePartStruct.offset = completed;
-                        slicePartStruct.sliceSize = Long.parseLong(part.size);
-                        slicePartStruct.eTag = part.eTag;
-                        slicePartStruct.isAlreadyUpload = true;
-                        completed += slicePartStruct.sliceSize;
-                        partStructMap.put(i + 1, slicePartStruct);
+                        uploadedSizes[i] = Long.parseLong(parts.get(i).size);
                     }
                     //重新计算剩下的分片
-                    ALREADY_SEND_DATA_LEN.addAndGet(completed);
-                    initSlicePart(fileLength - completed, index + 2);
+                    partStateTable = PartStateTable.split(uploadedSizes, fileLength, sliceSize);
                     for(int i = 0; i <= index; i ++){
-                        UPLOAD_PART_COUNT.decrementAndGet();
+                        partStateTable.markCompleted(i, parts.get(i).eTag);
                     }
+                    progressAggregator.add(partStateTable.completedLength());
                 }
             }
         }
@@ -635,9 +1042,9 @@ public final class COSXMLUploadTask extends COSXMLTask {
     private boolean isFixSliceSize(List<ListParts.Part> parts){
         boolean isTrue = true;
         for(ListParts.Part part : parts){
-            if(partStructMap.containsKey(Integer.valueOf(part.partNumber))){
-                SlicePartStruct slicePartStruct = partStructMap.get(Integer.valueOf(part.partNumber));
-                if(slicePartStruct.sliceSize == Long.valueOf(part.size)) continue;
+            int index = partStateTable.indexOf(Integer.valueOf(part.partNumber));
+            if(index >= 0){
+                if(partStateTable.size(index) == Long.valueOf(part.size)) continue;
                 else {
                     isTrue = false;
                     break;
@@ -670,16 +1077,21 @@ public final class COSXMLUploadTask extends COSXMLTask {
 
     protected void run() {
         updateState(TransferState.WAITING); // waiting
-        //bytes or inputStream using simple upload method
-        if(bytes != null || inputStream != null){
+        //bytes using simple upload method
+        if(bytes != null){
             simpleUpload(cosXmlService);
             return;
         }
+        //inputStream using stream multipart upload method
+        if(inputStream != null){
+            streamUpload(cosXmlService);
+            return;
+        }
 
         File file = new File(srcPath);
         if(!file.exists() || file.isDirectory() || !file.canRead()){
             if(updateState(TransferState.FAILED)){
-                mException = new CosXmlClientException(ClientErrorCode.INVALID_ARGUMENT.getCode(), srcPath + " is invalid");
+                setException(new CosXmlClientException(ClientErrorCode.INVALID_ARGUMENT.getCode(), srcPath + " is invalid"));
                 if(cosXmlResultListener != null){
                     cosXmlResultListener.onFail(buildCOSXMLTaskRequest(putObjectRequest), (CosXmlClientException) mException, null);
                 }
@@ -692,20 +1104,29 @@ public final class COSXMLUploadTask extends COSXMLTask {
         }else {
             isSliceUpload = true;
             IS_EXIT = new AtomicBoolean(false);
-            UPLOAD_PART_COUNT = new AtomicInteger(0);
-            ALREADY_SEND_DATA_LEN = new AtomicLong(0);
-            partStructMap = new LinkedHashMap<>(); //必须有序
-            uploadPartRequestLongMap = new LinkedHashMap<>();
+            progressAggregator = new ProgressAggregator(progressDispatcher, fileLength, progressIntervalMillis, progressStepPercent);
+            runningUploadPartRequests = Collections.newSetFromMap(new ConcurrentHashMap<UploadPartRequest, Boolean>());
+            if(checkpointJournal != null){
+                checkpointJournal.close();
+            }
+            checkpointJournal = UploadCheckpointJournal.open(checkpointDir, bucket, cosPath, file);
             multiUpload(cosXmlService);
         }
     }
 
-    private static class SlicePartStruct{
-        public int partNumber;
-        public boolean isAlreadyUpload;
-        public long offset;
-        public long sliceSize;
-        public String eTag;
+    /**
+     * 已读入缓冲区、等待上传的分片
+     */
+    private static final class StreamPart {
+        final int partNumber;
+        final byte[] buffer;
+        final int length;
+
+        StreamPart(int partNumber, byte[] buffer, int length){
+            this.partNumber = partNumber;
+            this.buffer = buffer;
+            this.length = length;
+        }
     }
 
     private static interface MultiUploadsStateListener{
@@ -0,0 +1,330 @@
+package com.tencent.cos.xml.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * COS 响应的 XML 解码器.
+ * <p>
+ * 直接在 Okio 的 BufferedSource 上按字节解析: 元素名不生成 String, 通过 {@link XmlTags} 的完美哈希表映射为整数,
+ * 元素之间的空白和不关心的文本只做字节查找后跳过, 只有调用 {@link #text()} 时才解码为 String;
+ * 不认识的子树用 {@link #skipUnknown()} 整个跳过.
+ * 只支持 COS 响应用到的 XML 子集: 元素、属性（忽略）、文本、实体和字符引用、CDATA, 注释、处理指令和 DOCTYPE 被忽略,
+ * 不处理命名空间. 不依赖 Android, 可以在 JVM 上测试和压测.
+ * 每个线程复用一个解码器, 通过 obtain 获取, 用完后调用 {@link #release()}.
+ * </p>
+ */
+final class CosXmlReader {
+
+    static final int END_DOCUMENT = 1;
+    static final int START_TAG = 2;
+    static final int END_TAG = 3;
+
+    private static final ByteString PI_END = ByteString.encodeUtf8("?>");
+    private static final ByteString COMMENT_START = ByteString.encodeUtf8("--");
+    private static final ByteString COMMENT_END = ByteString.encodeUtf8("-->");
+    private static final ByteString CDATA_START = ByteString.encodeUtf8("<![CDATA[");
+    private static final ByteString CDATA_BODY_START = ByteString.encodeUtf8("[CDATA[");
+    private static final ByteString CDATA_END = ByteString.encodeUtf8("]]>");
+
+    private static final ThreadLocal<CosXmlReader> READERS = new ThreadLocal<CosXmlReader>(){
+        @Override
+        protected CosXmlReader initialValue() {
+            return new CosXmlReader();
+        }
+    };
+
+    private BufferedSource source;
+    private byte[] name = new byte[64];
+    private int nameLength;
+    private int tag = XmlTags.UNKNOWN;
+    private int depth;
+    /** 当前元素是 &lt;a/&gt;, 下一次 next() 直接返回 END_TAG */
+    private boolean isEmptyElement;
+    private boolean isInUse;
+    private final StringBuilder textBuilder = new StringBuilder();
+    private final StringBuilder entityBuilder = new StringBuilder();
+
+    private CosXmlReader(){
+    }
+
+    static CosXmlReader obtain(InputStream inputStream){
+        return obtain(Okio.buffer(Okio.source(inputStream)));
+    }
+
+    static CosXmlReader obtain(BufferedSource source){
+        CosXmlReader reader = READERS.get();
+        if(reader.isInUse){
+            // 在回调中嵌套解析另一个响应
+            reader = new CosXmlReader();
+        }
+        reader.isInUse = true;
+        reader.source = source;
+        reader.tag = XmlTags.UNKNOWN;
+        reader.depth = 0;
+        reader.isEmptyElement = false;
+        return reader;
+    }
+
+    void release(){
+        source = null;
+        isInUse = false;
+    }
+
+    /**
+     * @return 当前元素对应的 {@link XmlTags} 常量, 不认识的元素为 {@link XmlTags#UNKNOWN}
+     */
+    int tag(){
+        return tag;
+    }
+
+    /**
+     * @return 当前元素的层级, 根元素为 1
+     */
+    int depth(){
+        return depth;
+    }
+
+    /**
+     * 读到下一个开始标签、结束标签或文档末尾, 跳过其间的文本
+     */
+    int next() throws IOException {
+        if(isEmptyElement){
+            isEmptyElement = false;
+            depth --;
+            return END_TAG;
+        }
+        while (true){
+            long index = source.indexOf((byte) '<');
+            if(index == -1){
+                // 剩下的只能是空白
+                source.skip(source.buffer().size());
+                if(depth != 0){
+                    throw new MalformedXmlException("unexpected end of document");
+                }
+                tag = XmlTags.UNKNOWN;
+                return END_DOCUMENT;
+            }
+            source.skip(index + 1);
+            byte b = source.readByte();
+            if(b == '?'){
+                skipPast(PI_END);
+            }else if(b == '!'){
+                skipDeclaration();
+            }else if(b == '/'){
+                byte end = readName(source.readByte());
+                if(end != '>'){
+                    skipPast((byte) '>');
+                }
+                depth --;
+                return END_TAG;
+            }else {
+                byte end = readName(b);
+                if(end == '/'){
+                    expect((byte) '>');
+                    isEmptyElement = true;
+                }else if(end != '>'){
+                    skipAttributes();
+                }
+                depth ++;
+                return START_TAG;
+            }
+        }
+    }
+
+    /**
+     * 读取当前元素的文本, 在 START_TAG 之后调用; 没有文本时返回 null
+     */
+    String text() throws IOException {
+        if(isEmptyElement){
+            return null;
+        }
+        String text = null;
+        boolean isBuilding = false;
+        while (true){
+            long index = source.indexOf((byte) '<');
+            if(index == -1){
+                throw new MalformedXmlException("unexpected end of document");
+            }
+            String part = null;
+            if(index > 0){
+                part = decodeEntities(source.readUtf8(index));
+            }else if(source.rangeEquals(0, CDATA_START)){
+                source.skip(CDATA_START.size());
+                long end = source.indexOf(CDATA_END);
+                if(end == -1){
+                    throw new MalformedXmlException("unterminated CDATA");
+                }
+                part = source.readUtf8(end);
+                source.skip(CDATA_END.size());
+            }
+            if(part == null){
+                break;
+            }
+            if(text == null && !isBuilding){
+                text = part;
+            }else {
+                if(!isBuilding){
+                    textBuilder.setLength(0);
+                    textBuilder.append(text);
+                    isBuilding = true;
+                }
+                textBuilder.append(part);
+            }
+        }
+        return isBuilding ? textBuilder.toString() : text;
+    }
+
+    /**
+     * 跳过当前元素的整个子树, 在 START_TAG 之后调用
+     */
+    void skip() throws IOException {
+        int startDepth = depth;
+        while (true){
+            int eventType = next();
+            if(eventType == END_TAG && depth < startDepth){
+                return;
+            }
+            if(eventType == END_DOCUMENT){
+                throw new MalformedXmlException("unexpected end of document");
+            }
+        }
+    }
+
+    /**
+     * 当前元素不认识且不是根元素时跳过它的子树
+     */
+    void skipUnknown() throws IOException {
+        if(tag == XmlTags.UNKNOWN && depth > 1){
+            skip();
+        }
+    }
+
+    /**
+     * 读取元素名并查表, 返回元素名之后的第一个字节
+     */
+    private byte readName(byte b) throws IOException {
+        nameLength = 0;
+        while (b != '>' && b != '/' && b != ' ' && b != '\t' && b != '\n' && b != '\r'){
+            if(nameLength == name.length){
+                byte[] bigger = new byte[name.length << 1];
+                System.arraycopy(name, 0, bigger, 0, nameLength);
+                name = bigger;
+            }
+            name[nameLength ++] = b;
+            b = source.readByte();
+        }
+        tag = XmlTags.lookup(name, nameLength);
+        return b;
+    }
+
+    /**
+     * 跳过属性直到 '&gt;', 属性值中可能出现 '&gt;'
+     */
+    private void skipAttributes() throws IOException {
+        byte previous = 0;
+        while (true){
+            byte b = source.readByte();
+            if(b == '"' || b == '\''){
+                skipPast(b);
+            }else if(b == '>'){
+                isEmptyElement = previous == '/';
+                return;
+            }
+            previous = b;
+        }
+    }
+
+    /**
+     * 跳过 &lt;! 开头的注释、CDATA 和 DOCTYPE
+     */
+    private void skipDeclaration() throws IOException {
+        if(source.rangeEquals(0, COMMENT_START)){
+            skipPast(COMMENT_END);
+        }else if(source.rangeEquals(0, CDATA_BODY_START)){
+            skipPast(CDATA_END);
+        }else {
+            skipPast((byte) '>');
+        }
+    }
+
+    private void skipPast(byte b) throws IOException {
+        long index = source.indexOf(b);
+        if(index == -1){
+            throw new MalformedXmlException("unexpected end of document");
+        }
+        source.skip(index + 1);
+    }
+
+    private void skipPast(ByteString bytes) throws IOException {
+        long index = source.indexOf(bytes);
+        if(index == -1){
+            throw new MalformedXmlException("unexpected end of document");
+        }
+        source.skip(index + bytes.size());
+    }
+
+    private void expect(byte b) throws IOException {
+        if(source.readByte() != b){
+            throw new MalformedXmlException("expected '" + (char) b + "'");
+        }
+    }
+
+    private String decodeEntities(String text) throws MalformedXmlException {
+        int ampersand = text.indexOf('&');
+        if(ampersand == -1){
+            return text;
+        }
+        StringBuilder builder = entityBuilder;
+        builder.setLength(0);
+        int start = 0;
+        while (ampersand != -1){
+            builder.append(text, start, ampersand);
+            int semicolon = text.indexOf(';', ampersand);
+            if(semicolon == -1){
+                throw new MalformedXmlException("unterminated entity");
+            }
+            String entity = text.substring(ampersand + 1, semicolon);
+            if(entity.equals("lt")){
+                builder.append('<');
+            }else if(entity.equals("gt")){
+                builder.append('>');
+            }else if(entity.equals("amp")){
+                builder.append('&');
+            }else if(entity.equals("quot")){
+                builder.append('"');
+            }else if(entity.equals("apos")){
+                builder.append('\'');
+            }else if(entity.startsWith("#")){
+                try {
+                    int codePoint = entity.startsWith("#x") || entity.startsWith("#X")
+                            ? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+                    builder.appendCodePoint(codePoint);
+                } catch (IllegalArgumentException e) {
+                    throw new MalformedXmlException("invalid character reference &" + entity + ";");
+                }
+            }else {
+                throw new MalformedXmlException("unknown entity &" + entity + ";");
+            }
+            start = semicolon + 1;
+            ampersand = text.indexOf('&', start);
+        }
+        builder.append(text, start, text.length());
+        return builder.toString();
+    }
+
+    /**
+     * XML 格式错误, 与读取响应时的 IO 错误区分开
+     */
+    static final class MalformedXmlException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        MalformedXmlException(String message){
+            super(message);
+        }
+    }
+}
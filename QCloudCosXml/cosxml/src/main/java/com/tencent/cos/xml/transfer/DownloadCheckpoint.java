@@ -0,0 +1,334 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.qcloud.core.logger.QCloudLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 下载的断点记录.
+ * <p>
+ * 每个下载文件旁边有一个同名加 {@link #SUFFIX} 后缀的断点文件, 记录对象的 ETag、长度、
+ * 下载范围, 以及已经写入本地文件的对象区间, 顺序下载和分段并行下载都可以从断点精确续传.
+ * 文件只追加写入, 格式为按行记录:
+ * <pre>
+ * D eTag objectLength rangeStart rangeEnd fileOffset
+ * E start end
+ * </pre>
+ * 其中 E 记录的是对象上的区间 [start, end), 读取时合并为不相交的区间列表.
+ * 对象的 ETag 或长度、下载范围变化后旧的断点自然失效.
+ * 写入失败不会影响下载本身, 只会关闭断点记录.
+ * </p>
+ */
+final class DownloadCheckpoint {
+
+    private static final String TAG = "DownloadCheckpoint";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final String SUFFIX = ".cosdownload";
+
+    /** 每累计多少条区间记录 fsync 一次 */
+    private static final int SYNC_INTERVAL_RECORDS = 8;
+    /** 距离上次 fsync 超过多长时间后, 下一条记录写入时 fsync */
+    private static final long SYNC_INTERVAL_MILLIS = 1000L;
+
+    private final File checkpointFile;
+
+    /** 已写入的区间, start -> end, 互不相交 */
+    private final TreeMap<Long, Long> extents = new TreeMap<>();
+
+    private FileOutputStream outputStream;
+    private int unSyncedRecords;
+    private String savedETag;
+    private long savedObjectLength = -1L;
+    private long lastSyncTime;
+    private boolean disabled;
+
+    private DownloadCheckpoint(File checkpointFile){
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * @param downloadPath 下载文件的本地路径
+     * @return 路径为 null 时返回 null
+     */
+    static DownloadCheckpoint open(String downloadPath){
+        if(downloadPath == null){
+            return null;
+        }
+        return new DownloadCheckpoint(new File(downloadPath + SUFFIX));
+    }
+
+    /**
+     * 不知道对象当前的 ETag 时, 读取下载范围匹配的断点, 由调用方用 If-Range 或 If-Match 确认对象没有变化
+     * @return 存在与下载范围匹配且记录了 ETag 的断点时返回 true, 之后可以通过 {@link #getETag()}
+     * 和 {@link #getObjectLength()} 获取断点记录的对象信息
+     */
+    synchronized boolean loadSaved(long rangeStart, long rangeEnd, long fileOffset){
+        extents.clear();
+        savedETag = null;
+        savedObjectLength = -1L;
+        String content = readContent();
+        if(content == null || !content.startsWith("D ")){
+            return false;
+        }
+        int lineEnd = content.indexOf('\n');
+        String[] fields = content.substring(0, lineEnd < 0 ? content.length() : lineEnd).split(" ");
+        if(lineEnd < 0 || fields.length != 6 || "-".equals(fields[1])){
+            return false;
+        }
+        long objectLength;
+        try {
+            objectLength = Long.parseLong(fields[2]);
+        } catch (NumberFormatException e){
+            return false;
+        }
+        if(!parse(content, fields[1], objectLength, rangeStart, rangeEnd, fileOffset)){
+            return false;
+        }
+        savedETag = fields[1];
+        savedObjectLength = objectLength;
+        return true;
+    }
+
+    /**
+     * @return {@link #loadSaved(long, long, long)} 读到的对象 ETag
+     */
+    synchronized String getETag(){
+        return savedETag;
+    }
+
+    /**
+     * @return {@link #loadSaved(long, long, long)} 读到的对象长度
+     */
+    synchronized long getObjectLength(){
+        return savedObjectLength;
+    }
+
+    private String readContent(){
+        if(!checkpointFile.exists()){
+            return null;
+        }
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(checkpointFile);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) checkpointFile.length());
+            byte[] buffer = new byte[8 * 1024];
+            int len;
+            while ((len = inputStream.read(buffer)) != -1){
+                bytes.write(buffer, 0, len);
+            }
+            return new String(bytes.toByteArray(), UTF_8);
+        } catch (IOException e) {
+            QCloudLogger.w(TAG, "read checkpoint failed: %s", e.getMessage());
+            return null;
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    private boolean parse(String content, String eTag, long objectLength, long rangeStart, long rangeEnd, long fileOffset){
+        String header = header(eTag, objectLength, rangeStart, rangeEnd, fileOffset);
+        boolean isMatched = false;
+        int lineStart = 0;
+        int lineEnd;
+        // 没有换行结尾的最后一行可能是写了一半, 直接忽略
+        while ((lineEnd = content.indexOf('\n', lineStart)) >= 0){
+            String line = content.substring(lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+            if(line.startsWith("D ")){
+                isMatched = line.equals(header);
+                if(!isMatched) break;
+                continue;
+            }
+            String[] fields = line.split(" ");
+            if(isMatched && "E".equals(fields[0]) && fields.length == 3){
+                try {
+                    addExtent(Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+                }catch (NumberFormatException e){
+                    // 损坏的记录
+                }
+            }
+        }
+        if(!isMatched){
+            extents.clear();
+        }
+        return isMatched;
+    }
+
+    /**
+     * 开始新的断点, 覆盖旧的记录
+     */
+    synchronized void begin(String eTag, long objectLength, long rangeStart, long rangeEnd, long fileOffset){
+        closeQuietly(outputStream);
+        outputStream = null;
+        extents.clear();
+        disabled = false;
+        try {
+            outputStream = new FileOutputStream(checkpointFile, false);
+        } catch (IOException e) {
+            disable(e);
+            return;
+        }
+        append(header(eTag, objectLength, rangeStart, rangeEnd, fileOffset) + "\n");
+        sync();
+    }
+
+    /**
+     * 在已有断点后继续追加记录
+     */
+    synchronized void reopen(){
+        if(outputStream != null) return;
+        disabled = false;
+        try {
+            outputStream = new FileOutputStream(checkpointFile, true);
+        } catch (IOException e) {
+            disable(e);
+        }
+    }
+
+    /**
+     * 记录对象区间 [start, end) 已经写入本地文件
+     */
+    synchronized void recordExtent(long start, long end){
+        if(end <= start) return;
+        addExtent(start, end);
+        if(outputStream == null) return;
+        append("E " + start + " " + end + "\n");
+        unSyncedRecords ++;
+        if(unSyncedRecords >= SYNC_INTERVAL_RECORDS
+                || System.currentTimeMillis() - lastSyncTime >= SYNC_INTERVAL_MILLIS){
+            sync();
+        }
+    }
+
+    /**
+     * @return 从 from 开始连续已写入的区间的终点, from 未写入时返回 from
+     */
+    synchronized long coveredEnd(long from){
+        Map.Entry<Long, Long> entry = extents.floorEntry(from);
+        if(entry == null || entry.getValue() <= from){
+            return from;
+        }
+        return entry.getValue();
+    }
+
+    /**
+     * @return 已写入区间的最大终点, 没有记录时返回 0
+     */
+    synchronized long recordedEnd(){
+        return extents.isEmpty() ? 0L : extents.lastEntry().getValue();
+    }
+
+    /**
+     * @return [start, end) 中尚未写入的区间, 按起点排列
+     */
+    synchronized List<long[]> gaps(long start, long end){
+        List<long[]> gaps = new ArrayList<>();
+        long position = coveredEnd(start);
+        for(Map.Entry<Long, Long> entry : extents.tailMap(position, false).entrySet()){
+            if(entry.getKey() >= end) break;
+            gaps.add(new long[]{position, entry.getKey()});
+            position = entry.getValue();
+        }
+        if(position < end){
+            gaps.add(new long[]{position, end});
+        }
+        return gaps;
+    }
+
+    /**
+     * 将已写入的记录刷到存储上, 任务暂停或失败时调用
+     */
+    synchronized void flush(){
+        if(unSyncedRecords > 0){
+            sync();
+        }
+    }
+
+    /**
+     * 关闭断点文件, 保留已记录的断点
+     */
+    synchronized void close(){
+        flush();
+        closeQuietly(outputStream);
+        outputStream = null;
+    }
+
+    /**
+     * 下载完成或取消后删除断点
+     */
+    synchronized void delete(){
+        closeQuietly(outputStream);
+        outputStream = null;
+        extents.clear();
+        if(checkpointFile.exists() && !checkpointFile.delete()){
+            QCloudLogger.w(TAG, "delete checkpoint failed: %s", checkpointFile.getPath());
+        }
+    }
+
+    private void addExtent(long start, long end){
+        Map.Entry<Long, Long> floor = extents.floorEntry(start);
+        if(floor != null && floor.getValue() >= start){
+            start = floor.getKey();
+            end = Math.max(end, floor.getValue());
+        }
+        Map.Entry<Long, Long> next;
+        while ((next = extents.ceilingEntry(start)) != null && next.getKey() <= end){
+            end = Math.max(end, next.getValue());
+            extents.remove(next.getKey());
+        }
+        extents.put(start, end);
+    }
+
+    private static String header(String eTag, long objectLength, long rangeStart, long rangeEnd, long fileOffset){
+        String tag = eTag == null || eTag.length() == 0 ? "-" : eTag.replace(' ', '_');
+        return "D " + tag + " " + objectLength + " " + rangeStart + " " + rangeEnd + " " + fileOffset;
+    }
+
+    private void append(String record){
+        if(outputStream == null || disabled) return;
+        try {
+            outputStream.write(record.getBytes(UTF_8));
+        } catch (IOException e) {
+            disable(e);
+        }
+    }
+
+    private void sync(){
+        if(outputStream == null || disabled) return;
+        try {
+            outputStream.getFD().sync();
+            unSyncedRecords = 0;
+            lastSyncTime = System.currentTimeMillis();
+        } catch (IOException e) {
+            disable(e);
+        }
+    }
+
+    private void disable(IOException e){
+        QCloudLogger.w(TAG, "checkpoint disabled: %s", e.getMessage());
+        disabled = true;
+        closeQuietly(outputStream);
+        outputStream = null;
+        checkpointFile.delete();
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable){
+        if(closeable != null){
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.qcloud.core.logger.QCloudLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地磁盘上的对象缓存.
+ * <p>
+ * 以 bucket、对象路径和 versionId 为键, 每个对象保存为一个数据文件和一个记录 ETag、Last-Modified 的元数据文件,
+ * 总大小超过 maxSize 时按最近使用淘汰. 命中缓存时请求带上 If-None-Match 和 If-Modified-Since,
+ * 服务端返回 304 时直接使用本地内容, 只花一次很小的往返; 返回 200 时用新内容更新缓存.
+ * 只缓存完整的对象, 带 Range 或续传的请求不经过缓存.
+ * 请求发出时通过 {@link #acquire(String)} 固定缓存项, 直到 {@link #release(Entry)}: 期间缓存项被淘汰或替换时
+ * 数据文件延迟删除, 收到 304 时仍能读到发请求时对应的内容.
+ * 通过 {@link com.tencent.cos.xml.CosXmlSimpleService#setObjectCache(ObjectCache)} 启用.
+ * </p>
+ */
+public final class ObjectCache {
+
+    private static final String TAG = "ObjectCache";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String DATA_SUFFIX = ".data";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxSize;
+
+    /** 文件名 -> 缓存项, 按访问顺序排列 */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private boolean isLoaded;
+
+    /**
+     * @param directory 缓存目录, 请使用应用专用的目录
+     * @param maxSize 缓存的最大字节数
+     */
+    public ObjectCache(File directory, long maxSize){
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 生成缓存键
+     * @param bucket 存储桶
+     * @param path 对象路径
+     * @param versionId 版本号, 可为 null
+     */
+    public static String key(String bucket, String path, String versionId){
+        return bucket + path + (versionId == null ? "" : "?versionId=" + versionId);
+    }
+
+    /**
+     * @return 键对应的缓存项, 不存在时返回 null
+     */
+    public synchronized Entry get(String key){
+        load();
+        Entry entry = entries.get(fileName(key));
+        if(entry == null) return null;
+        if(!entry.dataFile.exists()){
+            remove(entry);
+            return null;
+        }
+        // 记录访问时间, 重启后仍能按最近使用淘汰
+        entry.dataFile.setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    /**
+     * 与 {@link #get(String)} 相同, 同时固定返回的缓存项, 用完后需要调用 {@link #release(Entry)}
+     * @return 键对应的缓存项, 不存在时返回 null
+     */
+    public synchronized Entry acquire(String key){
+        Entry entry = get(key);
+        if(entry != null){
+            entry.pins ++;
+        }
+        return entry;
+    }
+
+    /**
+     * 解除 {@link #acquire(String)} 的固定, 缓存项已被淘汰或替换时删除它的数据文件
+     */
+    public synchronized void release(Entry entry){
+        if(entry.pins > 0 && --entry.pins == 0 && entry.isRemoved){
+            entry.dataFile.delete();
+        }
+    }
+
+    /**
+     * 把已下载的文件复制到缓存中
+     */
+    public void put(String key, String eTag, String lastModified, File file){
+        if(eTag == null || file.length() > maxSize) return;
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            put(key, eTag, lastModified, inputStream);
+        } catch (IOException e) {
+            QCloudLogger.w(TAG, "cache %s failed: %s", key, e.getMessage());
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * 把已下载的数据保存到缓存中
+     */
+    public void put(String key, String eTag, String lastModified, byte[] data){
+        if(eTag == null || data.length > maxSize) return;
+        OutputStream outputStream = null;
+        try {
+            String fileName = fileName(key);
+            File tmpFile = tmpFile(fileName);
+            prepareDirectory();
+            outputStream = new FileOutputStream(tmpFile);
+            outputStream.write(data);
+            outputStream.close();
+            outputStream = null;
+            commit(key, fileName, eTag, lastModified, tmpFile);
+        } catch (IOException e) {
+            QCloudLogger.w(TAG, "cache %s failed: %s", key, e.getMessage());
+        } finally {
+            closeQuietly(outputStream);
+        }
+    }
+
+    /**
+     * 把缓存的内容复制到 destination
+     */
+    public void copyTo(Entry entry, File destination) throws IOException {
+        File parentDir = destination.getParentFile();
+        if(parentDir != null && !parentDir.exists() && !parentDir.mkdirs()){
+            throw new IOException("local file directory can not create.");
+        }
+        InputStream inputStream = null;
+        OutputStream outputStream = null;
+        try {
+            inputStream = openData(entry);
+            outputStream = new FileOutputStream(destination);
+            copy(inputStream, outputStream);
+        } catch (IOException e) {
+            invalidate(entry);
+            throw e;
+        } finally {
+            closeQuietly(inputStream);
+            closeQuietly(outputStream);
+        }
+    }
+
+    /**
+     * @return 缓存的内容
+     */
+    public byte[] read(Entry entry) throws IOException {
+        InputStream inputStream = null;
+        try {
+            inputStream = openData(entry);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) entry.length);
+            copy(inputStream, bytes);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            invalidate(entry);
+            throw e;
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * 删除键对应的缓存
+     */
+    public synchronized void remove(String key){
+        load();
+        Entry entry = entries.get(fileName(key));
+        if(entry != null){
+            remove(entry);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear(){
+        load();
+        for(Entry entry : new ArrayList<>(entries.values())){
+            remove(entry);
+        }
+    }
+
+    /**
+     * @return 缓存当前占用的字节数
+     */
+    public synchronized long getSize(){
+        load();
+        return size;
+    }
+
+    public long getMaxSize(){
+        return maxSize;
+    }
+
+    /**
+     * 数据文件可能被移走, 在锁内打开; 打开后文件再被删除或改名也不影响读取
+     */
+    private synchronized InputStream openData(Entry entry) throws IOException {
+        return new FileInputStream(entry.dataFile);
+    }
+
+    private void put(String key, String eTag, String lastModified, InputStream inputStream) throws IOException {
+        String fileName = fileName(key);
+        File tmpFile = tmpFile(fileName);
+        prepareDirectory();
+        OutputStream outputStream = new FileOutputStream(tmpFile);
+        try {
+            copy(inputStream, outputStream);
+        } finally {
+            closeQuietly(outputStream);
+        }
+        commit(key, fileName, eTag, lastModified, tmpFile);
+    }
+
+    /**
+     * 先写元数据, 再把数据文件改名到位, 只有两个文件都在时缓存项才有效
+     */
+    private synchronized void commit(String key, String fileName, String eTag, String lastModified, File tmpFile) throws IOException {
+        load();
+        Entry old = entries.get(fileName);
+        if(old != null){
+            remove(old);
+        }
+        File metaFile = new File(directory, fileName + META_SUFFIX);
+        File dataFile = new File(directory, fileName + DATA_SUFFIX);
+        OutputStream outputStream = new FileOutputStream(metaFile);
+        try {
+            String meta = key + "\n" + eTag + "\n" + (lastModified == null ? "" : lastModified) + "\n";
+            outputStream.write(meta.getBytes(UTF_8));
+        } finally {
+            closeQuietly(outputStream);
+        }
+        if(!tmpFile.renameTo(dataFile)){
+            tmpFile.delete();
+            metaFile.delete();
+            throw new IOException("rename " + tmpFile + " failed");
+        }
+        Entry entry = new Entry(fileName, dataFile, metaFile, eTag, lastModified, dataFile.length());
+        entries.put(fileName, entry);
+        size += entry.length;
+        trimToSize();
+    }
+
+    private synchronized void invalidate(Entry entry){
+        if(entries.get(entry.name) == entry){
+            remove(entry);
+        }
+    }
+
+    private void remove(Entry entry){
+        if(entries.get(entry.name) == entry){
+            entries.remove(entry.name);
+            size -= entry.length;
+        }
+        deleteFiles(entry);
+    }
+
+    private void trimToSize(){
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()){
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            size -= eldest.length;
+            deleteFiles(eldest);
+        }
+    }
+
+    /**
+     * 删除缓存项的文件, 固定中的缓存项先把数据文件移到一边, 解除固定时再删除,
+     * 这样同一个键的新内容可以立即改名到位; 进程退出时没删掉的会在下次扫描目录时清理
+     */
+    private void deleteFiles(Entry entry){
+        if(entry.isRemoved) return;
+        entry.metaFile.delete();
+        entry.isRemoved = true;
+        if(entry.pins == 0){
+            entry.dataFile.delete();
+            return;
+        }
+        File retired = tmpFile(entry.name);
+        if(entry.dataFile.renameTo(retired)){
+            entry.dataFile = retired;
+        }
+    }
+
+    /**
+     * 第一次使用时扫描缓存目录, 按数据文件的访问时间恢复淘汰顺序
+     */
+    private void load(){
+        if(isLoaded) return;
+        isLoaded = true;
+        File[] files = directory.listFiles();
+        if(files == null) return;
+        List<Entry> loaded = new ArrayList<>();
+        for(File file : files){
+            String name = file.getName();
+            if(name.endsWith(TMP_SUFFIX)){
+                file.delete();
+                continue;
+            }
+            if(!name.endsWith(META_SUFFIX)) continue;
+            String fileName = name.substring(0, name.length() - META_SUFFIX.length());
+            File dataFile = new File(directory, fileName + DATA_SUFFIX);
+            String[] meta = readMeta(file);
+            if(meta == null || !dataFile.exists()){
+                file.delete();
+                dataFile.delete();
+                continue;
+            }
+            loaded.add(new Entry(fileName, dataFile, file, meta[1], meta[2].length() == 0 ? null : meta[2], dataFile.length()));
+        }
+        Collections.sort(loaded, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                long t1 = o1.dataFile.lastModified();
+                long t2 = o2.dataFile.lastModified();
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        for(Entry entry : loaded){
+            entries.put(entry.name, entry);
+            size += entry.length;
+        }
+        trimToSize();
+    }
+
+    /**
+     * 并发写入同一个键时各自使用不同的临时文件
+     */
+    private File tmpFile(String fileName){
+        return new File(directory, fileName + "." + System.nanoTime() + TMP_SUFFIX);
+    }
+
+    /**
+     * 第一次扫描目录会清理临时文件, 必须在写临时文件之前完成
+     */
+    private synchronized void prepareDirectory() throws IOException {
+        load();
+        if(!directory.exists() && !directory.mkdirs()){
+            throw new IOException("cache directory can not create.");
+        }
+    }
+
+    private static String[] readMeta(File metaFile){
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(metaFile);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            copy(inputStream, bytes);
+            String[] lines = new String(bytes.toByteArray(), UTF_8).split("\n", -1);
+            return lines.length >= 3 ? lines : null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    private static String fileName(String key){
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+            byte[] digest = messageDigest.digest(key.getBytes(UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for(byte b : digest){
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int len;
+        while ((len = inputStream.read(buffer)) != -1){
+            outputStream.write(buffer, 0, len);
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable){
+        if(closeable != null){
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * 缓存项
+     */
+    public static final class Entry {
+        /** 缓存键对应的文件名, 不含后缀 */
+        private final String name;
+        private final File metaFile;
+        private final String eTag;
+        private final String lastModified;
+        private final long length;
+
+        /** 以下字段由 ObjectCache 的锁保护 */
+        private File dataFile;
+        private int pins;
+        private boolean isRemoved;
+
+        Entry(String name, File dataFile, File metaFile, String eTag, String lastModified, long length){
+            this.name = name;
+            this.dataFile = dataFile;
+            this.metaFile = metaFile;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
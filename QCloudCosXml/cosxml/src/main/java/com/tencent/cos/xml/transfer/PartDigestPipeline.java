@@ -0,0 +1,145 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.qcloud.core.common.QCloudDigistListener;
+import com.tencent.qcloud.core.http.RequestBodySerializer;
+import com.tencent.qcloud.core.logger.QCloudLogger;
+import com.tencent.qcloud.core.task.TaskExecutors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import okhttp3.RequestBody;
+
+/**
+ * 分片预处理流水线.
+ * <p>
+ * 在 {@link TaskExecutors#PREPARE_EXECUTOR} 中提前读取分片并计算 Content-MD5,
+ * 分片 N 在发送时, 后续 readAhead 个分片已经在计算, 上传线程不会阻塞在读盘和计算 MD5 上.
+ * 预处理只保存 MD5 结果, 不缓存分片数据, 刚读过的数据在发送时通常仍在系统页缓存中.
+ * </p>
+ */
+final class PartDigestPipeline {
+
+    private static final String TAG = "PartDigestPipeline";
+
+    interface OnPreparedListener {
+        /**
+         * @param md5 分片的 Content-MD5, 计算失败时为 null, 此时由请求自己计算
+         */
+        void onPrepared(int index, String md5);
+    }
+
+    private final File srcFile;
+    private final PartStateTable partStateTable;
+    private final int readAhead;
+    private final ConcurrentHashMap<Integer, DigestTask> digestTasks = new ConcurrentHashMap<>();
+    private volatile boolean isCanceled;
+
+    PartDigestPipeline(String srcPath, PartStateTable partStateTable, int readAhead){
+        this.srcFile = new File(srcPath);
+        this.partStateTable = partStateTable;
+        this.readAhead = Math.max(readAhead, 1);
+    }
+
+    /**
+     * 获取分片的 MD5, 计算完成后回调; 若已计算完成则在当前线程立即回调
+     */
+    void prepare(int index, OnPreparedListener listener){
+        DigestTask digestTask = schedule(index);
+        if(digestTask == null){
+            listener.onPrepared(index, null);
+            return;
+        }
+        digestTask.setListener(listener);
+    }
+
+    /**
+     * 从 fromIndex 开始, 为后续 readAhead 个未完成的分片提前计算 MD5
+     */
+    void prefetch(int fromIndex){
+        int index = fromIndex;
+        for(int i = 0; i < readAhead && index >= 0; i ++){
+            index = partStateTable.nextPending(index);
+            if(index < 0) break;
+            schedule(index);
+            index ++;
+        }
+    }
+
+    void cancel(){
+        isCanceled = true;
+        digestTasks.clear();
+    }
+
+    private DigestTask schedule(int index){
+        if(isCanceled) return null;
+        DigestTask digestTask = digestTasks.get(index);
+        if(digestTask != null){
+            return digestTask;
+        }
+        digestTask = new DigestTask(index);
+        DigestTask existed = digestTasks.putIfAbsent(index, digestTask);
+        if(existed != null){
+            return existed;
+        }
+        try {
+            TaskExecutors.PREPARE_EXECUTOR.execute(digestTask);
+        } catch (RejectedExecutionException e){
+            digestTasks.remove(index);
+            return null;
+        }
+        return digestTask;
+    }
+
+    private final class DigestTask implements Runnable {
+
+        private final int index;
+        private boolean isDone;
+        private String md5;
+        private OnPreparedListener listener;
+
+        DigestTask(int index){
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            String result = null;
+            if(!isCanceled){
+                try {
+                    RequestBody body = RequestBodySerializer.file(null, srcFile,
+                            partStateTable.offset(index), partStateTable.size(index)).body();
+                    if(body instanceof QCloudDigistListener){
+                        result = ((QCloudDigistListener) body).onGetMd5();
+                    }
+                } catch (IOException e) {
+                    QCloudLogger.w(TAG, "calculate md5 of part %d failed: %s", partStateTable.partNumber(index), e.getMessage());
+                }
+            }
+            OnPreparedListener callback;
+            synchronized (this){
+                isDone = true;
+                md5 = result;
+                callback = listener;
+            }
+            if(callback != null){
+                digestTasks.remove(index);
+                callback.onPrepared(index, result);
+            }
+        }
+
+        void setListener(OnPreparedListener onPreparedListener){
+            boolean done;
+            synchronized (this){
+                listener = onPreparedListener;
+                done = isDone;
+            }
+            if(done){
+                digestTasks.remove(index);
+                onPreparedListener.onPrepared(index, md5);
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 分片状态表.
+ * <p>
+ * 以并列的基本类型数组记录每个分片的偏移、长度、完成位图、ETag 和已发送的字节数,
+ * 分片下标 index 从 0 开始, 对应 partNumber = index + 1.
+ * 所有状态更新都是原子的, 可以在多个分片回调线程中并发调用.
+ * </p>
+ */
+final class PartStateTable {
+
+    private final long[] offsets;
+    private final long[] sizes;
+    /** 完成位图, 每个 long 记录 64 个分片 */
+    private final AtomicLongArray completedBits;
+    private final AtomicReferenceArray<String> eTags;
+    /** 每个分片已发送的字节数 */
+    private final AtomicLongArray progress;
+    private final AtomicInteger completedCount = new AtomicInteger(0);
+
+    private PartStateTable(long[] offsets, long[] sizes){
+        int count = offsets.length;
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.completedBits = new AtomicLongArray((count + 63) >>> 6);
+        this.eTags = new AtomicReferenceArray<>(count);
+        this.progress = new AtomicLongArray(count);
+    }
+
+    /**
+     * 按固定分片大小切分, 最后一块包含剩余的所有数据
+     * @param length 数据总长度
+     * @param sliceSize 分片大小
+     * @return PartStateTable
+     */
+    static PartStateTable split(long length, long sliceSize){
+        return split(new long[0], length, sliceSize);
+    }
+
+    /**
+     * 前面若干分片的长度已确定（如已上传的分片）, 剩余数据再按固定分片大小切分
+     * @param leadingSizes 已确定长度的前置分片
+     * @param length 数据总长度
+     * @param sliceSize 分片大小
+     * @return PartStateTable
+     */
+    static PartStateTable split(long[] leadingSizes, long length, long sliceSize){
+        long leadingLength = 0L;
+        for(long size : leadingSizes){
+            leadingLength += size;
+        }
+        long remainLength = Math.max(length - leadingLength, 0L);
+        int remainCount = (int) (remainLength / sliceSize);
+        if(remainCount == 0 && (remainLength > 0 || leadingSizes.length == 0)){
+            remainCount = 1;
+        }
+        int count = leadingSizes.length + remainCount;
+        long[] offsets = new long[count];
+        long[] sizes = new long[count];
+        long offset = 0L;
+        for(int i = 0; i < count; i ++){
+            if(i < leadingSizes.length){
+                sizes[i] = leadingSizes[i];
+            }else if(i < count - 1){
+                sizes[i] = sliceSize;
+            }else {
+                sizes[i] = length - offset;
+            }
+            offsets[i] = offset;
+            offset += sizes[i];
+        }
+        return new PartStateTable(offsets, sizes);
+    }
+
+    /**
+     * 把若干互不相交的区间各自按固定大小切分, 用于只下载断点中尚未写入的部分
+     * @param extents 区间列表, 每项为 {start, end}, 不包含 end
+     * @param sliceSize 分片大小
+     * @return PartStateTable
+     */
+    static PartStateTable split(List<long[]> extents, long sliceSize){
+        List<long[]> parts = new ArrayList<>();
+        for(long[] extent : extents){
+            for(long offset = extent[0]; offset < extent[1]; offset += sliceSize){
+                parts.add(new long[]{offset, Math.min(sliceSize, extent[1] - offset)});
+            }
+        }
+        long[] offsets = new long[parts.size()];
+        long[] sizes = new long[parts.size()];
+        for(int i = 0; i < offsets.length; i ++){
+            offsets[i] = parts.get(i)[0];
+            sizes[i] = parts.get(i)[1];
+        }
+        return new PartStateTable(offsets, sizes);
+    }
+
+    int size(){
+        return offsets.length;
+    }
+
+    int partNumber(int index){
+        return index + 1;
+    }
+
+    /**
+     * @param partNumber 分片编号
+     * @return 分片下标, 若不在表中则返回 -1
+     */
+    int indexOf(int partNumber){
+        int index = partNumber - 1;
+        return index >= 0 && index < offsets.length ? index : -1;
+    }
+
+    long offset(int index){
+        return offsets[index];
+    }
+
+    long size(int index){
+        return sizes[index];
+    }
+
+    /**
+     * 分片最后一个字节的位置, 用于分片拷贝的 range
+     */
+    long end(int index){
+        return offsets[index] + sizes[index] - 1;
+    }
+
+    boolean isCompleted(int index){
+        return (completedBits.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * 标记分片完成
+     * @return 若是首次标记则返回 true
+     */
+    boolean markCompleted(int index, String eTag){
+        eTags.set(index, eTag);
+        int word = index >>> 6;
+        long mask = 1L << index;
+        while (true){
+            long bits = completedBits.get(word);
+            if((bits & mask) != 0){
+                return false;
+            }
+            if(completedBits.compareAndSet(word, bits, bits | mask)){
+                completedCount.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    String eTag(int index){
+        return eTags.get(index);
+    }
+
+    int completedCount(){
+        return completedCount.get();
+    }
+
+    boolean isAllCompleted(){
+        return completedCount.get() == offsets.length;
+    }
+
+    /**
+     * 从 fromIndex 开始查找下一个未完成的分片
+     * @return 分片下标, 没有则返回 -1
+     */
+    int nextPending(int fromIndex){
+        for(int i = fromIndex; i < offsets.length; i ++){
+            if(!isCompleted(i)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 所有已完成分片的总长度
+     */
+    long completedLength(){
+        long length = 0L;
+        for(int i = 0; i < offsets.length; i ++){
+            if(isCompleted(i)){
+                length += sizes[i];
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 分片已传输的字节数
+     */
+    long progress(int index){
+        return progress.get(index);
+    }
+
+    /**
+     * 更新分片的发送进度
+     * @return 相对于上一次进度的增量
+     */
+    long updateProgress(int index, long complete){
+        return complete - progress.getAndSet(index, complete);
+    }
+
+    /**
+     * 按分片编号顺序填充 CompleteMultiUploadRequest
+     */
+    void fillCompleteRequest(CompleteMultiUploadRequest completeMultiUploadRequest){
+        for(int i = 0; i < offsets.length; i ++){
+            completeMultiUploadRequest.setPartNumberAndETag(partNumber(i), eTags.get(i));
+        }
+    }
+}
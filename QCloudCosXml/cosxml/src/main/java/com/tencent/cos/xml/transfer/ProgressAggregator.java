@@ -0,0 +1,120 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分片传输的进度汇总.
+ * <p>
+ * 各分片线程把增量累加到按线程分散的计数槽中, 互不竞争同一个计数器;
+ * 只有距离上次回调超过 intervalMillis, 或进度增加超过 stepPercent 时才回调一次,
+ * 由 CAS 抢到回调权的线程负责回调, 只有回调的线程进入锁, 保证回调的进度不倒退, 累加路径上不加锁、不分配对象.
+ * </p>
+ */
+final class ProgressAggregator {
+
+    /** 每个计数槽占用的 long 数, 避免不同槽落在同一缓存行 */
+    private static final int CELL_PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int cellMask;
+
+    private final CosXmlProgressListener progressListener;
+    private final long intervalNanos;
+    private final float stepPercent;
+
+    private volatile long total;
+    private final AtomicLong lastReportTime;
+    private volatile long lastReportBytes;
+
+    /**
+     * @param progressListener 汇总后的进度回调
+     * @param total 总长度, 未知时为 -1
+     * @param intervalMillis 两次回调的最小间隔
+     * @param stepPercent 进度增加超过该百分比时不受间隔限制, 小于等于 0 表示不启用
+     */
+    ProgressAggregator(CosXmlProgressListener progressListener, long total, long intervalMillis, float stepPercent){
+        int cellCount = 1;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        while (cellCount < cpus * 2 && cellCount < 64){
+            cellCount <<= 1;
+        }
+        this.cells = new AtomicLongArray(cellCount * CELL_PADDING);
+        this.cellMask = cellCount - 1;
+        this.progressListener = progressListener;
+        this.total = total;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(intervalMillis, 0));
+        this.stepPercent = stepPercent;
+        this.lastReportTime = new AtomicLong(System.nanoTime() - intervalNanos);
+    }
+
+    void setTotal(long total){
+        this.total = total;
+    }
+
+    long getTotal(){
+        return total;
+    }
+
+    /**
+     * 累加进度增量, 满足回调条件时回调
+     */
+    void add(long delta){
+        if(delta != 0){
+            cells.addAndGet(cellIndex(), delta);
+        }
+        long now = System.nanoTime();
+        long lastTime = lastReportTime.get();
+        long transferred = -1;
+        if(now - lastTime < intervalNanos){
+            long target = total;
+            if(stepPercent <= 0 || target <= 0){
+                return;
+            }
+            transferred = sum();
+            if((transferred - lastReportBytes) * 100 < stepPercent * target){
+                return;
+            }
+        }
+        if(!lastReportTime.compareAndSet(lastTime, now)){
+            // 其他线程正在回调
+            return;
+        }
+        report(transferred < 0 ? sum() : transferred);
+    }
+
+    /**
+     * 立即回调当前进度, 传输结束时调用
+     */
+    void flush(){
+        lastReportTime.set(System.nanoTime());
+        report(sum());
+    }
+
+    long sum(){
+        long sum = 0L;
+        for(int i = 0, length = cells.length(); i < length; i += CELL_PADDING){
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    private synchronized void report(long transferred){
+        if(transferred < lastReportBytes){
+            return;
+        }
+        lastReportBytes = transferred;
+        if(progressListener != null){
+            progressListener.onProgress(transferred, total);
+        }
+    }
+
+    private int cellIndex(){
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & cellMask) * CELL_PADDING;
+    }
+}
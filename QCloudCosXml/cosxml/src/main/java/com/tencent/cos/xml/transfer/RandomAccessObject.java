@@ -0,0 +1,287 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.object.GetObjectStreamRequest;
+import com.tencent.cos.xml.model.object.HeadObjectRequest;
+import com.tencent.cos.xml.model.object.HeadObjectResult;
+import com.tencent.qcloud.core.logger.QCloudLogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.Buffer;
+
+/**
+ * 按需读取对象任意位置的随机访问读取器.
+ * <p>
+ * 对象按 blockSize 分块, 读取时按块发起带 Range 的 GET, 读到的块放进按最近使用淘汰的有界缓存,
+ * 重复或相邻的读取直接从内存返回. 连续的顺序读取会逐步放大预读的块数, 一次请求取回多个块;
+ * 随机读取时只取所需的块.
+ * 打开时通过 HEAD 获取对象的 ETag 和长度, 之后每次 GET 都带上 If-Match,
+ * 对象被修改后读取失败并清空缓存, 不会返回新旧混合的数据.
+ * 接口与 SeekableByteChannel 相同, 但 minSdkVersion 低于 24, 这里只实现 {@link ReadableByteChannel}.
+ * </p>
+ */
+public final class RandomAccessObject implements ReadableByteChannel {
+
+    private static final String TAG = "RandomAccessObject";
+
+    static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    static final int DEFAULT_MAX_CACHED_BLOCKS = 32;
+    /** 顺序读取时一次最多预读的块数 */
+    private static final int MAX_READ_AHEAD_BLOCKS = 8;
+
+    private final CosXmlSimpleService cosXmlService;
+    private final String bucket;
+    private final String cosPath;
+    private final int blockSize;
+    /** 预读的块数上限, 不超过缓存的块数, 预读的块不能把正在读取的块挤出缓存 */
+    private final int maxReadAheadBlocks;
+
+    private String eTag;
+    private long size;
+
+    /** blockIndex -> 块数据, 按访问顺序排列 */
+    private final BlockCache blocks;
+    private long position;
+    /** 上一次读取的终点, 下一次从这里开始读取视为顺序读取 */
+    private long lastReadEnd = -1;
+    private int readAheadBlocks = 1;
+    private boolean isClosed;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param blockSize 每次请求和缓存的块大小, 必须大于 0
+     * @param maxCachedBlocks 最多缓存的块数, 必须大于 0; 小于 {@link #MAX_READ_AHEAD_BLOCKS} 时预读的块数也不超过该值
+     * @throws IllegalArgumentException blockSize 或 maxCachedBlocks 不大于 0
+     */
+    RandomAccessObject(CosXmlSimpleService cosXmlService, String bucket, String cosPath, int blockSize, int maxCachedBlocks){
+        if(blockSize <= 0){
+            throw new IllegalArgumentException("blockSize must be > 0: " + blockSize);
+        }
+        if(maxCachedBlocks <= 0){
+            throw new IllegalArgumentException("maxCachedBlocks must be > 0: " + maxCachedBlocks);
+        }
+        this.cosXmlService = cosXmlService;
+        this.bucket = bucket;
+        this.cosPath = cosPath;
+        this.blockSize = blockSize;
+        this.maxReadAheadBlocks = Math.min(MAX_READ_AHEAD_BLOCKS, maxCachedBlocks);
+        this.blocks = new BlockCache(maxCachedBlocks);
+    }
+
+    /**
+     * 获取对象的 ETag 和长度
+     */
+    void open() throws CosXmlClientException, CosXmlServiceException {
+        HeadObjectRequest headObjectRequest = new HeadObjectRequest(bucket, cosPath);
+        HeadObjectResult headObjectResult = cosXmlService.headObject(headObjectRequest);
+        String contentLength = header(headObjectResult.headers, "Content-Length");
+        eTag = header(headObjectResult.headers, "ETag");
+        try {
+            size = Long.parseLong(contentLength);
+        } catch (NumberFormatException e) {
+            throw new CosXmlClientException(ClientErrorCode.INTERNAL_ERROR.getCode(), "invalid Content-Length: " + contentLength);
+        }
+    }
+
+    /**
+     * @return 对象的长度
+     */
+    public long size(){
+        return size;
+    }
+
+    /**
+     * @return 打开时对象的 ETag
+     */
+    public String getETag(){
+        return eTag;
+    }
+
+    public synchronized long position(){
+        return position;
+    }
+
+    public synchronized RandomAccessObject position(long newPosition){
+        if(newPosition < 0){
+            throw new IllegalArgumentException("position < 0");
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    /**
+     * 从当前位置读取, 读取后位置后移
+     * @return 读到的字节数, 已到对象末尾时返回 -1
+     */
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        int readLen;
+        if(dst.hasArray()){
+            readLen = read(position, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            if(readLen > 0){
+                dst.position(dst.position() + readLen);
+            }
+        }else {
+            byte[] bytes = new byte[Math.min(dst.remaining(), blockSize)];
+            readLen = read(position, bytes, 0, bytes.length);
+            if(readLen > 0){
+                dst.put(bytes, 0, readLen);
+            }
+        }
+        if(readLen > 0){
+            position += readLen;
+        }
+        return readLen;
+    }
+
+    /**
+     * 从指定位置读取, 不改变当前位置
+     * @param position 对象上的位置
+     * @return 读到的字节数, 已到对象末尾时返回 -1
+     */
+    public synchronized int read(long position, byte[] dst, int offset, int length) throws IOException {
+        if(isClosed){
+            throw new ClosedChannelException();
+        }
+        if(position < 0){
+            throw new IllegalArgumentException("position < 0");
+        }
+        if(position >= size){
+            return -1;
+        }
+        if(length == 0){
+            return 0;
+        }
+        if(position == lastReadEnd){
+            readAheadBlocks = Math.min(readAheadBlocks * 2, maxReadAheadBlocks);
+        }else {
+            readAheadBlocks = 1;
+        }
+        int readLen = 0;
+        long end = Math.min(size, position + length);
+        while (position < end){
+            long blockIndex = position / blockSize;
+            byte[] block = getBlock(blockIndex);
+            int blockOffset = (int) (position - blockIndex * blockSize);
+            int copyLen = (int) Math.min(block.length - blockOffset, end - position);
+            System.arraycopy(block, blockOffset, dst, offset + readLen, copyLen);
+            readLen += copyLen;
+            position += copyLen;
+        }
+        lastReadEnd = position;
+        return readLen;
+    }
+
+    /**
+     * @return 从缓存中命中的块数
+     */
+    public synchronized long getHitCount(){
+        return hitCount;
+    }
+
+    /**
+     * @return 需要发起请求的块数
+     */
+    public synchronized long getMissCount(){
+        return missCount;
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return !isClosed;
+    }
+
+    @Override
+    public synchronized void close() {
+        isClosed = true;
+        blocks.clear();
+    }
+
+    private byte[] getBlock(long blockIndex) throws IOException {
+        byte[] block = blocks.get(blockIndex);
+        if(block != null){
+            hitCount ++;
+            return block;
+        }
+        missCount ++;
+        // 预读的块遇到已缓存的块或对象末尾为止, 一次请求取回
+        long blockCount = (size + blockSize - 1) / blockSize;
+        long lastIndex = blockIndex;
+        while (lastIndex + 1 < blockCount && lastIndex + 1 < blockIndex + readAheadBlocks
+                && !blocks.containsKey(lastIndex + 1)){
+            lastIndex ++;
+        }
+        long start = blockIndex * blockSize;
+        long end = Math.min(size, (lastIndex + 1) * blockSize);
+        Buffer buffer = fetch(start, end);
+        for(long index = blockIndex; index <= lastIndex; index ++){
+            int length = (int) Math.min(blockSize, end - index * blockSize);
+            byte[] data = buffer.readByteArray(length);
+            blocks.put(index, data);
+            if(index == blockIndex){
+                block = data;
+            }
+        }
+        return block;
+    }
+
+    private Buffer fetch(long start, long end) throws IOException {
+        Buffer buffer = new Buffer();
+        GetObjectStreamRequest getObjectStreamRequest = new GetObjectStreamRequest(bucket, cosPath, buffer);
+        getObjectStreamRequest.setRange(start, end - 1);
+        getObjectStreamRequest.setIfMatch(eTag);
+        try {
+            cosXmlService.getObjectStream(getObjectStreamRequest);
+        } catch (CosXmlServiceException e) {
+            if(e.getStatusCode() == 412){
+                QCloudLogger.w(TAG, "%s changed since opened, etag %s", cosPath, eTag);
+                blocks.clear();
+                throw new IOException("object changed since opened: " + cosPath, e);
+            }
+            throw new IOException(e);
+        } catch (CosXmlClientException e) {
+            throw new IOException(e);
+        }
+        if(buffer.size() != end - start){
+            throw new IOException("unexpected range length " + buffer.size() + ", expected " + (end - start));
+        }
+        return buffer;
+    }
+
+    private static String header(Map<String, List<String>> headers, String name){
+        if(headers == null) return null;
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * 最多保留 capacity 个块, 超出时淘汰最久未访问的块
+     */
+    private static final class BlockCache extends LinkedHashMap<Long, byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        BlockCache(int capacity){
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -27,19 +27,82 @@ public class ResponseBytesConverter<T> extends ResponseBodyConverter<T> {
 
     private GetObjectBytesResult getObjectBytesResult;
 
+    private ObjectCache objectCache;
+    private String cacheKey;
+    private ObjectCache.Entry cachedEntry;
+
     public ResponseBytesConverter(GetObjectBytesResult getObjectBytesResult) {
 
         this.getObjectBytesResult = getObjectBytesResult;
     }
 
+    /**
+     * 启用对象缓存
+     * @param cachedEntry 请求时通过 {@link ObjectCache#acquire(String)} 固定的缓存项, 服务端返回 304 时使用, 可为 null;
+     *                    转换结束或请求结束时通过 {@link #releaseCachedEntry()} 解除固定
+     */
+    public void setObjectCache(ObjectCache objectCache, String cacheKey, ObjectCache.Entry cachedEntry){
+        this.objectCache = objectCache;
+        this.cacheKey = cacheKey;
+        this.cachedEntry = cachedEntry;
+    }
+
     @Override
     public T convert(HttpResponse<T> response) throws QCloudClientException, QCloudServiceException {
+        try {
+            return convertResponse(response);
+        } finally {
+            releaseCachedEntry();
+        }
+    }
+
+    /**
+     * 解除缓存项的固定, 可以重复调用
+     */
+    public void releaseCachedEntry(){
+        ObjectCache.Entry entry;
+        synchronized (this){
+            entry = cachedEntry;
+            cachedEntry = null;
+        }
+        if(entry != null){
+            objectCache.release(entry);
+        }
+    }
+
+    private T convertResponse(HttpResponse<T> response) throws QCloudClientException, QCloudServiceException {
+        ObjectCache.Entry entry;
+        synchronized (this){
+            entry = cachedEntry;
+        }
+        if(objectCache != null && entry != null && response.code() == 304){
+            getObjectBytesResult.httpCode = response.code();
+            getObjectBytesResult.httpMessage = response.message();
+            getObjectBytesResult.headers = response.headers();
+            try {
+                getObjectBytesResult.data = objectCache.read(entry);
+            } catch (IOException e) {
+                throw new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(), e);
+            }
+            return result();
+        }
         parseCOSXMLError(response);
         getObjectBytesResult.parseResponseBody(response);
+        if(objectCache != null && response.code() == 200 && getObjectBytesResult.data != null){
+            objectCache.put(cacheKey, response.header("ETag"), response.header("Last-Modified"), getObjectBytesResult.data);
+        }
+        return result();
+    }
+
+    /**
+     * T 由 CosXmlSimpleService 按请求的结果类型指定, 总是 GetObjectBytesResult
+     */
+    @SuppressWarnings("unchecked")
+    private T result(){
         return (T) getObjectBytesResult;
     }
 
-    private void parseCOSXMLError(HttpResponse response) throws CosXmlServiceException, CosXmlClientException {
+    private void parseCOSXMLError(HttpResponse<?> response) throws CosXmlServiceException, CosXmlClientException {
         int httpCode = response.code();
         if(httpCode >= 200 && httpCode < 300)return;
         String message = response.message();
@@ -4,6 +4,7 @@ import com.tencent.cos.xml.MTAProxy;
 import com.tencent.cos.xml.common.ClientErrorCode;
 import com.tencent.cos.xml.exception.CosXmlClientException;
 import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.object.GetObjectRequest;
 import com.tencent.cos.xml.model.object.GetObjectResult;
 import com.tencent.cos.xml.model.tag.CosError;
 import com.tencent.qcloud.core.common.QCloudClientException;
@@ -13,6 +14,7 @@ import com.tencent.qcloud.core.http.ResponseFileConverter;
 
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Locale;
@@ -24,19 +26,117 @@ import java.util.Locale;
 public class ResponseFileBodySerializer<T2> extends ResponseFileConverter<T2> {
 
     private GetObjectResult getObjectResult;
+    private final String absolutePath;
+
+    private long restartFileOffset = -1L;
+    private GetObjectRequest.OnResponseStartListener onResponseStartListener;
+
+    private ObjectCache objectCache;
+    private String cacheKey;
+    private ObjectCache.Entry cachedEntry;
+
     public ResponseFileBodySerializer(GetObjectResult getObjectResult, String absolutePath, long start){
         super(absolutePath, start);
         this.getObjectResult = getObjectResult;
+        this.absolutePath = absolutePath;
     }
+
+    public ResponseFileBodySerializer(GetObjectResult getObjectResult, String absolutePath, long start, boolean writeInPlace){
+        super(absolutePath, start, writeInPlace);
+        this.getObjectResult = getObjectResult;
+        this.absolutePath = absolutePath;
+    }
+
+    /**
+     * 请求带 If-Range 时设置, 服务端返回整个对象时从 restartFileOffset 开始重写
+     */
+    public void setRestartFileOffset(long restartFileOffset){
+        this.restartFileOffset = restartFileOffset;
+    }
+
+    public void setOnResponseStartListener(GetObjectRequest.OnResponseStartListener onResponseStartListener){
+        this.onResponseStartListener = onResponseStartListener;
+    }
+
+    /**
+     * 启用对象缓存, 只用于下载完整对象的请求
+     * @param cachedEntry 请求时通过 {@link ObjectCache#acquire(String)} 固定的缓存项, 服务端返回 304 时使用, 可为 null;
+     *                    转换结束或请求结束时通过 {@link #releaseCachedEntry()} 解除固定
+     */
+    public void setObjectCache(ObjectCache objectCache, String cacheKey, ObjectCache.Entry cachedEntry){
+        this.objectCache = objectCache;
+        this.cacheKey = cacheKey;
+        this.cachedEntry = cachedEntry;
+    }
+
     @Override
-    public T2 convert(HttpResponse response) throws QCloudClientException, QCloudServiceException {
+    public T2 convert(HttpResponse<T2> response) throws QCloudClientException, QCloudServiceException {
+        try {
+            return convertResponse(response);
+        } finally {
+            releaseCachedEntry();
+        }
+    }
+
+    /**
+     * 解除缓存项的固定, 可以重复调用
+     */
+    public void releaseCachedEntry(){
+        ObjectCache.Entry entry;
+        synchronized (this){
+            entry = cachedEntry;
+            cachedEntry = null;
+        }
+        if(entry != null){
+            objectCache.release(entry);
+        }
+    }
+
+    private T2 convertResponse(HttpResponse<T2> response) throws QCloudClientException, QCloudServiceException {
+        ObjectCache.Entry entry;
+        synchronized (this){
+            entry = cachedEntry;
+        }
+        if(objectCache != null && entry != null && response.code() == 304){
+            getObjectResult.parseResponseBody(response);
+            try {
+                objectCache.copyTo(entry, new File(absolutePath));
+            } catch (IOException e) {
+                throw new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(), e);
+            }
+            return result();
+        }
         parseCOSXMLError(response);
         getObjectResult.parseResponseBody(response);
         super.convert(response);
+        if(objectCache != null){
+            File file = new File(absolutePath);
+            // 只缓存完整写入的对象
+            if(response.code() == 200 && file.length() == response.contentLength()){
+                objectCache.put(cacheKey, response.header("ETag"), response.header("Last-Modified"), file);
+            }
+        }
+        return result();
+    }
+
+    /**
+     * T2 由 CosXmlSimpleService 按请求的结果类型指定, 总是 GetObjectResult
+     */
+    @SuppressWarnings("unchecked")
+    private T2 result(){
         return (T2) getObjectResult;
     }
 
-    private void parseCOSXMLError(HttpResponse response) throws CosXmlServiceException, CosXmlClientException {
+    @Override
+    protected long onResponseStart(HttpResponse<T2> response, long offset) throws QCloudClientException, QCloudServiceException {
+        boolean isRestarted = restartFileOffset >= 0 && response.code() == 200;
+        if(onResponseStartListener != null){
+            onResponseStartListener.onResponseStart(response.code(), response.headers(), isRestarted);
+        }
+        return isRestarted ? restartFileOffset : offset;
+    }
+
+    private void parseCOSXMLError(HttpResponse<?> response) throws CosXmlServiceException, CosXmlClientException {
         int httpCode = response.code();
         if(httpCode >= 200 && httpCode < 300)return;
         String message = response.message();
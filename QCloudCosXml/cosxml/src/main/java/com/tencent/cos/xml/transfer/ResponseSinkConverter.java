@@ -0,0 +1,127 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.MTAProxy;
+import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+import com.tencent.cos.xml.model.object.GetObjectStreamResult;
+import com.tencent.cos.xml.model.tag.CosError;
+import com.tencent.qcloud.core.common.QCloudClientException;
+import com.tencent.qcloud.core.common.QCloudServiceException;
+import com.tencent.qcloud.core.http.HttpResponse;
+import com.tencent.qcloud.core.http.ResponseBodyConverter;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * 把下载的字节流按块写入调用方提供的 {@link Sink}, 不经过本地文件.
+ * <p>
+ * 每块数据都同步写入 sink 后才继续读取网络数据, sink 慢时自然形成反压, 内存占用不超过一块.
+ * 不实现 {@link com.tencent.qcloud.core.http.ProgressBody}, 因此不会在重试拦截器中被转换,
+ * 已写入 sink 的数据不会因为重试而重复写入.
+ * </p>
+ */
+public class ResponseSinkConverter<T> extends ResponseBodyConverter<T> {
+
+    private static final long CHUNK_SIZE = 64 * 1024;
+
+    private final GetObjectStreamResult getObjectStreamResult;
+    private final Sink sink;
+    private final CosXmlProgressListener progressListener;
+
+    public ResponseSinkConverter(GetObjectStreamResult getObjectStreamResult, Sink sink,
+                                 CosXmlProgressListener progressListener) {
+        this.getObjectStreamResult = getObjectStreamResult;
+        this.sink = sink;
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public T convert(HttpResponse<T> response) throws QCloudClientException, QCloudServiceException {
+        parseCOSXMLError(response);
+        getObjectStreamResult.parseResponseBody(response);
+        if(sink == null){
+            throw new CosXmlClientException(ClientErrorCode.INVALID_ARGUMENT.getCode(), "sink must not be null");
+        }
+        InputStream inputStream = response.byteStream();
+        if(inputStream == null){
+            return result();
+        }
+        long contentLength = response.contentLength();
+        BufferedSource source = Okio.buffer(Okio.source(inputStream));
+        Buffer buffer = new Buffer();
+        long transferred = 0L;
+        try {
+            long readLen;
+            while ((readLen = source.read(buffer, CHUNK_SIZE)) != -1){
+                sink.write(buffer, readLen);
+                transferred += readLen;
+                if(progressListener != null){
+                    progressListener.onProgress(transferred, contentLength);
+                }
+            }
+            sink.flush();
+        } catch (IOException e) {
+            throw new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(), e);
+        } finally {
+            getObjectStreamResult.bytesTransferred = transferred;
+            try {
+                source.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        return result();
+    }
+
+    /**
+     * T 由 CosXmlSimpleService 按请求的结果类型指定, 总是 GetObjectStreamResult
+     */
+    @SuppressWarnings("unchecked")
+    private T result(){
+        return (T) getObjectStreamResult;
+    }
+
+    private void parseCOSXMLError(HttpResponse<?> response) throws CosXmlServiceException, CosXmlClientException {
+        int httpCode = response.code();
+        if(httpCode >= 200 && httpCode < 300)return;
+        String message = response.message();
+        CosXmlServiceException cosXmlServiceException = new CosXmlServiceException(message);
+        cosXmlServiceException.setStatusCode(httpCode);
+        cosXmlServiceException.setRequestId(response.header("x-cos-request-id"));
+        InputStream inputStream = response.byteStream();
+        if(inputStream != null){
+            CosError cosError = new CosError();
+            try {
+                XmlSlimParser.parseError(inputStream, cosError);
+                cosXmlServiceException.setErrorCode(cosError.code);
+                cosXmlServiceException.setErrorMessage(cosError.message);
+                cosXmlServiceException.setRequestId(cosError.requestId);
+                cosXmlServiceException.setServiceName(cosError.resource);
+            } catch (XmlPullParserException e) {
+                String reportMessage = String.format(Locale.ENGLISH, "%d %s", ClientErrorCode.SERVERERROR.getCode(), e.getCause() == null ?
+                        e.getClass().getSimpleName() : e.getCause().getClass().getSimpleName());
+                MTAProxy.getInstance().reportCosXmlClientException(ResponseSinkConverter.class.getSimpleName(), reportMessage);
+                throw new CosXmlClientException(ClientErrorCode.SERVERERROR.getCode(), e);
+            } catch (IOException e) {
+                String reportMessage = String.format(Locale.ENGLISH, "%d %s", ClientErrorCode.IO_ERROR.getCode(), e.getCause() == null ?
+                        e.getClass().getSimpleName() : e.getCause().getClass().getSimpleName());
+                MTAProxy.getInstance().reportCosXmlClientException(ResponseSinkConverter.class.getSimpleName(), reportMessage);
+                throw new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(), e);
+            }
+        }
+        MTAProxy.getInstance().reportCosXmlServerException(ResponseXmlS3BodySerializer.class.getSimpleName(),
+                String.format(Locale.ENGLISH, "%s %s",cosXmlServiceException.getStatusCode(), cosXmlServiceException.getErrorCode()));
+        throw cosXmlServiceException;
+    }
+}
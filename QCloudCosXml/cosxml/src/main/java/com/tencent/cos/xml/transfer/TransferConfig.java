@@ -11,12 +11,28 @@ public final class TransferConfig {
     protected long sliceSizeForCopy;
     protected long divisionForUpload;
     protected long sliceSizeForUpload;
+    protected int maxConcurrentParts;
+    protected String checkpointDir;
+    protected long progressIntervalMillis;
+    protected float progressStepPercent;
+    protected int batchConcurrency;
+    protected long divisionForDownload;
+    protected int maxConcurrentRanges;
+    protected int maxConcurrentDeleteBatches;
 
     private TransferConfig(Builder builder){
         this.divisionForCopy = builder.divisionForCopy;
         this.sliceSizeForCopy = builder.sliceSizeForCopy;
         this.divisionForUpload = builder.divisionForUpload;
         this.sliceSizeForUpload = builder.sliceSizeForUpload;
+        this.maxConcurrentParts = builder.maxConcurrentParts;
+        this.checkpointDir = builder.checkpointDir;
+        this.progressIntervalMillis = builder.progressIntervalMillis;
+        this.progressStepPercent = builder.progressStepPercent;
+        this.batchConcurrency = builder.batchConcurrency;
+        this.divisionForDownload = builder.divisionForDownload;
+        this.maxConcurrentRanges = builder.maxConcurrentRanges;
+        this.maxConcurrentDeleteBatches = builder.maxConcurrentDeleteBatches;
     }
 
     public static class Builder{
@@ -24,6 +40,14 @@ public final class TransferConfig {
         private long sliceSizeForCopy = 5242880; //5M
         private long divisionForUpload = 2097152; //2M
         private long sliceSizeForUpload = 1048576; // 1M
+        private int maxConcurrentParts = 5;
+        private String checkpointDir;
+        private long progressIntervalMillis = 100;
+        private float progressStepPercent = 1;
+        private int batchConcurrency = 8;
+        private long divisionForDownload = 20971520; // 20M
+        private int maxConcurrentRanges = 3;
+        private int maxConcurrentDeleteBatches = 4;
 
         public Builder(){
 
@@ -57,6 +81,94 @@ public final class TransferConfig {
             return this;
         }
 
+        /**
+         * 设置分片上传和分片拷贝时同时进行中的分片数上限，
+         * 前面的分片完成后才会继续发起后续分片
+         * @param maxConcurrentParts 同时上传的分片数
+         * @return Builder
+         */
+        public Builder setMaxConcurrentParts(int maxConcurrentParts){
+            if(maxConcurrentParts > 0){
+                this.maxConcurrentParts = maxConcurrentParts;
+            }
+            return this;
+        }
+
+        /**
+         * 设置断点日志的存放目录，分片上传和分片拷贝会在该目录下记录已完成的分片，
+         * 进程重启后再次上传同一文件或拷贝同一对象时直接从断点续传，无需 ListParts
+         * @param checkpointDir 断点目录，为 null 时不记录断点
+         * @return Builder
+         */
+        public Builder setCheckpointDir(String checkpointDir){
+            this.checkpointDir = checkpointDir;
+            return this;
+        }
+
+        /**
+         * 设置分片传输进度回调的频率，距离上次回调超过 intervalMillis，
+         * 或进度增加超过 stepPercent 时回调一次
+         * @param intervalMillis 回调的最小间隔，单位毫秒，0 表示每次进度变化都回调
+         * @param stepPercent 进度步长百分比，小于等于 0 表示只按间隔回调
+         * @return Builder
+         */
+        public Builder setProgressRate(long intervalMillis, float stepPercent){
+            if(intervalMillis >= 0){
+                this.progressIntervalMillis = intervalMillis;
+            }
+            this.progressStepPercent = stepPercent;
+            return this;
+        }
+
+        /**
+         * 设置批量上传的并发预算，简单上传占用 1 个名额，
+         * 分片上传占用 maxConcurrentParts 个名额
+         * @param batchConcurrency 批量上传同时进行中的请求数上限
+         * @return Builder
+         */
+        public Builder setBatchConcurrency(int batchConcurrency){
+            if(batchConcurrency > 0){
+                this.batchConcurrency = batchConcurrency;
+            }
+            return this;
+        }
+
+        /**
+         * 设置分段并行下载的界限，大于等于该长度的对象会切分成多个范围并行下载
+         * @param division 分段下载的界限
+         * @return Builder
+         */
+        public Builder setDivisionForDownload(long division){
+            if(division > 0){
+                this.divisionForDownload = division;
+            }
+            return this;
+        }
+
+        /**
+         * 设置分段下载时同时进行中的范围数上限，1 表示不并行下载
+         * @param maxConcurrentRanges 同时下载的范围数
+         * @return Builder
+         */
+        public Builder setMaxConcurrentRanges(int maxConcurrentRanges){
+            if(maxConcurrentRanges > 0){
+                this.maxConcurrentRanges = maxConcurrentRanges;
+            }
+            return this;
+        }
+
+        /**
+         * 设置按前缀批量删除时同时进行中的批量删除请求数上限, 每个请求最多删除 1000 个对象
+         * @param maxConcurrentDeleteBatches 同时进行的批量删除请求数
+         * @return Builder
+         */
+        public Builder setMaxConcurrentDeleteBatches(int maxConcurrentDeleteBatches){
+            if(maxConcurrentDeleteBatches > 0){
+                this.maxConcurrentDeleteBatches = maxConcurrentDeleteBatches;
+            }
+            return this;
+        }
+
         public TransferConfig build(){
             return new TransferConfig(this);
         }
@@ -5,11 +5,15 @@ package com.tencent.cos.xml.transfer;
 import android.content.Context;
 
 import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
 import com.tencent.cos.xml.model.object.CopyObjectRequest;
 import com.tencent.cos.xml.model.object.GetObjectRequest;
 import com.tencent.cos.xml.model.object.PutObjectRequest;
 
+import java.io.File;
 import java.io.InputStream;
+import java.util.Iterator;
 
 /**
  * Created by bradyxiao on 2018/8/22.
@@ -41,10 +45,22 @@ public class TransferManager{
      * @return COSXMLUploadTask
      */
     public COSXMLUploadTask upload(String bucket, String cosPath, String srcPath, String uploadId){
+        COSXMLUploadTask cosxmlUploadTask = newUploadTask(bucket, cosPath, srcPath, uploadId);
+        cosxmlUploadTask.upload();
+        return cosxmlUploadTask;
+    }
+
+    /**
+     * 创建上传任务但不开始, 调用方设置好回调后再调用 {@link COSXMLUploadTask#upload()}
+     */
+    COSXMLUploadTask newUploadTask(String bucket, String cosPath, String srcPath, String uploadId){
         COSXMLUploadTask cosxmlUploadTask = new COSXMLUploadTask(cosXmlService, null, bucket, cosPath, srcPath, uploadId);
         cosxmlUploadTask.multiUploadSizeDivision = transferConfig.divisionForUpload; // 分片上传的界限
         cosxmlUploadTask.sliceSize = transferConfig.sliceSizeForUpload; // 分片上传的分片大小
-        cosxmlUploadTask.upload();
+        cosxmlUploadTask.maxConcurrentParts = transferConfig.maxConcurrentParts; // 同时上传的分片数
+        cosxmlUploadTask.checkpointDir = transferConfig.checkpointDir; // 断点日志目录
+        cosxmlUploadTask.progressIntervalMillis = transferConfig.progressIntervalMillis; // 进度回调间隔
+        cosxmlUploadTask.progressStepPercent = transferConfig.progressStepPercent; // 进度回调步长
         return cosxmlUploadTask;
     }
 
@@ -52,6 +68,10 @@ public class TransferManager{
         COSXMLUploadTask cosxmlUploadTask = new COSXMLUploadTask(cosXmlService, null, bucket, cosPath, bytes);
         cosxmlUploadTask.multiUploadSizeDivision = transferConfig.divisionForUpload; // 分片上传的界限
         cosxmlUploadTask.sliceSize = transferConfig.sliceSizeForUpload; // 分片上传的分片大小
+        cosxmlUploadTask.maxConcurrentParts = transferConfig.maxConcurrentParts; // 同时上传的分片数
+        cosxmlUploadTask.checkpointDir = transferConfig.checkpointDir; // 断点日志目录
+        cosxmlUploadTask.progressIntervalMillis = transferConfig.progressIntervalMillis; // 进度回调间隔
+        cosxmlUploadTask.progressStepPercent = transferConfig.progressStepPercent; // 进度回调步长
         cosxmlUploadTask.upload();
         return cosxmlUploadTask;
     }
@@ -60,6 +80,10 @@ public class TransferManager{
         COSXMLUploadTask cosxmlUploadTask = new COSXMLUploadTask(cosXmlService, null, bucket, cosPath, inputStream);
         cosxmlUploadTask.multiUploadSizeDivision = transferConfig.divisionForUpload; // 分片上传的界限
         cosxmlUploadTask.sliceSize = transferConfig.sliceSizeForUpload; // 分片上传的分片大小
+        cosxmlUploadTask.maxConcurrentParts = transferConfig.maxConcurrentParts; // 同时上传的分片数
+        cosxmlUploadTask.checkpointDir = transferConfig.checkpointDir; // 断点日志目录
+        cosxmlUploadTask.progressIntervalMillis = transferConfig.progressIntervalMillis; // 进度回调间隔
+        cosxmlUploadTask.progressStepPercent = transferConfig.progressStepPercent; // 进度回调步长
         cosxmlUploadTask.upload();
         return cosxmlUploadTask;
     }
@@ -74,6 +98,10 @@ public class TransferManager{
         COSXMLUploadTask cosxmlUploadTask = new COSXMLUploadTask(cosXmlService, putObjectRequest, uploadId);
         cosxmlUploadTask.multiUploadSizeDivision = transferConfig.divisionForUpload; // 分片上传的界限
         cosxmlUploadTask.sliceSize = transferConfig.sliceSizeForUpload; // 分片上传的分片大小
+        cosxmlUploadTask.maxConcurrentParts = transferConfig.maxConcurrentParts; // 同时上传的分片数
+        cosxmlUploadTask.checkpointDir = transferConfig.checkpointDir; // 断点日志目录
+        cosxmlUploadTask.progressIntervalMillis = transferConfig.progressIntervalMillis; // 进度回调间隔
+        cosxmlUploadTask.progressStepPercent = transferConfig.progressStepPercent; // 进度回调步长
         cosxmlUploadTask.upload();
         return cosxmlUploadTask;
     }
@@ -91,11 +119,47 @@ public class TransferManager{
         COSXMLUploadTask cosxmlUploadTask = new COSXMLUploadTask(cosXmlService, null, bucket, cosPath, srcPath, uploadId);
         cosxmlUploadTask.multiUploadSizeDivision = transferConfig.divisionForUpload; // 分片上传的界限
         cosxmlUploadTask.sliceSize = transferConfig.sliceSizeForUpload; // 分片上传的分片大小
+        cosxmlUploadTask.maxConcurrentParts = transferConfig.maxConcurrentParts; // 同时上传的分片数
+        cosxmlUploadTask.checkpointDir = transferConfig.checkpointDir; // 断点日志目录
+        cosxmlUploadTask.progressIntervalMillis = transferConfig.progressIntervalMillis; // 进度回调间隔
+        cosxmlUploadTask.progressStepPercent = transferConfig.progressStepPercent; // 进度回调步长
         cosxmlUploadTask.setOnSignatureListener(onSignatureListener);
         cosxmlUploadTask.upload();
         return cosxmlUploadTask;
     }
 
+    /**
+     * 上传本地目录下的所有文件
+     * @param bucket 存储桶
+     * @param cosPathPrefix 存放于存储桶上的前缀, 文件的位置为前缀加上相对于 localDir 的路径
+     * @param localDir 本地目录
+     * @param batchUploadListener 批量上传回调
+     * @return COSXMLBatchUploadTask
+     */
+    public COSXMLBatchUploadTask uploadDirectory(String bucket, String cosPathPrefix, String localDir,
+                                                 COSXMLBatchUploadTask.BatchUploadListener batchUploadListener){
+        File directory = new File(localDir);
+        if(!directory.isDirectory()){
+            throw new IllegalArgumentException(localDir + " is not a directory");
+        }
+        return uploadBatch(bucket, COSXMLBatchUploadTask.walkDirectory(directory, cosPathPrefix), batchUploadListener);
+    }
+
+    /**
+     * 批量上传文件, 所有文件共享 {@link TransferConfig.Builder#setBatchConcurrency(int)} 设置的并发预算
+     * @param bucket 存储桶
+     * @param sources 上传源, 按需取出
+     * @param batchUploadListener 批量上传回调
+     * @return COSXMLBatchUploadTask
+     */
+    public COSXMLBatchUploadTask uploadBatch(String bucket, Iterator<COSXMLBatchUploadTask.UploadSource> sources,
+                                             COSXMLBatchUploadTask.BatchUploadListener batchUploadListener){
+        COSXMLBatchUploadTask batchUploadTask = new COSXMLBatchUploadTask(this, transferConfig, bucket,
+                sources, batchUploadListener);
+        batchUploadTask.start();
+        return batchUploadTask;
+    }
+
     /**
      * 下载文件
      * @param context app上下文
@@ -119,6 +183,10 @@ public class TransferManager{
      */
     public COSXMLDownloadTask download(Context context, String bucket, String cosPath, String savedDirPath, String savedFileName){
         COSXMLDownloadTask cosxmlDownloadTask = new COSXMLDownloadTask(context, cosXmlService, null, bucket, cosPath, savedDirPath, savedFileName);
+        cosxmlDownloadTask.multiDownloadSizeDivision = transferConfig.divisionForDownload; // 分段下载的界限
+        cosxmlDownloadTask.maxConcurrentRanges = transferConfig.maxConcurrentRanges; // 同时下载的范围数
+        cosxmlDownloadTask.progressIntervalMillis = transferConfig.progressIntervalMillis; // 进度回调间隔
+        cosxmlDownloadTask.progressStepPercent = transferConfig.progressStepPercent; // 进度回调步长
         cosxmlDownloadTask.download();
         return cosxmlDownloadTask;
     }
@@ -131,6 +199,10 @@ public class TransferManager{
      */
     public COSXMLDownloadTask download(Context context, GetObjectRequest getObjectRequest){
         COSXMLDownloadTask cosxmlDownloadTask = new COSXMLDownloadTask(context, cosXmlService, getObjectRequest);
+        cosxmlDownloadTask.multiDownloadSizeDivision = transferConfig.divisionForDownload; // 分段下载的界限
+        cosxmlDownloadTask.maxConcurrentRanges = transferConfig.maxConcurrentRanges; // 同时下载的范围数
+        cosxmlDownloadTask.progressIntervalMillis = transferConfig.progressIntervalMillis; // 进度回调间隔
+        cosxmlDownloadTask.progressStepPercent = transferConfig.progressStepPercent; // 进度回调步长
         cosxmlDownloadTask.download();
         return cosxmlDownloadTask;
     }
@@ -147,11 +219,49 @@ public class TransferManager{
      */
     public COSXMLDownloadTask download(Context context, String bucket, String cosPath, String savedDirPath, String savedFileName, COSXMLTask.OnSignatureListener onSignatureListener){
         COSXMLDownloadTask cosxmlDownloadTask = new COSXMLDownloadTask(context, cosXmlService, null, bucket, cosPath, savedDirPath, savedFileName);
+        cosxmlDownloadTask.multiDownloadSizeDivision = transferConfig.divisionForDownload; // 分段下载的界限
+        cosxmlDownloadTask.maxConcurrentRanges = transferConfig.maxConcurrentRanges; // 同时下载的范围数
+        cosxmlDownloadTask.progressIntervalMillis = transferConfig.progressIntervalMillis; // 进度回调间隔
+        cosxmlDownloadTask.progressStepPercent = transferConfig.progressStepPercent; // 进度回调步长
         cosxmlDownloadTask.setOnSignatureListener(onSignatureListener);
         cosxmlDownloadTask.download();
         return cosxmlDownloadTask;
     }
 
+    /**
+     * 以随机访问的方式打开对象, 按需读取对象的任意位置
+     * @param bucket 存储桶
+     * @param cosPath 文件存放于存储桶上的位置
+     * @return RandomAccessObject
+     * @throws CosXmlClientException 抛出的客户端异常
+     * @throws CosXmlServiceException 获取对象信息失败时抛出的服务端异常
+     */
+    public RandomAccessObject openRandomAccess(String bucket, String cosPath)
+            throws CosXmlClientException, CosXmlServiceException {
+        return openRandomAccess(bucket, cosPath, RandomAccessObject.DEFAULT_BLOCK_SIZE,
+                RandomAccessObject.DEFAULT_MAX_CACHED_BLOCKS);
+    }
+
+    /**
+     * 以随机访问的方式打开对象, 按需读取对象的任意位置
+     * @param bucket 存储桶
+     * @param cosPath 文件存放于存储桶上的位置
+     * @param blockSize 每次请求和缓存的块大小, 必须大于 0
+     * @param maxCachedBlocks 最多缓存的块数, 必须大于 0, 缓存占用的内存约为 blockSize * maxCachedBlocks;
+     *                        顺序读取时预读的块数不超过该值
+     * @return RandomAccessObject
+     * @throws CosXmlClientException 抛出的客户端异常
+     * @throws CosXmlServiceException 获取对象信息失败时抛出的服务端异常
+     * @throws IllegalArgumentException blockSize 或 maxCachedBlocks 不大于 0
+     */
+    public RandomAccessObject openRandomAccess(String bucket, String cosPath, int blockSize, int maxCachedBlocks)
+            throws CosXmlClientException, CosXmlServiceException {
+        RandomAccessObject randomAccessObject = new RandomAccessObject(cosXmlService, bucket, cosPath,
+                blockSize, maxCachedBlocks);
+        randomAccessObject.open();
+        return randomAccessObject;
+    }
+
     /**
      * 复制文件
      * @param bucket 存储桶
@@ -163,6 +273,8 @@ public class TransferManager{
         COSXMLCopyTask cosxmlCopyTask = new COSXMLCopyTask(cosXmlService, null, bucket, cosPath, copySourceStruct);
         cosxmlCopyTask.multiCopySizeDivision = transferConfig.divisionForCopy;
         cosxmlCopyTask.sliceSize = transferConfig.sliceSizeForCopy;
+        cosxmlCopyTask.maxConcurrentParts = transferConfig.maxConcurrentParts; // 同时拷贝的分片数
+        cosxmlCopyTask.checkpointDir = transferConfig.checkpointDir; // 断点日志目录
         cosxmlCopyTask.copy();
         return cosxmlCopyTask;
     }
@@ -176,6 +288,8 @@ public class TransferManager{
         COSXMLCopyTask cosxmlCopyTask = new COSXMLCopyTask(cosXmlService, copyObjectRequest);
         cosxmlCopyTask.multiCopySizeDivision = transferConfig.divisionForCopy;
         cosxmlCopyTask.sliceSize = transferConfig.sliceSizeForCopy;
+        cosxmlCopyTask.maxConcurrentParts = transferConfig.maxConcurrentParts; // 同时拷贝的分片数
+        cosxmlCopyTask.checkpointDir = transferConfig.checkpointDir; // 断点日志目录
         cosxmlCopyTask.copy();
         return cosxmlCopyTask;
     }
@@ -191,6 +305,8 @@ public class TransferManager{
         COSXMLCopyTask cosxmlCopyTask = new COSXMLCopyTask(cosXmlService, null, bucket, cosPath, copySourceStruct);
         cosxmlCopyTask.multiCopySizeDivision = transferConfig.divisionForCopy;
         cosxmlCopyTask.sliceSize = transferConfig.sliceSizeForCopy;
+        cosxmlCopyTask.maxConcurrentParts = transferConfig.maxConcurrentParts; // 同时拷贝的分片数
+        cosxmlCopyTask.checkpointDir = transferConfig.checkpointDir; // 断点日志目录
         cosxmlCopyTask.setOnSignatureListener(onSignatureListener);
         cosxmlCopyTask.copy();
         return cosxmlCopyTask;
@@ -0,0 +1,312 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.utils.DigestUtils;
+import com.tencent.qcloud.core.logger.QCloudLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 分片上传的断点日志, 分片拷贝也使用同样的格式.
+ * <p>
+ * 每个上传任务对应 checkpoint 目录下的一个文件, 文件名由 bucket、cosPath 以及本地文件的
+ * 路径、长度、修改时间计算得到, 本地文件发生变化后旧的断点自然失效.
+ * 文件只追加写入, 格式为按行记录:
+ * <pre>
+ * U uploadId sliceSize
+ * P partNumber offset size eTag
+ * </pre>
+ * 分片记录按批次 fsync, 进程异常退出时最多丢失最近一批分片, 续传时重新上传即可.
+ * 写入失败不会影响上传本身, 只会关闭断点记录.
+ * </p>
+ */
+final class UploadCheckpointJournal {
+
+    private static final String TAG = "UploadCheckpoint";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 每累计多少条分片记录 fsync 一次 */
+    private static final int SYNC_INTERVAL_RECORDS = 8;
+    /** 距离上次 fsync 超过多长时间后, 下一条记录写入时 fsync */
+    private static final long SYNC_INTERVAL_MILLIS = 1000L;
+
+    private final File journalFile;
+
+    private String uploadId;
+    private long sliceSize;
+    /** partNumber -> {offset, size} */
+    private final Map<Integer, long[]> partRanges = new LinkedHashMap<>();
+    private final Map<Integer, String> partETags = new LinkedHashMap<>();
+
+    private FileOutputStream outputStream;
+    private int unSyncedRecords;
+    private long lastSyncTime;
+    private boolean disabled;
+    /** 读取的断点以写了一半的记录结尾, 续写前需要先补上换行 */
+    private boolean hasPartialRecord;
+
+    private UploadCheckpointJournal(File journalFile){
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * @param checkpointDir 断点目录, 为 null 时不记录断点
+     * @return 若未开启断点记录则返回 null
+     */
+    static UploadCheckpointJournal open(String checkpointDir, String bucket, String cosPath, File srcFile){
+        if(checkpointDir == null){
+            return null;
+        }
+        StringBuilder identity = new StringBuilder();
+        identity.append("upload").append("_")
+                .append(bucket).append("_")
+                .append(cosPath).append("_")
+                .append(srcFile.getAbsolutePath()).append("_")
+                .append(srcFile.length()).append("_")
+                .append(srcFile.lastModified());
+        return open(checkpointDir, identity.toString(), ".upload");
+    }
+
+    /**
+     * 分片拷贝的断点, 源对象的 ETag 或长度变化后旧的断点自然失效
+     * @param checkpointDir 断点目录, 为 null 时不记录断点
+     * @param source 源对象的位置
+     * @return 若未开启断点记录则返回 null
+     */
+    static UploadCheckpointJournal openForCopy(String checkpointDir, String bucket, String cosPath, String source,
+                                               long sourceLength, String sourceETag){
+        if(checkpointDir == null || sourceETag == null){
+            return null;
+        }
+        StringBuilder identity = new StringBuilder();
+        identity.append("copy").append("_")
+                .append(bucket).append("_")
+                .append(cosPath).append("_")
+                .append(source).append("_")
+                .append(sourceLength).append("_")
+                .append(sourceETag);
+        return open(checkpointDir, identity.toString(), ".copy");
+    }
+
+    private static UploadCheckpointJournal open(String checkpointDir, String identity, String suffix){
+        String name;
+        try {
+            name = DigestUtils.getSha1(identity);
+        } catch (CosXmlClientException e) {
+            QCloudLogger.w(TAG, "checkpoint disabled: %s", e.getMessage());
+            return null;
+        }
+        File dir = new File(checkpointDir);
+        if(!dir.exists() && !dir.mkdirs()){
+            QCloudLogger.w(TAG, "checkpoint disabled: can not create %s", checkpointDir);
+            return null;
+        }
+        return new UploadCheckpointJournal(new File(dir, name + suffix));
+    }
+
+    /**
+     * 读取已有的断点
+     * @return 存在有效断点时返回 true
+     */
+    synchronized boolean load(){
+        if(!journalFile.exists()){
+            return false;
+        }
+        String content;
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(journalFile);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) journalFile.length());
+            byte[] buffer = new byte[8 * 1024];
+            int len;
+            while ((len = inputStream.read(buffer)) != -1){
+                bytes.write(buffer, 0, len);
+            }
+            content = new String(bytes.toByteArray(), UTF_8);
+        } catch (IOException e) {
+            QCloudLogger.w(TAG, "read checkpoint failed: %s", e.getMessage());
+            return false;
+        } finally {
+            closeQuietly(inputStream);
+        }
+
+        uploadId = null;
+        partRanges.clear();
+        partETags.clear();
+        int lineStart = 0;
+        int lineEnd;
+        // 没有换行结尾的最后一行可能是写了一半, 直接忽略
+        while ((lineEnd = content.indexOf('\n', lineStart)) >= 0){
+            String[] fields = content.substring(lineStart, lineEnd).split(" ");
+            lineStart = lineEnd + 1;
+            try {
+                if("U".equals(fields[0]) && fields.length == 3){
+                    uploadId = fields[1];
+                    sliceSize = Long.parseLong(fields[2]);
+                }else if("P".equals(fields[0]) && fields.length == 5 && uploadId != null){
+                    int partNumber = Integer.parseInt(fields[1]);
+                    partRanges.put(partNumber, new long[]{Long.parseLong(fields[2]), Long.parseLong(fields[3])});
+                    partETags.put(partNumber, fields[4]);
+                }
+            }catch (NumberFormatException e){
+                // 损坏的记录
+            }
+        }
+        hasPartialRecord = lineStart < content.length();
+        return uploadId != null && sliceSize > 0;
+    }
+
+    synchronized String getUploadId(){
+        return uploadId;
+    }
+
+    synchronized long getSliceSize(){
+        return sliceSize;
+    }
+
+    /**
+     * 将断点中已完成的分片标记到分片表, 分片范围与分片表不一致的记录会被忽略.
+     * 分片表需要按断点记录的 sliceSize 均匀切分, 与写入断点时的分片方式一致;
+     * 断点只能恢复这种均匀切分的分片表, 不会按记录的范围重建分片.
+     * @return 恢复的数据长度
+     */
+    synchronized long restore(PartStateTable partStateTable){
+        long restoredLength = 0L;
+        for(Map.Entry<Integer, long[]> entry : partRanges.entrySet()){
+            int index = partStateTable.indexOf(entry.getKey());
+            long[] range = entry.getValue();
+            if(index >= 0 && partStateTable.offset(index) == range[0] && partStateTable.size(index) == range[1]
+                    && partStateTable.markCompleted(index, partETags.get(entry.getKey()))){
+                restoredLength += range[1];
+            }
+        }
+        return restoredLength;
+    }
+
+    /**
+     * 开始新的断点, 覆盖旧的记录
+     */
+    synchronized void begin(String uploadId, long sliceSize){
+        closeQuietly(outputStream);
+        outputStream = null;
+        this.uploadId = uploadId;
+        this.sliceSize = sliceSize;
+        partRanges.clear();
+        partETags.clear();
+        disabled = false;
+        try {
+            outputStream = new FileOutputStream(journalFile, false);
+        } catch (IOException e) {
+            disable(e);
+            return;
+        }
+        append("U " + uploadId + " " + sliceSize + "\n");
+        sync();
+    }
+
+    /**
+     * 在 {@link #load()} 读到的断点后继续追加记录, 续传时调用
+     */
+    synchronized void reopen(){
+        if(outputStream != null) return;
+        disabled = false;
+        try {
+            outputStream = new FileOutputStream(journalFile, true);
+        } catch (IOException e) {
+            disable(e);
+            return;
+        }
+        if(hasPartialRecord){
+            // 让写了一半的记录单独成行, 不影响后面的记录
+            append("\n");
+            hasPartialRecord = false;
+        }
+    }
+
+    synchronized void recordPart(int partNumber, long offset, long size, String eTag){
+        if(outputStream == null || eTag == null) return;
+        append("P " + partNumber + " " + offset + " " + size + " " + eTag + "\n");
+        unSyncedRecords ++;
+        if(unSyncedRecords >= SYNC_INTERVAL_RECORDS
+                || System.currentTimeMillis() - lastSyncTime >= SYNC_INTERVAL_MILLIS){
+            sync();
+        }
+    }
+
+    /**
+     * 将已写入的记录刷到存储上, 任务暂停或失败时调用
+     */
+    synchronized void flush(){
+        if(unSyncedRecords > 0){
+            sync();
+        }
+    }
+
+    /**
+     * 关闭日志文件, 保留已记录的断点
+     */
+    synchronized void close(){
+        flush();
+        closeQuietly(outputStream);
+        outputStream = null;
+    }
+
+    /**
+     * 上传完成或取消后删除断点
+     */
+    synchronized void delete(){
+        closeQuietly(outputStream);
+        outputStream = null;
+        uploadId = null;
+        partRanges.clear();
+        partETags.clear();
+        if(journalFile.exists() && !journalFile.delete()){
+            QCloudLogger.w(TAG, "delete checkpoint failed: %s", journalFile.getPath());
+        }
+    }
+
+    private void append(String record){
+        if(outputStream == null || disabled) return;
+        try {
+            outputStream.write(record.getBytes(UTF_8));
+        } catch (IOException e) {
+            disable(e);
+        }
+    }
+
+    private void sync(){
+        if(outputStream == null || disabled) return;
+        try {
+            outputStream.getFD().sync();
+            unSyncedRecords = 0;
+            lastSyncTime = System.currentTimeMillis();
+        } catch (IOException e) {
+            disable(e);
+        }
+    }
+
+    private void disable(IOException e){
+        QCloudLogger.w(TAG, "checkpoint disabled: %s", e.getMessage());
+        disabled = true;
+        closeQuietly(outputStream);
+        outputStream = null;
+        journalFile.delete();
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable){
+        if(closeable != null){
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
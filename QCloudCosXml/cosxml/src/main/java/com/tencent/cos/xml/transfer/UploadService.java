@@ -259,7 +259,7 @@ public class UploadService {
     }
 
     public ResumeData pause(){
-        ERROR_EXIT_FLAG = 2;
+        exit(2);
         ResumeData resumeData = new ResumeData();
         resumeData.bucket = bucket;
         resumeData.cosPath = cosPath;
@@ -273,10 +273,34 @@ public class UploadService {
     }
 
     public void abort(CosXmlResultListener cosXmlResultListener){
-        ERROR_EXIT_FLAG = 3;
+        exit(3);
         abortMultiUpload(cosXmlResultListener);
     }
 
+    private void exit(int exitFlag){
+        synchronized (objectSync){
+            ERROR_EXIT_FLAG = exitFlag;
+            objectSync.notifyAll();
+        }
+    }
+
+    /**
+     * 阻塞等待所有分片上传结束, 或者出错、暂停、取消
+     */
+    private void waitForUploadParts(){
+        synchronized (objectSync){
+            while (UPLOAD_PART_COUNT.get() > 0 && ERROR_EXIT_FLAG == 0){
+                try {
+                    objectSync.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    mException = new CosXmlClientException(ClientErrorCode.USER_CANCELLED.getCode(), "upload is interrupted", e);
+                    ERROR_EXIT_FLAG = 1;
+                }
+            }
+        }
+    }
+
     private void clear(){
         putObjectRequest = null;
         initMultipartUploadRequest = null;
@@ -316,8 +340,9 @@ public class UploadService {
                     uploadServiceResult.httpMessage = putObjectResult.httpMessage;
                     uploadServiceResult.headers = putObjectResult.headers;
                     uploadServiceResult.eTag = putObjectResult.eTag;
+                    UPLOAD_PART_COUNT.decrementAndGet();
+                    objectSync.notifyAll();
                 }
-                UPLOAD_PART_COUNT.decrementAndGet();
             }
 
             @Override
@@ -329,12 +354,13 @@ public class UploadService {
                         mException = serviceException;
                     }
                     ERROR_EXIT_FLAG = 1;
+                    objectSync.notifyAll();
                 }
             }
         });
 
         //wait upload parts complete.
-        while (UPLOAD_PART_COUNT.get() > 0 && ERROR_EXIT_FLAG == 0);
+        waitForUploadParts();
         //if error throw exception
         if(ERROR_EXIT_FLAG > 0){
             switch (ERROR_EXIT_FLAG){
@@ -397,8 +423,9 @@ public class UploadService {
                                 synchronized (objectSync){
                                     slicePartStruct.eTag = ((UploadPartResult)result).eTag;
                                     slicePartStruct.isAlreadyUpload = true;
+                                    UPLOAD_PART_COUNT.decrementAndGet();
+                                    objectSync.notifyAll();
                                 }
-                                UPLOAD_PART_COUNT.decrementAndGet();
                             }
 
                             @Override
@@ -410,6 +437,7 @@ public class UploadService {
                                         mException = serviceException;
                                     }
                                     ERROR_EXIT_FLAG = 1;
+                                    objectSync.notifyAll();
                                 }
                             }
                         });
@@ -417,7 +445,7 @@ public class UploadService {
         }
 
         //wait upload parts complete.
-        while (UPLOAD_PART_COUNT.get() > 0 && ERROR_EXIT_FLAG == 0);
+        waitForUploadParts();
 
         //clear sharePreference
         clearSharePreference();
@@ -0,0 +1,140 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.common.COSRequestHeaderKey;
+import com.tencent.qcloud.core.common.QCloudDigistListener;
+import com.tencent.qcloud.core.http.RequestBodySerializer;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.HashingSink;
+import okio.Okio;
+
+/**
+ * 直接写入 Okio sink 的 XML 请求体.
+ * <p>
+ * 不经过 XmlSerializer 和 StringWriter 生成整个文档, 发送时逐个元素写入 sink.
+ * Content-MD5 和 Content-Length 需要在 body 之前确定, 因此第一次获取时把文档写入
+ * 一个只计数的 MD5 sink, 在同一遍中得到长度和 MD5 并缓存, 不在内存中保留文档.
+ * 文档内容必须在请求期间保持不变.
+ * </p>
+ */
+abstract class XmlRequestBody extends RequestBody implements QCloudDigistListener {
+
+    private static final MediaType CONTENT_TYPE = MediaType.parse(COSRequestHeaderKey.APPLICATION_XML);
+
+    private BufferedSink sink;
+    private long contentLength = -1;
+    private String md5;
+
+    /**
+     * 按顺序写出整个文档, 不包含 XML 声明
+     */
+    abstract void write() throws IOException;
+
+    RequestBodySerializer serializer(){
+        return new RequestBodySerializer() {
+            @Override
+            public RequestBody body() {
+                return XmlRequestBody.this;
+            }
+        };
+    }
+
+    @Override
+    public MediaType contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        measure();
+        return contentLength;
+    }
+
+    @Override
+    public String onGetMd5() throws IOException {
+        measure();
+        return md5;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        writeDocument(sink);
+    }
+
+    private synchronized void measure() throws IOException {
+        if(md5 != null) return;
+        final long[] count = new long[1];
+        HashingSink hashingSink = HashingSink.md5(new ForwardingSink(Okio.blackhole()) {
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                count[0] += byteCount;
+                super.write(source, byteCount);
+            }
+        });
+        BufferedSink bufferedSink = Okio.buffer(hashingSink);
+        writeDocument(bufferedSink);
+        bufferedSink.close();
+        contentLength = count[0];
+        md5 = hashingSink.hash().base64();
+    }
+
+    private synchronized void writeDocument(BufferedSink sink) throws IOException {
+        this.sink = sink;
+        try {
+            write();
+            sink.flush();
+        } finally {
+            this.sink = null;
+        }
+    }
+
+    void startTag(String tag) throws IOException {
+        sink.writeByte('<').writeUtf8(tag).writeByte('>');
+    }
+
+    void endTag(String tag) throws IOException {
+        sink.writeByte('<').writeByte('/').writeUtf8(tag).writeByte('>');
+    }
+
+    /**
+     * 与 XmlSlimBuilder.addElement 一致, value 为 null 时不写出元素
+     */
+    void element(String tag, String value) throws IOException {
+        if(value == null) return;
+        startTag(tag);
+        text(value);
+        endTag(tag);
+    }
+
+    private void text(String value) throws IOException {
+        int start = 0;
+        for(int i = 0, length = value.length(); i < length; i ++){
+            String entity;
+            switch (value.charAt(i)){
+                case '<':
+                    entity = "&lt;";
+                    break;
+                case '>':
+                    entity = "&gt;";
+                    break;
+                case '&':
+                    entity = "&amp;";
+                    break;
+                case '\r':
+                    entity = "&#13;";
+                    break;
+                default:
+                    continue;
+            }
+            sink.writeUtf8(value, start, i).writeUtf8(entity);
+            start = i + 1;
+        }
+        sink.writeUtf8(value, start, value.length());
+    }
+}
@@ -2,6 +2,7 @@ package com.tencent.cos.xml.transfer;
 
 
 import com.tencent.cos.xml.model.tag.CompleteMultipartUpload;
+import com.tencent.qcloud.core.http.RequestBodySerializer;
 
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -42,6 +43,30 @@ public class XmlSlimBuilder {
         return removeXMLHeader(xmlContent.toString());
     }
 
+    /**
+     * 与 {@link #buildCompleteMultipartUpload(CompleteMultipartUpload)} 生成相同的文档, 但直接写入请求的 sink, 同时计算 MD5
+     */
+    public static RequestBodySerializer completeMultipartUploadBody(final CompleteMultipartUpload completeMultipartUpload){
+        if (completeMultipartUpload == null)return null;
+
+        return new XmlRequestBody() {
+            @Override
+            void write() throws IOException {
+                startTag("CompleteMultipartUpload");
+                if(completeMultipartUpload.parts != null){
+                    for(CompleteMultipartUpload.Part part : completeMultipartUpload.parts){
+                        if(part == null)continue;
+                        startTag("Part");
+                        element("PartNumber", String.valueOf(part.partNumber));
+                        element("ETag", part.eTag);
+                        endTag("Part");
+                    }
+                }
+                endTag("CompleteMultipartUpload");
+            }
+        }.serializer();
+    }
+
     private static void addElement(XmlSerializer xmlSerializer, String tag, String value) throws IOException {
         if(value != null){
             xmlSerializer.startTag("", tag);
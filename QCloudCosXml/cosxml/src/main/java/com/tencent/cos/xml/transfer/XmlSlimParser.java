@@ -1,7 +1,5 @@
 package com.tencent.cos.xml.transfer;
 
-import android.util.Xml;
-
 import com.tencent.cos.xml.model.tag.CompleteMultipartUploadResult;
 import com.tencent.cos.xml.model.tag.CopyObject;
 import com.tencent.cos.xml.model.tag.CosError;
@@ -9,7 +7,6 @@ import com.tencent.cos.xml.model.tag.InitiateMultipartUpload;
 import com.tencent.cos.xml.model.tag.ListParts;
 import com.tencent.cos.xml.model.tag.PostResponse;
 
-import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
@@ -18,234 +15,257 @@ import java.util.ArrayList;
 
 /**
  * Created by bradyxiao on 2017/11/24.
+ * 所有响应都通过 {@link CosXmlReader} 解析, 格式错误时抛出 XmlPullParserException.
  */
 
 public class XmlSlimParser {
 
     public static void parseCompleteMultipartUploadResult(InputStream inputStream, CompleteMultipartUploadResult result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Location")){
-                        xmlPullParser.next();
-                        result.location = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Bucket")){
-                        xmlPullParser.next();
-                        result.bucket = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Key")){
-                        xmlPullParser.next();
-                        result.key = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("ETag")){
-                        xmlPullParser.next();
-                        result.eTag = xmlPullParser.getText();
-                    }
-                    break;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType != CosXmlReader.START_TAG) continue;
+                switch (reader.tag()){
+                    case XmlTags.LOCATION:
+                        result.location = reader.text();
+                        break;
+                    case XmlTags.BUCKET:
+                        result.bucket = reader.text();
+                        break;
+                    case XmlTags.KEY:
+                        result.key = reader.text();
+                        break;
+                    case XmlTags.ETAG:
+                        result.eTag = reader.text();
+                        break;
+                    default:
+                        reader.skipUnknown();
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parseInitiateMultipartUploadResult(InputStream inputStream, InitiateMultipartUpload result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Bucket")){
-                        xmlPullParser.next();
-                        result.bucket = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Key")){
-                        xmlPullParser.next();
-                        result.key = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("UploadId")){
-                        xmlPullParser.next();
-                        result.uploadId = xmlPullParser.getText();
-                    }
-                    break;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType != CosXmlReader.START_TAG) continue;
+                switch (reader.tag()){
+                    case XmlTags.BUCKET:
+                        result.bucket = reader.text();
+                        break;
+                    case XmlTags.KEY:
+                        result.key = reader.text();
+                        break;
+                    case XmlTags.UPLOAD_ID:
+                        result.uploadId = reader.text();
+                        break;
+                    default:
+                        reader.skipUnknown();
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parseListPartsResult(InputStream inputStream, ListParts result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
         result.parts = new ArrayList<ListParts.Part>();
         ListParts.Owner owner = null;
         ListParts.Initiator initiator = null;
         ListParts.Part part = null;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Bucket")){
-                        xmlPullParser.next();
-                        result.bucket = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Encoding-type")){
-                        xmlPullParser.next();
-                        result.encodingType = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Key")){
-                        xmlPullParser.next();
-                        result.key = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("UploadId")){
-                        xmlPullParser.next();
-                        result.uploadId = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Owner")){
-                        owner = new ListParts.Owner();
-                    }else if(tagName.equalsIgnoreCase("Initiator")){
-                        initiator = new ListParts.Initiator();
-                    }else if(tagName.equalsIgnoreCase("ID")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.id = xmlPullParser.getText();
-                        }else if(initiator != null){
-                            initiator.id = xmlPullParser.getText();
-                        }
-                    }else if(tagName.equalsIgnoreCase("DisplayName")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.disPlayName = xmlPullParser.getText();
-                        }else if(initiator != null){
-                            initiator.disPlayName= xmlPullParser.getText();
-                        }
-                    }else if(tagName.equalsIgnoreCase("PartNumberMarker")){
-                        xmlPullParser.next();
-                        result.partNumberMarker = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("StorageClass")){
-                        xmlPullParser.next();
-                        result.storageClass = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("NextPartNumberMarker")){
-                        xmlPullParser.next();
-                        result.nextPartNumberMarker = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("MaxParts")){
-                        xmlPullParser.next();
-                        result.maxParts = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("IsTruncated")){
-                        xmlPullParser.next();
-                        result.isTruncated = Boolean.parseBoolean(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("Part")){
-                        part = new ListParts.Part();
-                    }else if(tagName.equalsIgnoreCase("PartNumber")){
-                        xmlPullParser.next();
-                        part.partNumber = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("LastModified")){
-                        xmlPullParser.next();
-                        part.lastModified = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("ETag")){
-                        xmlPullParser.next();
-                        part.eTag = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Size")){
-                        xmlPullParser.next();
-                        part.size = xmlPullParser.getText();
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType == CosXmlReader.START_TAG){
+                    switch (reader.tag()){
+                        case XmlTags.BUCKET:
+                            result.bucket = reader.text();
+                            break;
+                        case XmlTags.ENCODING_TYPE:
+                            result.encodingType = reader.text();
+                            break;
+                        case XmlTags.KEY:
+                            result.key = reader.text();
+                            break;
+                        case XmlTags.UPLOAD_ID:
+                            result.uploadId = reader.text();
+                            break;
+                        case XmlTags.OWNER:
+                            owner = new ListParts.Owner();
+                            break;
+                        case XmlTags.INITIATOR:
+                            initiator = new ListParts.Initiator();
+                            break;
+                        case XmlTags.ID:
+                            if(owner != null){
+                                owner.id = reader.text();
+                            }else if(initiator != null){
+                                initiator.id = reader.text();
+                            }
+                            break;
+                        case XmlTags.DISPLAY_NAME:
+                            if(owner != null){
+                                owner.disPlayName = reader.text();
+                            }else if(initiator != null){
+                                initiator.disPlayName = reader.text();
+                            }
+                            break;
+                        case XmlTags.PART_NUMBER_MARKER:
+                            result.partNumberMarker = reader.text();
+                            break;
+                        case XmlTags.STORAGE_CLASS:
+                            result.storageClass = reader.text();
+                            break;
+                        case XmlTags.NEXT_PART_NUMBER_MARKER:
+                            result.nextPartNumberMarker = reader.text();
+                            break;
+                        case XmlTags.MAX_PARTS:
+                            result.maxParts = reader.text();
+                            break;
+                        case XmlTags.IS_TRUNCATED:
+                            result.isTruncated = Boolean.parseBoolean(reader.text());
+                            break;
+                        case XmlTags.PART:
+                            part = new ListParts.Part();
+                            break;
+                        case XmlTags.PART_NUMBER:
+                            part.partNumber = reader.text();
+                            break;
+                        case XmlTags.LAST_MODIFIED:
+                            part.lastModified = reader.text();
+                            break;
+                        case XmlTags.ETAG:
+                            part.eTag = reader.text();
+                            break;
+                        case XmlTags.SIZE:
+                            part.size = reader.text();
+                            break;
+                        default:
+                            reader.skipUnknown();
                     }
-                    break;
-                case XmlPullParser.END_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Owner")){
-                        result.owner = owner;
-                        owner = null;
-                    }else if(tagName.equalsIgnoreCase("Initiator")){
-                        result.initiator = initiator;
-                        initiator = null;
-                    }else if(tagName.equalsIgnoreCase("Part")){
-                        result.parts.add(part);
-                        part = null;
+                }else {
+                    switch (reader.tag()){
+                        case XmlTags.OWNER:
+                            result.owner = owner;
+                            owner = null;
+                            break;
+                        case XmlTags.INITIATOR:
+                            result.initiator = initiator;
+                            initiator = null;
+                            break;
+                        case XmlTags.PART:
+                            result.parts.add(part);
+                            part = null;
+                            break;
                     }
-                    break;
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parsePostResponseResult(InputStream inputStream, PostResponse result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Location")){
-                        xmlPullParser.next();
-                        result.location = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Bucket")){
-                        xmlPullParser.next();
-                        result.bucket = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Key")){
-                        xmlPullParser.next();
-                        result.key = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("ETag")){
-                        xmlPullParser.next();
-                        result.eTag = xmlPullParser.getText();
-                    }
-                    break;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType != CosXmlReader.START_TAG) continue;
+                switch (reader.tag()){
+                    case XmlTags.LOCATION:
+                        result.location = reader.text();
+                        break;
+                    case XmlTags.BUCKET:
+                        result.bucket = reader.text();
+                        break;
+                    case XmlTags.KEY:
+                        result.key = reader.text();
+                        break;
+                    case XmlTags.ETAG:
+                        result.eTag = reader.text();
+                        break;
+                    default:
+                        reader.skipUnknown();
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parseCopyObjectResult(InputStream inputStream, CopyObject result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("ETag")){
-                        xmlPullParser.next();
-                        result.eTag = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("LastModified")){
-                        xmlPullParser.next();
-                        result.lastModified = xmlPullParser.getText();
-                    }
-                    break;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType != CosXmlReader.START_TAG) continue;
+                switch (reader.tag()){
+                    case XmlTags.ETAG:
+                        result.eTag = reader.text();
+                        break;
+                    case XmlTags.LAST_MODIFIED:
+                        result.lastModified = reader.text();
+                        break;
+                    default:
+                        reader.skipUnknown();
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
 
     public static void parseError(InputStream inputStream, CosError error) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Code")){
-                        xmlPullParser.next();
-                        error.code = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Message")){
-                        xmlPullParser.next();
-                        error.message= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Resource")){
-                        xmlPullParser.next();
-                        error.resource= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("RequestId")){
-                    xmlPullParser.next();
-                    error.requestId= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("TraceId")){
-                        xmlPullParser.next();
-                        error.traceId= xmlPullParser.getText();
-                    }
-                    break;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType != CosXmlReader.START_TAG) continue;
+                switch (reader.tag()){
+                    case XmlTags.CODE:
+                        error.code = reader.text();
+                        break;
+                    case XmlTags.MESSAGE:
+                        error.message = reader.text();
+                        break;
+                    case XmlTags.RESOURCE:
+                        error.resource = reader.text();
+                        break;
+                    case XmlTags.REQUEST_ID:
+                        error.requestId = reader.text();
+                        break;
+                    case XmlTags.TRACE_ID:
+                        error.traceId = reader.text();
+                        break;
+                    default:
+                        reader.skipUnknown();
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
+
+    static XmlPullParserException malformed(CosXmlReader.MalformedXmlException e){
+        return new XmlPullParserException(e.getMessage());
+    }
 }
@@ -0,0 +1,196 @@
+package com.tencent.cos.xml.transfer;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * COS 响应中用到的元素名.
+ * <p>
+ * 每个元素名对应一个整数, 解析时按元素名的字节在完美哈希表中查找, 不生成 String;
+ * 与原来的 equalsIgnoreCase 一致, 按 ASCII 忽略大小写比较. 哈希表在类加载时计算, 没有冲突, 一次探测即可确定.
+ * </p>
+ */
+final class XmlTags {
+
+    static final int UNKNOWN = -1;
+
+    static final int NAME = 0;
+    static final int ENCODING_TYPE = 1;
+    static final int MARKER = 2;
+    static final int MAX_KEYS = 3;
+    static final int DELIMITER = 4;
+    static final int NEXT_MARKER = 5;
+    static final int IS_TRUNCATED = 6;
+    static final int PREFIX = 7;
+    static final int CONTENTS = 8;
+    static final int KEY = 9;
+    static final int LAST_MODIFIED = 10;
+    static final int ETAG = 11;
+    static final int SIZE = 12;
+    static final int STORAGE_CLASS = 13;
+    static final int OWNER = 14;
+    static final int ID = 15;
+    static final int COMMON_PREFIXES = 16;
+    static final int DISPLAY_NAME = 17;
+    static final int BUCKETS = 18;
+    static final int BUCKET = 19;
+    static final int LOCATION = 20;
+    static final int CREATION_DATE = 21;
+    static final int ACCESS_CONTROL_LIST = 22;
+    static final int GRANT = 23;
+    static final int GRANTEE = 24;
+    static final int PERMISSION = 25;
+    static final int CORS_RULE = 26;
+    static final int ALLOWED_ORIGIN = 27;
+    static final int ALLOWED_METHOD = 28;
+    static final int ALLOWED_HEADER = 29;
+    static final int EXPOSE_HEADER = 30;
+    static final int MAX_AGE_SECONDS = 31;
+    static final int ROLE = 32;
+    static final int RULE = 33;
+    static final int STATUS = 34;
+    static final int DESTINATION = 35;
+    static final int FILTER = 36;
+    static final int AND = 37;
+    static final int TRANSITION = 38;
+    static final int EXPIRATION = 39;
+    static final int DAYS = 40;
+    static final int DATE = 41;
+    static final int EXPIRED_OBJECT_DELETE_MARKER = 42;
+    static final int ABORT_INCOMPLETE_MULTIPART_UPLOAD = 43;
+    static final int DAYS_AFTER_INITIATION = 44;
+    static final int NONCURRENT_VERSION_EXPIRATION = 45;
+    static final int NONCURRENT_VERSION_TRANSITION = 46;
+    static final int NONCURRENT_DAYS = 47;
+    static final int LOCATION_CONSTRAINT = 48;
+    static final int KEY_MARKER = 49;
+    static final int UPLOAD_ID_MARKER = 50;
+    static final int NEXT_KEY_MARKER = 51;
+    static final int NEXT_UPLOAD_ID_MARKER = 52;
+    static final int MAX_UPLOADS = 53;
+    static final int UPLOAD = 54;
+    static final int UPLOAD_ID = 55;
+    static final int INITIATOR = 56;
+    static final int UIN = 57;
+    static final int UID = 58;
+    static final int INITIATED = 59;
+    static final int COMMON_PREFIXS = 60;
+    static final int DELETED = 61;
+    static final int ERROR = 62;
+    static final int VERSION_ID = 63;
+    static final int DELETE_MARKER = 64;
+    static final int DELETE_MARKER_VERSION_ID = 65;
+    static final int CODE = 66;
+    static final int MESSAGE = 67;
+    static final int VERSION_ID_MARKER = 68;
+    static final int NEXT_VERSION_ID_MARKER = 69;
+    static final int VERSION = 70;
+    static final int IS_LATEST = 71;
+    static final int PART_NUMBER_MARKER = 72;
+    static final int NEXT_PART_NUMBER_MARKER = 73;
+    static final int MAX_PARTS = 74;
+    static final int PART = 75;
+    static final int PART_NUMBER = 76;
+    static final int RESOURCE = 77;
+    static final int REQUEST_ID = 78;
+    static final int TRACE_ID = 79;
+
+    /** 下标与上面的常量一一对应 */
+    private static final String[] NAMES = {
+            "Name", "Encoding-Type", "Marker", "MaxKeys", "Delimiter", "NextMarker", "IsTruncated", "Prefix",
+            "Contents", "Key", "LastModified", "ETag", "Size", "StorageClass", "Owner", "ID", "CommonPrefixes",
+            "DisplayName", "Buckets", "Bucket", "Location", "CreationDate", "AccessControlList", "Grant", "Grantee",
+            "Permission", "CORSRule", "AllowedOrigin", "AllowedMethod", "AllowedHeader", "ExposeHeader",
+            "MaxAgeSeconds", "Role", "Rule", "Status", "Destination", "Filter", "And", "Transition", "Expiration",
+            "Days", "Date", "ExpiredObjectDeleteMarker", "AbortIncompleteMultipartUpload", "DaysAfterInitiation",
+            "NoncurrentVersionExpiration", "NoncurrentVersionTransition", "NoncurrentDays", "LocationConstraint",
+            "KeyMarker", "UploadIdMarker", "NextKeyMarker", "NextUploadIdMarker", "MaxUploads", "Upload", "UploadId",
+            "Initiator", "UIN", "UID", "Initiated", "CommonPrefixs", "Deleted", "Error", "VersionId", "DeleteMarker",
+            "DeleteMarkerVersionId", "Code", "Message", "VersionIdMarker", "NextVersionIdMarker", "Version",
+            "IsLatest", "PartNumberMarker", "NextPartNumberMarker", "MaxParts", "Part", "PartNumber", "Resource",
+            "RequestId", "TraceId",
+    };
+
+    /** 小写的元素名 */
+    private static final byte[][] KEYS = new byte[NAMES.length][];
+    /** 哈希值 & mask -> 元素名的下标, 空槽为 UNKNOWN */
+    private static final int[] TABLE;
+    private static final int MULTIPLIER;
+
+    static {
+        Charset utf8 = Charset.forName("UTF-8");
+        for(int i = 0; i < NAMES.length; i ++){
+            byte[] bytes = NAMES[i].getBytes(utf8);
+            for(int j = 0; j < bytes.length; j ++){
+                bytes[j] = toLowerCase(bytes[j]);
+            }
+            KEYS[i] = bytes;
+        }
+        // 从 2 倍大小的表开始, 依次尝试乘数直到没有冲突
+        int size = Integer.highestOneBit(NAMES.length) << 2;
+        int[] table = new int[size];
+        int multiplier = 31;
+        while (!fill(table, multiplier)){
+            multiplier += 2;
+            if(multiplier > 4096){
+                table = new int[table.length << 1];
+                multiplier = 31;
+            }
+        }
+        TABLE = table;
+        MULTIPLIER = multiplier;
+    }
+
+    private XmlTags(){
+    }
+
+    /**
+     * @param name 元素名的 UTF-8 字节
+     * @param length 元素名的长度
+     * @return 元素名对应的常量, 不认识的元素返回 {@link #UNKNOWN}
+     */
+    static int lookup(byte[] name, int length){
+        int index = TABLE[hash(name, length, MULTIPLIER) & (TABLE.length - 1)];
+        if(index == UNKNOWN){
+            return UNKNOWN;
+        }
+        byte[] key = KEYS[index];
+        if(key.length != length){
+            return UNKNOWN;
+        }
+        for(int i = 0; i < length; i ++){
+            if(key[i] != toLowerCase(name[i])){
+                return UNKNOWN;
+            }
+        }
+        return index;
+    }
+
+    static String name(int tag){
+        return tag == UNKNOWN ? null : NAMES[tag];
+    }
+
+    private static boolean fill(int[] table, int multiplier){
+        Arrays.fill(table, UNKNOWN);
+        for(int i = 0; i < KEYS.length; i ++){
+            int slot = hash(KEYS[i], KEYS[i].length, multiplier) & (table.length - 1);
+            if(table[slot] != UNKNOWN){
+                return false;
+            }
+            table[slot] = i;
+        }
+        return true;
+    }
+
+    private static int hash(byte[] name, int length, int multiplier){
+        int h = length;
+        for(int i = 0; i < length; i ++){
+            h = h * multiplier + toLowerCase(name[i]);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static byte toLowerCase(byte b){
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
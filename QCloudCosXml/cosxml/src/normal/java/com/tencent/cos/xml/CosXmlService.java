@@ -530,7 +530,7 @@ public class CosXmlService extends CosXmlSimpleService implements CosXml {
      */
     @Override
     public GetBucketResult getBucket(GetBucketRequest request) throws CosXmlClientException, CosXmlServiceException {
-        return execute(request, new GetBucketResult());
+        return execute(request, new GetBucketResult(request.getListBucketVisitor()));
     }
 
     /**
@@ -542,7 +542,7 @@ public class CosXmlService extends CosXmlSimpleService implements CosXml {
      */
     @Override
     public void getBucketAsync(GetBucketRequest request, CosXmlResultListener cosXmlResultListener) {
-        schedule(request, new GetBucketResult(), cosXmlResultListener);
+        schedule(request, new GetBucketResult(request.getListBucketVisitor()), cosXmlResultListener);
     }
 
 //    /**
@@ -602,7 +602,7 @@ public class CosXmlService extends CosXmlSimpleService implements CosXml {
      */
     @Override
     public ListMultiUploadsResult listMultiUploads(ListMultiUploadsRequest request) throws CosXmlClientException, CosXmlServiceException {
-        return execute(request, new ListMultiUploadsResult());
+        return execute(request, new ListMultiUploadsResult(request.getListMultipartUploadsVisitor()));
     }
 
     /**
@@ -614,7 +614,7 @@ public class CosXmlService extends CosXmlSimpleService implements CosXml {
      */
     @Override
     public void listMultiUploadsAsync(ListMultiUploadsRequest request, CosXmlResultListener cosXmlResultListener) {
-        schedule(request, new ListMultiUploadsResult(), cosXmlResultListener);
+        schedule(request, new ListMultiUploadsResult(request.getListMultipartUploadsVisitor()), cosXmlResultListener);
     }
 
     /**
@@ -852,7 +852,7 @@ public class CosXmlService extends CosXmlSimpleService implements CosXml {
      */
     @Override
     public ListBucketVersionsResult listBucketVersions(ListBucketVersionsRequest request) throws CosXmlClientException, CosXmlServiceException {
-        return execute(request, new ListBucketVersionsResult());
+        return execute(request, new ListBucketVersionsResult(request.getListBucketVersionsVisitor()));
     }
 
     /**
@@ -864,7 +864,7 @@ public class CosXmlService extends CosXmlSimpleService implements CosXml {
      */
     @Override
     public void listBucketVersionsAsync(ListBucketVersionsRequest request, CosXmlResultListener cosXmlResultListener) {
-        schedule(request, new ListBucketVersionsResult(), cosXmlResultListener);
+        schedule(request, new ListBucketVersionsResult(request.getListBucketVersionsVisitor()), cosXmlResultListener);
     }
 
 
@@ -1,6 +1,7 @@
 package com.tencent.cos.xml.model.bucket;
 
 import com.tencent.cos.xml.common.RequestMethod;
+import com.tencent.cos.xml.transfer.XmlParser;
 import com.tencent.qcloud.core.http.RequestBodySerializer;
 
 import java.util.Map;
@@ -31,6 +32,8 @@ final public class GetBucketRequest extends BucketRequest {
     /** Max number of entries returned each time, default is 1000 */
     private String maxKeys = "1000";
 
+    private XmlParser.ListBucketVisitor listBucketVisitor;
+
     public GetBucketRequest(String bucket){
         super(bucket);
     }
@@ -170,4 +173,16 @@ final public class GetBucketRequest extends BucketRequest {
     public long getMaxKeys() {
         return Long.parseLong(maxKeys);
     }
+
+    /**
+     * 设置后响应中的条目边解析边回调给 visitor, 不再保存在结果中, 结果中只有分页信息;
+     * 回调在解析响应的线程中进行, 早于请求的 onSuccess
+     */
+    public void setListBucketVisitor(XmlParser.ListBucketVisitor listBucketVisitor) {
+        this.listBucketVisitor = listBucketVisitor;
+    }
+
+    public XmlParser.ListBucketVisitor getListBucketVisitor() {
+        return listBucketVisitor;
+    }
 }
@@ -16,12 +16,29 @@ final public class GetBucketResult extends CosXmlResult {
 
     public ListBucket listBucket;
 
+    private final XmlParser.ListBucketVisitor visitor;
+
+    public GetBucketResult(){
+        this(null);
+    }
+
+    /**
+     * @param visitor 不为 null 时条目边解析边回调给 visitor, 结果中只有分页信息
+     */
+    public GetBucketResult(XmlParser.ListBucketVisitor visitor){
+        this.visitor = visitor;
+    }
+
     @Override
     public void parseResponseBody(HttpResponse response) throws  CosXmlServiceException, CosXmlClientException {
         super.parseResponseBody(response);
         listBucket = new ListBucket();
         try {
-            XmlParser.parseListBucketResult(response.byteStream(), listBucket);
+            if(visitor != null){
+                XmlParser.parseListBucketResult(response.byteStream(), listBucket, visitor);
+            }else {
+                XmlParser.parseListBucketResult(response.byteStream(), listBucket);
+            }
         } catch (XmlPullParserException e) {
             throw new CosXmlClientException(ClientErrorCode.SERVERERROR.getCode(), e);
         } catch (IOException e) {
@@ -4,6 +4,7 @@ import com.tencent.cos.xml.exception.CosXmlClientException;
 import com.tencent.qcloud.core.http.RequestBodySerializer;
 
 import com.tencent.cos.xml.common.RequestMethod;
+import com.tencent.cos.xml.transfer.XmlParser;
 
 import java.util.Map;
 
@@ -19,6 +20,7 @@ public class ListBucketVersionsRequest extends BucketRequest {
     private String delimiter;
     private String encodingType; // 目前支持 "url", url Encoding
     private String maxKeys = "1000";
+    private XmlParser.ListBucketVersionsVisitor listBucketVersionsVisitor;
 
 
     public ListBucketVersionsRequest(String bucket) {
@@ -69,6 +71,30 @@ public class ListBucketVersionsRequest extends BucketRequest {
         this.maxKeys = String.valueOf(maxKeys);
     }
 
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getKeyMarker() {
+        return keyMarker;
+    }
+
+    public String getVersionIdMarker() {
+        return versionIdMarker;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public String getEncodingType() {
+        return encodingType;
+    }
+
+    public int getMaxKeys() {
+        return Integer.parseInt(maxKeys);
+    }
+
     @Override
     public Map<String, String> getQueryString() {
         queryParameters.put("versions", null);
@@ -92,4 +118,16 @@ public class ListBucketVersionsRequest extends BucketRequest {
         }
         return super.getQueryString();
     }
+
+    /**
+     * 设置后响应中的条目边解析边回调给 visitor, 不再保存在结果中, 结果中只有分页信息;
+     * 回调在解析响应的线程中进行, 早于请求的 onSuccess
+     */
+    public void setListBucketVersionsVisitor(XmlParser.ListBucketVersionsVisitor listBucketVersionsVisitor) {
+        this.listBucketVersionsVisitor = listBucketVersionsVisitor;
+    }
+
+    public XmlParser.ListBucketVersionsVisitor getListBucketVersionsVisitor() {
+        return listBucketVersionsVisitor;
+    }
 }
@@ -20,12 +20,29 @@ public class ListBucketVersionsResult extends CosXmlResult {
 
     public ListBucketVersions listBucketVersions;
 
+    private final XmlParser.ListBucketVersionsVisitor visitor;
+
+    public ListBucketVersionsResult(){
+        this(null);
+    }
+
+    /**
+     * @param visitor 不为 null 时条目边解析边回调给 visitor, 结果中只有分页信息
+     */
+    public ListBucketVersionsResult(XmlParser.ListBucketVersionsVisitor visitor){
+        this.visitor = visitor;
+    }
+
     @Override
     public void parseResponseBody(HttpResponse response) throws CosXmlServiceException, CosXmlClientException {
         super.parseResponseBody(response);
         listBucketVersions = new ListBucketVersions();
         try {
-            XmlParser.parseListBucketVersions(response.byteStream(), listBucketVersions);
+            if(visitor != null){
+                XmlParser.parseListBucketVersions(response.byteStream(), listBucketVersions, visitor);
+            }else {
+                XmlParser.parseListBucketVersions(response.byteStream(), listBucketVersions);
+            }
         } catch (XmlPullParserException e) {
             throw new CosXmlClientException(ClientErrorCode.SERVERERROR.getCode(), e);
         } catch (IOException e) {
@@ -1,6 +1,7 @@
 package com.tencent.cos.xml.model.bucket;
 
 import com.tencent.cos.xml.common.RequestMethod;
+import com.tencent.cos.xml.transfer.XmlParser;
 import com.tencent.qcloud.core.http.RequestBodySerializer;
 
 import java.util.Map;
@@ -41,6 +42,8 @@ final public class ListMultiUploadsRequest extends BucketRequest {
      (according to alphabetical order) will also be listed.*/
     private String uploadIdMarker;
 
+    private XmlParser.ListMultipartUploadsVisitor listMultipartUploadsVisitor;
+
     public ListMultiUploadsRequest(String bucket){
         super(bucket);
     }
@@ -207,4 +210,16 @@ final public class ListMultiUploadsRequest extends BucketRequest {
         return uploadIdMarker;
     }
 
+    /**
+     * 设置后响应中的条目边解析边回调给 visitor, 不再保存在结果中, 结果中只有分页信息;
+     * 回调在解析响应的线程中进行, 早于请求的 onSuccess
+     */
+    public void setListMultipartUploadsVisitor(XmlParser.ListMultipartUploadsVisitor listMultipartUploadsVisitor) {
+        this.listMultipartUploadsVisitor = listMultipartUploadsVisitor;
+    }
+
+    public XmlParser.ListMultipartUploadsVisitor getListMultipartUploadsVisitor() {
+        return listMultipartUploadsVisitor;
+    }
+
 }
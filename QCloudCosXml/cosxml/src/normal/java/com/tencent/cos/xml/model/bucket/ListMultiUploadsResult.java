@@ -17,12 +17,29 @@ final public class ListMultiUploadsResult extends CosXmlResult {
 
     public ListMultipartUploads listMultipartUploads;
 
+    private final XmlParser.ListMultipartUploadsVisitor visitor;
+
+    public ListMultiUploadsResult(){
+        this(null);
+    }
+
+    /**
+     * @param visitor 不为 null 时条目边解析边回调给 visitor, 结果中只有分页信息
+     */
+    public ListMultiUploadsResult(XmlParser.ListMultipartUploadsVisitor visitor){
+        this.visitor = visitor;
+    }
+
     @Override
     public void parseResponseBody(HttpResponse response) throws CosXmlServiceException, CosXmlClientException {
         super.parseResponseBody(response);
         listMultipartUploads = new ListMultipartUploads();
         try {
-            XmlParser.parseListMultipartUploadsResult(response.byteStream(), listMultipartUploads);
+            if(visitor != null){
+                XmlParser.parseListMultipartUploadsResult(response.byteStream(), listMultipartUploads, visitor);
+            }else {
+                XmlParser.parseListMultipartUploadsResult(response.byteStream(), listMultipartUploads);
+            }
         } catch (XmlPullParserException e) {
             throw new CosXmlClientException(ClientErrorCode.SERVERERROR.getCode(), e);
         } catch (IOException e) {
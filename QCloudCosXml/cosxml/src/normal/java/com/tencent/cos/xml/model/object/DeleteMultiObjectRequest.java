@@ -3,7 +3,6 @@ package com.tencent.cos.xml.model.object;
 import android.text.TextUtils;
 
 import com.tencent.cos.xml.CosXmlServiceConfig;
-import com.tencent.cos.xml.common.COSRequestHeaderKey;
 import com.tencent.cos.xml.common.ClientErrorCode;
 import com.tencent.cos.xml.common.RequestMethod;
 import com.tencent.cos.xml.exception.CosXmlClientException;
@@ -12,9 +11,6 @@ import com.tencent.cos.xml.transfer.XmlBuilder;
 import com.tencent.qcloud.core.auth.STSCredentialScope;
 import com.tencent.qcloud.core.http.RequestBodySerializer;
 
-import org.xmlpull.v1.XmlPullParserException;
-
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -57,13 +53,7 @@ final public class DeleteMultiObjectRequest extends ObjectRequest {
 
     @Override
     public RequestBodySerializer getRequestBody() throws CosXmlClientException {
-        try {
-            return RequestBodySerializer.string(COSRequestHeaderKey.APPLICATION_XML, XmlBuilder.buildDelete(delete));
-        } catch (XmlPullParserException e) {
-            throw new CosXmlClientException(ClientErrorCode.INVALID_ARGUMENT.getCode(), e);
-        } catch (IOException e) {
-            throw new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(), e);
-        }
+        return XmlBuilder.deleteBody(delete);
     }
 
     @Override
@@ -0,0 +1,511 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.cos.xml.model.bucket.GetBucketResult;
+import com.tencent.cos.xml.model.bucket.ListBucketVersionsRequest;
+import com.tencent.cos.xml.model.bucket.ListBucketVersionsResult;
+import com.tencent.cos.xml.model.tag.ListBucket;
+import com.tencent.cos.xml.model.tag.ListBucketVersions;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 自动翻页的存储桶列表.
+ * <p>
+ * 每次调用 {@link #iterator()} 从请求中的 marker 开始列出, marker 由迭代器在内部推进.
+ * 第一次调用 hasNext() 时才发出第一个请求, 调用方处理第 N 页时第 N+1 页已经在后台请求,
+ * 内存中最多保留当前页和 prefetchPages 个预取的页. 提前结束时调用 {@link ListingIterator#close()}
+ * 取消进行中的请求, 不再发出后续请求.
+ * 列表请求失败时 hasNext() 和 next() 抛出 {@link ListingException}.
+ * </p>
+ * <pre>
+ * ListingIterator&lt;ListBucket.Contents&gt; iterator = BucketListing.objects(cosXmlService, getBucketRequest).iterator();
+ * try {
+ *     while (iterator.hasNext()) {
+ *         ListBucket.Contents contents = iterator.next();
+ *     }
+ * } finally {
+ *     iterator.close();
+ * }
+ * </pre>
+ */
+public final class BucketListing<T> implements Iterable<T> {
+
+    private static final int DEFAULT_PREFETCH_PAGES = 1;
+
+    private final CosXmlService cosXmlService;
+    private final PageSource<T> pageSource;
+    private int prefetchPages = DEFAULT_PREFETCH_PAGES;
+
+    private BucketListing(CosXmlService cosXmlService, PageSource<T> pageSource){
+        this.cosXmlService = cosXmlService;
+        this.pageSource = pageSource;
+    }
+
+    /**
+     * 列出对象, 使用请求中的 prefix、delimiter、encodingType、maxKeys, 从请求中的 marker 开始
+     */
+    public static BucketListing<ListBucket.Contents> objects(CosXmlService cosXmlService, GetBucketRequest getBucketRequest){
+        return objects(cosXmlService, getBucketRequest, getBucketRequest.getMarker(), null);
+    }
+
+    /**
+     * 列出 (startMarker, endKey] 范围内的对象, 越过 endKey 后不再发出请求
+     * @param endKey 为 null 时列到最后
+     */
+    static BucketListing<ListBucket.Contents> objects(CosXmlService cosXmlService, GetBucketRequest getBucketRequest,
+                                                      String startMarker, String endKey){
+        return new BucketListing<>(cosXmlService, new GetBucketPageSource<ListBucket.Contents>(getBucketRequest,
+                startMarker, endKey){
+            @Override
+            List<ListBucket.Contents> items(ListBucket listBucket) {
+                return listBucket.contentsList;
+            }
+
+            @Override
+            String keyOf(ListBucket.Contents item) {
+                return item.key;
+            }
+        });
+    }
+
+    /**
+     * 与 {@link #objects(CosXmlService, GetBucketRequest)} 相同, 同时把每一页的公共前缀交给 listener,
+     * 设置了 delimiter 时一次列表同时得到顶层对象和目录
+     */
+    static BucketListing<ListBucket.Contents> objects(CosXmlService cosXmlService, GetBucketRequest getBucketRequest,
+                                                      final OnCommonPrefixesListener listener){
+        return new BucketListing<>(cosXmlService, new GetBucketPageSource<ListBucket.Contents>(getBucketRequest,
+                getBucketRequest.getMarker(), null){
+            @Override
+            List<ListBucket.Contents> items(ListBucket listBucket) {
+                return listBucket.contentsList;
+            }
+
+            @Override
+            String keyOf(ListBucket.Contents item) {
+                return item.key;
+            }
+
+            @Override
+            public Page<ListBucket.Contents> toPage(CosXmlResult result) {
+                Page<ListBucket.Contents> page = super.toPage(result);
+                ListBucket listBucket = ((GetBucketResult) result).listBucket;
+                listener.onCommonPrefixes(listBucket != null ? listBucket.commonPrefixesList : null,
+                        page.nextMarkers == null);
+                return page;
+            }
+        });
+    }
+
+    /**
+     * 列出设置了 delimiter 时的公共前缀（目录）
+     */
+    public static BucketListing<ListBucket.CommonPrefixes> commonPrefixes(CosXmlService cosXmlService, GetBucketRequest getBucketRequest){
+        return new BucketListing<>(cosXmlService, new GetBucketPageSource<ListBucket.CommonPrefixes>(getBucketRequest,
+                getBucketRequest.getMarker(), null){
+            @Override
+            List<ListBucket.CommonPrefixes> items(ListBucket listBucket) {
+                return listBucket.commonPrefixesList;
+            }
+
+            @Override
+            String keyOf(ListBucket.CommonPrefixes item) {
+                return item.prefix;
+            }
+        });
+    }
+
+    /**
+     * 列出对象的所有版本, 元素为 {@link ListBucketVersions.Version} 或 {@link ListBucketVersions.DeleteMarker}
+     */
+    public static BucketListing<ListBucketVersions.ObjectVersion> versions(CosXmlService cosXmlService,
+                                                                          ListBucketVersionsRequest listBucketVersionsRequest){
+        return new BucketListing<>(cosXmlService, new VersionsPageSource(listBucketVersionsRequest));
+    }
+
+    /**
+     * 设置预取的页数, 默认为 1
+     * @param prefetchPages 预取的页数, 大于等于 1
+     * @return BucketListing
+     */
+    public BucketListing<T> setPrefetchPages(int prefetchPages){
+        if(prefetchPages > 0){
+            this.prefetchPages = prefetchPages;
+        }
+        return this;
+    }
+
+    @Override
+    public ListingIterator<T> iterator() {
+        return new ListingIterator<>(cosXmlService, pageSource, prefetchPages);
+    }
+
+    /**
+     * 列表迭代器, 不是线程安全的, 只能在一个线程中使用
+     */
+    public static final class ListingIterator<T> implements Iterator<T>, Closeable {
+
+        private final CosXmlService cosXmlService;
+        private final PageSource<T> pageSource;
+        private final int prefetchPages;
+
+        private final Deque<Page<T>> pages = new ArrayDeque<>();
+        private Iterator<T> current = Collections.<T>emptyList().iterator();
+        /** 下一页的 marker, 对于版本列表为 {keyMarker, versionIdMarker} */
+        private String[] nextMarkers;
+        private CosXmlRequest runningRequest;
+        private boolean isEnd;
+        private boolean isClosed;
+        private ListingException exception;
+        /** 有新的页或请求失败时回调, 用于合并多个并行的列表 */
+        private Runnable onPageListener;
+
+        ListingIterator(CosXmlService cosXmlService, PageSource<T> pageSource, int prefetchPages){
+            this.cosXmlService = cosXmlService;
+            this.pageSource = pageSource;
+            this.prefetchPages = prefetchPages;
+            this.nextMarkers = pageSource.initialMarkers();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(current.hasNext()){
+                return true;
+            }
+            synchronized (this){
+                Boolean hasNext;
+                while ((hasNext = tryHasNext()) == null){
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        close();
+                        throw new ListingException(e);
+                    }
+                }
+                return hasNext;
+            }
+        }
+
+        /**
+         * 不阻塞的 hasNext
+         * @return 有下一个元素时返回 TRUE, 已列完返回 FALSE, 需要等待下一页时返回 null
+         */
+        synchronized Boolean tryHasNext(){
+            while (!current.hasNext()){
+                Page<T> page = pages.poll();
+                if(page != null){
+                    // 取走一页后立即补充预取
+                    prefetch();
+                    current = page.items.iterator();
+                    continue;
+                }
+                if(exception != null){
+                    throw exception;
+                }
+                if(isClosed || (isEnd && runningRequest == null)){
+                    return Boolean.FALSE;
+                }
+                prefetch();
+                if(runningRequest != null){
+                    return null;
+                }
+                // 请求已同步完成或失败
+            }
+            return Boolean.TRUE;
+        }
+
+        /**
+         * 不等第一次 hasNext() 就开始请求第一页
+         */
+        void start(){
+            prefetch();
+        }
+
+        void setOnPageListener(Runnable onPageListener){
+            this.onPageListener = onPageListener;
+        }
+
+        @Override
+        public T next() {
+            if(!hasNext()){
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * 取消进行中的请求并丢弃预取的页
+         */
+        @Override
+        public void close() {
+            CosXmlRequest request;
+            synchronized (this){
+                if(isClosed) return;
+                isClosed = true;
+                pages.clear();
+                current = Collections.<T>emptyList().iterator();
+                request = runningRequest;
+                runningRequest = null;
+                notifyAll();
+            }
+            if(request != null){
+                cosXmlService.cancel(request);
+            }
+        }
+
+        /**
+         * 预取的页不足 prefetchPages 且没有进行中的请求时, 请求下一页
+         */
+        private synchronized void prefetch(){
+            if(isClosed || isEnd || exception != null || runningRequest != null || pages.size() >= prefetchPages){
+                return;
+            }
+            final CosXmlRequest request = pageSource.newRequest(nextMarkers);
+            runningRequest = request;
+            pageSource.fetch(cosXmlService, request, new CosXmlResultListener() {
+                @Override
+                public void onSuccess(CosXmlRequest cosXmlRequest, CosXmlResult result) {
+                    synchronized (ListingIterator.this){
+                        if(runningRequest != request) return;
+                        runningRequest = null;
+                        Page<T> page = pageSource.toPage(result);
+                        pages.add(page);
+                        nextMarkers = page.nextMarkers;
+                        isEnd = page.nextMarkers == null;
+                        prefetch();
+                        ListingIterator.this.notifyAll();
+                    }
+                    notifyPage();
+                }
+
+                @Override
+                public void onFail(CosXmlRequest cosXmlRequest, CosXmlClientException clientException, CosXmlServiceException serviceException) {
+                    synchronized (ListingIterator.this){
+                        if(runningRequest != request) return;
+                        runningRequest = null;
+                        exception = new ListingException(clientException != null ? clientException : serviceException);
+                        ListingIterator.this.notifyAll();
+                    }
+                    notifyPage();
+                }
+            });
+        }
+
+        /**
+         * 在锁外回调, 避免与合并方的锁形成死锁
+         */
+        private void notifyPage(){
+            Runnable listener = onPageListener;
+            if(listener != null){
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * 列表请求失败, 原因为 {@link CosXmlClientException} 或 {@link CosXmlServiceException}
+     */
+    public static class ListingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ListingException(Throwable cause){
+            super(cause);
+        }
+    }
+
+    /**
+     * 每收到一页时在请求的回调线程中调用
+     */
+    interface OnCommonPrefixesListener {
+        /**
+         * @param commonPrefixes 本页的公共前缀, 可能为 null
+         * @param isLastPage 是否已经没有下一页
+         */
+        void onCommonPrefixes(List<ListBucket.CommonPrefixes> commonPrefixes, boolean isLastPage);
+    }
+
+    static final class Page<T> {
+        final List<T> items;
+        /** 没有下一页时为 null */
+        final String[] nextMarkers;
+
+        Page(List<T> items, String[] nextMarkers){
+            this.items = items != null ? items : Collections.<T>emptyList();
+            this.nextMarkers = nextMarkers;
+        }
+    }
+
+    /**
+     * 按 marker 构造列表请求并把结果转换为一页
+     */
+    interface PageSource<T> {
+        String[] initialMarkers();
+
+        CosXmlRequest newRequest(String[] markers);
+
+        void fetch(CosXmlService cosXmlService, CosXmlRequest request, CosXmlResultListener listener);
+
+        Page<T> toPage(CosXmlResult result);
+    }
+
+    abstract static class GetBucketPageSource<T> implements PageSource<T> {
+
+        private final GetBucketRequest template;
+        private final String startMarker;
+        /** 列出的最后一个 key（包含）, 为 null 时列到最后 */
+        private final String endKey;
+
+        GetBucketPageSource(GetBucketRequest template, String startMarker, String endKey){
+            this.template = template;
+            this.startMarker = startMarker;
+            this.endKey = endKey;
+        }
+
+        abstract List<T> items(ListBucket listBucket);
+
+        abstract String keyOf(T item);
+
+        @Override
+        public String[] initialMarkers() {
+            return new String[]{startMarker};
+        }
+
+        @Override
+        public CosXmlRequest newRequest(String[] markers) {
+            GetBucketRequest getBucketRequest = new GetBucketRequest(template.getBucket());
+            getBucketRequest.setRegion(template.getRegion());
+            getBucketRequest.setRequestHeaders(template.getRequestHeaders());
+            getBucketRequest.setPrefix(template.getPrefix());
+            getBucketRequest.setDelimiter(template.getDelimiter());
+            getBucketRequest.setEncodingType(template.getEncodingType());
+            getBucketRequest.setMaxKeys(template.getMaxKeys());
+            getBucketRequest.setMarker(markers[0]);
+            return getBucketRequest;
+        }
+
+        @Override
+        public void fetch(CosXmlService cosXmlService, CosXmlRequest request, CosXmlResultListener listener) {
+            cosXmlService.getBucketAsync((GetBucketRequest) request, listener);
+        }
+
+        @Override
+        public Page<T> toPage(CosXmlResult result) {
+            ListBucket listBucket = ((GetBucketResult) result).listBucket;
+            if(listBucket == null){
+                return new Page<>(null, null);
+            }
+            String nextMarker = listBucket.nextMarker;
+            if(nextMarker == null){
+                // 未设置 delimiter 时响应中没有 NextMarker, 以本页最后一个 key 或公共前缀为准
+                nextMarker = lastOf(listBucket);
+            }
+            List<T> items = items(listBucket);
+            if(endKey != null && items != null){
+                int count = 0;
+                while (count < items.size() && compareKeys(keyOf(items.get(count)), endKey) <= 0){
+                    count ++;
+                }
+                items = items.subList(0, count);
+            }
+            boolean hasNextPage = listBucket.isTruncated && nextMarker != null
+                    && (endKey == null || compareKeys(nextMarker, endKey) < 0);
+            return new Page<>(items, hasNextPage ? new String[]{nextMarker} : null);
+        }
+
+        /**
+         * 按码点比较, 与 COS 按 UTF-8 字节序列出的顺序一致
+         */
+        static int compareKeys(String a, String b){
+            int i = 0, j = 0;
+            while (i < a.length() && j < b.length()){
+                int ca = a.codePointAt(i);
+                int cb = b.codePointAt(j);
+                if(ca != cb){
+                    return ca < cb ? -1 : 1;
+                }
+                i += Character.charCount(ca);
+                j += Character.charCount(cb);
+            }
+            return (a.length() - i) - (b.length() - j);
+        }
+
+        private static String lastOf(ListBucket listBucket){
+            String lastKey = null;
+            if(listBucket.contentsList != null && !listBucket.contentsList.isEmpty()){
+                lastKey = listBucket.contentsList.get(listBucket.contentsList.size() - 1).key;
+            }
+            if(listBucket.commonPrefixesList != null && !listBucket.commonPrefixesList.isEmpty()){
+                String lastPrefix = listBucket.commonPrefixesList.get(listBucket.commonPrefixesList.size() - 1).prefix;
+                if(lastKey == null || (lastPrefix != null && lastPrefix.compareTo(lastKey) > 0)){
+                    lastKey = lastPrefix;
+                }
+            }
+            return lastKey;
+        }
+    }
+
+    static final class VersionsPageSource implements PageSource<ListBucketVersions.ObjectVersion> {
+
+        private final ListBucketVersionsRequest template;
+
+        VersionsPageSource(ListBucketVersionsRequest template){
+            this.template = template;
+        }
+
+        @Override
+        public String[] initialMarkers() {
+            return new String[]{template.getKeyMarker(), template.getVersionIdMarker()};
+        }
+
+        @Override
+        public CosXmlRequest newRequest(String[] markers) {
+            ListBucketVersionsRequest listBucketVersionsRequest = new ListBucketVersionsRequest(template.getBucket());
+            listBucketVersionsRequest.setRegion(template.getRegion());
+            listBucketVersionsRequest.setRequestHeaders(template.getRequestHeaders());
+            listBucketVersionsRequest.setPrefix(template.getPrefix());
+            listBucketVersionsRequest.setDelimiter(template.getDelimiter());
+            listBucketVersionsRequest.setEncodingType(template.getEncodingType());
+            listBucketVersionsRequest.setMaxKeys(template.getMaxKeys());
+            listBucketVersionsRequest.setKeyMarker(markers[0]);
+            listBucketVersionsRequest.setVersionIdMarker(markers[1]);
+            return listBucketVersionsRequest;
+        }
+
+        @Override
+        public void fetch(CosXmlService cosXmlService, CosXmlRequest request, CosXmlResultListener listener) {
+            cosXmlService.listBucketVersionsAsync((ListBucketVersionsRequest) request, listener);
+        }
+
+        @Override
+        public Page<ListBucketVersions.ObjectVersion> toPage(CosXmlResult result) {
+            ListBucketVersions listBucketVersions = ((ListBucketVersionsResult) result).listBucketVersions;
+            if(listBucketVersions == null){
+                return new Page<>(null, null);
+            }
+            List<ListBucketVersions.ObjectVersion> versions = listBucketVersions.objectVersionList != null
+                    ? listBucketVersions.objectVersionList : new ArrayList<ListBucketVersions.ObjectVersion>();
+            return new Page<>(versions, listBucketVersions.isTruncated && listBucketVersions.nextKeyMarker != null
+                    ? new String[]{listBucketVersions.nextKeyMarker, listBucketVersions.nextVersionIdMarker} : null);
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.cos.xml.model.bucket.GetBucketResult;
+import com.tencent.cos.xml.model.object.CopyObjectRequest;
+import com.tencent.cos.xml.model.object.DeleteObjectRequest;
+import com.tencent.cos.xml.model.tag.ListBucket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 前缀级别的批量拷贝（或移动）任务.
+ * <p>
+ * 按页列出源前缀下的对象, 列出的对象立即交给拷贝, 缓冲的对象不足一页时提前列出下一页,
+ * 列表请求与拷贝请求重叠进行; 未处理完的对象超过 {@link #MAX_OUTSTANDING} 个时(例如队首是一个耗时的分片拷贝)
+ * 暂停列出, 队首处理完后继续. 所有对象共享同一个并发预算: 小于分片拷贝界限的对象直接 CopyObject,
+ * 占用 1 个名额; 大对象使用分片拷贝, 占用 maxConcurrentParts 个名额.
+ * 移动时源对象在拷贝成功后删除.
+ * 任务中断后可以用 {@link #getResumeMarker()} 作为 marker 重新发起, 该位置之前的对象都已处理完.
+ * </p>
+ */
+public final class COSXMLBatchCopyTask {
+
+    /** 每页列出的对象数, 也是缓冲的下限 */
+    private static final int PAGE_SIZE = 1000;
+    /** 按列出顺序未处理完的对象数上限, 超过后暂停列出, 避免队首阻塞时无限缓冲 */
+    static final int MAX_OUTSTANDING = 10 * PAGE_SIZE;
+
+    private final CosXmlService cosXmlService;
+    private final TransferManager transferManager;
+    private final CopyObjectRequest.CopySourceStruct sourceStruct;
+    private final String sourcePrefix;
+    private final String bucket;
+    private final String prefix;
+    private final boolean isMove;
+    private final long multiCopySizeDivision;
+    private final int partWeight;
+    private final int concurrencyBudget;
+
+    /** 已列出但尚未开始的对象 */
+    private final Deque<CopySource> listedSources = new ArrayDeque<>();
+    private final Deque<CopySource> retrySources = new ArrayDeque<>();
+    private final List<CopySource> failedSources = new ArrayList<>();
+    /** 按列出顺序排列的未处理完的对象, 用于计算可以续传的 marker */
+    private final Deque<CopySource> outstandingSources = new ArrayDeque<>();
+    private final List<COSXMLCopyTask> runningTasks = new ArrayList<>();
+    private final List<CosXmlRequest> runningRequests = new ArrayList<>();
+    private String nextMarker;
+    private String resumeMarker;
+    private boolean isListing;
+    private boolean isListEnd;
+    private int usedBudget;
+    private boolean isCanceled;
+    private boolean isFinished;
+
+    private final BatchCopyListener batchCopyListener;
+
+    private final long startTime = System.currentTimeMillis();
+    private long copiedBytes;
+    private int listedCount;
+    private int succeedCount;
+    private int failedCount;
+
+    COSXMLBatchCopyTask(CosXmlService cosXmlService, TransferManager transferManager, TransferConfig transferConfig,
+                        CopyObjectRequest.CopySourceStruct sourceStruct, String bucket, String prefix,
+                        String marker, boolean isMove, BatchCopyListener batchCopyListener){
+        this.cosXmlService = cosXmlService;
+        this.transferManager = transferManager;
+        this.sourceStruct = sourceStruct;
+        this.sourcePrefix = sourceStruct.cosPath == null ? "" : sourceStruct.cosPath;
+        this.bucket = bucket;
+        this.prefix = prefix == null ? "" : prefix;
+        this.isMove = isMove;
+        this.nextMarker = marker;
+        this.resumeMarker = marker;
+        this.batchCopyListener = batchCopyListener;
+        this.multiCopySizeDivision = transferConfig.divisionForCopy;
+        this.concurrencyBudget = Math.max(transferConfig.batchConcurrency, 1);
+        this.partWeight = Math.min(Math.max(transferConfig.maxConcurrentParts, 1), concurrencyBudget);
+    }
+
+    void start(){
+        listNextPage();
+    }
+
+    /**
+     * 重新处理所有失败的对象, 已成功的对象不会重复拷贝
+     */
+    public void retryFailed(){
+        synchronized (this){
+            if(isCanceled) return;
+            retrySources.addAll(failedSources);
+            failedCount -= failedSources.size();
+            failedSources.clear();
+            isFinished = false;
+        }
+        scheduleNext();
+    }
+
+    /**
+     * 取消所有进行中的拷贝, 不再列出和调度剩下的对象
+     */
+    public void cancel(){
+        List<COSXMLCopyTask> tasks;
+        List<CosXmlRequest> requests;
+        synchronized (this){
+            if(isCanceled) return;
+            isCanceled = true;
+            tasks = new ArrayList<>(runningTasks);
+            runningTasks.clear();
+            requests = new ArrayList<>(runningRequests);
+            runningRequests.clear();
+        }
+        for(COSXMLCopyTask task : tasks){
+            task.cancel();
+        }
+        for(CosXmlRequest request : requests){
+            cosXmlService.cancel(request);
+        }
+    }
+
+    /**
+     * @return 可以重新发起任务的 marker, 按列出顺序在它之前的对象都已处理完（成功或失败）, 为 null 时从头开始
+     */
+    public synchronized String getResumeMarker(){
+        return resumeMarker;
+    }
+
+    /**
+     * @return 当前失败的对象
+     */
+    public synchronized List<CopySource> getFailedSources(){
+        return new ArrayList<>(failedSources);
+    }
+
+    /**
+     * @return 当前的汇总统计
+     */
+    public synchronized BatchCopyStats getStats(){
+        long elapsed = Math.max(System.currentTimeMillis() - startTime, 1L);
+        return new BatchCopyStats(listedCount, succeedCount, failedCount, runningTasks.size() + runningRequests.size(),
+                copiedBytes, copiedBytes * 1000 / elapsed, resumeMarker);
+    }
+
+    /**
+     * 缓冲的对象不足一页、未处理完的对象不超过上限且没有进行中的列表请求时, 列出下一页
+     */
+    private void listNextPage(){
+        synchronized (this){
+            if(isCanceled || isListing || isListEnd || listedSources.size() >= PAGE_SIZE
+                    || outstandingSources.size() >= MAX_OUTSTANDING){
+                return;
+            }
+            isListing = true;
+        }
+        final GetBucketRequest getBucketRequest = new GetBucketRequest(sourceStruct.bucket);
+        getBucketRequest.setRegion(sourceStruct.region);
+        getBucketRequest.setPrefix(sourcePrefix);
+        getBucketRequest.setMaxKeys(PAGE_SIZE);
+        String marker;
+        synchronized (this){
+            marker = nextMarker;
+            runningRequests.add(getBucketRequest);
+        }
+        if(marker != null){
+            getBucketRequest.setMarker(marker);
+        }
+        cosXmlService.getBucketAsync(getBucketRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                ListBucket listBucket = ((GetBucketResult) result).listBucket;
+                synchronized (COSXMLBatchCopyTask.this){
+                    if(!runningRequests.remove(getBucketRequest)) return;
+                    isListing = false;
+                    String lastKey = null;
+                    if(listBucket != null && listBucket.contentsList != null){
+                        for(ListBucket.Contents contents : listBucket.contentsList){
+                            CopySource source = new CopySource(contents.key, destinationPath(contents.key),
+                                    contents.size, contents.eTag);
+                            listedSources.add(source);
+                            outstandingSources.add(source);
+                            listedCount ++;
+                            lastKey = contents.key;
+                        }
+                    }
+                    isListEnd = listBucket == null || !listBucket.isTruncated || lastKey == null;
+                    nextMarker = listBucket != null && listBucket.nextMarker != null ? listBucket.nextMarker : lastKey;
+                }
+                scheduleNext();
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                synchronized (COSXMLBatchCopyTask.this){
+                    if(!runningRequests.remove(getBucketRequest)) return;
+                    isListing = false;
+                    isListEnd = true;
+                }
+                if(batchCopyListener != null){
+                    batchCopyListener.onListFail(exception, serviceException);
+                }
+                scheduleNext();
+            }
+        });
+    }
+
+    private void scheduleNext(){
+        List<CopySource> nextSources = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        boolean finished = false;
+        synchronized (this){
+            while (!isCanceled){
+                CopySource source = retrySources.isEmpty() ? listedSources.peek() : retrySources.peek();
+                if(source == null){
+                    break;
+                }
+                int weight = source.size >= multiCopySizeDivision ? partWeight : 1;
+                if(usedBudget + weight > concurrencyBudget){
+                    break;
+                }
+                if(retrySources.isEmpty()){
+                    listedSources.poll();
+                }else {
+                    retrySources.poll();
+                }
+                usedBudget += weight;
+                nextSources.add(source);
+                weights.add(weight);
+            }
+            if(!isCanceled && !isFinished && isListEnd && !isListing && usedBudget == 0
+                    && listedSources.isEmpty() && retrySources.isEmpty()){
+                isFinished = true;
+                finished = true;
+            }
+        }
+        for(int i = 0; i < nextSources.size(); i ++){
+            startCopy(nextSources.get(i), weights.get(i));
+        }
+        listNextPage();
+        if(finished && batchCopyListener != null){
+            batchCopyListener.onFinished(getStats());
+        }
+    }
+
+    private void startCopy(final CopySource source, final int weight){
+        CopyObjectRequest.CopySourceStruct copySourceStruct = new CopyObjectRequest.CopySourceStruct(sourceStruct.appid,
+                sourceStruct.bucket, sourceStruct.region, source.key);
+        CosXmlResultListener copyResultListener = new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                if(isMove){
+                    deleteSource(source, weight, result);
+                }else {
+                    onSourceSuccess(source, weight, result);
+                }
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                onSourceFail(source, weight, exception, serviceException);
+            }
+        };
+        if(source.size >= multiCopySizeDivision){
+            final COSXMLCopyTask task = transferManager.copy(bucket, source.cosPath, copySourceStruct);
+            synchronized (this){
+                runningTasks.add(task);
+            }
+            source.runningTask = task;
+            task.setCosXmlResultListener(copyResultListener);
+        }else {
+            CopyObjectRequest copyObjectRequest = new CopyObjectRequest(bucket, source.cosPath, copySourceStruct);
+            // 列出后源对象被修改则返回 412, 不会拷贝到与列表不一致的内容
+            copyObjectRequest.setCopyIfMatch(source.eTag);
+            synchronized (this){
+                runningRequests.add(copyObjectRequest);
+            }
+            source.runningRequest = copyObjectRequest;
+            cosXmlService.copyObjectAsync(copyObjectRequest, copyResultListener);
+        }
+    }
+
+    private void deleteSource(final CopySource source, final int weight, final CosXmlResult copyResult){
+        DeleteObjectRequest deleteObjectRequest = new DeleteObjectRequest(sourceStruct.bucket, source.key);
+        deleteObjectRequest.setRegion(sourceStruct.region);
+        synchronized (this){
+            if(!untrack(source)) return;
+            runningRequests.add(deleteObjectRequest);
+        }
+        source.runningRequest = deleteObjectRequest;
+        cosXmlService.deleteObjectAsync(deleteObjectRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                onSourceSuccess(source, weight, copyResult);
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                onSourceFail(source, weight, exception, serviceException);
+            }
+        });
+    }
+
+    private void onSourceSuccess(CopySource source, int weight, CosXmlResult result){
+        synchronized (this){
+            if(!untrack(source)) return;
+            usedBudget -= weight;
+            succeedCount ++;
+            copiedBytes += source.size;
+            markProcessed(source);
+        }
+        if(batchCopyListener != null){
+            batchCopyListener.onSuccess(source, result);
+            batchCopyListener.onProgress(getStats());
+        }
+        scheduleNext();
+    }
+
+    private void onSourceFail(CopySource source, int weight, CosXmlClientException exception,
+                              CosXmlServiceException serviceException){
+        synchronized (this){
+            if(!untrack(source)) return;
+            usedBudget -= weight;
+            failedCount ++;
+            failedSources.add(source);
+            markProcessed(source);
+        }
+        if(batchCopyListener != null){
+            batchCopyListener.onFail(source, exception, serviceException);
+            batchCopyListener.onProgress(getStats());
+        }
+        scheduleNext();
+    }
+
+    /**
+     * 移除对象进行中的任务或请求
+     * @return 若任务已被取消则返回 false
+     */
+    private boolean untrack(CopySource source){
+        boolean isRunning;
+        if(source.runningTask != null){
+            isRunning = runningTasks.remove(source.runningTask);
+        }else {
+            isRunning = runningRequests.remove(source.runningRequest);
+        }
+        source.runningTask = null;
+        source.runningRequest = null;
+        return isRunning;
+    }
+
+    /**
+     * 按列出顺序推进续传的 marker
+     */
+    private void markProcessed(CopySource source){
+        source.isProcessed = true;
+        while (!outstandingSources.isEmpty() && outstandingSources.peek().isProcessed){
+            resumeMarker = outstandingSources.poll().key;
+        }
+    }
+
+    /**
+     * 同一个存储桶中源前缀与目标前缀互相包含时, 拷贝出的对象会被再次列出, 空前缀包含所有前缀
+     */
+    static boolean isOverlapping(String sourceBucket, String sourceRegion, String sourcePrefix,
+                                 String bucket, String region, String prefix){
+        if(sourceBucket == null || !sourceBucket.equals(bucket)
+                || (sourceRegion != null && region != null && !sourceRegion.equals(region))){
+            return false;
+        }
+        String source = sourcePrefix == null ? "" : sourcePrefix;
+        String destination = prefix == null ? "" : prefix;
+        return source.startsWith(destination) || destination.startsWith(source);
+    }
+
+    private String destinationPath(String key){
+        return prefix + key.substring(Math.min(sourcePrefix.length(), key.length()));
+    }
+
+    /**
+     * 拷贝的对象: 源对象的 key 及其在目标存储桶上的位置
+     */
+    public static class CopySource {
+        public final String key;
+        public final String cosPath;
+        public final long size;
+        public final String eTag;
+
+        private COSXMLCopyTask runningTask;
+        private CosXmlRequest runningRequest;
+        private boolean isProcessed;
+
+        CopySource(String key, String cosPath, long size, String eTag){
+            this.key = key;
+            this.cosPath = cosPath;
+            this.size = size;
+            this.eTag = eTag;
+        }
+
+        @Override
+        public String toString() {
+            return key + " -> " + cosPath;
+        }
+    }
+
+    /**
+     * 批量拷贝的汇总统计
+     */
+    public static class BatchCopyStats {
+        /** 已列出的对象数 */
+        public final int listedCount;
+        /** 已成功的对象数 */
+        public final int succeedCount;
+        /** 已失败的对象数 */
+        public final int failedCount;
+        /** 进行中的请求数 */
+        public final int runningCount;
+        /** 已拷贝的字节数 */
+        public final long copiedBytes;
+        /** 平均吞吐, 字节每秒 */
+        public final long bytesPerSecond;
+        /** 可以续传的 marker */
+        public final String resumeMarker;
+
+        BatchCopyStats(int listedCount, int succeedCount, int failedCount, int runningCount, long copiedBytes,
+                       long bytesPerSecond, String resumeMarker){
+            this.listedCount = listedCount;
+            this.succeedCount = succeedCount;
+            this.failedCount = failedCount;
+            this.runningCount = runningCount;
+            this.copiedBytes = copiedBytes;
+            this.bytesPerSecond = bytesPerSecond;
+            this.resumeMarker = resumeMarker;
+        }
+    }
+
+    public interface BatchCopyListener {
+        void onSuccess(CopySource source, CosXmlResult result);
+
+        void onFail(CopySource source, CosXmlClientException exception, CosXmlServiceException serviceException);
+
+        /**
+         * 列出对象失败, 不再列出后续的对象, 已列出的对象处理完后回调 {@link #onFinished(BatchCopyStats)},
+         * 可以从 {@link BatchCopyStats#resumeMarker} 重新发起
+         */
+        void onListFail(CosXmlClientException exception, CosXmlServiceException serviceException);
+
+        void onProgress(BatchCopyStats stats);
+
+        /**
+         * 所有对象都已处理完（可能有失败的）, 调用 {@link #retryFailed()} 后会再次回调
+         */
+        void onFinished(BatchCopyStats stats);
+    }
+}
@@ -0,0 +1,308 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.cos.xml.model.bucket.GetBucketResult;
+import com.tencent.cos.xml.model.object.DeleteMultiObjectRequest;
+import com.tencent.cos.xml.model.object.DeleteMultiObjectResult;
+import com.tencent.cos.xml.model.tag.DeleteResult;
+import com.tencent.cos.xml.model.tag.ListBucket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按前缀批量删除任务.
+ * <p>
+ * 每列出一页（最多 1000 个对象）就作为一个批量删除请求发出, 同时进行中的批量删除请求不超过
+ * maxConcurrentDeleteBatches 个, 删除进行时下一页的列表请求已经在路上.
+ * 批量删除使用 Quiet 模式, 响应中只有删除失败的对象; 失败按错误码汇总计数,
+ * 只保留前 {@link #MAX_RECORDED_FAILURES} 个失败的对象.
+ * </p>
+ */
+public final class COSXMLBatchDeleteTask {
+
+    /** 每页列出的对象数, 也是每个批量删除请求的对象数 */
+    private static final int PAGE_SIZE = 1000;
+    /** 最多保留的失败对象数 */
+    public static final int MAX_RECORDED_FAILURES = 1000;
+
+    private final CosXmlService cosXmlService;
+    private final String bucket;
+    private final String region;
+    private final String prefix;
+    private final int maxConcurrentBatches;
+
+    /** 已列出但尚未发出的批次 */
+    private final Deque<List<String>> pendingBatches = new ArrayDeque<>();
+    private final List<CosXmlRequest> runningRequests = new ArrayList<>();
+    private int runningBatchCount;
+    private String nextMarker;
+    private boolean isListing;
+    private boolean isListEnd;
+    private boolean isCanceled;
+    private boolean isFinished;
+
+    private final BatchDeleteListener batchDeleteListener;
+
+    private final long startTime = System.currentTimeMillis();
+    private int listedCount;
+    private int deletedCount;
+    private int failedCount;
+    /** 错误码 -> 失败的对象数 */
+    private final Map<String, Integer> failedCodeCounts = new LinkedHashMap<>();
+    private final List<DeleteResult.Error> recordedFailures = new ArrayList<>();
+
+    COSXMLBatchDeleteTask(CosXmlService cosXmlService, TransferConfig transferConfig, String bucket, String region,
+                          String prefix, BatchDeleteListener batchDeleteListener){
+        this.cosXmlService = cosXmlService;
+        this.bucket = bucket;
+        this.region = region;
+        this.prefix = prefix == null ? "" : prefix;
+        this.maxConcurrentBatches = Math.max(transferConfig.maxConcurrentDeleteBatches, 1);
+        this.batchDeleteListener = batchDeleteListener;
+    }
+
+    void start(){
+        listNextPage();
+    }
+
+    /**
+     * 取消进行中的请求, 不再列出和删除剩下的对象, 已发出的批量删除可能已经生效
+     */
+    public void cancel(){
+        List<CosXmlRequest> requests;
+        synchronized (this){
+            if(isCanceled) return;
+            isCanceled = true;
+            requests = new ArrayList<>(runningRequests);
+            runningRequests.clear();
+            pendingBatches.clear();
+        }
+        for(CosXmlRequest request : requests){
+            cosXmlService.cancel(request);
+        }
+    }
+
+    /**
+     * @return 删除失败的对象, 最多 {@link #MAX_RECORDED_FAILURES} 个
+     */
+    public synchronized List<DeleteResult.Error> getFailedKeys(){
+        return new ArrayList<>(recordedFailures);
+    }
+
+    /**
+     * @return 当前的汇总统计
+     */
+    public synchronized BatchDeleteStats getStats(){
+        long elapsed = Math.max(System.currentTimeMillis() - startTime, 1L);
+        return new BatchDeleteStats(listedCount, deletedCount, failedCount, runningBatchCount,
+                (long) deletedCount * 1000 / elapsed, new LinkedHashMap<>(failedCodeCounts));
+    }
+
+    /**
+     * 等待发出的批次不足 maxConcurrentBatches 且没有进行中的列表请求时, 列出下一页
+     */
+    private void listNextPage(){
+        final GetBucketRequest getBucketRequest = new GetBucketRequest(bucket);
+        synchronized (this){
+            if(isCanceled || isListing || isListEnd || pendingBatches.size() >= maxConcurrentBatches){
+                return;
+            }
+            isListing = true;
+            if(nextMarker != null){
+                getBucketRequest.setMarker(nextMarker);
+            }
+            runningRequests.add(getBucketRequest);
+        }
+        getBucketRequest.setRegion(region);
+        getBucketRequest.setPrefix(prefix);
+        getBucketRequest.setMaxKeys(PAGE_SIZE);
+        cosXmlService.getBucketAsync(getBucketRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                ListBucket listBucket = ((GetBucketResult) result).listBucket;
+                synchronized (COSXMLBatchDeleteTask.this){
+                    if(!runningRequests.remove(getBucketRequest)) return;
+                    isListing = false;
+                    List<String> keys = new ArrayList<>();
+                    if(listBucket != null && listBucket.contentsList != null){
+                        for(ListBucket.Contents contents : listBucket.contentsList){
+                            keys.add(contents.key);
+                        }
+                    }
+                    if(!keys.isEmpty()){
+                        pendingBatches.add(keys);
+                        listedCount += keys.size();
+                    }
+                    String lastKey = keys.isEmpty() ? null : keys.get(keys.size() - 1);
+                    isListEnd = listBucket == null || !listBucket.isTruncated || lastKey == null;
+                    nextMarker = listBucket != null && listBucket.nextMarker != null ? listBucket.nextMarker : lastKey;
+                }
+                scheduleNext();
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                synchronized (COSXMLBatchDeleteTask.this){
+                    if(!runningRequests.remove(getBucketRequest)) return;
+                    isListing = false;
+                    isListEnd = true;
+                }
+                if(batchDeleteListener != null){
+                    batchDeleteListener.onListFail(exception, serviceException);
+                }
+                scheduleNext();
+            }
+        });
+    }
+
+    private void scheduleNext(){
+        List<List<String>> nextBatches = new ArrayList<>();
+        boolean finished = false;
+        synchronized (this){
+            while (!isCanceled && runningBatchCount < maxConcurrentBatches && !pendingBatches.isEmpty()){
+                runningBatchCount ++;
+                nextBatches.add(pendingBatches.poll());
+            }
+            if(!isCanceled && !isFinished && isListEnd && !isListing && runningBatchCount == 0
+                    && pendingBatches.isEmpty()){
+                isFinished = true;
+                finished = true;
+            }
+        }
+        for(List<String> keys : nextBatches){
+            deleteBatch(keys);
+        }
+        listNextPage();
+        if(finished && batchDeleteListener != null){
+            batchDeleteListener.onFinished(getStats());
+        }
+    }
+
+    private void deleteBatch(final List<String> keys){
+        final DeleteMultiObjectRequest deleteMultiObjectRequest = new DeleteMultiObjectRequest(bucket, keys);
+        deleteMultiObjectRequest.setRegion(region);
+        // 只返回删除失败的对象, 响应体和解析开销都与成功的对象数无关
+        deleteMultiObjectRequest.setQuiet(true);
+        synchronized (this){
+            if(isCanceled) return;
+            runningRequests.add(deleteMultiObjectRequest);
+        }
+        cosXmlService.deleteMultiObjectAsync(deleteMultiObjectRequest, new CosXmlResultListener() {
+            @Override
+            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
+                DeleteResult deleteResult = ((DeleteMultiObjectResult) result).deleteResult;
+                List<DeleteResult.Error> errors = deleteResult != null && deleteResult.errorList != null
+                        ? deleteResult.errorList : new ArrayList<DeleteResult.Error>();
+                synchronized (COSXMLBatchDeleteTask.this){
+                    if(!runningRequests.remove(deleteMultiObjectRequest)) return;
+                    runningBatchCount --;
+                    deletedCount += keys.size() - errors.size();
+                    for(DeleteResult.Error error : errors){
+                        recordFailure(error);
+                    }
+                }
+                onBatchFinished();
+            }
+
+            @Override
+            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
+                String code = serviceException != null ? serviceException.getErrorCode()
+                        : (exception != null ? "ClientError" : null);
+                String message = serviceException != null ? serviceException.getErrorMessage()
+                        : (exception != null ? exception.getMessage() : null);
+                synchronized (COSXMLBatchDeleteTask.this){
+                    if(!runningRequests.remove(deleteMultiObjectRequest)) return;
+                    runningBatchCount --;
+                    // 整个请求失败时, 批次中的所有对象都计为失败
+                    for(String key : keys){
+                        DeleteResult.Error error = new DeleteResult.Error();
+                        error.key = key;
+                        error.code = code;
+                        error.message = message;
+                        recordFailure(error);
+                    }
+                }
+                onBatchFinished();
+            }
+        });
+    }
+
+    private void onBatchFinished(){
+        if(batchDeleteListener != null){
+            batchDeleteListener.onProgress(getStats());
+        }
+        scheduleNext();
+    }
+
+    private void recordFailure(DeleteResult.Error error){
+        failedCount ++;
+        String code = error.code == null ? "Unknown" : error.code;
+        Integer count = failedCodeCounts.get(code);
+        failedCodeCounts.put(code, count == null ? 1 : count + 1);
+        if(recordedFailures.size() < MAX_RECORDED_FAILURES){
+            recordedFailures.add(error);
+        }
+    }
+
+    /**
+     * 批量删除的汇总统计
+     */
+    public static class BatchDeleteStats {
+        /** 已列出的对象数 */
+        public final int listedCount;
+        /** 已删除的对象数 */
+        public final int deletedCount;
+        /** 删除失败的对象数 */
+        public final int failedCount;
+        /** 进行中的批量删除请求数 */
+        public final int runningCount;
+        /** 平均每秒删除的对象数 */
+        public final long keysPerSecond;
+        /** 错误码 -> 失败的对象数 */
+        public final Map<String, Integer> failedCodeCounts;
+
+        BatchDeleteStats(int listedCount, int deletedCount, int failedCount, int runningCount, long keysPerSecond,
+                         Map<String, Integer> failedCodeCounts){
+            this.listedCount = listedCount;
+            this.deletedCount = deletedCount;
+            this.failedCount = failedCount;
+            this.runningCount = runningCount;
+            this.keysPerSecond = keysPerSecond;
+            this.failedCodeCounts = failedCodeCounts;
+        }
+
+        @Override
+        public String toString() {
+            return "listed: " + listedCount + ", deleted: " + deletedCount + ", failed: " + failedCount
+                    + " " + failedCodeCounts;
+        }
+    }
+
+    public interface BatchDeleteListener {
+        /**
+         * 列出对象失败, 不再列出后续的对象, 已列出的对象删除完后回调 {@link #onFinished(BatchDeleteStats)}
+         */
+        void onListFail(CosXmlClientException exception, CosXmlServiceException serviceException);
+
+        /**
+         * 每个批量删除请求完成后回调
+         */
+        void onProgress(BatchDeleteStats stats);
+
+        /**
+         * 所有列出的对象都已处理完, 失败的对象可通过 {@link COSXMLBatchDeleteTask#getFailedKeys()} 获取
+         */
+        void onFinished(BatchDeleteStats stats);
+    }
+}
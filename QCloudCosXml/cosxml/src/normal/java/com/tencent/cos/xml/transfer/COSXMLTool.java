@@ -1,5 +1,8 @@
 package com.tencent.cos.xml.transfer;
 
+import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.model.object.CopyObjectRequest;
+
 /**
  * Created by bradyxiao on 2018/9/21.
  * Copyright 2010-2018 Tencent Cloud. All Rights Reserved.
@@ -8,5 +11,95 @@ package com.tencent.cos.xml.transfer;
 
 public final class COSXMLTool {
 
+    private final CosXmlService cosXmlService;
+    private final TransferConfig transferConfig;
+    private final TransferManager transferManager;
+
+    public COSXMLTool(CosXmlService cosXmlService, TransferConfig transferConfig){
+        if(cosXmlService == null){
+            throw new IllegalArgumentException("CosXmlService is null");
+        }
+        if(transferConfig == null){
+            throw new IllegalArgumentException("TransferConfig is null");
+        }
+        this.cosXmlService = cosXmlService;
+        this.transferConfig = transferConfig;
+        this.transferManager = new TransferManager(cosXmlService, transferConfig);
+    }
+
+    /**
+     * 拷贝源前缀下的所有对象, 对象 sourcePrefix + name 拷贝到 prefix + name,
+     * 所有对象共享 {@link TransferConfig.Builder#setBatchConcurrency(int)} 设置的并发预算
+     * @param sourceBucket 源存储桶
+     * @param sourceRegion 源存储桶所在的地域, 为 null 时使用 CosXmlServiceConfig 中的地域
+     * @param sourcePrefix 源前缀
+     * @param bucket 目标存储桶
+     * @param prefix 目标前缀
+     * @param marker 从该 key 之后开始拷贝, 一般为上次任务的 {@link COSXMLBatchCopyTask#getResumeMarker()}, 为 null 时从头开始
+     * @param batchCopyListener 批量拷贝回调
+     * @return COSXMLBatchCopyTask
+     * @throws IllegalArgumentException 同一个存储桶中源前缀与目标前缀互相包含, 拷贝出的对象会被再次列出
+     */
+    public COSXMLBatchCopyTask copyPrefix(String sourceBucket, String sourceRegion, String sourcePrefix,
+                                          String bucket, String prefix, String marker,
+                                          COSXMLBatchCopyTask.BatchCopyListener batchCopyListener){
+        return startBatchCopy(sourceBucket, sourceRegion, sourcePrefix, bucket, prefix, marker, false, batchCopyListener);
+    }
+
+    /**
+     * 移动源前缀下的所有对象, 每个对象拷贝成功后删除源对象
+     * @see #copyPrefix(String, String, String, String, String, String, COSXMLBatchCopyTask.BatchCopyListener)
+     */
+    public COSXMLBatchCopyTask movePrefix(String sourceBucket, String sourceRegion, String sourcePrefix,
+                                          String bucket, String prefix, String marker,
+                                          COSXMLBatchCopyTask.BatchCopyListener batchCopyListener){
+        return startBatchCopy(sourceBucket, sourceRegion, sourcePrefix, bucket, prefix, marker, true, batchCopyListener);
+    }
+
+    /**
+     * 删除前缀下的所有对象, 列表与批量删除请求重叠进行, 同时进行中的批量删除请求数由
+     * {@link TransferConfig.Builder#setMaxConcurrentDeleteBatches(int)} 设置
+     * @param bucket 存储桶
+     * @param region 存储桶所在的地域, 为 null 时使用 CosXmlServiceConfig 中的地域
+     * @param prefix 前缀, 为空时删除存储桶中的所有对象
+     * @param batchDeleteListener 批量删除回调
+     * @return COSXMLBatchDeleteTask
+     */
+    public COSXMLBatchDeleteTask deleteByPrefix(String bucket, String region, String prefix,
+                                                COSXMLBatchDeleteTask.BatchDeleteListener batchDeleteListener){
+        COSXMLBatchDeleteTask batchDeleteTask = new COSXMLBatchDeleteTask(cosXmlService, transferConfig, bucket,
+                region, prefix, batchDeleteListener);
+        batchDeleteTask.start();
+        return batchDeleteTask;
+    }
+
+    private COSXMLBatchCopyTask startBatchCopy(String sourceBucket, String sourceRegion, String sourcePrefix,
+                                               String bucket, String prefix, String marker, boolean isMove,
+                                               COSXMLBatchCopyTask.BatchCopyListener batchCopyListener){
+        String region = cosXmlService.getConfig().getRegion();
+        if(sourceRegion == null){
+            sourceRegion = region;
+        }
+        if(COSXMLBatchCopyTask.isOverlapping(sourceBucket, sourceRegion, sourcePrefix, bucket, region, prefix)){
+            throw new IllegalArgumentException("source prefix " + sourcePrefix + " and destination prefix " + prefix
+                    + " overlap in bucket " + bucket);
+        }
+        CopyObjectRequest.CopySourceStruct sourceStruct = new CopyObjectRequest.CopySourceStruct(
+                appidOf(sourceBucket), sourceBucket, sourceRegion, sourcePrefix);
+        COSXMLBatchCopyTask batchCopyTask = new COSXMLBatchCopyTask(cosXmlService, transferManager, transferConfig,
+                sourceStruct, bucket, prefix, marker, isMove, batchCopyListener);
+        batchCopyTask.start();
+        return batchCopyTask;
+    }
 
+    /**
+     * 存储桶名称为 name-appid 时从中取出 appid, 否则使用 CosXmlServiceConfig 中的 appid
+     */
+    private String appidOf(String bucket){
+        String appid = cosXmlService.getConfig().getAppid();
+        if(appid == null && bucket != null && bucket.lastIndexOf('-') > 0){
+            appid = bucket.substring(bucket.lastIndexOf('-') + 1);
+        }
+        return appid;
+    }
 }
@@ -14,12 +14,11 @@ import com.tencent.cos.xml.model.CosXmlResult;
 import com.tencent.cos.xml.model.bucket.HeadBucketResult;
 import com.tencent.cos.xml.model.object.GetObjectRequest;
 import com.tencent.cos.xml.model.object.GetObjectResult;
-import com.tencent.cos.xml.model.object.HeadObjectRequest;
-import com.tencent.cos.xml.model.object.HeadObjectResult;
 import com.tencent.cos.xml.utils.SharePreferenceUtils;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by bradyxiao on 2018/3/20.
@@ -54,26 +53,9 @@ public class Downloader {
         this.localPath = localPath;
         this.localFileName = localFileName;
         checkParameters();
-        HeadObjectRequest headObjectRequest = new HeadObjectRequest(bucket, cosPath);
-        HeadObjectResult headObjectResult = cosXmlServer.headObject(headObjectRequest);
-        List<String> realEtags = headObjectResult.headers.get("ETag");
-        String realEtag = null;
-        if(realEtags != null && realEtags.size() > 0){
-            realEtag = realEtags.get(0);
-        }
         getObjectRequest = new GetObjectRequest(bucket, cosPath, localPath, localFileName);
-        rangeStart = 0L;
         String realLocalPath = getObjectRequest.getDownloadPath();
-        if(realEtag != null){
-            String sourceEtag = sharePreferedUtils.getValue(realLocalPath);
-            if(sourceEtag == null || !realEtag.equals(sourceEtag)){
-                sharePreferedUtils.updateValue(realLocalPath, realEtag);
-            }else {
-                rangeStart = getRange(realLocalPath);
-            }
-        }
-        getObjectRequest.setRange(rangeStart);
-        getObjectRequest.setProgressListener(listenerHandler);
+        prepareGetObjectRequest(realLocalPath);
         GetObjectResult getObjectResult = cosXmlServer.getObject(getObjectRequest);
         sharePreferedUtils.clear(realLocalPath);
         return getObjectResult;
@@ -93,36 +75,35 @@ public class Downloader {
             return;
         }
         getObjectRequest = new GetObjectRequest(bucket, cosPath, localPath, localFileName);
-        HeadObjectRequest headObjectRequest = new HeadObjectRequest(bucket, cosPath);
-        cosXmlServer.headObjectAsync(headObjectRequest, new CosXmlResultListener() {
+        prepareGetObjectRequest(getObjectRequest.getDownloadPath());
+        cosXmlServer.getObjectAsync(getObjectRequest, listenerHandler);
+    }
+
+    /**
+     * 不再先发 HEAD: 本地有上次下载的 ETag 时带上 Range 和 If-Range 直接续传,
+     * 对象已变化时服务端返回整个对象, 从头重写; 响应开始时记录对象当前的 ETag
+     */
+    private void prepareGetObjectRequest(final String realLocalPath){
+        rangeStart = 0L;
+        String sourceEtag = sharePreferedUtils.getValue(realLocalPath);
+        if(sourceEtag != null){
+            rangeStart = getRange(realLocalPath);
+        }
+        if(rangeStart > 0){
+            getObjectRequest.setRange(rangeStart);
+            getObjectRequest.setFileOffset(rangeStart);
+            getObjectRequest.setIfRange(sourceEtag, 0L);
+        }
+        getObjectRequest.setOnResponseStartListener(new GetObjectRequest.OnResponseStartListener() {
             @Override
-            public void onSuccess(CosXmlRequest request, CosXmlResult result) {
-                HeadObjectResult headObjectResult = (HeadObjectResult) result;
-                List<String> realEtags = headObjectResult.headers.get("ETag");
-                String realEtag = null;
+            public void onResponseStart(int httpCode, Map<String, List<String>> headers, boolean isRestarted) {
+                List<String> realEtags = headers.get("ETag");
                 if(realEtags != null && realEtags.size() > 0){
-                    realEtag = realEtags.get(0);
+                    sharePreferedUtils.updateValue(realLocalPath, realEtags.get(0));
                 }
-                rangeStart = 0L;
-                String realLocalPath = getObjectRequest.getDownloadPath();
-                if(realEtag != null){
-                    String sourceEtag = sharePreferedUtils.getValue(realLocalPath);
-                    if(sourceEtag == null || !realEtag.equals(sourceEtag)){
-                        sharePreferedUtils.updateValue(realLocalPath, realEtag);
-                    }else {
-                        rangeStart = getRange(realLocalPath);
-                    }
-                }
-                getObjectRequest.setRange(rangeStart);
-                getObjectRequest.setProgressListener(listenerHandler);
-                cosXmlServer.getObjectAsync(getObjectRequest, listenerHandler);
-            }
-
-            @Override
-            public void onFail(CosXmlRequest request, CosXmlClientException exception, CosXmlServiceException serviceException) {
-                listenerHandler.onFail(getObjectRequest, exception, serviceException);
             }
         });
+        getObjectRequest.setProgressListener(listenerHandler);
     }
 
     public void cancel(){
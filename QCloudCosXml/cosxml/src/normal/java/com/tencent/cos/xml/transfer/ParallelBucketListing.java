@@ -0,0 +1,379 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.cos.xml.model.tag.ListBucket;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 分区并行的存储桶列表.
+ * <p>
+ * 单个 marker 驱动的列表只能一页一页地串行请求, 这里把列表拆成多个分区同时进行, 再合并为一个迭代器:
+ * <ul>
+ *     <li>{@link #byCommonPrefixes(CosXmlService, GetBucketRequest)}: 按 delimiter 划分出的公共前缀（目录）分区,
+ *     第一个分区是 prefix 下不属于任何公共前缀的对象, 之后每个公共前缀一个分区, 公共前缀取自第一个分区的同一批响应;</li>
+ *     <li>{@link #byKeyRanges(CosXmlService, GetBucketRequest, List)}: 按给定的分割 key 把 key 空间切成若干区间,
+ *     每个区间以前一个分割 key 为 marker 开始, 列到下一个分割 key（包含）为止.</li>
+ * </ul>
+ * 同时进行的分区数由 {@link #setMaxConcurrentPartitions(int)} 设置, 每个分区最多预取 prefetchPages 页.
+ * 有序模式下按分区顺序输出, 按 key 区间分区时即为全局的 key 顺序, 按公共前缀分区时先输出顶层对象再逐个输出各个目录;
+ * 无序模式下哪个分区先有数据就先输出哪个, 整体更快.
+ * 任一分区的列表请求失败时 hasNext() 和 next() 抛出 {@link BucketListing.ListingException}, 并取消所有分区.
+ * </p>
+ */
+public final class ParallelBucketListing implements Iterable<ListBucket.Contents> {
+
+    private static final int DEFAULT_MAX_CONCURRENT_PARTITIONS = 4;
+
+    private final CosXmlService cosXmlService;
+    private final GetBucketRequest template;
+    /** 按 key 区间分区时的分割 key, 按公共前缀分区时为 null */
+    private final List<String> splitKeys;
+    private int maxConcurrentPartitions = DEFAULT_MAX_CONCURRENT_PARTITIONS;
+    private int prefetchPages = 1;
+    private boolean isOrdered = true;
+
+    private ParallelBucketListing(CosXmlService cosXmlService, GetBucketRequest template, List<String> splitKeys){
+        this.cosXmlService = cosXmlService;
+        this.template = template;
+        this.splitKeys = splitKeys;
+    }
+
+    /**
+     * 按公共前缀分区, 请求中必须设置 delimiter, 各个目录下的对象不再按 delimiter 分组, 全部列出
+     */
+    public static ParallelBucketListing byCommonPrefixes(CosXmlService cosXmlService, GetBucketRequest getBucketRequest){
+        if(getBucketRequest.getDelimiter() == null){
+            throw new IllegalArgumentException("delimiter is required for common prefix partitions");
+        }
+        if(getBucketRequest.getEncodingType() != null){
+            // 编码后的公共前缀不能直接作为下一级请求的 prefix
+            throw new IllegalArgumentException("encodingType is not supported for common prefix partitions");
+        }
+        return new ParallelBucketListing(cosXmlService, getBucketRequest, null);
+    }
+
+    /**
+     * 按 key 区间分区, 分割 key 可以来自上一次的清单或抽样, 越均匀各个分区的耗时越接近
+     * @param splitKeys 分割 key, 不要求有序, 不大于请求中 marker 的分割 key 会被忽略
+     */
+    public static ParallelBucketListing byKeyRanges(CosXmlService cosXmlService, GetBucketRequest getBucketRequest,
+                                                    List<String> splitKeys){
+        if(getBucketRequest.getDelimiter() != null || getBucketRequest.getEncodingType() != null){
+            // 分组后的公共前缀和编码后的 key 都无法与分割 key 比较
+            throw new IllegalArgumentException("delimiter and encodingType are not supported for key range partitions");
+        }
+        List<String> sortedKeys = new ArrayList<>();
+        String marker = getBucketRequest.getMarker();
+        if(splitKeys != null){
+            for(String splitKey : splitKeys){
+                if(splitKey != null && (marker == null
+                        || BucketListing.GetBucketPageSource.compareKeys(splitKey, marker) > 0)){
+                    sortedKeys.add(splitKey);
+                }
+            }
+        }
+        Collections.sort(sortedKeys, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return BucketListing.GetBucketPageSource.compareKeys(o1, o2);
+            }
+        });
+        for(int i = sortedKeys.size() - 1; i > 0; i --){
+            if(sortedKeys.get(i).equals(sortedKeys.get(i - 1))){
+                sortedKeys.remove(i);
+            }
+        }
+        return new ParallelBucketListing(cosXmlService, getBucketRequest, sortedKeys);
+    }
+
+    /**
+     * 设置同时进行的分区数, 默认为 4
+     */
+    public ParallelBucketListing setMaxConcurrentPartitions(int maxConcurrentPartitions){
+        if(maxConcurrentPartitions > 0){
+            this.maxConcurrentPartitions = maxConcurrentPartitions;
+        }
+        return this;
+    }
+
+    /**
+     * 设置每个分区预取的页数, 默认为 1
+     */
+    public ParallelBucketListing setPrefetchPages(int prefetchPages){
+        if(prefetchPages > 0){
+            this.prefetchPages = prefetchPages;
+        }
+        return this;
+    }
+
+    /**
+     * 设置是否按分区顺序输出, 默认为 true
+     */
+    public ParallelBucketListing setOrdered(boolean isOrdered){
+        this.isOrdered = isOrdered;
+        return this;
+    }
+
+    @Override
+    public MergedIterator iterator() {
+        MergedIterator iterator = new MergedIterator(maxConcurrentPartitions, prefetchPages, isOrdered);
+        iterator.partitions = splitKeys != null ? new KeyRangePartitions(cosXmlService, template, splitKeys)
+                : new CommonPrefixPartitions(cosXmlService, template);
+        return iterator;
+    }
+
+    /**
+     * 合并各个分区的迭代器, 不是线程安全的, 只能在一个线程中使用; 提前结束时需要调用 {@link #close()}
+     */
+    public static final class MergedIterator implements Iterator<ListBucket.Contents>, Closeable {
+
+        private final int maxConcurrentPartitions;
+        private final int prefetchPages;
+        private final boolean isOrdered;
+
+        private Partitions partitions;
+        private final List<BucketListing.ListingIterator<ListBucket.Contents>> openPartitions = new ArrayList<>();
+        private BucketListing.ListingIterator<ListBucket.Contents> current;
+        private boolean isClosed;
+
+        private final Object lock = new Object();
+        /** 上次检查各个分区之后是否有分区收到了新的页 */
+        private boolean isSignaled;
+        private final Runnable signal = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock){
+                    isSignaled = true;
+                    lock.notifyAll();
+                }
+            }
+        };
+
+        MergedIterator(int maxConcurrentPartitions, int prefetchPages, boolean isOrdered){
+            this.maxConcurrentPartitions = maxConcurrentPartitions;
+            this.prefetchPages = prefetchPages;
+            this.isOrdered = isOrdered;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(isClosed){
+                return false;
+            }
+            try {
+                while (true){
+                    synchronized (lock){
+                        isSignaled = false;
+                    }
+                    openPartitions();
+                    boolean isRemoved = false;
+                    // 有序模式只看第一个分区, 后面的分区只在后台预取
+                    int scanCount = isOrdered ? Math.min(openPartitions.size(), 1) : openPartitions.size();
+                    for(int i = 0; i < scanCount; i ++){
+                        BucketListing.ListingIterator<ListBucket.Contents> partition = openPartitions.get(i);
+                        Boolean hasNext = partition.tryHasNext();
+                        if(hasNext == null){
+                            continue;
+                        }
+                        if(hasNext){
+                            current = partition;
+                            return true;
+                        }
+                        partition.close();
+                        openPartitions.remove(i);
+                        isRemoved = true;
+                        break;
+                    }
+                    if(isRemoved){
+                        continue;
+                    }
+                    if(openPartitions.isEmpty() && partitions.isExhausted()){
+                        return false;
+                    }
+                    synchronized (lock){
+                        while (!isSignaled){
+                            lock.wait();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new BucketListing.ListingException(e);
+            } catch (BucketListing.ListingException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public ListBucket.Contents next() {
+            if(!hasNext()){
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+
+        /**
+         * 取消所有分区进行中的请求
+         */
+        @Override
+        public void close() {
+            if(isClosed) return;
+            isClosed = true;
+            for(BucketListing.ListingIterator<ListBucket.Contents> partition : openPartitions){
+                partition.close();
+            }
+            openPartitions.clear();
+            partitions.close();
+        }
+
+        private void openPartitions(){
+            while (openPartitions.size() < maxConcurrentPartitions){
+                BucketListing<ListBucket.Contents> listing = partitions.poll();
+                if(listing == null){
+                    return;
+                }
+                BucketListing.ListingIterator<ListBucket.Contents> partition = listing.setPrefetchPages(prefetchPages).iterator();
+                partition.setOnPageListener(signal);
+                partition.start();
+                openPartitions.add(partition);
+            }
+        }
+    }
+
+    /**
+     * 分区的来源
+     */
+    interface Partitions {
+        /**
+         * @return 下一个分区, 暂时没有或已经没有分区时返回 null
+         */
+        BucketListing<ListBucket.Contents> poll();
+
+        boolean isExhausted();
+
+        void close();
+    }
+
+    /**
+     * 区间 (marker, k1], (k1, k2], ..., (kn, 末尾)
+     */
+    static final class KeyRangePartitions implements Partitions {
+
+        private final CosXmlService cosXmlService;
+        private final GetBucketRequest template;
+        private final List<String> boundaries = new ArrayList<>();
+        private int nextIndex;
+
+        KeyRangePartitions(CosXmlService cosXmlService, GetBucketRequest template, List<String> splitKeys){
+            this.cosXmlService = cosXmlService;
+            this.template = template;
+            boundaries.add(template.getMarker());
+            boundaries.addAll(splitKeys);
+            boundaries.add(null);
+        }
+
+        @Override
+        public BucketListing<ListBucket.Contents> poll() {
+            if(isExhausted()){
+                return null;
+            }
+            String startMarker = boundaries.get(nextIndex);
+            String endKey = boundaries.get(nextIndex + 1);
+            nextIndex ++;
+            return BucketListing.objects(cosXmlService, template, startMarker, endKey);
+        }
+
+        @Override
+        public boolean isExhausted() {
+            return nextIndex >= boundaries.size() - 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 先是顶层对象, 再是边列边用的各个公共前缀.
+     * 顶层对象和公共前缀来自同一个带 delimiter 的列表, 顶层分区收到的每一页中的公共前缀直接成为后面的分区,
+     * 不再为公共前缀单独列一遍
+     */
+    static final class CommonPrefixPartitions implements Partitions, BucketListing.OnCommonPrefixesListener {
+
+        private final CosXmlService cosXmlService;
+        private final GetBucketRequest template;
+        private boolean isTopLevelPolled;
+        /** 以下字段由 this 保护, 在顶层分区的请求回调中更新 */
+        private final ArrayDeque<String> prefixes = new ArrayDeque<>();
+        private boolean isTopLevelEnd;
+
+        CommonPrefixPartitions(CosXmlService cosXmlService, GetBucketRequest template){
+            this.cosXmlService = cosXmlService;
+            this.template = template;
+        }
+
+        @Override
+        public BucketListing<ListBucket.Contents> poll() {
+            if(!isTopLevelPolled){
+                isTopLevelPolled = true;
+                return BucketListing.objects(cosXmlService, template, this);
+            }
+            String prefix;
+            synchronized (this){
+                prefix = prefixes.poll();
+            }
+            if(prefix == null){
+                return null;
+            }
+            GetBucketRequest getBucketRequest = new GetBucketRequest(template.getBucket());
+            getBucketRequest.setRegion(template.getRegion());
+            getBucketRequest.setRequestHeaders(template.getRequestHeaders());
+            getBucketRequest.setPrefix(prefix);
+            getBucketRequest.setMaxKeys(template.getMaxKeys());
+            // marker 落在这个目录中时从 marker 继续, 否则整个目录都在 marker 之后
+            String marker = template.getMarker();
+            return BucketListing.objects(cosXmlService, getBucketRequest,
+                    marker != null && marker.startsWith(prefix) ? marker : null, null);
+        }
+
+        @Override
+        public synchronized void onCommonPrefixes(List<ListBucket.CommonPrefixes> commonPrefixes, boolean isLastPage) {
+            if(commonPrefixes != null){
+                for(ListBucket.CommonPrefixes commonPrefix : commonPrefixes){
+                    if(commonPrefix.prefix != null){
+                        prefixes.add(commonPrefix.prefix);
+                    }
+                }
+            }
+            if(isLastPage){
+                isTopLevelEnd = true;
+            }
+        }
+
+        @Override
+        public synchronized boolean isExhausted() {
+            return isTopLevelPolled && isTopLevelEnd && prefixes.isEmpty();
+        }
+
+        @Override
+        public void close() {
+            // 顶层分区由 MergedIterator 关闭
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.tencent.cos.xml.model.tag.LifecycleConfiguration;
 import com.tencent.cos.xml.model.tag.ReplicationConfiguration;
 import com.tencent.cos.xml.model.tag.RestoreConfigure;
 import com.tencent.cos.xml.model.tag.VersioningConfiguration;
+import com.tencent.qcloud.core.http.RequestBodySerializer;
 
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -219,6 +220,31 @@ public class XmlBuilder extends XmlSlimBuilder {
         return removeXMLHeader(xmlContent.toString());
     }
 
+    /**
+     * 与 {@link #buildDelete(Delete)} 生成相同的文档, 但直接写入请求的 sink, 同时计算 MD5
+     */
+    public static RequestBodySerializer deleteBody(final Delete delete){
+        if (delete == null)return null;
+
+        return new XmlRequestBody() {
+            @Override
+            void write() throws IOException {
+                startTag("Delete");
+                element("Quiet", String.valueOf(delete.quiet));
+                if(delete.deleteObjects != null){
+                    for(Delete.DeleteObject deleteObject : delete.deleteObjects){
+                        if(deleteObject == null)continue;
+                        startTag("Object");
+                        element("Key", deleteObject.key);
+                        element("VersionId", deleteObject.versionId);
+                        endTag("Object");
+                    }
+                }
+                endTag("Delete");
+            }
+        }.serializer();
+    }
+
     public static String buildRestore(RestoreConfigure restoreConfigure) throws XmlPullParserException, IOException {
         if(restoreConfigure == null)return  null;
 
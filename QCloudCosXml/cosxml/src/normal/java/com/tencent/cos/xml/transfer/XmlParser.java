@@ -1,8 +1,5 @@
 package com.tencent.cos.xml.transfer;
 
-import android.util.Xml;
-
-
 import com.tencent.cos.xml.model.tag.AccessControlPolicy;
 import com.tencent.cos.xml.model.tag.CORSConfiguration;
 import com.tencent.cos.xml.model.tag.CopyPart;
@@ -16,12 +13,13 @@ import com.tencent.cos.xml.model.tag.LocationConstraint;
 import com.tencent.cos.xml.model.tag.ReplicationConfiguration;
 import com.tencent.cos.xml.model.tag.VersioningConfiguration;
 
-import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Created by bradyxiao on 2017/11/24.
@@ -30,328 +28,362 @@ import java.util.ArrayList;
 public class XmlParser extends XmlSlimParser {
     //service
     public static void parseListAllMyBucketsResult(InputStream inputStream, ListAllMyBuckets result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
         ListAllMyBuckets.Bucket bucket = null;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                /**xml document start*/
-                case XmlPullParser.START_DOCUMENT:
-                    break;
-                /**xml tag start*/
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Owner")){
-                        result.owner = new ListAllMyBuckets.Owner();
-                    }else if(tagName.equalsIgnoreCase("ID") ){
-                        xmlPullParser.next();
-                        result.owner.id = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("DisplayName")){
-                        xmlPullParser.next();
-                        result.owner.disPlayName = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Buckets")){
-                        result.buckets = new ArrayList<ListAllMyBuckets.Bucket>();
-                    }else if(tagName.equalsIgnoreCase("Bucket")){
-                        bucket = new ListAllMyBuckets.Bucket();
-                    }else if(tagName.equalsIgnoreCase("Name")){
-                        xmlPullParser.next();
-                        bucket.name = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Location")){
-                        xmlPullParser.next();
-                        bucket.location = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("CreationDate")){
-                        xmlPullParser.next();
-                        bucket.createDate = xmlPullParser.getText();
-                    }
-                    break;
-                /**xml tag end*/
-                case XmlPullParser.END_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Bucket")){
-                        result.buckets.add(bucket);
-                        bucket = null;
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType == CosXmlReader.START_TAG){
+                    switch (reader.tag()){
+                        case XmlTags.OWNER:
+                            result.owner = new ListAllMyBuckets.Owner();
+                            break;
+                        case XmlTags.ID:
+                            result.owner.id = reader.text();
+                            break;
+                        case XmlTags.DISPLAY_NAME:
+                            result.owner.disPlayName = reader.text();
+                            break;
+                        case XmlTags.BUCKETS:
+                            result.buckets = new ArrayList<ListAllMyBuckets.Bucket>();
+                            break;
+                        case XmlTags.BUCKET:
+                            bucket = new ListAllMyBuckets.Bucket();
+                            break;
+                        case XmlTags.NAME:
+                            bucket.name = reader.text();
+                            break;
+                        case XmlTags.LOCATION:
+                            bucket.location = reader.text();
+                            break;
+                        case XmlTags.CREATION_DATE:
+                            bucket.createDate = reader.text();
+                            break;
+                        default:
+                            reader.skipUnknown();
                     }
-                    break;
+                }else if(reader.tag() == XmlTags.BUCKET){
+                    result.buckets.add(bucket);
+                    bucket = null;
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     //bucket
-    public static void parseListBucketResult(InputStream inputStream, ListBucket result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
+    public static void parseListBucketResult(InputStream inputStream, final ListBucket result) throws XmlPullParserException, IOException {
+        result.contentsList = new ArrayList<ListBucket.Contents>();
+        result.commonPrefixesList = new ArrayList<ListBucket.CommonPrefixes>();
+        parseListBucketResult(inputStream, result, new ListBucketVisitor() {
+            @Override
+            public void onContents(ListBucket.Contents contents) {
+                result.contentsList.add(contents);
+            }
+
+            @Override
+            public void onCommonPrefixes(ListBucket.CommonPrefixes commonPrefixes) {
+                result.commonPrefixesList.add(commonPrefixes);
+            }
+        });
+    }
+
+    /**
+     * 边解析边回调每个条目, result 中只填充分页信息, contentsList 和 commonPrefixesList 不变
+     */
+    public static void parseListBucketResult(InputStream inputStream, ListBucket result, ListBucketVisitor visitor) throws XmlPullParserException, IOException {
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
         ListBucket.Contents contents = null;
         ListBucket.CommonPrefixes commonPrefixes = null;
         ListBucket.Owner owner = null;
-        result.contentsList = new ArrayList<ListBucket.Contents>();
-        result.commonPrefixesList = new ArrayList<ListBucket.CommonPrefixes>();
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch(eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Name")){
-                        xmlPullParser.next();
-                        result.name = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Encoding-Type")){
-                        xmlPullParser.next();
-                        result.encodingType = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Marker")){
-                        xmlPullParser.next();
-                        result.marker = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("MaxKeys")){
-                        xmlPullParser.next();
-                        result.maxKeys = Integer.parseInt(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("Delimiter")){
-                        xmlPullParser.next();
-                        result.delimiter = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("NextMarker")){
-                        xmlPullParser.next();
-                        result.nextMarker = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("IsTruncated")){
-                        xmlPullParser.next();
-                        result.isTruncated = Boolean.parseBoolean(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("Prefix")){
-                        xmlPullParser.next();
-                        if(commonPrefixes == null){
-                            result.prefix = xmlPullParser.getText();
-                        }else {
-                            commonPrefixes.prefix =  xmlPullParser.getText();
-                        }
-                    }else if(tagName.equalsIgnoreCase("Contents")){
-                        contents = new ListBucket.Contents();
-                    }else if(tagName.equalsIgnoreCase("Key")){
-                        xmlPullParser.next();
-                        contents.key = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("LastModified")){
-                        xmlPullParser.next();
-                        contents.lastModified = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("ETag")){
-                        xmlPullParser.next();
-                        contents.eTag = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Size")){
-                        xmlPullParser.next();
-                        contents.size = Long.parseLong(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("StorageClass")){
-                        xmlPullParser.next();
-                        contents.storageClass = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Owner")){
-                       owner = new ListBucket.Owner();
-                    }else if(tagName.equalsIgnoreCase("ID")){
-                        xmlPullParser.next();
-                        owner.id = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("CommonPrefixes")){
-                        commonPrefixes = new ListBucket.CommonPrefixes();
+        StringPool stringPool = new StringPool();
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType == CosXmlReader.START_TAG){
+                    switch (reader.tag()){
+                        case XmlTags.NAME:
+                            result.name = reader.text();
+                            break;
+                        case XmlTags.ENCODING_TYPE:
+                            result.encodingType = reader.text();
+                            break;
+                        case XmlTags.MARKER:
+                            result.marker = reader.text();
+                            break;
+                        case XmlTags.MAX_KEYS:
+                            result.maxKeys = Integer.parseInt(reader.text());
+                            break;
+                        case XmlTags.DELIMITER:
+                            result.delimiter = reader.text();
+                            break;
+                        case XmlTags.NEXT_MARKER:
+                            result.nextMarker = reader.text();
+                            break;
+                        case XmlTags.IS_TRUNCATED:
+                            result.isTruncated = Boolean.parseBoolean(reader.text());
+                            break;
+                        case XmlTags.PREFIX:
+                            if(commonPrefixes == null){
+                                result.prefix = reader.text();
+                            }else {
+                                commonPrefixes.prefix = reader.text();
+                            }
+                            break;
+                        case XmlTags.CONTENTS:
+                            contents = new ListBucket.Contents();
+                            break;
+                        case XmlTags.KEY:
+                            contents.key = reader.text();
+                            break;
+                        case XmlTags.LAST_MODIFIED:
+                            contents.lastModified = reader.text();
+                            break;
+                        case XmlTags.ETAG:
+                            contents.eTag = reader.text();
+                            break;
+                        case XmlTags.SIZE:
+                            contents.size = Long.parseLong(reader.text());
+                            break;
+                        case XmlTags.STORAGE_CLASS:
+                            contents.storageClass = stringPool.get(reader.text());
+                            break;
+                        case XmlTags.OWNER:
+                            owner = new ListBucket.Owner();
+                            break;
+                        case XmlTags.ID:
+                            owner.id = stringPool.get(reader.text());
+                            break;
+                        case XmlTags.COMMON_PREFIXES:
+                            commonPrefixes = new ListBucket.CommonPrefixes();
+                            break;
+                        default:
+                            reader.skipUnknown();
                     }
-                    break;
-                    case XmlPullParser.END_TAG:
-                        tagName = xmlPullParser.getName();
-                        if(tagName.equalsIgnoreCase("Contents")){
-                            result.contentsList.add(contents);
+                }else {
+                    switch (reader.tag()){
+                        case XmlTags.CONTENTS:
+                            visitor.onContents(contents);
                             contents = null;
-                        }else if(tagName.equalsIgnoreCase("Owner")){
+                            break;
+                        case XmlTags.OWNER:
                             contents.owner = owner;
                             owner = null;
-                        }else if(tagName.equalsIgnoreCase("CommonPrefixes")){
-                            result.commonPrefixesList.add(commonPrefixes);
+                            break;
+                        case XmlTags.COMMON_PREFIXES:
+                            visitor.onCommonPrefixes(commonPrefixes);
                             commonPrefixes = null;
-                        }
-                        break;
+                            break;
+                    }
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parseAccessControlPolicy(InputStream inputStream, AccessControlPolicy result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
         AccessControlPolicy.Owner owner = null;
         result.accessControlList = new AccessControlPolicy.AccessControlList();
         result.accessControlList.grants = new ArrayList<AccessControlPolicy.Grant>();
         AccessControlPolicy.Grant grant = null;
         AccessControlPolicy.Grantee grantee = null;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if (tagName.equalsIgnoreCase("Owner")){
-                        owner = new AccessControlPolicy.Owner();
-                    }else if (tagName.equalsIgnoreCase("ID")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.id = xmlPullParser.getText();
-                        }else if(grantee != null){
-                            grantee.id = xmlPullParser.getText();
-                        }
-                    }else if (tagName.equalsIgnoreCase("DisplayName")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.displayName = xmlPullParser.getText();
-                        }else if(grantee != null){
-                            grantee.displayName = xmlPullParser.getText();
-                        }
-                    }else if (tagName.equalsIgnoreCase("Grant")){
-                        grant = new AccessControlPolicy.Grant();
-                    }else if (tagName.equalsIgnoreCase("Grantee")){
-                        grantee = new AccessControlPolicy.Grantee();
-                    }else if (tagName.equalsIgnoreCase("Permission")){
-                        xmlPullParser.next();
-                        grant.permission = xmlPullParser.getText();
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType == CosXmlReader.START_TAG){
+                    switch (reader.tag()){
+                        case XmlTags.OWNER:
+                            owner = new AccessControlPolicy.Owner();
+                            break;
+                        case XmlTags.ID:
+                            if(owner != null){
+                                owner.id = reader.text();
+                            }else if(grantee != null){
+                                grantee.id = reader.text();
+                            }
+                            break;
+                        case XmlTags.DISPLAY_NAME:
+                            if(owner != null){
+                                owner.displayName = reader.text();
+                            }else if(grantee != null){
+                                grantee.displayName = reader.text();
+                            }
+                            break;
+                        case XmlTags.GRANT:
+                            grant = new AccessControlPolicy.Grant();
+                            break;
+                        case XmlTags.GRANTEE:
+                            grantee = new AccessControlPolicy.Grantee();
+                            break;
+                        case XmlTags.PERMISSION:
+                            grant.permission = reader.text();
+                            break;
+                        default:
+                            reader.skipUnknown();
                     }
-                    break;
-                case XmlPullParser.END_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Owner")){
-                        result.owner = owner;
-                        owner = null;
-                    }else if(tagName.equalsIgnoreCase("Grant")){
-                        result.accessControlList.grants.add(grant);
-                        grant = null;
-                    }else if(tagName.equalsIgnoreCase("Grantee")){
-                        grant.grantee =grantee;
-                        grantee = null;
+                }else {
+                    switch (reader.tag()){
+                        case XmlTags.OWNER:
+                            result.owner = owner;
+                            owner = null;
+                            break;
+                        case XmlTags.GRANT:
+                            result.accessControlList.grants.add(grant);
+                            grant = null;
+                            break;
+                        case XmlTags.GRANTEE:
+                            grant.grantee = grantee;
+                            grantee = null;
+                            break;
                     }
-                    break;
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parseCORSConfiguration(InputStream inputStream, CORSConfiguration result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
         result.corsRules = new ArrayList<CORSConfiguration.CORSRule>();
         CORSConfiguration.CORSRule corsRule = null;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("CORSRule")){
-                        corsRule = new CORSConfiguration.CORSRule();
-                    }else if(tagName.equalsIgnoreCase("ID")){
-                        xmlPullParser.next();
-                        corsRule.id = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("AllowedOrigin")){
-                        xmlPullParser.next();
-                        corsRule.allowedOrigin = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("AllowedMethod")){
-                        xmlPullParser.next();
-                        if(corsRule.allowedMethod == null){
-                            corsRule.allowedMethod = new ArrayList<String>();
-                        }
-                        corsRule.allowedMethod.add(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("AllowedHeader")){
-                        xmlPullParser.next();
-                        if(corsRule.allowedHeader == null){
-                            corsRule.allowedHeader = new ArrayList<String>();
-                        }
-                        corsRule.allowedHeader.add(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("ExposeHeader")){
-                        xmlPullParser.next();
-                        if(corsRule.exposeHeader == null){
-                            corsRule.exposeHeader = new ArrayList<String>();
-                        }
-                        corsRule.exposeHeader.add(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("MaxAgeSeconds")){
-                        xmlPullParser.next();
-                        corsRule.maxAgeSeconds = Integer.parseInt(xmlPullParser.getText());
-                    }
-                    break;
-                case XmlPullParser.END_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("CORSRule")){
-                        result.corsRules.add(corsRule);
-                        corsRule = null;
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType == CosXmlReader.START_TAG){
+                    switch (reader.tag()){
+                        case XmlTags.CORS_RULE:
+                            corsRule = new CORSConfiguration.CORSRule();
+                            break;
+                        case XmlTags.ID:
+                            corsRule.id = reader.text();
+                            break;
+                        case XmlTags.ALLOWED_ORIGIN:
+                            corsRule.allowedOrigin = reader.text();
+                            break;
+                        case XmlTags.ALLOWED_METHOD:
+                            if(corsRule.allowedMethod == null){
+                                corsRule.allowedMethod = new ArrayList<String>();
+                            }
+                            corsRule.allowedMethod.add(reader.text());
+                            break;
+                        case XmlTags.ALLOWED_HEADER:
+                            if(corsRule.allowedHeader == null){
+                                corsRule.allowedHeader = new ArrayList<String>();
+                            }
+                            corsRule.allowedHeader.add(reader.text());
+                            break;
+                        case XmlTags.EXPOSE_HEADER:
+                            if(corsRule.exposeHeader == null){
+                                corsRule.exposeHeader = new ArrayList<String>();
+                            }
+                            corsRule.exposeHeader.add(reader.text());
+                            break;
+                        case XmlTags.MAX_AGE_SECONDS:
+                            corsRule.maxAgeSeconds = Integer.parseInt(reader.text());
+                            break;
+                        default:
+                            reader.skipUnknown();
                     }
-                    break;
+                }else if(reader.tag() == XmlTags.CORS_RULE){
+                    result.corsRules.add(corsRule);
+                    corsRule = null;
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parseReplicationConfiguration(InputStream inputStream, ReplicationConfiguration result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
         result.rules = new ArrayList<ReplicationConfiguration.Rule>();
         ReplicationConfiguration.Rule rule = null;
         ReplicationConfiguration.Destination destination = null;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Role")){
-                        xmlPullParser.next();
-                        result.role = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Rule")){
-                        rule = new ReplicationConfiguration.Rule();
-                    }else if(tagName.equalsIgnoreCase("Status")){
-                        xmlPullParser.next();
-                        rule.status = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("ID")){
-                        xmlPullParser.next();
-                        rule.id = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Prefix")){
-                        xmlPullParser.next();
-                        rule.prefix = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Destination")){
-                        destination = new ReplicationConfiguration.Destination();
-                    }else if(tagName.equalsIgnoreCase("Bucket")){
-                        xmlPullParser.next();
-                        destination.bucket = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("StorageClass")){
-                        xmlPullParser.next();
-                        destination.storageClass = xmlPullParser.getText();
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType == CosXmlReader.START_TAG){
+                    switch (reader.tag()){
+                        case XmlTags.ROLE:
+                            result.role = reader.text();
+                            break;
+                        case XmlTags.RULE:
+                            rule = new ReplicationConfiguration.Rule();
+                            break;
+                        case XmlTags.STATUS:
+                            rule.status = reader.text();
+                            break;
+                        case XmlTags.ID:
+                            rule.id = reader.text();
+                            break;
+                        case XmlTags.PREFIX:
+                            rule.prefix = reader.text();
+                            break;
+                        case XmlTags.DESTINATION:
+                            destination = new ReplicationConfiguration.Destination();
+                            break;
+                        case XmlTags.BUCKET:
+                            destination.bucket = reader.text();
+                            break;
+                        case XmlTags.STORAGE_CLASS:
+                            destination.storageClass = reader.text();
+                            break;
+                        default:
+                            reader.skipUnknown();
                     }
-                    break;
-                    case XmlPullParser.END_TAG:
-                        tagName = xmlPullParser.getName();
-                        if(tagName.equalsIgnoreCase("Rule")){
+                }else {
+                    switch (reader.tag()){
+                        case XmlTags.RULE:
                             result.rules.add(rule);
                             rule = null;
-                        }else if(tagName.equalsIgnoreCase("Destination")){
+                            break;
+                        case XmlTags.DESTINATION:
                             rule.destination = destination;
                             destination = null;
-                        }
-                        break;
+                            break;
+                    }
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parseVersioningConfiguration(InputStream inputStream, VersioningConfiguration result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Status")){
-                        xmlPullParser.next();
-                        result.status = xmlPullParser.getText();
-                    }
-                    break;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType != CosXmlReader.START_TAG) continue;
+                if(reader.tag() == XmlTags.STATUS){
+                    result.status = reader.text();
+                }else {
+                    reader.skipUnknown();
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parseLifecycleConfiguration(InputStream inputStream, LifecycleConfiguration result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
         result.rules = new ArrayList<LifecycleConfiguration.Rule>();
         LifecycleConfiguration.Rule rule = null;
         LifecycleConfiguration.Filter filter = null;
@@ -360,395 +392,522 @@ public class XmlParser extends XmlSlimParser {
         LifecycleConfiguration.AbortIncompleteMultiUpload abortIncompleteMultiUpload = null;
         LifecycleConfiguration.NoncurrentVersionExpiration noncurrentVersionExpiration = null;
         LifecycleConfiguration.NoncurrentVersionTransition noncurrentVersionTransition = null;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Rule")){
-                        rule = new LifecycleConfiguration.Rule();
-                    }else if(tagName.equalsIgnoreCase("ID")){
-                       xmlPullParser.next();
-                       rule.id = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Filter")){
-                        filter = new LifecycleConfiguration.Filter();
-                    }else if(tagName.equalsIgnoreCase("Prefix")){
-                        xmlPullParser.next();
-                        filter.prefix= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Status")){
-                        xmlPullParser.next();
-                        rule.status = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Transition")){
-                        transition = new LifecycleConfiguration.Transition();
-                    }else if(tagName.equalsIgnoreCase("Expiration")){
-                        expiration = new LifecycleConfiguration.Expiration();
-                    }else if(tagName.equalsIgnoreCase("Days")){
-                        xmlPullParser.next();
-                        if(transition != null){
-                            transition.days = Integer.parseInt(xmlPullParser.getText());
-                        }else if(rule.expiration != null){
-                            expiration.days = Integer.parseInt(xmlPullParser.getText());
-                        }
-                    }else if(tagName.equalsIgnoreCase("Date")){
-                        xmlPullParser.next();
-                        if(transition != null){
-                            transition.date = xmlPullParser.getText();
-                        }else if(expiration != null){
-                            expiration.date = xmlPullParser.getText();
-                        }
-                    }else if(tagName.equalsIgnoreCase("ExpiredObjectDeleteMarker")){
-                        xmlPullParser.next();
-                        expiration.expiredObjectDeleteMarker = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("AbortIncompleteMultipartUpload")){
-                        abortIncompleteMultiUpload = new LifecycleConfiguration.AbortIncompleteMultiUpload();
-                    }else if(tagName.equalsIgnoreCase("DaysAfterInitiation")){
-                        xmlPullParser.next();
-                        abortIncompleteMultiUpload.daysAfterInitiation = Integer.parseInt(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("NoncurrentVersionExpiration")){
-                        noncurrentVersionExpiration = new LifecycleConfiguration.NoncurrentVersionExpiration();
-                    }else if(tagName.equalsIgnoreCase("NoncurrentVersionTransition")){
-                        noncurrentVersionTransition = new LifecycleConfiguration.NoncurrentVersionTransition();
-                    }else if(tagName.equalsIgnoreCase("NoncurrentDays")){
-                        xmlPullParser.next();
-                        if(noncurrentVersionExpiration != null){
-                            noncurrentVersionExpiration.noncurrentDays = Integer.parseInt(xmlPullParser.getText());
-                        }else if(noncurrentVersionTransition != null){
-                            noncurrentVersionTransition.noncurrentDays = Integer.parseInt(xmlPullParser.getText());
-                        }
-                    }else if(tagName.equalsIgnoreCase("StorageClass")){
-                        xmlPullParser.next();
-                        if(transition != null){
-                            transition.storageClass = xmlPullParser.getText();
-                        }else if(noncurrentVersionTransition != null){
-                            noncurrentVersionTransition.storageClass = xmlPullParser.getText();
-                        }
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType == CosXmlReader.START_TAG){
+                    switch (reader.tag()){
+                        case XmlTags.RULE:
+                            rule = new LifecycleConfiguration.Rule();
+                            break;
+                        case XmlTags.ID:
+                            rule.id = reader.text();
+                            break;
+                        case XmlTags.FILTER:
+                            filter = new LifecycleConfiguration.Filter();
+                            break;
+                        case XmlTags.PREFIX:
+                            filter.prefix = reader.text();
+                            break;
+                        case XmlTags.STATUS:
+                            rule.status = reader.text();
+                            break;
+                        case XmlTags.TRANSITION:
+                            transition = new LifecycleConfiguration.Transition();
+                            break;
+                        case XmlTags.EXPIRATION:
+                            expiration = new LifecycleConfiguration.Expiration();
+                            break;
+                        case XmlTags.DAYS:
+                            if(transition != null){
+                                transition.days = Integer.parseInt(reader.text());
+                            }else if(expiration != null){
+                                expiration.days = Integer.parseInt(reader.text());
+                            }
+                            break;
+                        case XmlTags.DATE:
+                            if(transition != null){
+                                transition.date = reader.text();
+                            }else if(expiration != null){
+                                expiration.date = reader.text();
+                            }
+                            break;
+                        case XmlTags.EXPIRED_OBJECT_DELETE_MARKER:
+                            expiration.expiredObjectDeleteMarker = reader.text();
+                            break;
+                        case XmlTags.ABORT_INCOMPLETE_MULTIPART_UPLOAD:
+                            abortIncompleteMultiUpload = new LifecycleConfiguration.AbortIncompleteMultiUpload();
+                            break;
+                        case XmlTags.DAYS_AFTER_INITIATION:
+                            abortIncompleteMultiUpload.daysAfterInitiation = Integer.parseInt(reader.text());
+                            break;
+                        case XmlTags.NONCURRENT_VERSION_EXPIRATION:
+                            noncurrentVersionExpiration = new LifecycleConfiguration.NoncurrentVersionExpiration();
+                            break;
+                        case XmlTags.NONCURRENT_VERSION_TRANSITION:
+                            noncurrentVersionTransition = new LifecycleConfiguration.NoncurrentVersionTransition();
+                            break;
+                        case XmlTags.NONCURRENT_DAYS:
+                            if(noncurrentVersionExpiration != null){
+                                noncurrentVersionExpiration.noncurrentDays = Integer.parseInt(reader.text());
+                            }else if(noncurrentVersionTransition != null){
+                                noncurrentVersionTransition.noncurrentDays = Integer.parseInt(reader.text());
+                            }
+                            break;
+                        case XmlTags.STORAGE_CLASS:
+                            if(transition != null){
+                                transition.storageClass = reader.text();
+                            }else if(noncurrentVersionTransition != null){
+                                noncurrentVersionTransition.storageClass = reader.text();
+                            }
+                            break;
+                        default:
+                            reader.skipUnknown();
                     }
-                    break;
-                case XmlPullParser.END_TAG:
-                    tagName = xmlPullParser.getName();
-                    if (tagName.equalsIgnoreCase("Rule")){
-                        result.rules.add(rule);
-                        rule = null;
-                    }else if (tagName.equalsIgnoreCase("Filter")){
-                        rule.filter = filter;
-                        filter = null;
-                    }else if (tagName.equalsIgnoreCase("Transition")){
-                        rule.transition = transition;
-                        transition = null;
-                    }else if (tagName.equalsIgnoreCase("NoncurrentVersionExpiration")){
-                        rule.noncurrentVersionExpiration = noncurrentVersionExpiration;
-                        noncurrentVersionExpiration = null;
-                    }else if (tagName.equalsIgnoreCase("NoncurrentVersionTransition")){
-                        rule.noncurrentVersionTransition = noncurrentVersionTransition;
-                        noncurrentVersionTransition = null;
-                    }else if (tagName.equalsIgnoreCase("Expiration")){
-                        rule.expiration = expiration;
-                        expiration = null;
-                    }else if (tagName.equalsIgnoreCase("AbortIncompleteMultipartUpload")){
-                        rule.abortIncompleteMultiUpload = abortIncompleteMultiUpload;
-                        abortIncompleteMultiUpload = null;
+                }else {
+                    switch (reader.tag()){
+                        case XmlTags.RULE:
+                            result.rules.add(rule);
+                            rule = null;
+                            break;
+                        case XmlTags.FILTER:
+                            rule.filter = filter;
+                            filter = null;
+                            break;
+                        case XmlTags.TRANSITION:
+                            rule.transition = transition;
+                            transition = null;
+                            break;
+                        case XmlTags.NONCURRENT_VERSION_EXPIRATION:
+                            rule.noncurrentVersionExpiration = noncurrentVersionExpiration;
+                            noncurrentVersionExpiration = null;
+                            break;
+                        case XmlTags.NONCURRENT_VERSION_TRANSITION:
+                            rule.noncurrentVersionTransition = noncurrentVersionTransition;
+                            noncurrentVersionTransition = null;
+                            break;
+                        case XmlTags.EXPIRATION:
+                            rule.expiration = expiration;
+                            expiration = null;
+                            break;
+                        case XmlTags.ABORT_INCOMPLETE_MULTIPART_UPLOAD:
+                            rule.abortIncompleteMultiUpload = abortIncompleteMultiUpload;
+                            abortIncompleteMultiUpload = null;
+                            break;
                     }
-                    break;
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parseLocationConstraint(InputStream inputStream, LocationConstraint result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("LocationConstraint")){
-                        xmlPullParser.next();
-                        result.location = xmlPullParser.getText();
-                    }
-                    break;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType != CosXmlReader.START_TAG) continue;
+                if(reader.tag() == XmlTags.LOCATION_CONSTRAINT){
+                    result.location = reader.text();
+                }else {
+                    reader.skipUnknown();
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
-    public static void parseListMultipartUploadsResult(InputStream inputStream, ListMultipartUploads result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        ListMultipartUploads.CommonPrefixes commonPrefixes = null;
-        ListMultipartUploads.Upload upload = null;
+    public static void parseListMultipartUploadsResult(InputStream inputStream, final ListMultipartUploads result) throws XmlPullParserException, IOException {
         result.uploads = new ArrayList<ListMultipartUploads.Upload>();
         result.commonPrefixes = new ArrayList<ListMultipartUploads.CommonPrefixes>();
+        parseListMultipartUploadsResult(inputStream, result, new ListMultipartUploadsVisitor() {
+            @Override
+            public void onUpload(ListMultipartUploads.Upload upload) {
+                result.uploads.add(upload);
+            }
+
+            @Override
+            public void onCommonPrefixes(ListMultipartUploads.CommonPrefixes commonPrefixes) {
+                result.commonPrefixes.add(commonPrefixes);
+            }
+        });
+    }
+
+    /**
+     * 边解析边回调每个条目, result 中只填充分页信息, uploads 和 commonPrefixes 不变
+     */
+    public static void parseListMultipartUploadsResult(InputStream inputStream, ListMultipartUploads result, ListMultipartUploadsVisitor visitor) throws XmlPullParserException, IOException {
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
+        ListMultipartUploads.CommonPrefixes commonPrefixes = null;
+        ListMultipartUploads.Upload upload = null;
         ListMultipartUploads.Initiator initiator = null;
         ListMultipartUploads.Owner owner = null;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if (tagName.equalsIgnoreCase("Bucket")){
-                        xmlPullParser.next();
-                        result.bucket = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("Encoding-Type")){
-                        xmlPullParser.next();
-                        result.encodingType = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("KeyMarker")){
-                        xmlPullParser.next();
-                        result.keyMarker = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("UploadIdMarker")){
-                        xmlPullParser.next();
-                        result.uploadIdMarker = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("NextKeyMarker")){
-                        xmlPullParser.next();
-                        result.nextKeyMarker = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("NextUploadIdMarker")){
-                        xmlPullParser.next();
-                        result.nextUploadIdMarker = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("MaxUploads")){
-                        xmlPullParser.next();
-                        result.maxUploads = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("IsTruncated")){
-                        xmlPullParser.next();
-                        result.isTruncated = Boolean.parseBoolean(xmlPullParser.getText());
-                    }else if (tagName.equalsIgnoreCase("Prefix")){
-                        xmlPullParser.next();
-                        if(commonPrefixes == null){
-                            result.prefix = xmlPullParser.getText();
-                        }else {
-                            commonPrefixes.prefix = xmlPullParser.getText();
-                        }
-                    }else if (tagName.equalsIgnoreCase("Delimiter")){
-                        xmlPullParser.next();
-                        result.delimiter = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Upload")){
-                        upload = new ListMultipartUploads.Upload();
-                    }else if (tagName.equalsIgnoreCase("Key")){
-                        xmlPullParser.next();
-                        upload.key = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("UploadId")){
-                        xmlPullParser.next();
-                        upload.uploadID = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("StorageClass")){
-                        xmlPullParser.next();
-                        upload.storageClass = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("Initiator")){
-                        initiator = new ListMultipartUploads.Initiator();
-                    }else if (tagName.equalsIgnoreCase("UIN")){
-                        xmlPullParser.next();
-                        if(initiator != null){
-                            initiator.uin = xmlPullParser.getText();
-                        }
-                    }else if (tagName.equalsIgnoreCase("Owner")){
-                        owner = new ListMultipartUploads.Owner();
-                    }else if (tagName.equalsIgnoreCase("UID")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.uid = xmlPullParser.getText();
-                        }
-                    }else if (tagName.equalsIgnoreCase("ID")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.id = xmlPullParser.getText();
-                        }else if(initiator != null){
-                            initiator.id = xmlPullParser.getText();
-                        }
-                    }else if (tagName.equalsIgnoreCase("DisplayName")){
-                        xmlPullParser.next();
-                        if(owner != null){
-                            owner.displayName = xmlPullParser.getText();
-                        }else if(initiator != null){
-                            initiator.displayName = xmlPullParser.getText();
-                        }
-                    }else if (tagName.equalsIgnoreCase("Initiated")){
-                        xmlPullParser.next();
-                        upload.initiated = xmlPullParser.getText();
-                    }else if (tagName.equalsIgnoreCase("CommonPrefixs")){
-                        commonPrefixes = new ListMultipartUploads.CommonPrefixes();
+        StringPool stringPool = new StringPool();
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType == CosXmlReader.START_TAG){
+                    switch (reader.tag()){
+                        case XmlTags.BUCKET:
+                            result.bucket = reader.text();
+                            break;
+                        case XmlTags.ENCODING_TYPE:
+                            result.encodingType = reader.text();
+                            break;
+                        case XmlTags.KEY_MARKER:
+                            result.keyMarker = reader.text();
+                            break;
+                        case XmlTags.UPLOAD_ID_MARKER:
+                            result.uploadIdMarker = reader.text();
+                            break;
+                        case XmlTags.NEXT_KEY_MARKER:
+                            result.nextKeyMarker = reader.text();
+                            break;
+                        case XmlTags.NEXT_UPLOAD_ID_MARKER:
+                            result.nextUploadIdMarker = reader.text();
+                            break;
+                        case XmlTags.MAX_UPLOADS:
+                            result.maxUploads = reader.text();
+                            break;
+                        case XmlTags.IS_TRUNCATED:
+                            result.isTruncated = Boolean.parseBoolean(reader.text());
+                            break;
+                        case XmlTags.PREFIX:
+                            if(commonPrefixes == null){
+                                result.prefix = reader.text();
+                            }else {
+                                commonPrefixes.prefix = reader.text();
+                            }
+                            break;
+                        case XmlTags.DELIMITER:
+                            result.delimiter = reader.text();
+                            break;
+                        case XmlTags.UPLOAD:
+                            upload = new ListMultipartUploads.Upload();
+                            break;
+                        case XmlTags.KEY:
+                            upload.key = reader.text();
+                            break;
+                        case XmlTags.UPLOAD_ID:
+                            upload.uploadID = reader.text();
+                            break;
+                        case XmlTags.STORAGE_CLASS:
+                            upload.storageClass = stringPool.get(reader.text());
+                            break;
+                        case XmlTags.INITIATOR:
+                            initiator = new ListMultipartUploads.Initiator();
+                            break;
+                        case XmlTags.UIN:
+                            if(initiator != null){
+                                initiator.uin = stringPool.get(reader.text());
+                            }
+                            break;
+                        case XmlTags.OWNER:
+                            owner = new ListMultipartUploads.Owner();
+                            break;
+                        case XmlTags.UID:
+                            if(owner != null){
+                                owner.uid = stringPool.get(reader.text());
+                            }
+                            break;
+                        case XmlTags.ID:
+                            if(owner != null){
+                                owner.id = stringPool.get(reader.text());
+                            }else if(initiator != null){
+                                initiator.id = stringPool.get(reader.text());
+                            }
+                            break;
+                        case XmlTags.DISPLAY_NAME:
+                            if(owner != null){
+                                owner.displayName = stringPool.get(reader.text());
+                            }else if(initiator != null){
+                                initiator.displayName = stringPool.get(reader.text());
+                            }
+                            break;
+                        case XmlTags.INITIATED:
+                            upload.initiated = reader.text();
+                            break;
+                        case XmlTags.COMMON_PREFIXS:
+                        case XmlTags.COMMON_PREFIXES:
+                            commonPrefixes = new ListMultipartUploads.CommonPrefixes();
+                            break;
+                        default:
+                            reader.skipUnknown();
                     }
-                    break;
-                case XmlPullParser.END_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Upload")){
-                        result.uploads.add(upload);
-                        upload = null;
-                    }else if(tagName.equalsIgnoreCase("CommonPrefixs")){
-                        result.commonPrefixes.add(commonPrefixes);
-                        commonPrefixes = null;
-                    }else if(tagName.equalsIgnoreCase("Owner")){
-                        upload.owner = owner;
-                        owner = null;
-                    }else if(tagName.equalsIgnoreCase("Initiator")){
-                       upload.initiator = initiator;
-                        initiator = null;
+                }else {
+                    switch (reader.tag()){
+                        case XmlTags.UPLOAD:
+                            visitor.onUpload(upload);
+                            upload = null;
+                            break;
+                        case XmlTags.COMMON_PREFIXS:
+                        case XmlTags.COMMON_PREFIXES:
+                            visitor.onCommonPrefixes(commonPrefixes);
+                            commonPrefixes = null;
+                            break;
+                        case XmlTags.OWNER:
+                            upload.owner = owner;
+                            owner = null;
+                            break;
+                        case XmlTags.INITIATOR:
+                            upload.initiator = initiator;
+                            initiator = null;
+                            break;
                     }
-                    break;
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parseDeleteResult(InputStream inputStream, DeleteResult result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
         result.errorList = new ArrayList<DeleteResult.Error>();
         result.deletedList = new ArrayList<DeleteResult.Deleted>();
         DeleteResult.Deleted deleted = null;
         DeleteResult.Error error = null;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Deleted")){
-                        deleted = new DeleteResult.Deleted();
-                    }else if(tagName.equalsIgnoreCase("Error")){
-                        error= new DeleteResult.Error();
-                    }else if(tagName.equalsIgnoreCase("Key")){
-                        xmlPullParser.next();
-                        if(deleted != null){
-                            deleted.key = xmlPullParser.getText();
-                        }else if(error != null){
-                            error.key = xmlPullParser.getText();
-                        }
-                    }else if(tagName.equalsIgnoreCase("VersionId")){
-                        xmlPullParser.next();
-                        if(deleted != null){
-                            deleted.versionId = xmlPullParser.getText();
-                        }else if(error != null){
-                            error.versionId = xmlPullParser.getText();
-                        }
-                    }else if(tagName.equalsIgnoreCase("DeleteMarker")){
-                        xmlPullParser.next();
-                        deleted.deleteMarker = Boolean.parseBoolean(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("DeleteMarkerVersionId")){
-                        xmlPullParser.next();
-                        deleted.deleteMarkerVersionId = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Message")){
-                        xmlPullParser.next();
-                        error.message = xmlPullParser.getText();
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType == CosXmlReader.START_TAG){
+                    switch (reader.tag()){
+                        case XmlTags.DELETED:
+                            deleted = new DeleteResult.Deleted();
+                            break;
+                        case XmlTags.ERROR:
+                            error = new DeleteResult.Error();
+                            break;
+                        case XmlTags.KEY:
+                            if(deleted != null){
+                                deleted.key = reader.text();
+                            }else if(error != null){
+                                error.key = reader.text();
+                            }
+                            break;
+                        case XmlTags.VERSION_ID:
+                            if(deleted != null){
+                                deleted.versionId = reader.text();
+                            }else if(error != null){
+                                error.versionId = reader.text();
+                            }
+                            break;
+                        case XmlTags.DELETE_MARKER:
+                            deleted.deleteMarker = Boolean.parseBoolean(reader.text());
+                            break;
+                        case XmlTags.DELETE_MARKER_VERSION_ID:
+                            deleted.deleteMarkerVersionId = reader.text();
+                            break;
+                        case XmlTags.CODE:
+                            error.code = reader.text();
+                            break;
+                        case XmlTags.MESSAGE:
+                            error.message = reader.text();
+                            break;
+                        default:
+                            reader.skipUnknown();
+                    }
+                }else {
+                    switch (reader.tag()){
+                        case XmlTags.DELETED:
+                            result.deletedList.add(deleted);
+                            deleted = null;
+                            break;
+                        case XmlTags.ERROR:
+                            result.errorList.add(error);
+                            error = null;
+                            break;
                     }
-                    break;
-                case XmlPullParser.END_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Deleted")){
-                        result.deletedList.add(deleted);
-                        deleted = null;
-                    }else if(tagName.equalsIgnoreCase("CosError")){
-                    result.errorList.add(error);
-                    error = null;
                 }
-                    break;
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
     public static void parseCopyPartResult(InputStream inputStream, CopyPart result) throws XmlPullParserException, IOException {
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("ETag")){
-                        xmlPullParser.next();
-                        result.eTag = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("LastModified")){
-                        xmlPullParser.next();
-                        result.lastModified = xmlPullParser.getText();
-                    }
-                    break;
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType != CosXmlReader.START_TAG) continue;
+                switch (reader.tag()){
+                    case XmlTags.ETAG:
+                        result.eTag = reader.text();
+                        break;
+                    case XmlTags.LAST_MODIFIED:
+                        result.lastModified = reader.text();
+                        break;
+                    default:
+                        reader.skipUnknown();
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
 
-    public static void parseListBucketVersions(InputStream inputStream, ListBucketVersions result) throws XmlPullParserException, IOException{
-        XmlPullParser xmlPullParser =  Xml.newPullParser();
-        xmlPullParser.setInput(inputStream, "UTF-8");
-        int eventType = xmlPullParser.getEventType();
-        String tagName;
+    public static void parseListBucketVersions(InputStream inputStream, final ListBucketVersions result) throws XmlPullParserException, IOException{
         result.objectVersionList = new ArrayList<>();
+        parseListBucketVersions(inputStream, result, new ListBucketVersionsVisitor() {
+            @Override
+            public void onObjectVersion(ListBucketVersions.ObjectVersion objectVersion) {
+                result.objectVersionList.add(objectVersion);
+            }
+        });
+    }
+
+    /**
+     * 边解析边回调每个版本, result 中只填充分页信息, objectVersionList 不变
+     */
+    public static void parseListBucketVersions(InputStream inputStream, ListBucketVersions result, ListBucketVersionsVisitor visitor) throws XmlPullParserException, IOException{
+        CosXmlReader reader = CosXmlReader.obtain(inputStream);
         ListBucketVersions.ObjectVersion objectVersion = null;
         ListBucketVersions.Owner owner = null;
-        while (eventType != XmlPullParser.END_DOCUMENT){
-            switch (eventType){
-                case XmlPullParser.START_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Name")){
-                        xmlPullParser.next();
-                        result.name = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Prefix")){
-                        xmlPullParser.next();
-                        result.prefix= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("KeyMarker")){
-                        xmlPullParser.next();
-                        result.keyMarker= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("VersionIdMarker")){
-                        xmlPullParser.next();
-                        result.versionIdMarker= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("MaxKeys")){
-                        xmlPullParser.next();
-                        result.maxKeys= Long.parseLong(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("IsTruncated")){
-                        xmlPullParser.next();
-                        result.isTruncated= Boolean.parseBoolean(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("NextKeyMarker")){
-                        xmlPullParser.next();
-                        result.nextKeyMarker= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("NextVersionIdMarker")){
-                        xmlPullParser.next();
-                        result.nextVersionIdMarker= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("DeleteMarker")){
-                        objectVersion = new ListBucketVersions.DeleteMarker();
-                    }else if(tagName.equalsIgnoreCase("Version")){
-                        objectVersion = new ListBucketVersions.Version();
-                    }else if(tagName.equalsIgnoreCase("Key")){
-                        xmlPullParser.next();
-                        objectVersion.key= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("VersionId")){
-                        xmlPullParser.next();
-                        objectVersion.versionId= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("IsLatest")){
-                        xmlPullParser.next();
-                        objectVersion.isLatest= Boolean.parseBoolean(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("LastModified")){
-                        xmlPullParser.next();
-                        objectVersion.lastModified= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Owner")){
-                        owner = new ListBucketVersions.Owner();
-                    }else if(tagName.equalsIgnoreCase("UID")){
-                        xmlPullParser.next();
-                        owner.uid = xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("ETag")){
-                        xmlPullParser.next();
-                        ((ListBucketVersions.Version)objectVersion).eTag= xmlPullParser.getText();
-                    }else if(tagName.equalsIgnoreCase("Size")){
-                        xmlPullParser.next();
-                        ((ListBucketVersions.Version)objectVersion).size= Long.parseLong(xmlPullParser.getText());
-                    }else if(tagName.equalsIgnoreCase("StorageClass")){
-                        xmlPullParser.next();
-                        ((ListBucketVersions.Version)objectVersion).storageClass= xmlPullParser.getText();
+        StringPool stringPool = new StringPool();
+        try {
+            int eventType;
+            while ((eventType = reader.next()) != CosXmlReader.END_DOCUMENT){
+                if(eventType == CosXmlReader.START_TAG){
+                    switch (reader.tag()){
+                        case XmlTags.NAME:
+                            result.name = reader.text();
+                            break;
+                        case XmlTags.PREFIX:
+                            result.prefix = reader.text();
+                            break;
+                        case XmlTags.KEY_MARKER:
+                            result.keyMarker = reader.text();
+                            break;
+                        case XmlTags.VERSION_ID_MARKER:
+                            result.versionIdMarker = reader.text();
+                            break;
+                        case XmlTags.MAX_KEYS:
+                            result.maxKeys = Long.parseLong(reader.text());
+                            break;
+                        case XmlTags.IS_TRUNCATED:
+                            result.isTruncated = Boolean.parseBoolean(reader.text());
+                            break;
+                        case XmlTags.NEXT_KEY_MARKER:
+                            result.nextKeyMarker = reader.text();
+                            break;
+                        case XmlTags.NEXT_VERSION_ID_MARKER:
+                            result.nextVersionIdMarker = reader.text();
+                            break;
+                        case XmlTags.DELETE_MARKER:
+                            objectVersion = new ListBucketVersions.DeleteMarker();
+                            break;
+                        case XmlTags.VERSION:
+                            objectVersion = new ListBucketVersions.Version();
+                            break;
+                        case XmlTags.KEY:
+                            objectVersion.key = reader.text();
+                            break;
+                        case XmlTags.VERSION_ID:
+                            objectVersion.versionId = reader.text();
+                            break;
+                        case XmlTags.IS_LATEST:
+                            objectVersion.isLatest = Boolean.parseBoolean(reader.text());
+                            break;
+                        case XmlTags.LAST_MODIFIED:
+                            objectVersion.lastModified = reader.text();
+                            break;
+                        case XmlTags.OWNER:
+                            owner = new ListBucketVersions.Owner();
+                            break;
+                        case XmlTags.UID:
+                            owner.uid = stringPool.get(reader.text());
+                            break;
+                        case XmlTags.ETAG:
+                            ((ListBucketVersions.Version) objectVersion).eTag = reader.text();
+                            break;
+                        case XmlTags.SIZE:
+                            ((ListBucketVersions.Version) objectVersion).size = Long.parseLong(reader.text());
+                            break;
+                        case XmlTags.STORAGE_CLASS:
+                            ((ListBucketVersions.Version) objectVersion).storageClass = stringPool.get(reader.text());
+                            break;
+                        default:
+                            reader.skipUnknown();
                     }
-                    break;
-                case XmlPullParser.END_TAG:
-                    tagName = xmlPullParser.getName();
-                    if(tagName.equalsIgnoreCase("Owner")){
-                        objectVersion.owner = owner;
-                        owner = null;
-                    }else if(tagName.equalsIgnoreCase("DeleteMarker")){
-                        result.objectVersionList.add(objectVersion);
-                        objectVersion = null;
-                    }else if(tagName.equalsIgnoreCase("Version")){
-                        result.objectVersionList.add(objectVersion);
-                        objectVersion = null;
+                }else {
+                    switch (reader.tag()){
+                        case XmlTags.OWNER:
+                            objectVersion.owner = owner;
+                            owner = null;
+                            break;
+                        case XmlTags.DELETE_MARKER:
+                        case XmlTags.VERSION:
+                            visitor.onObjectVersion(objectVersion);
+                            objectVersion = null;
+                            break;
                     }
+                }
             }
-            eventType = xmlPullParser.next();
+        } catch (CosXmlReader.MalformedXmlException e) {
+            throw malformed(e);
+        } finally {
+            reader.release();
         }
     }
+
+    /**
+     * 逐条接收 GetBucket 响应中的条目, 在解析响应的线程中回调
+     */
+    public interface ListBucketVisitor {
+        void onContents(ListBucket.Contents contents);
+
+        void onCommonPrefixes(ListBucket.CommonPrefixes commonPrefixes);
+    }
+
+    /**
+     * 逐条接收 ListBucketVersions 响应中的版本, 元素为 {@link ListBucketVersions.Version} 或 {@link ListBucketVersions.DeleteMarker}
+     */
+    public interface ListBucketVersionsVisitor {
+        void onObjectVersion(ListBucketVersions.ObjectVersion objectVersion);
+    }
+
+    /**
+     * 逐条接收 ListMultipartUploads 响应中的条目
+     */
+    public interface ListMultipartUploadsVisitor {
+        void onUpload(ListMultipartUploads.Upload upload);
+
+        void onCommonPrefixes(ListMultipartUploads.CommonPrefixes commonPrefixes);
+    }
+
+    /**
+     * 列表中的 owner、storageClass 等值几乎都相同, 解析时共用同一个实例, 只保留少量不同的值
+     */
+    static final class StringPool {
+        private static final int MAX_SIZE = 64;
+        private final Map<String, String> values = new HashMap<>();
+
+        String get(String value){
+            if(value == null){
+                return null;
+            }
+            String pooled = values.get(value);
+            if(pooled != null){
+                return pooled;
+            }
+            if(values.size() < MAX_SIZE){
+                values.put(value, value);
+            }
+            return value;
+        }
+    }
+
 }
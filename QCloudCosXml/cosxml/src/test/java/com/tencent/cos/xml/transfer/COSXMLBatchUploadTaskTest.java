@@ -0,0 +1,247 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
+import com.tencent.cos.xml.model.object.PutObjectRequest;
+import com.tencent.cos.xml.model.object.PutObjectResult;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * <p>
+ * COSXMLBatchUploadTask 的并发预算、失败汇总与重试, 以及大量无效文件时的调度
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class COSXMLBatchUploadTaskTest {
+
+    private static final String BUCKET = "examplebucket-1250000000";
+    private static final long DIVISION = 1000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CosXmlSimpleService cosXmlService;
+    private final RecordedCalls<PutObjectRequest> putCalls = new RecordedCalls<>();
+    private final RecordedCalls<InitMultipartUploadRequest> initCalls = new RecordedCalls<>();
+    /** 按本地路径记录创建的上传任务, 模拟的服务不会回调请求的执行状态, 应答前由测试置为进行中 */
+    private final Map<String, COSXMLUploadTask> tasks = new ConcurrentHashMap<>();
+    private final RecordingListener listener = new RecordingListener();
+
+    @Before
+    public void setUp() {
+        cosXmlService = mock(CosXmlSimpleService.class);
+        doAnswer(putCalls).when(cosXmlService).putObjectAsync(any(PutObjectRequest.class), any(CosXmlResultListener.class));
+        doAnswer(initCalls).when(cosXmlService).initMultipartUploadAsync(any(InitMultipartUploadRequest.class),
+                any(CosXmlResultListener.class));
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        List<COSXMLBatchUploadTask.UploadSource> sources = sources(5, 100);
+        COSXMLBatchUploadTask batchTask = batchTask(2, 4, sources);
+
+        // 简单上传各占 1 个名额
+        List<RecordedCalls.Call<PutObjectRequest>> inFlight = new ArrayList<>();
+        inFlight.add(putCalls.take());
+        inFlight.add(putCalls.take());
+        assertNull(putCalls.poll());
+        assertEquals(2, batchTask.getStats().runningCount);
+
+        int maxInFlight = inFlight.size();
+        while (!inFlight.isEmpty()) {
+            succeed(inFlight.remove(0));
+            RecordedCalls.Call<PutObjectRequest> next;
+            while ((next = putCalls.poll()) != null) {
+                inFlight.add(next);
+            }
+            maxInFlight = Math.max(maxInFlight, inFlight.size());
+        }
+        assertEquals(2, maxInFlight);
+        assertEquals(5, putCalls.count());
+        assertEquals(5, listener.succeeded.size());
+        assertEquals(1, listener.finished.size());
+        COSXMLBatchUploadTask.BatchUploadStats stats = listener.finished.get(0);
+        assertEquals(5, stats.succeedCount);
+        assertEquals(0, stats.failedCount);
+        assertEquals(0, stats.runningCount);
+        assertEquals(500, stats.transferredBytes);
+    }
+
+    @Test
+    public void testMultipartUploadsTakePartWeight() throws Exception {
+        // 预算 5, 分片上传各占 2 个名额, 同时只能有 2 个分片上传, 剩下的 1 个名额给简单上传
+        List<COSXMLBatchUploadTask.UploadSource> sources = new ArrayList<>(sources(3, (int) DIVISION));
+        sources.addAll(sources(1, 10));
+        batchTask(5, 2, sources);
+
+        assertEquals(2, initCalls.count());
+        assertEquals(0, putCalls.count());
+    }
+
+    @Test
+    public void testFailureAggregationAndRetry() throws Exception {
+        List<COSXMLBatchUploadTask.UploadSource> sources = sources(3, 100);
+        COSXMLBatchUploadTask batchTask = batchTask(3, 4, sources);
+
+        RecordedCalls.Call<PutObjectRequest> first = putCalls.take();
+        RecordedCalls.Call<PutObjectRequest> second = putCalls.take();
+        RecordedCalls.Call<PutObjectRequest> third = putCalls.take();
+        succeed(first);
+        second.fail(new CosXmlServiceException("SlowDown"));
+        assertTrue(listener.finished.isEmpty());
+        succeed(third);
+
+        COSXMLBatchUploadTask.UploadSource failed = sourceOf(second.request, sources);
+        assertEquals(Collections.singletonList(failed), batchTask.getFailedSources());
+        assertEquals(Collections.singletonList(failed), listener.failed);
+        assertEquals(1, listener.finished.size());
+        assertEquals(2, listener.finished.get(0).succeedCount);
+        assertEquals(1, listener.finished.get(0).failedCount);
+
+        // 只重传失败的对象
+        batchTask.retryFailed();
+        RecordedCalls.Call<PutObjectRequest> retry = putCalls.take();
+        assertEquals(failed.srcPath, retry.request.getSrcPath());
+        assertNull(putCalls.poll());
+        succeed(retry);
+        assertEquals(2, listener.finished.size());
+        assertEquals(3, listener.finished.get(1).succeedCount);
+        assertEquals(0, listener.finished.get(1).failedCount);
+        assertTrue(batchTask.getFailedSources().isEmpty());
+    }
+
+    @Test
+    public void testInvalidFilesDoNotRecurse() throws Exception {
+        // 不存在的文件在开始时同步失败, 调度不能随失败的对象数递归加深
+        List<COSXMLBatchUploadTask.UploadSource> sources = new ArrayList<>();
+        File missingDir = new File(temporaryFolder.getRoot(), "missing");
+        for (int i = 0; i < 2000; i++) {
+            sources.add(new COSXMLBatchUploadTask.UploadSource("dir/" + i, new File(missingDir, i + ".txt").getPath()));
+        }
+        COSXMLBatchUploadTask batchTask = batchTask(1, 1, sources);
+
+        assertEquals(2000, listener.failed.size());
+        assertEquals(2000, batchTask.getFailedSources().size());
+        assertEquals(ClientErrorCode.INVALID_ARGUMENT.getCode(), listener.failedErrorCode);
+        assertTrue(listener.maxFailStackDepth - listener.minFailStackDepth < 20);
+        assertEquals(1, listener.finished.size());
+        assertEquals(2000, listener.finished.get(0).failedCount);
+        assertEquals(0, putCalls.count());
+    }
+
+    @Test
+    public void testCancelStopsScheduling() throws Exception {
+        COSXMLBatchUploadTask batchTask = batchTask(1, 1, sources(3, 100));
+        RecordedCalls.Call<PutObjectRequest> first = putCalls.take();
+        batchTask.cancel();
+        succeed(first);
+        assertNull(putCalls.poll());
+        assertTrue(listener.finished.isEmpty());
+    }
+
+    private COSXMLBatchUploadTask batchTask(int batchConcurrency, int maxConcurrentParts,
+                                            List<COSXMLBatchUploadTask.UploadSource> sources) {
+        TransferConfig transferConfig = new TransferConfig.Builder()
+                .setDivisionForUpload(DIVISION)
+                .setSliceSizeForUpload(DIVISION)
+                .setMaxConcurrentParts(maxConcurrentParts)
+                .setBatchConcurrency(batchConcurrency)
+                .build();
+        TransferManager transferManager = new TransferManager(cosXmlService, transferConfig) {
+            @Override
+            COSXMLUploadTask newUploadTask(String bucket, String cosPath, String srcPath, String uploadId) {
+                COSXMLUploadTask task = super.newUploadTask(bucket, cosPath, srcPath, uploadId);
+                task.isNeedMd5 = false;
+                tasks.put(srcPath, task);
+                return task;
+            }
+        };
+        return transferManager.uploadBatch(BUCKET, sources.iterator(), listener);
+    }
+
+    private void succeed(RecordedCalls.Call<PutObjectRequest> call) {
+        tasks.get(call.request.getSrcPath()).updateState(TransferState.IN_PROGRESS);
+        PutObjectResult result = new PutObjectResult();
+        result.eTag = "\"" + call.request.getSrcPath().hashCode() + "\"";
+        call.succeed(result);
+    }
+
+    private List<COSXMLBatchUploadTask.UploadSource> sources(int count, int length) throws IOException {
+        List<COSXMLBatchUploadTask.UploadSource> sources = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File file = temporaryFolder.newFile();
+            TestFiles.write(file, new byte[length]);
+            sources.add(new COSXMLBatchUploadTask.UploadSource("dir/" + file.getName(), file.getPath()));
+        }
+        return sources;
+    }
+
+    private static COSXMLBatchUploadTask.UploadSource sourceOf(PutObjectRequest request,
+                                                             List<COSXMLBatchUploadTask.UploadSource> sources) {
+        for (COSXMLBatchUploadTask.UploadSource source : sources) {
+            if (source.srcPath.equals(request.getSrcPath())) {
+                return source;
+            }
+        }
+        throw new AssertionError("unknown source " + request.getSrcPath());
+    }
+
+    private static final class RecordingListener implements COSXMLBatchUploadTask.BatchUploadListener {
+        final List<COSXMLBatchUploadTask.UploadSource> succeeded = Collections.synchronizedList(
+                new ArrayList<COSXMLBatchUploadTask.UploadSource>());
+        final List<COSXMLBatchUploadTask.UploadSource> failed = Collections.synchronizedList(
+                new ArrayList<COSXMLBatchUploadTask.UploadSource>());
+        final List<COSXMLBatchUploadTask.BatchUploadStats> finished = Collections.synchronizedList(
+                new ArrayList<COSXMLBatchUploadTask.BatchUploadStats>());
+        volatile int failedErrorCode;
+        int minFailStackDepth = Integer.MAX_VALUE;
+        int maxFailStackDepth;
+
+        @Override
+        public void onSuccess(COSXMLBatchUploadTask.UploadSource source, COSXMLUploadTask.COSXMLUploadTaskResult result) {
+            succeeded.add(source);
+        }
+
+        @Override
+        public synchronized void onFail(COSXMLBatchUploadTask.UploadSource source, CosXmlClientException exception,
+                                        CosXmlServiceException serviceException) {
+            failed.add(source);
+            if (exception != null) {
+                failedErrorCode = exception.errorCode;
+            }
+            int depth = Thread.currentThread().getStackTrace().length;
+            minFailStackDepth = Math.min(minFailStackDepth, depth);
+            maxFailStackDepth = Math.max(maxFailStackDepth, depth);
+        }
+
+        @Override
+        public void onProgress(COSXMLBatchUploadTask.BatchUploadStats stats) {
+        }
+
+        @Override
+        public void onFinished(COSXMLBatchUploadTask.BatchUploadStats stats) {
+            finished.add(stats);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.object.AbortMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CopyObjectRequest;
+import com.tencent.cos.xml.model.object.HeadObjectRequest;
+import com.tencent.cos.xml.model.object.HeadObjectResult;
+import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
+import com.tencent.cos.xml.model.object.InitMultipartUploadResult;
+import com.tencent.cos.xml.model.object.UploadPartCopyRequest;
+import com.tencent.cos.xml.model.tag.InitiateMultipartUpload;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * <p>
+ * COSXMLCopyTask 的分片大小选择与分片失败后的退避重试
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class COSXMLCopyTaskTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final long GB = 1024 * MB;
+    private static final long MAX_SLICE_SIZE = 5 * GB;
+    private static final String UPLOAD_ID = "exampleUploadId";
+
+    private CosXmlSimpleService cosXmlService;
+    private final RecordedCalls<HeadObjectRequest> headCalls = new RecordedCalls<>();
+    private final RecordedCalls<InitMultipartUploadRequest> initCalls = new RecordedCalls<>();
+    private final RecordedCalls<UploadPartCopyRequest> copyCalls = new RecordedCalls<>();
+    private final RecordedCalls<AbortMultiUploadRequest> abortCalls = new RecordedCalls<>();
+
+    @Before
+    public void setUp() {
+        cosXmlService = mock(CosXmlSimpleService.class);
+        doAnswer(headCalls).when(cosXmlService).headObjectAsync(any(HeadObjectRequest.class), any(CosXmlResultListener.class));
+        doAnswer(initCalls).when(cosXmlService).initMultipartUploadAsync(any(InitMultipartUploadRequest.class),
+                any(CosXmlResultListener.class));
+        doAnswer(copyCalls).when(cosXmlService).copyObjectAsync(any(UploadPartCopyRequest.class), any(CosXmlResultListener.class));
+        doAnswer(abortCalls).when(cosXmlService).abortMultiUploadAsync(any(AbortMultiUploadRequest.class),
+                any(CosXmlResultListener.class));
+    }
+
+    @Test
+    public void testSliceSizeKeptWithinTargetPartCount() {
+        // 分片数不超过 1000 时使用配置的分片大小, 即使没有按 1M 对齐
+        assertEquals(MB, COSXMLCopyTask.sliceSizeFor(1000 * MB, MB));
+        assertEquals(MB, COSXMLCopyTask.sliceSizeFor(1, MB));
+        assertEquals(MB, COSXMLCopyTask.sliceSizeFor(0, MB));
+        assertEquals(1000, COSXMLCopyTask.sliceSizeFor(1000 * 1000, 1000));
+    }
+
+    @Test
+    public void testSliceSizeEnlargedAndAligned() {
+        // 超过 1000 个分片时放大分片, 放大后的分片按 1M 对齐
+        assertEquals(2 * MB, COSXMLCopyTask.sliceSizeFor(1000 * MB + 1, MB));
+        assertEquals(MB, COSXMLCopyTask.sliceSizeFor(1000 * 1000 + 1, 1000));
+        assertEquals(3 * MB, COSXMLCopyTask.sliceSizeFor(2000 * MB + 1, MB));
+        assertEquals(3 * MB, COSXMLCopyTask.sliceSizeFor(3000 * MB, MB));
+    }
+
+    @Test
+    public void testSliceSizeCappedAtMaxSliceSize() {
+        // 5G 的分片仍不超过 10000 个分片时, 分片大小不超过 5G
+        assertEquals(5 * GB, COSXMLCopyTask.sliceSizeFor(1000 * 5 * GB + 1, MB));
+        assertEquals(5 * GB, COSXMLCopyTask.sliceSizeFor(10000 * 5 * GB, MB));
+        // 再大时只能放大到刚好 10000 个分片
+        assertEquals(5 * GB + 1, COSXMLCopyTask.sliceSizeFor(10000 * 5 * GB + 1, MB));
+    }
+
+    @Test
+    public void testPartCountNeverExceedsLimit() {
+        long[] lengths = {1, MB - 1, 1000 * MB, 1000 * MB + 1, 10000 * MB + 1, 5000 * GB + 1,
+                10000 * 5 * GB - 1, 10000 * 5 * GB, 10000 * 5 * GB + 1, 100000 * 5 * GB + 7};
+        long[] sliceSizes = {1, 1000, MB, 64 * MB};
+        for (long length : lengths) {
+            for (long sliceSize : sliceSizes) {
+                long size = COSXMLCopyTask.sliceSizeFor(length, sliceSize);
+                long partCount = (length + size - 1) / size;
+                assertTrue(length + "/" + sliceSize, size >= sliceSize);
+                assertTrue(length + "/" + sliceSize, partCount <= 10000);
+                if (size != sliceSize && length <= 10000 * MAX_SLICE_SIZE) {
+                    assertTrue(length + "/" + sliceSize, size <= MAX_SLICE_SIZE);
+                    assertEquals(length + "/" + sliceSize, 0, size % MB);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRetryBackoffGrowsAndIsCapped() {
+        for (int i = 0; i < 100; i++) {
+            assertInRange(500, 1000, COSXMLCopyTask.retryBackoff(1));
+            assertInRange(1000, 2000, COSXMLCopyTask.retryBackoff(2));
+            assertInRange(2000, 4000, COSXMLCopyTask.retryBackoff(3));
+            assertInRange(4000, 8000, COSXMLCopyTask.retryBackoff(4));
+            assertInRange(4000, 8000, COSXMLCopyTask.retryBackoff(5));
+            assertInRange(4000, 8000, COSXMLCopyTask.retryBackoff(64));
+        }
+    }
+
+    @Test
+    public void testFailedPartRetriedAfterBackoff() throws Exception {
+        COSXMLCopyTask task = startLargeCopy();
+        RecordedCalls.Call<UploadPartCopyRequest> part = copyCalls.take();
+        assertNull(copyCalls.poll());
+
+        long failedAt = System.currentTimeMillis();
+        part.fail(slowDown());
+        // 不会立即重试
+        assertNull(copyCalls.poll(300));
+        RecordedCalls.Call<UploadPartCopyRequest> retry = copyCalls.take();
+        assertTrue(System.currentTimeMillis() - failedAt >= 500);
+        assertEquals(partNumber(part.request), partNumber(retry.request));
+        assertEquals(TransferState.IN_PROGRESS, task.getTaskState());
+    }
+
+    @Test
+    public void testPauseDuringBackoffStopsRetry() throws Exception {
+        COSXMLCopyTask task = startLargeCopy();
+        RecordedCalls.Call<UploadPartCopyRequest> part = copyCalls.take();
+        part.fail(slowDown());
+        task.pause();
+        assertNull(copyCalls.poll(1500));
+        assertEquals(TransferState.PAUSED, task.getTaskState());
+    }
+
+    /**
+     * 源对象 30 字节, 每个分片 10 字节, 同时只拷贝 1 个分片
+     */
+    private COSXMLCopyTask startLargeCopy() throws Exception {
+        COSXMLCopyTask task = new COSXMLCopyTask(cosXmlService, "ap-guangzhou", "examplebucket-1250000000",
+                "dest.txt", new CopyObjectRequest.CopySourceStruct("1250000000", "sourcebucket",
+                "ap-guangzhou", "source.txt"));
+        task.multiCopySizeDivision = 10;
+        task.sliceSize = 10;
+        task.maxConcurrentParts = 1;
+        task.copy();
+
+        RecordedCalls.Call<HeadObjectRequest> head = headCalls.take();
+        task.updateState(TransferState.IN_PROGRESS);
+        HeadObjectResult headResult = new HeadObjectResult();
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("Content-Length", Collections.singletonList("30"));
+        headers.put("ETag", Collections.singletonList("\"source\""));
+        headResult.headers = headers;
+        head.succeed(headResult);
+
+        InitMultipartUploadResult initResult = new InitMultipartUploadResult();
+        initResult.initMultipartUpload = new InitiateMultipartUpload();
+        initResult.initMultipartUpload.uploadId = UPLOAD_ID;
+        initCalls.take().succeed(initResult);
+        return task;
+    }
+
+    private static CosXmlServiceException slowDown() {
+        CosXmlServiceException slowDown = new CosXmlServiceException("Slow Down");
+        slowDown.setStatusCode(503);
+        slowDown.setErrorCode("SlowDown");
+        return slowDown;
+    }
+
+    private static String partNumber(UploadPartCopyRequest request) {
+        return request.getQueryString().get("partNumber");
+    }
+
+    private static void assertInRange(long min, long max, long value) {
+        assertTrue(value + " < " + min, value >= min);
+        assertTrue(value + " > " + max, value <= max);
+    }
+}
@@ -0,0 +1,303 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlServiceConfig;
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.common.COSRequestHeaderKey;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.object.GetObjectRequest;
+import com.tencent.cos.xml.model.object.GetObjectResult;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * <p>
+ * COSXMLDownloadTask 的首个分段探测、续传条件 (If-Range / If-Match) 不满足时的重新下载,
+ * 以及探测后转为分段并行下载
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class COSXMLDownloadTaskTest {
+
+    private static final String BUCKET = "examplebucket-1250000000";
+    private static final String COS_PATH = "dir/object.bin";
+    private static final String FILE_NAME = "object.bin";
+    private static final int MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CosXmlSimpleService cosXmlService;
+    private final RecordedCalls<GetObjectRequest> getCalls = new RecordedCalls<>();
+    private final RecordingProgress progress = new RecordingProgress();
+    private File downloadFile;
+
+    @Before
+    public void setUp() {
+        cosXmlService = mock(CosXmlSimpleService.class);
+        doReturn(new CosXmlServiceConfig.Builder().setRegion("ap-guangzhou").builder()).when(cosXmlService).getConfig();
+        doAnswer(getCalls).when(cosXmlService).getObjectAsync(any(GetObjectRequest.class), any(CosXmlResultListener.class));
+        downloadFile = new File(temporaryFolder.getRoot(), FILE_NAME);
+    }
+
+    @Test
+    public void testIfRangeMismatchRestartsFromBeginning() throws Exception {
+        COSXMLDownloadTask task = serialTask();
+        task.download();
+        RecordedCalls.Call<GetObjectRequest> first = getCalls.take();
+        assertNull(header(first.request, COSRequestHeaderKey.IF_RANGE));
+        task.updateState(TransferState.IN_PROGRESS);
+        startResponse(first, 200, headers("\"v1\"", "Content-Length", "20"), false);
+        write(first, data(10, 1));
+        task.pause();
+
+        // 续传时带上断点中的 ETag, 从已写入的位置继续
+        task.resume();
+        RecordedCalls.Call<GetObjectRequest> resumed = getCalls.take();
+        assertEquals("bytes=10-", header(resumed.request, COSRequestHeaderKey.RANGE));
+        assertEquals("\"v1\"", header(resumed.request, COSRequestHeaderKey.IF_RANGE));
+        assertEquals(10, resumed.request.getFileOffset());
+        assertEquals(0, resumed.request.getRestartFileOffset());
+
+        // 对象已变化, 服务端返回整个对象 (200), 从头重写
+        task.updateState(TransferState.IN_PROGRESS);
+        byte[] changed = data(25, 2);
+        startResponse(resumed, 200, headers("\"v2\"", "Content-Length", "25"), true);
+        truncate(0);
+        write(resumed, changed, 0);
+        complete(resumed, 200);
+
+        assertEquals(TransferState.COMPLETED, task.getTaskState());
+        assertEquals("\"v2\"", ((COSXMLDownloadTask.COSXMLDownloadTaskResult) task.getResult()).eTag);
+        assertArrayEquals(changed, TestFiles.read(downloadFile));
+        assertArrayEquals(new long[]{25, 25}, progress.last);
+        assertFalse(checkpointFile().exists());
+        assertEquals(2, getCalls.count());
+    }
+
+    @Test
+    public void testPreconditionFailedRestartsRangeDownload() throws Exception {
+        GetObjectRequest getObjectRequest = new GetObjectRequest(BUCKET, COS_PATH, temporaryFolder.getRoot().getPath(),
+                FILE_NAME);
+        getObjectRequest.setRange(0, 19);
+        COSXMLDownloadTask task = new COSXMLDownloadTask(null, cosXmlService, getObjectRequest);
+        task.setCosXmlProgressListener(progress);
+        task.download();
+
+        RecordedCalls.Call<GetObjectRequest> first = getCalls.take();
+        task.updateState(TransferState.IN_PROGRESS);
+        startResponse(first, 206, headers("\"v1\"", "Content-Range", "bytes 0-19/30"), false);
+        write(first, data(10, 1));
+        task.pause();
+
+        // 下载指定范围时用 If-Match 续传
+        task.resume();
+        RecordedCalls.Call<GetObjectRequest> resumed = getCalls.take();
+        assertEquals("bytes=10-19", header(resumed.request, COSRequestHeaderKey.RANGE));
+        assertEquals("\"v1\"", header(resumed.request, COSRequestHeaderKey.IF_MATCH));
+        assertNull(header(resumed.request, COSRequestHeaderKey.IF_RANGE));
+
+        task.updateState(TransferState.IN_PROGRESS);
+        resumed.fail(serviceException(412, "PreconditionFailed"));
+
+        // 丢弃断点, 不带条件从头下载
+        RecordedCalls.Call<GetObjectRequest> restarted = getCalls.take();
+        assertEquals("bytes=0-19", header(restarted.request, COSRequestHeaderKey.RANGE));
+        assertNull(header(restarted.request, COSRequestHeaderKey.IF_MATCH));
+        assertEquals(0, restarted.request.getFileOffset());
+
+        task.updateState(TransferState.IN_PROGRESS);
+        byte[] changed = data(20, 2);
+        startResponse(restarted, 206, headers("\"v2\"", "Content-Range", "bytes 0-19/30"), false);
+        write(restarted, changed, 0);
+        complete(restarted, 206);
+
+        assertEquals(TransferState.COMPLETED, task.getTaskState());
+        assertEquals("\"v2\"", ((COSXMLDownloadTask.COSXMLDownloadTaskResult) task.getResult()).eTag);
+        assertArrayEquals(changed, Arrays.copyOf(TestFiles.read(downloadFile), 20));
+        assertNull(getCalls.poll());
+    }
+
+    @Test
+    public void testRangeNotSatisfiableCompletesEmptyObject() throws Exception {
+        TestFiles.write(downloadFile, data(100, 1));
+        COSXMLDownloadTask task = parallelTask(4);
+        task.download();
+
+        RecordedCalls.Call<GetObjectRequest> probe = getCalls.take();
+        assertEquals("bytes=0-" + (MB - 1), header(probe.request, COSRequestHeaderKey.RANGE));
+        task.updateState(TransferState.IN_PROGRESS);
+        probe.fail(serviceException(416, "InvalidRange"));
+
+        assertEquals(TransferState.COMPLETED, task.getTaskState());
+        assertEquals(0, downloadFile.length());
+        assertNull(getCalls.poll());
+    }
+
+    @Test
+    public void testProbeBytesKeptWhenSwitchingToRanges() throws Exception {
+        byte[] object = data(3 * MB, 3);
+        COSXMLDownloadTask task = parallelTask(2);
+        task.download();
+
+        RecordedCalls.Call<GetObjectRequest> probe = getCalls.take();
+        assertEquals("bytes=0-" + (MB - 1), header(probe.request, COSRequestHeaderKey.RANGE));
+        assertNull(header(probe.request, COSRequestHeaderKey.IF_RANGE));
+        assertNull(header(probe.request, COSRequestHeaderKey.IF_MATCH));
+        task.updateState(TransferState.IN_PROGRESS);
+        startResponse(probe, 206, headers("\"v1\"", "Content-Range", "bytes 0-" + (MB - 1) + "/" + object.length), false);
+        write(probe, Arrays.copyOfRange(object, 0, MB), 0);
+        complete(probe, 206);
+
+        // 只下载首个分段之后的部分, 每个范围都要求对象没有变化
+        RecordedCalls.Call<GetObjectRequest> second = getCalls.take();
+        RecordedCalls.Call<GetObjectRequest> third = getCalls.take();
+        assertNull(getCalls.poll());
+        assertEquals("bytes=" + MB + "-" + (2 * MB - 1), header(second.request, COSRequestHeaderKey.RANGE));
+        assertEquals("bytes=" + 2 * MB + "-" + (3 * MB - 1), header(third.request, COSRequestHeaderKey.RANGE));
+        for (RecordedCalls.Call<GetObjectRequest> call : Arrays.asList(second, third)) {
+            assertEquals("\"v1\"", header(call.request, COSRequestHeaderKey.IF_MATCH));
+            assertTrue(call.request.isWriteInPlace());
+        }
+        assertEquals(object.length, downloadFile.length());
+
+        write(third, Arrays.copyOfRange(object, 2 * MB, 3 * MB), third.request.getFileOffset());
+        complete(third, 206);
+        write(second, Arrays.copyOfRange(object, MB, 2 * MB), second.request.getFileOffset());
+        complete(second, 206);
+
+        assertEquals(TransferState.COMPLETED, task.getTaskState());
+        assertArrayEquals(object, TestFiles.read(downloadFile));
+        assertArrayEquals(new long[]{object.length, object.length}, progress.last);
+        assertFalse(checkpointFile().exists());
+        assertEquals(3, getCalls.count());
+    }
+
+    /**
+     * 不分段, 整个对象顺序下载
+     */
+    private COSXMLDownloadTask serialTask() {
+        COSXMLDownloadTask task = new COSXMLDownloadTask(null, cosXmlService, "ap-guangzhou", BUCKET, COS_PATH,
+                temporaryFolder.getRoot().getPath(), FILE_NAME);
+        task.setCosXmlProgressListener(progress);
+        return task;
+    }
+
+    /**
+     * 先下载 1M 的首个分段, 对象更大时分段并行下载剩余部分
+     */
+    private COSXMLDownloadTask parallelTask(int maxConcurrentRanges) {
+        COSXMLDownloadTask task = serialTask();
+        task.multiDownloadSizeDivision = MB;
+        task.maxConcurrentRanges = maxConcurrentRanges;
+        task.progressIntervalMillis = 0;
+        task.progressStepPercent = 0;
+        return task;
+    }
+
+    /**
+     * 与 ResponseFileConverter 一样, 在写入文件之前回调响应开始
+     */
+    private static void startResponse(RecordedCalls.Call<GetObjectRequest> call, int httpCode,
+                                      Map<String, List<String>> headers, boolean isRestarted) {
+        GetObjectRequest.OnResponseStartListener listener = call.request.getOnResponseStartListener();
+        if (listener != null) {
+            listener.onResponseStart(httpCode, headers, isRestarted);
+        }
+    }
+
+    private void write(RecordedCalls.Call<GetObjectRequest> call, byte[] data) throws IOException {
+        write(call, data, call.request.getFileOffset());
+    }
+
+    /**
+     * 把 data 写入下载文件的 fileOffset 处, 并回调请求的进度
+     */
+    private void write(RecordedCalls.Call<GetObjectRequest> call, byte[] data, long fileOffset) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(downloadFile, "rw");
+        try {
+            randomAccessFile.seek(fileOffset);
+            randomAccessFile.write(data);
+        } finally {
+            randomAccessFile.close();
+        }
+        CosXmlProgressListener progressListener = call.request.getProgressListener();
+        if (progressListener != null) {
+            progressListener.onProgress(data.length, data.length);
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(downloadFile, "rw");
+        try {
+            randomAccessFile.setLength(length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void complete(RecordedCalls.Call<GetObjectRequest> call, int httpCode) {
+        GetObjectResult result = new GetObjectResult();
+        result.httpCode = httpCode;
+        call.succeed(result);
+    }
+
+    private File checkpointFile() {
+        return new File(downloadFile.getPath() + DownloadCheckpoint.SUFFIX);
+    }
+
+    private static Map<String, List<String>> headers(String eTag, String name, String value) {
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("ETag", Collections.singletonList(eTag));
+        headers.put(name, Collections.singletonList(value));
+        return headers;
+    }
+
+    private static String header(GetObjectRequest request, String name) {
+        List<String> values = request.getRequestHeaders().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static CosXmlServiceException serviceException(int statusCode, String errorCode) {
+        CosXmlServiceException exception = new CosXmlServiceException(errorCode);
+        exception.setStatusCode(statusCode);
+        exception.setErrorCode(errorCode);
+        return exception;
+    }
+
+    private static byte[] data(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static final class RecordingProgress implements CosXmlProgressListener {
+        volatile long[] last;
+
+        @Override
+        public void onProgress(long complete, long target) {
+            last = new long[]{complete, target};
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.object.PutObjectRequest;
+import com.tencent.cos.xml.model.object.PutObjectResult;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * <p>
+ * COSXMLTask.getFuture 随任务一起完成、失败和取消, 暂停不结束 Future
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class COSXMLTaskFutureTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CosXmlSimpleService cosXmlService;
+    private final RecordedCalls<PutObjectRequest> putCalls = new RecordedCalls<>();
+    private COSXMLUploadTask task;
+    private Future<CosXmlResult> future;
+
+    @Before
+    public void setUp() throws Exception {
+        cosXmlService = mock(CosXmlSimpleService.class);
+        doAnswer(putCalls).when(cosXmlService).putObjectAsync(any(PutObjectRequest.class), any(CosXmlResultListener.class));
+        File file = temporaryFolder.newFile();
+        TestFiles.write(file, new byte[100]);
+        task = new COSXMLUploadTask(cosXmlService, null, "examplebucket-1250000000", "object.txt", file.getPath(), null);
+        // 小于分片阈值, 简单上传
+        task.multiUploadSizeDivision = 1024;
+        task.sliceSize = 1024;
+        task.isNeedMd5 = false;
+        future = task.getFuture();
+        task.upload();
+        task.updateState(TransferState.IN_PROGRESS);
+    }
+
+    @Test
+    public void testCompletesWithTask() throws Exception {
+        RecordedCalls.Call<PutObjectRequest> put = putCalls.take();
+        assertFalse(future.isDone());
+
+        // 在其他线程等待, 任务完成时被唤醒
+        GetThread getThread = new GetThread(future);
+        getThread.start();
+        assertTrue(getThread.started.await(10, TimeUnit.SECONDS));
+        assertFalse(getThread.isFinished.await(100, TimeUnit.MILLISECONDS));
+
+        PutObjectResult putResult = new PutObjectResult();
+        putResult.eTag = "\"etag\"";
+        put.succeed(putResult);
+
+        assertTrue(getThread.isFinished.await(10, TimeUnit.SECONDS));
+        assertEquals("\"etag\"", ((COSXMLUploadTask.COSXMLUploadTaskResult) getThread.result).eTag);
+        assertNull(getThread.exception);
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+        assertSame(getThread.result, future.get(0, TimeUnit.MILLISECONDS));
+        // 已完成的任务不能再取消
+        assertFalse(future.cancel(true));
+        assertEquals(TransferState.COMPLETED, task.getTaskState());
+    }
+
+    @Test
+    public void testFailsWithTask() throws Exception {
+        CosXmlServiceException serviceException = new CosXmlServiceException("Internal Error");
+        serviceException.setStatusCode(500);
+        putCalls.take().fail(serviceException);
+
+        assertEquals(TransferState.FAILED, task.getTaskState());
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+        try {
+            future.get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertSame(serviceException, e.getCause());
+        }
+    }
+
+    @Test
+    public void testCancelFutureCancelsTask() throws Exception {
+        putCalls.take();
+        GetThread getThread = new GetThread(future);
+        getThread.start();
+        assertTrue(getThread.started.await(10, TimeUnit.SECONDS));
+
+        assertTrue(future.cancel(true));
+        assertEquals(TransferState.CANCELED, task.getTaskState());
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+        assertTrue(getThread.isFinished.await(10, TimeUnit.SECONDS));
+        assertTrue(getThread.exception instanceof CancellationException);
+        try {
+            future.get();
+            fail("expected CancellationException");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCancelTaskFinishesFuture() throws Exception {
+        putCalls.take();
+        task.cancel();
+        assertTrue(future.isCancelled());
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("expected CancellationException");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTimeoutWhileRunning() throws Exception {
+        putCalls.take();
+        long start = System.nanoTime();
+        try {
+            future.get(100, TimeUnit.MILLISECONDS);
+            fail("expected TimeoutException");
+        } catch (TimeoutException e) {
+            assertTrue(e.getMessage().contains(TransferState.IN_PROGRESS.toString()));
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertFalse(future.isDone());
+    }
+
+    @Test
+    public void testPauseDoesNotFinishFuture() throws Exception {
+        putCalls.take();
+        task.pause();
+        assertEquals(TransferState.PAUSED, task.getTaskState());
+        assertFalse(future.isDone());
+        assertFalse(future.isCancelled());
+        try {
+            future.get(50, TimeUnit.MILLISECONDS);
+            fail("expected TimeoutException");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        // 暂停后取消, Future 随之结束
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testInterruptedGet() throws Exception {
+        putCalls.take();
+        GetThread getThread = new GetThread(future);
+        getThread.start();
+        assertTrue(getThread.started.await(10, TimeUnit.SECONDS));
+        getThread.interrupt();
+        assertTrue(getThread.isFinished.await(10, TimeUnit.SECONDS));
+        assertTrue(getThread.exception instanceof InterruptedException);
+        // 等待方被中断不影响任务
+        assertEquals(TransferState.IN_PROGRESS, task.getTaskState());
+        assertFalse(future.isDone());
+    }
+
+    @Test
+    public void testClientFailureIsCause() throws Exception {
+        CosXmlClientException clientException = new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(),
+                "connection reset");
+        putCalls.take().fail(clientException);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertSame(clientException, e.getCause());
+        }
+    }
+
+    /**
+     * 在单独的线程中调用 Future.get, 记录结果或异常
+     */
+    private static final class GetThread extends Thread {
+        private final Future<CosXmlResult> future;
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch isFinished = new CountDownLatch(1);
+        volatile CosXmlResult result;
+        volatile Exception exception;
+
+        GetThread(Future<CosXmlResult> future) {
+            this.future = future;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                result = future.get();
+            } catch (Exception e) {
+                exception = e;
+            } finally {
+                isFinished.countDown();
+            }
+        }
+    }
+}
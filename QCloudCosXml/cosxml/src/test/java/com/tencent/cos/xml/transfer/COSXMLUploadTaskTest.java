@@ -0,0 +1,396 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.object.AbortMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadResult;
+import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
+import com.tencent.cos.xml.model.object.InitMultipartUploadResult;
+import com.tencent.cos.xml.model.object.PutObjectRequest;
+import com.tencent.cos.xml.model.object.UploadPartRequest;
+import com.tencent.cos.xml.model.object.UploadPartResult;
+import com.tencent.cos.xml.model.tag.CompleteMultipartUpload;
+import com.tencent.cos.xml.model.tag.CompleteMultipartUploadResult;
+import com.tencent.cos.xml.model.tag.InitiateMultipartUpload;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * <p>
+ * COSXMLUploadTask 的分片上传窗口和字节流上传, 请求由模拟的服务记录, 测试逐个应答
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class COSXMLUploadTaskTest {
+
+    private static final String BUCKET = "examplebucket-1250000000";
+    private static final String UPLOAD_ID = "1527661730c15dc2a5f4ea7d7c5f8b4b1a4e6e1b0f7a6f6c7c5f0b0c0d3e4a58";
+    private static final int SLICE_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CosXmlSimpleService cosXmlService;
+    private final RecordedCalls<InitMultipartUploadRequest> initCalls = new RecordedCalls<>();
+    private final RecordedCalls<UploadPartRequest> partCalls = new RecordedCalls<>();
+    private final RecordedCalls<CompleteMultiUploadRequest> completeCalls = new RecordedCalls<>();
+    private final RecordedCalls<AbortMultiUploadRequest> abortCalls = new RecordedCalls<>();
+    private final RecordedCalls<PutObjectRequest> putCalls = new RecordedCalls<>();
+
+    @Before
+    public void setUp() {
+        cosXmlService = mock(CosXmlSimpleService.class);
+        doAnswer(initCalls).when(cosXmlService).initMultipartUploadAsync(any(InitMultipartUploadRequest.class),
+                any(CosXmlResultListener.class));
+        doAnswer(partCalls).when(cosXmlService).uploadPartAsync(any(UploadPartRequest.class), any(CosXmlResultListener.class));
+        doAnswer(completeCalls).when(cosXmlService).completeMultiUploadAsync(any(CompleteMultiUploadRequest.class),
+                any(CosXmlResultListener.class));
+        doAnswer(abortCalls).when(cosXmlService).abortMultiUploadAsync(any(AbortMultiUploadRequest.class),
+                any(CosXmlResultListener.class));
+        doAnswer(putCalls).when(cosXmlService).putObjectAsync(any(PutObjectRequest.class), any(CosXmlResultListener.class));
+        initCalls.responder = new RecordedCalls.Responder<InitMultipartUploadRequest>() {
+            @Override
+            public void respond(RecordedCalls.Call<InitMultipartUploadRequest> call) {
+                call.succeed(initResult());
+            }
+        };
+    }
+
+    @Test
+    public void testPartWindowIsBounded() throws Exception {
+        COSXMLUploadTask task = fileTask(file(10 * SLICE_SIZE + 500), 3);
+        start(task);
+
+        // 第 1 到第 3 片同时上传, 其余分片等待
+        List<UploadPartRequest> inFlight = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            inFlight.add(partCalls.take().request);
+        }
+        assertNull(partCalls.poll(100));
+        assertEquals(1, inFlight.get(0).getPartNumber());
+        assertEquals(3, inFlight.get(2).getPartNumber());
+        assertEquals(UPLOAD_ID, inFlight.get(0).getUploadId());
+        assertEquals(TransferState.IN_PROGRESS, task.getTaskState());
+    }
+
+    @Test
+    public void testWindowRefillsAsPartsComplete() throws Exception {
+        COSXMLUploadTask task = fileTask(file(10 * SLICE_SIZE + 500), 3);
+        start(task);
+
+        List<RecordedCalls.Call<UploadPartRequest>> inFlight = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            inFlight.add(partCalls.take());
+        }
+        // 第 2 片先完成, 补上第 4 片
+        inFlight.remove(1).succeed(partResult(2));
+        RecordedCalls.Call<UploadPartRequest> next = partCalls.take();
+        assertEquals(4, next.request.getPartNumber());
+        assertNull(partCalls.poll());
+        inFlight.add(next);
+
+        // 每完成一片补上一片, 进行中的分片数始终是 3
+        int maxInFlight = inFlight.size();
+        while (!inFlight.isEmpty()) {
+            RecordedCalls.Call<UploadPartRequest> call = inFlight.remove(0);
+            call.succeed(partResult(call.request.getPartNumber()));
+            RecordedCalls.Call<UploadPartRequest> refill;
+            while ((refill = partCalls.poll()) != null) {
+                inFlight.add(refill);
+            }
+            maxInFlight = Math.max(maxInFlight, inFlight.size());
+        }
+        assertEquals(3, maxInFlight);
+        assertEquals(10, partCalls.count());
+
+        // 最后一片包含剩余的 500 字节
+        UploadPartRequest lastPart = partCalls.requests().get(9);
+        assertEquals(10, lastPart.getPartNumber());
+        assertEquals(SLICE_SIZE + 500, lastPart.getFileLength());
+
+        RecordedCalls.Call<CompleteMultiUploadRequest> complete = completeCalls.take();
+        List<CompleteMultipartUpload.Part> parts = complete.request.getCompleteMultipartUpload().parts;
+        assertEquals(10, parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            assertEquals(i + 1, parts.get(i).partNumber);
+            assertEquals("\"etag-" + (i + 1) + "\"", parts.get(i).eTag);
+        }
+        complete.succeed(completeResult());
+        assertEquals(TransferState.COMPLETED, task.getTaskState());
+    }
+
+    @Test
+    public void testSinglePartWindow() throws Exception {
+        COSXMLUploadTask task = fileTask(file(3 * SLICE_SIZE), 1);
+        start(task);
+        for (int partNumber = 1; partNumber <= 3; partNumber++) {
+            RecordedCalls.Call<UploadPartRequest> call = partCalls.take();
+            assertEquals(partNumber, call.request.getPartNumber());
+            assertNull(partCalls.poll());
+            call.succeed(partResult(partNumber));
+        }
+        completeCalls.take().succeed(completeResult());
+        assertEquals(TransferState.COMPLETED, task.getTaskState());
+    }
+
+    @Test
+    public void testFailedPartStopsWindow() throws Exception {
+        COSXMLUploadTask task = fileTask(file(10 * SLICE_SIZE), 3);
+        start(task);
+        RecordedCalls.Call<UploadPartRequest> first = partCalls.take();
+        RecordedCalls.Call<UploadPartRequest> second = partCalls.take();
+        RecordedCalls.Call<UploadPartRequest> third = partCalls.take();
+
+        second.fail(new CosXmlServiceException("SlowDown"));
+        assertEquals(TransferState.FAILED, task.getTaskState());
+        // 进行中的分片被取消, 之后完成的分片也不再补充窗口
+        verify(cosXmlService).cancel(first.request);
+        verify(cosXmlService).cancel(third.request);
+        first.succeed(partResult(1));
+        assertNull(partCalls.poll(100));
+        verify(cosXmlService, never()).completeMultiUploadAsync(any(CompleteMultiUploadRequest.class),
+                any(CosXmlResultListener.class));
+    }
+
+    @Test
+    public void testStreamEndingInFirstPartUsesSimpleUpload() throws Exception {
+        byte[] content = content(500);
+        TrackingInputStream inputStream = new TrackingInputStream(content, Integer.MAX_VALUE);
+        streamTask(inputStream, 2).upload();
+
+        PutObjectRequest putObjectRequest = putCalls.take().request;
+        assertArrayEquals(content, putObjectRequest.getData());
+        assertTrue(inputStream.isClosed);
+        assertEquals(0, initCalls.count());
+    }
+
+    @Test
+    public void testStreamBelowDivisionUsesSimpleUpload() throws Exception {
+        // 与文件上传相同, 超过一个分片但不足 multiUploadSizeDivision 时仍然简单上传
+        byte[] content = content(SLICE_SIZE + 700);
+        streamTask(new TrackingInputStream(content, Integer.MAX_VALUE), 2).upload();
+
+        assertArrayEquals(content, putCalls.take().request.getData());
+        assertEquals(0, initCalls.count());
+    }
+
+    @Test
+    public void testMultipartStream() throws Exception {
+        byte[] content = content(5 * SLICE_SIZE + 300);
+        TrackingInputStream inputStream = new TrackingInputStream(content, Integer.MAX_VALUE);
+        COSXMLUploadTask task = streamTask(inputStream, 2);
+        task.upload();
+
+        List<RecordedCalls.Call<UploadPartRequest>> inFlight = new ArrayList<>();
+        inFlight.add(partCalls.take());
+        inFlight.add(partCalls.take());
+        assertNull(partCalls.poll(100));
+        assertEquals(1, initCalls.count());
+        // 阻塞的读取不占用命令线程
+        assertTrue(inputStream.readThread, inputStream.readThread.startsWith("QCloud-StreamRead-"));
+
+        int maxInFlight = inFlight.size();
+        while (!inFlight.isEmpty()) {
+            RecordedCalls.Call<UploadPartRequest> call = inFlight.remove(0);
+            int partNumber = call.request.getPartNumber();
+            int offset = (partNumber - 1) * SLICE_SIZE;
+            byte[] expected = Arrays.copyOfRange(content, offset, Math.min(offset + SLICE_SIZE, content.length));
+            assertEquals(UPLOAD_ID, call.request.getUploadId());
+            assertEquals(expected.length, call.request.getFileLength());
+            assertArrayEquals(expected, Arrays.copyOf(call.request.getData(), expected.length));
+            call.succeed(partResult(partNumber));
+            RecordedCalls.Call<UploadPartRequest> refill;
+            while ((refill = partCalls.poll(inFlight.isEmpty() ? 100 : 0)) != null) {
+                inFlight.add(refill);
+            }
+            maxInFlight = Math.max(maxInFlight, inFlight.size());
+        }
+        assertEquals(2, maxInFlight);
+        assertEquals(6, partCalls.count());
+        assertTrue(inputStream.isClosed);
+
+        RecordedCalls.Call<CompleteMultiUploadRequest> complete = completeCalls.take();
+        List<CompleteMultipartUpload.Part> parts = complete.request.getCompleteMultipartUpload().parts;
+        assertEquals(6, parts.size());
+        assertEquals(6, parts.get(5).partNumber);
+        complete.succeed(completeResult());
+        assertEquals(TransferState.COMPLETED, task.getTaskState());
+        assertEquals(0, abortCalls.count());
+    }
+
+    @Test
+    public void testStreamPartCountOverflow() throws Exception {
+        partCalls.responder = new RecordedCalls.Responder<UploadPartRequest>() {
+            @Override
+            public void respond(RecordedCalls.Call<UploadPartRequest> call) {
+                call.succeed(partResult(call.request.getPartNumber()));
+            }
+        };
+        // 1 字节的分片, 第 10001 片超过分片编号上限
+        COSXMLUploadTask task = streamTask(new TrackingInputStream(content(10005), Integer.MAX_VALUE), 4);
+        task.sliceSize = 1;
+        task.multiUploadSizeDivision = 2;
+        task.upload();
+
+        assertEquals(UPLOAD_ID, abortCalls.take().request.getUploadId());
+        assertEquals(TransferState.FAILED, task.getTaskState());
+        assertEquals(10000, partCalls.count());
+        assertEquals(ClientErrorCode.INVALID_ARGUMENT.getCode(), ((CosXmlClientException) task.getException()).errorCode);
+        assertEquals(0, completeCalls.count());
+    }
+
+    @Test
+    public void testStreamReadFailureAbortsUpload() throws Exception {
+        // 读完第 3 片之后字节流出错
+        TrackingInputStream inputStream = new TrackingInputStream(content(10 * SLICE_SIZE), 3 * SLICE_SIZE);
+        COSXMLUploadTask task = streamTask(inputStream, 2);
+        task.upload();
+        RecordedCalls.Call<UploadPartRequest> first = partCalls.take();
+        RecordedCalls.Call<UploadPartRequest> second = partCalls.take();
+        first.succeed(partResult(1));
+        RecordedCalls.Call<UploadPartRequest> third = partCalls.take();
+        second.succeed(partResult(2));
+
+        // 进行中的分片被取消, uploadId 被终止
+        assertEquals(UPLOAD_ID, abortCalls.take().request.getUploadId());
+        assertEquals(TransferState.FAILED, task.getTaskState());
+        verify(cosXmlService).cancel(third.request);
+        assertEquals(ClientErrorCode.IO_ERROR.getCode(), ((CosXmlClientException) task.getException()).errorCode);
+        assertTrue(inputStream.isClosed);
+    }
+
+    @Test
+    public void testFailedStreamPartAbortsUpload() throws Exception {
+        COSXMLUploadTask task = streamTask(new TrackingInputStream(content(10 * SLICE_SIZE), Integer.MAX_VALUE), 2);
+        task.upload();
+        RecordedCalls.Call<UploadPartRequest> first = partCalls.take();
+        RecordedCalls.Call<UploadPartRequest> second = partCalls.take();
+        first.fail(new CosXmlServiceException("InternalError"));
+
+        verify(cosXmlService).cancel(second.request);
+        assertEquals(UPLOAD_ID, abortCalls.take().request.getUploadId());
+        assertEquals(TransferState.FAILED, task.getTaskState());
+    }
+
+    /**
+     * 模拟的服务不会回调请求的执行状态, 这里代替第一个请求把任务置为进行中
+     */
+    private static void start(COSXMLUploadTask task) {
+        task.upload();
+        task.updateState(TransferState.IN_PROGRESS);
+    }
+
+    private COSXMLUploadTask fileTask(File file, int maxConcurrentParts) {
+        COSXMLUploadTask task = new COSXMLUploadTask(cosXmlService, null, BUCKET, "video.mp4", file.getPath(), null);
+        task.multiUploadSizeDivision = 2 * SLICE_SIZE;
+        task.sliceSize = SLICE_SIZE;
+        task.maxConcurrentParts = maxConcurrentParts;
+        task.isNeedMd5 = false;
+        return task;
+    }
+
+    private COSXMLUploadTask streamTask(TrackingInputStream inputStream, int maxConcurrentParts) {
+        COSXMLUploadTask task = new COSXMLUploadTask(cosXmlService, null, BUCKET, "video.mp4", inputStream);
+        task.multiUploadSizeDivision = 2 * SLICE_SIZE;
+        task.sliceSize = SLICE_SIZE;
+        task.maxConcurrentParts = maxConcurrentParts;
+        task.isNeedMd5 = false;
+        return task;
+    }
+
+    private File file(int length) throws IOException {
+        File file = temporaryFolder.newFile();
+        TestFiles.write(file, content(length));
+        return file;
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    static InitMultipartUploadResult initResult() {
+        InitMultipartUploadResult result = new InitMultipartUploadResult();
+        result.initMultipartUpload = new InitiateMultipartUpload();
+        result.initMultipartUpload.uploadId = UPLOAD_ID;
+        return result;
+    }
+
+    static UploadPartResult partResult(int partNumber) {
+        UploadPartResult result = new UploadPartResult();
+        result.eTag = "\"etag-" + partNumber + "\"";
+        return result;
+    }
+
+    static CompleteMultiUploadResult completeResult() {
+        CompleteMultiUploadResult result = new CompleteMultiUploadResult();
+        result.completeMultipartUpload = new CompleteMultipartUploadResult();
+        result.completeMultipartUpload.eTag = "\"etag-complete\"";
+        return result;
+    }
+
+    /**
+     * 记录读取线程和是否已关闭, 读到 failAt 字节后抛出 IOException
+     */
+    private static final class TrackingInputStream extends InputStream {
+        private final byte[] content;
+        private final int failAt;
+        private int position;
+        volatile String readThread;
+        volatile boolean isClosed;
+
+        TrackingInputStream(byte[] content, int failAt) {
+            this.content = content;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            readThread = Thread.currentThread().getName();
+            if (position >= failAt) {
+                throw new IOException("connection reset");
+            }
+            if (position >= content.length) {
+                return -1;
+            }
+            int readLen = Math.min(len, Math.min(failAt, content.length) - position);
+            System.arraycopy(content, position, b, off, readLen);
+            position += readLen;
+            return readLen;
+        }
+
+        @Override
+        public void close() {
+            isClosed = true;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.tencent.cos.xml.transfer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * CosXmlReader 的分词: 标签、文本、实体、CDATA 和格式错误的输入
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class CosXmlReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CosXmlReader reader;
+
+    @After
+    public void tearDown() {
+        if (reader != null) {
+            reader.release();
+        }
+    }
+
+    @Test
+    public void testListBucketResult() throws Exception {
+        reader = obtain("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ListBucketResult>\n"
+                + "  <Name>examplebucket-1250000000</Name>\n"
+                + "  <Prefix/>\n"
+                + "  <IsTruncated>false</IsTruncated>\n"
+                + "  <Contents>\n"
+                + "    <Key>photos/2018/a.jpg</Key>\n"
+                + "    <ETag>&quot;0c1f6a2e5b7d8f8e0a3d6c8f2b1e4a7d&quot;</ETag>\n"
+                + "    <Size>1024</Size>\n"
+                + "  </Contents>\n"
+                + "</ListBucketResult>\n");
+
+        assertEquals(CosXmlReader.START_TAG, reader.next());
+        assertEquals(XmlTags.UNKNOWN, reader.tag());
+        assertEquals(1, reader.depth());
+
+        assertStart(XmlTags.NAME, 2);
+        assertEquals("examplebucket-1250000000", reader.text());
+        assertEnd(XmlTags.NAME, 1);
+
+        assertStart(XmlTags.PREFIX, 2);
+        assertNull(reader.text());
+        assertEnd(XmlTags.PREFIX, 1);
+
+        assertStart(XmlTags.IS_TRUNCATED, 2);
+        assertEquals("false", reader.text());
+        assertEnd(XmlTags.IS_TRUNCATED, 1);
+
+        assertStart(XmlTags.CONTENTS, 2);
+        assertStart(XmlTags.KEY, 3);
+        assertEquals("photos/2018/a.jpg", reader.text());
+        assertEnd(XmlTags.KEY, 2);
+        assertStart(XmlTags.ETAG, 3);
+        assertEquals("\"0c1f6a2e5b7d8f8e0a3d6c8f2b1e4a7d\"", reader.text());
+        assertEnd(XmlTags.ETAG, 2);
+        assertStart(XmlTags.SIZE, 3);
+        assertEquals("1024", reader.text());
+        assertEnd(XmlTags.SIZE, 2);
+        assertEnd(XmlTags.CONTENTS, 1);
+
+        assertEquals(CosXmlReader.END_TAG, reader.next());
+        assertEquals(0, reader.depth());
+        assertEquals(CosXmlReader.END_DOCUMENT, reader.next());
+    }
+
+    @Test
+    public void testPredefinedEntities() throws Exception {
+        reader = obtain("<Key>a&lt;b&gt;c&amp;d&quot;e&apos;f</Key>");
+        assertStart(XmlTags.KEY, 1);
+        assertEquals("a<b>c&d\"e'f", reader.text());
+    }
+
+    @Test
+    public void testCharacterReferences() throws Exception {
+        reader = obtain("<Key>line&#13;&#10;tab&#x9;&#X4E2D;&#25991;&#x1F600;</Key>");
+        assertStart(XmlTags.KEY, 1);
+        assertEquals("line\r\ntab\t中文😀", reader.text());
+    }
+
+    @Test
+    public void testUtf8Text() throws Exception {
+        reader = obtain("<Key>目录/文件 1.txt</Key>");
+        assertStart(XmlTags.KEY, 1);
+        assertEquals("目录/文件 1.txt", reader.text());
+    }
+
+    @Test
+    public void testCdata() throws Exception {
+        reader = obtain("<Key><![CDATA[<a>&amp;]]]></Key>");
+        assertStart(XmlTags.KEY, 1);
+        assertEquals("<a>&amp;]", reader.text());
+        assertEnd(XmlTags.KEY, 0);
+    }
+
+    @Test
+    public void testTextMixedWithCdata() throws Exception {
+        reader = obtain("<Key>a&amp;<![CDATA[<b>]]>c<![CDATA[]]>&lt;</Key>");
+        assertStart(XmlTags.KEY, 1);
+        assertEquals("a&<b>c<", reader.text());
+        assertEnd(XmlTags.KEY, 0);
+    }
+
+    @Test
+    public void testEmptyElements() throws Exception {
+        reader = obtain("<Owner><ID/><DisplayName></DisplayName><Key x=\"1\" /></Owner>");
+        assertStart(XmlTags.OWNER, 1);
+        assertStart(XmlTags.ID, 2);
+        assertNull(reader.text());
+        assertEnd(XmlTags.ID, 1);
+        assertStart(XmlTags.DISPLAY_NAME, 2);
+        assertNull(reader.text());
+        assertEnd(XmlTags.DISPLAY_NAME, 1);
+        assertStart(XmlTags.KEY, 2);
+        assertNull(reader.text());
+        assertEquals(CosXmlReader.END_TAG, reader.next());
+        assertEnd(XmlTags.OWNER, 0);
+    }
+
+    @Test
+    public void testAttributesAreSkipped() throws Exception {
+        reader = obtain("<Grantee xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:type='a>b'>"
+                + "<ID>qcs::cam::uin/100000000001:uin/100000000001</ID></Grantee>");
+        assertStart(XmlTags.GRANTEE, 1);
+        assertStart(XmlTags.ID, 2);
+        assertEquals("qcs::cam::uin/100000000001:uin/100000000001", reader.text());
+        assertEnd(XmlTags.ID, 1);
+        assertEnd(XmlTags.GRANTEE, 0);
+    }
+
+    @Test
+    public void testCommentsAndDeclarationsAreSkipped() throws Exception {
+        reader = obtain("<?xml version=\"1.0\"?><!DOCTYPE Error><!-- <Key>no</Key> -->"
+                + "<Error><![CDATA[<Key>no</Key>]]><Code>NoSuchKey</Code><!-- c --></Error>");
+        assertStart(XmlTags.ERROR, 1);
+        assertStart(XmlTags.CODE, 2);
+        assertEquals("NoSuchKey", reader.text());
+        assertEnd(XmlTags.CODE, 1);
+        assertEnd(XmlTags.ERROR, 0);
+        assertEquals(CosXmlReader.END_DOCUMENT, reader.next());
+    }
+
+    @Test
+    public void testSkipUnknownSubtree() throws Exception {
+        reader = obtain("<Error><Unknown><Code>skipped</Code><Nested/></Unknown><Message>kept</Message></Error>");
+        assertStart(XmlTags.ERROR, 1);
+        // 根元素不跳过
+        reader.skipUnknown();
+        assertStart(XmlTags.UNKNOWN, 2);
+        reader.skipUnknown();
+        assertEquals(1, reader.depth());
+        assertStart(XmlTags.MESSAGE, 2);
+        reader.skipUnknown();
+        assertEquals("kept", reader.text());
+        assertEnd(XmlTags.MESSAGE, 1);
+        assertEnd(XmlTags.ERROR, 0);
+    }
+
+    @Test
+    public void testLongElementName() throws Exception {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            name.append('x');
+        }
+        reader = obtain("<" + name + "><Key>k</Key></" + name + ">");
+        assertStart(XmlTags.UNKNOWN, 1);
+        assertStart(XmlTags.KEY, 2);
+        assertEquals("k", reader.text());
+        assertEnd(XmlTags.KEY, 1);
+        assertEnd(XmlTags.UNKNOWN, 0);
+    }
+
+    @Test
+    public void testNestedObtainUsesAnotherReader() throws Exception {
+        reader = obtain("<Key>outer</Key>");
+        CosXmlReader nested = obtain("<Code>inner</Code>");
+        try {
+            assertNotSame(reader, nested);
+            assertEquals(CosXmlReader.START_TAG, nested.next());
+            assertEquals("inner", nested.text());
+        } finally {
+            nested.release();
+        }
+        assertStart(XmlTags.KEY, 1);
+        assertEquals("outer", reader.text());
+    }
+
+    @Test
+    public void testUnknownEntity() throws Exception {
+        assertMalformedText("<Key>a&nbsp;b</Key>");
+    }
+
+    @Test
+    public void testUnterminatedEntity() throws Exception {
+        assertMalformedText("<Key>a&amp b</Key>");
+    }
+
+    @Test
+    public void testInvalidCharacterReference() throws Exception {
+        assertMalformedText("<Key>&#xZZ;</Key>");
+        assertMalformedText("<Key>&#;</Key>");
+        assertMalformedText("<Key>&#x110000;</Key>");
+    }
+
+    @Test
+    public void testUnterminatedCdata() throws Exception {
+        assertMalformedText("<Key><![CDATA[abc</Key>");
+    }
+
+    @Test
+    public void testTextWithoutEndTag() throws Exception {
+        assertMalformedText("<Key>abc");
+    }
+
+    @Test
+    public void testMissingEndTag() throws Exception {
+        reader = obtain("<Error><Code>NoSuchKey</Code>");
+        assertStart(XmlTags.ERROR, 1);
+        assertStart(XmlTags.CODE, 2);
+        assertEnd(XmlTags.CODE, 1);
+        try {
+            reader.next();
+            fail("expected MalformedXmlException");
+        } catch (CosXmlReader.MalformedXmlException e) {
+            // 文档提前结束
+        }
+    }
+
+    @Test
+    public void testSkipPastEndOfDocument() throws Exception {
+        reader = obtain("<Error><Unknown><Code>x</Code>");
+        assertStart(XmlTags.ERROR, 1);
+        assertStart(XmlTags.UNKNOWN, 2);
+        try {
+            reader.skipUnknown();
+            fail("expected MalformedXmlException");
+        } catch (CosXmlReader.MalformedXmlException e) {
+            // 文档提前结束
+        }
+    }
+
+    @Test
+    public void testUnterminatedComment() throws Exception {
+        reader = obtain("<Error><!-- never closed </Error>");
+        assertStart(XmlTags.ERROR, 1);
+        try {
+            reader.next();
+            fail("expected MalformedXmlException");
+        } catch (CosXmlReader.MalformedXmlException e) {
+            // 注释没有结束
+        }
+    }
+
+    @Test
+    public void testBadEmptyElement() throws Exception {
+        reader = obtain("<Key/ ></Key>");
+        try {
+            reader.next();
+            fail("expected MalformedXmlException");
+        } catch (CosXmlReader.MalformedXmlException e) {
+            assertEquals("expected '>'", e.getMessage());
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedTag() throws Exception {
+        reader = obtain("<Error><Co");
+        assertStart(XmlTags.ERROR, 1);
+        reader.next();
+    }
+
+    private void assertStart(int tag, int depth) throws IOException {
+        assertEquals(CosXmlReader.START_TAG, reader.next());
+        assertEquals(XmlTags.name(tag), XmlTags.name(reader.tag()));
+        assertEquals(depth, reader.depth());
+    }
+
+    private void assertEnd(int tag, int depth) throws IOException {
+        assertEquals(CosXmlReader.END_TAG, reader.next());
+        assertEquals(XmlTags.name(tag), XmlTags.name(reader.tag()));
+        assertEquals(depth, reader.depth());
+    }
+
+    private void assertMalformedText(String xml) throws IOException {
+        CosXmlReader reader = obtain(xml);
+        try {
+            assertEquals(CosXmlReader.START_TAG, reader.next());
+            reader.text();
+            fail("expected MalformedXmlException for " + xml);
+        } catch (CosXmlReader.MalformedXmlException e) {
+            // 格式错误
+        } finally {
+            reader.release();
+        }
+    }
+
+    private static CosXmlReader obtain(String xml) {
+        return CosXmlReader.obtain(new ByteArrayInputStream(xml.getBytes(UTF_8)));
+    }
+}
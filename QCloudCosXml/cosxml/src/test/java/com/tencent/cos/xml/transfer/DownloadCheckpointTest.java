@@ -0,0 +1,218 @@
+package com.tencent.cos.xml.transfer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * DownloadCheckpoint 的区间记录、读取和续写
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class DownloadCheckpointTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final String ETAG = "\"ee8de918d05640145b18f70f4c3aa602\"";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private String downloadPath;
+
+    @Before
+    public void setUp() {
+        directory = temporaryFolder.getRoot();
+        downloadPath = new File(directory, "video.mp4").getPath();
+    }
+
+    @Test
+    public void testDisabledWithoutPath() {
+        assertNull(DownloadCheckpoint.open(null));
+    }
+
+    @Test
+    public void testLoadWithoutCheckpoint() {
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(downloadPath);
+        assertFalse(checkpoint.loadSaved(0, 10 * MB, 0));
+        assertNull(checkpoint.getETag());
+        assertEquals(-1, checkpoint.getObjectLength());
+        assertEquals(0, checkpoint.recordedEnd());
+    }
+
+    @Test
+    public void testExtentsAreMerged() {
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(downloadPath);
+        checkpoint.begin(ETAG, 10 * MB, 0, 10 * MB, 0);
+        checkpoint.recordExtent(4 * MB, 5 * MB);
+        checkpoint.recordExtent(0, MB);
+        checkpoint.recordExtent(MB, 2 * MB);
+        // 空区间不记录
+        checkpoint.recordExtent(7 * MB, 7 * MB);
+        checkpoint.recordExtent(3 * MB, 4 * MB + 100);
+
+        assertEquals(2 * MB, checkpoint.coveredEnd(0));
+        assertEquals(2 * MB, checkpoint.coveredEnd(MB + 1));
+        assertEquals(2 * MB, checkpoint.coveredEnd(2 * MB));
+        assertEquals(5 * MB, checkpoint.coveredEnd(3 * MB));
+        assertEquals(5 * MB, checkpoint.recordedEnd());
+
+        List<long[]> gaps = checkpoint.gaps(0, 10 * MB);
+        assertEquals(2, gaps.size());
+        assertArrayEquals(new long[]{2 * MB, 3 * MB}, gaps.get(0));
+        assertArrayEquals(new long[]{5 * MB, 10 * MB}, gaps.get(1));
+
+        // 只取部分范围
+        gaps = checkpoint.gaps(MB, 4 * MB);
+        assertEquals(1, gaps.size());
+        assertArrayEquals(new long[]{2 * MB, 3 * MB}, gaps.get(0));
+        assertTrue(checkpoint.gaps(3 * MB, 5 * MB).isEmpty());
+        checkpoint.close();
+    }
+
+    @Test
+    public void testLoadSavedRestoresExtents() {
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(downloadPath);
+        checkpoint.begin(ETAG, 10 * MB, 0, 10 * MB, 0);
+        checkpoint.recordExtent(0, 3 * MB);
+        checkpoint.recordExtent(6 * MB, 8 * MB);
+        checkpoint.close();
+
+        DownloadCheckpoint loaded = DownloadCheckpoint.open(downloadPath);
+        assertTrue(loaded.loadSaved(0, 10 * MB, 0));
+        assertEquals(ETAG, loaded.getETag());
+        assertEquals(10 * MB, loaded.getObjectLength());
+        assertEquals(3 * MB, loaded.coveredEnd(0));
+        assertEquals(8 * MB, loaded.recordedEnd());
+        List<long[]> gaps = loaded.gaps(0, 10 * MB);
+        assertEquals(2, gaps.size());
+        assertArrayEquals(new long[]{3 * MB, 6 * MB}, gaps.get(0));
+        assertArrayEquals(new long[]{8 * MB, 10 * MB}, gaps.get(1));
+    }
+
+    @Test
+    public void testMismatchedRangeIsIgnored() {
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(downloadPath);
+        checkpoint.begin(ETAG, 10 * MB, 0, 10 * MB, 0);
+        checkpoint.recordExtent(0, 3 * MB);
+        checkpoint.close();
+
+        DownloadCheckpoint loaded = DownloadCheckpoint.open(downloadPath);
+        assertFalse(loaded.loadSaved(MB, 10 * MB, 0));
+        assertFalse(loaded.loadSaved(0, 5 * MB, 0));
+        assertFalse(loaded.loadSaved(0, 10 * MB, 100));
+        assertNull(loaded.getETag());
+        assertEquals(0, loaded.recordedEnd());
+        assertTrue(loaded.loadSaved(0, 10 * MB, 0));
+    }
+
+    @Test
+    public void testCheckpointWithoutETagIsNotResumable() {
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(downloadPath);
+        checkpoint.begin(null, 10 * MB, 0, 10 * MB, 0);
+        checkpoint.recordExtent(0, MB);
+        checkpoint.close();
+        assertFalse(DownloadCheckpoint.open(downloadPath).loadSaved(0, 10 * MB, 0));
+    }
+
+    @Test
+    public void testETagWithSpaces() {
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(downloadPath);
+        checkpoint.begin("\"a b\"", 10, 0, 10, 0);
+        checkpoint.close();
+        DownloadCheckpoint loaded = DownloadCheckpoint.open(downloadPath);
+        assertTrue(loaded.loadSaved(0, 10, 0));
+        assertEquals("\"a_b\"", loaded.getETag());
+    }
+
+    @Test
+    public void testReopenAppendsAfterResume() {
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(downloadPath);
+        checkpoint.begin(ETAG, 4 * MB, 0, 4 * MB, 0);
+        checkpoint.recordExtent(0, MB);
+        checkpoint.close();
+
+        DownloadCheckpoint resumed = DownloadCheckpoint.open(downloadPath);
+        assertTrue(resumed.loadSaved(0, 4 * MB, 0));
+        resumed.reopen();
+        resumed.recordExtent(2 * MB, 3 * MB);
+        resumed.close();
+
+        DownloadCheckpoint loaded = DownloadCheckpoint.open(downloadPath);
+        assertTrue(loaded.loadSaved(0, 4 * MB, 0));
+        List<long[]> gaps = loaded.gaps(0, 4 * MB);
+        assertEquals(2, gaps.size());
+        assertArrayEquals(new long[]{MB, 2 * MB}, gaps.get(0));
+        assertArrayEquals(new long[]{3 * MB, 4 * MB}, gaps.get(1));
+    }
+
+    @Test
+    public void testBeginOverwritesOldCheckpoint() {
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(downloadPath);
+        checkpoint.begin("\"old\"", 4 * MB, 0, 4 * MB, 0);
+        checkpoint.recordExtent(0, 2 * MB);
+        // 对象已经被覆盖, 从头开始
+        checkpoint.begin(ETAG, 5 * MB, 0, 5 * MB, 0);
+        assertEquals(0, checkpoint.recordedEnd());
+        checkpoint.recordExtent(0, MB);
+        checkpoint.close();
+
+        DownloadCheckpoint loaded = DownloadCheckpoint.open(downloadPath);
+        assertFalse(loaded.loadSaved(0, 4 * MB, 0));
+        assertTrue(loaded.loadSaved(0, 5 * MB, 0));
+        assertEquals(ETAG, loaded.getETag());
+        assertEquals(MB, loaded.recordedEnd());
+    }
+
+    @Test
+    public void testPartialAndCorruptedRecords() throws IOException {
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(downloadPath);
+        checkpoint.begin(ETAG, 10 * MB, 0, 10 * MB, 0);
+        checkpoint.recordExtent(0, MB);
+        checkpoint.close();
+        // 损坏的记录和写了一半的最后一行都被忽略
+        TestFiles.append(new File(downloadPath + DownloadCheckpoint.SUFFIX), "E x 5\nE 1\nE 2097152 3145728\nE 4194304 52");
+
+        DownloadCheckpoint loaded = DownloadCheckpoint.open(downloadPath);
+        assertTrue(loaded.loadSaved(0, 10 * MB, 0));
+        assertEquals(3 * MB, loaded.recordedEnd());
+        assertEquals(MB, loaded.coveredEnd(0));
+        assertEquals(3 * MB, loaded.coveredEnd(2 * MB));
+    }
+
+    @Test
+    public void testHeaderWithoutNewlineIsIgnored() throws IOException {
+        TestFiles.append(new File(downloadPath + DownloadCheckpoint.SUFFIX), "D " + ETAG + " 100 0 100 0");
+        assertFalse(DownloadCheckpoint.open(downloadPath).loadSaved(0, 100, 0));
+    }
+
+    @Test
+    public void testFileMissingAfterDelete() {
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(downloadPath);
+        checkpoint.begin(ETAG, 10 * MB, 0, 10 * MB, 0);
+        checkpoint.recordExtent(0, MB);
+        checkpoint.delete();
+        assertFalse(new File(downloadPath + DownloadCheckpoint.SUFFIX).exists());
+        assertEquals(0, checkpoint.recordedEnd());
+        assertFalse(DownloadCheckpoint.open(downloadPath).loadSaved(0, 10 * MB, 0));
+    }
+
+    @Test
+    public void testRecordsKeptInMemoryWhenFileCannotBeWritten() {
+        // 下载目录不存在时断点文件无法创建, 只关闭断点记录
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.open(new File(directory, "missing/video.mp4").getPath());
+        checkpoint.begin(ETAG, 10 * MB, 0, 10 * MB, 0);
+        checkpoint.recordExtent(0, MB);
+        assertEquals(MB, checkpoint.coveredEnd(0));
+        checkpoint.close();
+        assertFalse(new File(directory, "missing").exists());
+    }
+}
@@ -0,0 +1,169 @@
+package com.tencent.cos.xml.transfer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * <p>
+ * 内存中的 SharedPreferences, 只支持字符串. SharePreferenceUtils 是单例, 所有测试共用同一个实例
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+final class MemorySharedPreferences implements SharedPreferences {
+
+    static final MemorySharedPreferences INSTANCE = new MemorySharedPreferences();
+
+    private final Map<String, Object> values = new HashMap<>();
+
+    private MemorySharedPreferences() {
+    }
+
+    /**
+     * @return getSharedPreferences 返回 {@link #INSTANCE} 的 Context
+     */
+    static Context context() {
+        Context context = mock(Context.class);
+        doReturn(INSTANCE).when(context).getSharedPreferences(anyString(), anyInt());
+        return context;
+    }
+
+    synchronized void clear() {
+        values.clear();
+    }
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<>(values);
+    }
+
+    @Override
+    public synchronized String getString(String key, String defValue) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    @Override
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new MemoryEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException();
+    }
+
+    private final class MemoryEditor implements Editor {
+        /** 值为 null 表示删除 */
+        private final Map<String, Object> changes = new HashMap<>();
+        private boolean isCleared;
+
+        @Override
+        public Editor putString(String key, String value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Editor remove(String key) {
+            changes.put(key, null);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            isCleared = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            synchronized (MemorySharedPreferences.this) {
+                if (isCleared) {
+                    values.clear();
+                }
+                for (Map.Entry<String, Object> change : changes.entrySet()) {
+                    if (change.getValue() == null) {
+                        values.remove(change.getKey());
+                    } else {
+                        values.put(change.getKey(), change.getValue());
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.tencent.cos.xml.transfer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * ObjectCache 的淘汰、重新加载和固定缓存项
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class ObjectCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = temporaryFolder.getRoot();
+    }
+
+    @Test
+    public void testPutAndRead() throws Exception {
+        ObjectCache cache = new ObjectCache(directory, 1024);
+        String key = ObjectCache.key("bucket-1250000000", "/a.txt", null);
+        cache.put(key, "\"etag-a\"", "Mon, 01 Jan 2018 00:00:00 GMT", bytes(100, 'a'));
+
+        ObjectCache.Entry entry = cache.get(key);
+        assertNotNull(entry);
+        assertEquals("\"etag-a\"", entry.getETag());
+        assertEquals("Mon, 01 Jan 2018 00:00:00 GMT", entry.getLastModified());
+        assertEquals(100, entry.getLength());
+        assertArrayEquals(bytes(100, 'a'), cache.read(entry));
+        assertEquals(100, cache.getSize());
+
+        File destination = new File(directory, "download/a.txt");
+        cache.copyTo(entry, destination);
+        assertEquals(100, destination.length());
+    }
+
+    @Test
+    public void testVersionedKeysAreSeparate() {
+        ObjectCache cache = new ObjectCache(directory, 1024);
+        cache.put(ObjectCache.key("bucket", "/a", null), "e0", null, bytes(10, '0'));
+        cache.put(ObjectCache.key("bucket", "/a", "v1"), "e1", null, bytes(10, '1'));
+        assertEquals("e0", cache.get(ObjectCache.key("bucket", "/a", null)).getETag());
+        assertEquals("e1", cache.get(ObjectCache.key("bucket", "/a", "v1")).getETag());
+        assertNull(cache.get(ObjectCache.key("bucket", "/a", "v2")));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ObjectCache cache = new ObjectCache(directory, 250);
+        cache.put("a", "ea", null, bytes(100, 'a'));
+        cache.put("b", "eb", null, bytes(100, 'b'));
+        // 访问 a 之后 b 成为最久未使用的
+        assertNotNull(cache.get("a"));
+        cache.put("c", "ec", null, bytes(100, 'c'));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(200, cache.getSize());
+        assertEquals(2, countFiles(".data"));
+        assertEquals(2, countFiles(".meta"));
+    }
+
+    @Test
+    public void testSkipsObjectLargerThanCache() {
+        ObjectCache cache = new ObjectCache(directory, 50);
+        cache.put("a", "ea", null, bytes(100, 'a'));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+        // 没有 ETag 无法校验, 也不缓存
+        cache.put("b", null, null, bytes(10, 'b'));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void testReplaceUpdatesSize() throws Exception {
+        ObjectCache cache = new ObjectCache(directory, 1024);
+        cache.put("a", "e1", null, bytes(100, '1'));
+        cache.put("a", "e2", null, bytes(40, '2'));
+        ObjectCache.Entry entry = cache.get("a");
+        assertEquals("e2", entry.getETag());
+        assertArrayEquals(bytes(40, '2'), cache.read(entry));
+        assertEquals(40, cache.getSize());
+    }
+
+    @Test
+    public void testReloadKeepsEntriesAndCleansTemporaryFiles() throws Exception {
+        ObjectCache cache = new ObjectCache(directory, 1024);
+        cache.put("a", "ea", "Tue, 02 Jan 2018 00:00:00 GMT", bytes(30, 'a'));
+        cache.put("b", "eb", null, bytes(20, 'b'));
+        TestFiles.write(new File(directory, "leftover.123.tmp"), bytes(10, 't'));
+
+        ObjectCache reloaded = new ObjectCache(directory, 1024);
+        assertEquals(50, reloaded.getSize());
+        ObjectCache.Entry entry = reloaded.get("a");
+        assertEquals("ea", entry.getETag());
+        assertEquals("Tue, 02 Jan 2018 00:00:00 GMT", entry.getLastModified());
+        assertNull(reloaded.get("b").getLastModified());
+        assertArrayEquals(bytes(30, 'a'), reloaded.read(entry));
+        assertEquals(0, countFiles(".tmp"));
+    }
+
+    @Test
+    public void testReloadDropsEntryWithoutData() {
+        ObjectCache cache = new ObjectCache(directory, 1024);
+        cache.put("a", "ea", null, bytes(30, 'a'));
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(".data")) {
+                assertTrue(file.delete());
+            }
+        }
+        ObjectCache reloaded = new ObjectCache(directory, 1024);
+        assertNull(reloaded.get("a"));
+        assertEquals(0, reloaded.getSize());
+        assertEquals(0, countFiles(".meta"));
+    }
+
+    @Test
+    public void testPinnedEntrySurvivesReplacement() throws Exception {
+        ObjectCache cache = new ObjectCache(directory, 1024);
+        cache.put("a", "e1", null, bytes(100, '1'));
+        ObjectCache.Entry pinned = cache.acquire("a");
+        assertNotNull(pinned);
+
+        // 请求发出后同一个键被其他请求更新, 304 到达时仍然读到发请求时的内容
+        cache.put("a", "e2", null, bytes(60, '2'));
+        assertArrayEquals(bytes(100, '1'), cache.read(pinned));
+        assertEquals("e2", cache.get("a").getETag());
+        assertArrayEquals(bytes(60, '2'), cache.read(cache.get("a")));
+        assertEquals(60, cache.getSize());
+
+        cache.release(pinned);
+        assertEquals(0, countFiles(".tmp"));
+        assertEquals(1, countFiles(".data"));
+        // 重复解除不影响新的缓存项
+        cache.release(pinned);
+        assertArrayEquals(bytes(60, '2'), cache.read(cache.get("a")));
+    }
+
+    @Test
+    public void testPinnedEntrySurvivesEviction() throws Exception {
+        ObjectCache cache = new ObjectCache(directory, 150);
+        cache.put("a", "ea", null, bytes(100, 'a'));
+        ObjectCache.Entry pinned = cache.acquire("a");
+
+        cache.put("b", "eb", null, bytes(100, 'b'));
+        assertNull(cache.get("a"));
+        assertEquals(100, cache.getSize());
+
+        File destination = new File(directory, "download/a");
+        cache.copyTo(pinned, destination);
+        assertArrayEquals(bytes(100, 'a'), TestFiles.read(destination));
+
+        cache.release(pinned);
+        assertEquals(1, countFiles(".data"));
+        assertEquals(0, countFiles(".tmp"));
+    }
+
+    @Test
+    public void testPinnedEntrySurvivesClear() throws Exception {
+        ObjectCache cache = new ObjectCache(directory, 1024);
+        cache.put("a", "ea", null, bytes(10, 'a'));
+        ObjectCache.Entry first = cache.acquire("a");
+        ObjectCache.Entry second = cache.acquire("a");
+        assertSame(first, second);
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        cache.release(first);
+        // 还有一次固定, 数据仍然可读
+        assertArrayEquals(bytes(10, 'a'), cache.read(second));
+        cache.release(second);
+        assertEquals(0, countFiles(".tmp"));
+        assertEquals(0, countFiles(".data"));
+    }
+
+    @Test
+    public void testReleaseUnremovedEntryKeepsData() throws Exception {
+        ObjectCache cache = new ObjectCache(directory, 1024);
+        cache.put("a", "ea", null, bytes(10, 'a'));
+        ObjectCache.Entry pinned = cache.acquire("a");
+        cache.release(pinned);
+        assertArrayEquals(bytes(10, 'a'), cache.read(cache.get("a")));
+    }
+
+    @Test
+    public void testMissingDataInvalidatesEntry() {
+        ObjectCache cache = new ObjectCache(directory, 1024);
+        cache.put("a", "ea", null, bytes(10, 'a'));
+        ObjectCache.Entry entry = cache.get("a");
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(".data")) {
+                assertTrue(file.delete());
+            }
+        }
+        try {
+            cache.read(entry);
+            fail("expected IOException");
+        } catch (IOException e) {
+            // 数据文件丢失
+        }
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    private int countFiles(String suffix) {
+        int count = 0;
+        for (File file : directory.listFiles()) {
+            if (file.isFile() && file.getName().endsWith(suffix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static byte[] bytes(int length, char c) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(c);
+        }
+        return builder.toString().getBytes(TestFiles.UTF_8);
+    }
+}
@@ -0,0 +1,113 @@
+package com.tencent.cos.xml.transfer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okio.ByteString;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * PartDigestPipeline 提前计算的分片 Content-MD5
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class PartDigestPipelineTest {
+
+    private static final int SLICE_SIZE = 300 * 1024;
+
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        // 剩余的数据并入最后一片, 最后一片大于分片大小
+        content = new byte[5 * SLICE_SIZE + 4321];
+        new Random(11).nextBytes(content);
+        file = File.createTempFile("part-digest", ".bin");
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testPreparesEveryPart() throws Exception {
+        PartStateTable table = PartStateTable.split(content.length, SLICE_SIZE);
+        PartDigestPipeline pipeline = new PartDigestPipeline(file.getPath(), table, 2);
+        assertEquals(5, table.size());
+        assertEquals(SLICE_SIZE + 4321, table.size(4));
+        for (int i = 0; i < table.size(); i++) {
+            assertEquals(md5(table.offset(i), table.size(i)), prepare(pipeline, i));
+        }
+    }
+
+    @Test
+    public void testPrefetchedPartsAreReused() throws Exception {
+        PartStateTable table = PartStateTable.split(content.length, SLICE_SIZE);
+        table.markCompleted(1, "\"e2\"");
+        PartDigestPipeline pipeline = new PartDigestPipeline(file.getPath(), table, 3);
+        // 跳过已完成的第 2 片, 预取第 1、3、4 片
+        pipeline.prefetch(0);
+        for (int i : new int[]{0, 2, 3}) {
+            assertEquals(md5(table.offset(i), table.size(i)), prepare(pipeline, i));
+        }
+        assertEquals(md5(table.offset(4), table.size(4)), prepare(pipeline, 4));
+    }
+
+    @Test
+    public void testCanceledPipelineReturnsNoDigest() throws Exception {
+        PartStateTable table = PartStateTable.split(content.length, SLICE_SIZE);
+        PartDigestPipeline pipeline = new PartDigestPipeline(file.getPath(), table, 2);
+        pipeline.cancel();
+        assertNull(prepare(pipeline, 0));
+    }
+
+    @Test
+    public void testMissingFileFallsBackToRequest() throws Exception {
+        PartStateTable table = PartStateTable.split(content.length, SLICE_SIZE);
+        PartDigestPipeline pipeline = new PartDigestPipeline(file.getPath() + ".missing", table, 2);
+        // 计算失败时由上传请求自己计算 MD5
+        assertNull(prepare(pipeline, 0));
+    }
+
+    private static String prepare(PartDigestPipeline pipeline, int index) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final String[] result = new String[1];
+        final int[] preparedIndex = {-1};
+        pipeline.prepare(index, new PartDigestPipeline.OnPreparedListener() {
+            @Override
+            public void onPrepared(int index, String md5) {
+                preparedIndex[0] = index;
+                result[0] = md5;
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(index, preparedIndex[0]);
+        return result[0];
+    }
+
+    private String md5(long offset, long size) throws Exception {
+        MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+        messageDigest.update(content, (int) offset, (int) size);
+        return ByteString.of(messageDigest.digest()).base64();
+    }
+}
@@ -0,0 +1,205 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
+import com.tencent.cos.xml.model.tag.CompleteMultipartUpload;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * PartStateTable 的切分、完成位图和进度
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class PartStateTableTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void testSplitByFixedSize() {
+        // 10M 按 1M 分片
+        PartStateTable table = PartStateTable.split(10 * MB, MB);
+        assertEquals(10, table.size());
+        for (int i = 0; i < table.size(); i++) {
+            assertEquals(i * MB, table.offset(i));
+            assertEquals(MB, table.size(i));
+            assertEquals(i + 1, table.partNumber(i));
+        }
+        assertEquals(10 * MB - 1, table.end(9));
+    }
+
+    @Test
+    public void testLastPartTakesRemainder() {
+        // 最后一块包含不足一个分片的剩余数据
+        PartStateTable table = PartStateTable.split(10 * MB + 100, MB);
+        assertEquals(10, table.size());
+        assertEquals(9 * MB, table.offset(9));
+        assertEquals(MB + 100, table.size(9));
+        assertEquals(10 * MB + 99, table.end(9));
+    }
+
+    @Test
+    public void testSmallAndEmptyData() {
+        PartStateTable small = PartStateTable.split(100, MB);
+        assertEquals(1, small.size());
+        assertEquals(100, small.size(0));
+
+        // 空文件也上传一个分片
+        PartStateTable empty = PartStateTable.split(0, MB);
+        assertEquals(1, empty.size());
+        assertEquals(0, empty.size(0));
+    }
+
+    @Test
+    public void testSplitAfterLeadingParts() {
+        // 续传时已上传的分片长度不同于当前的分片大小
+        PartStateTable table = PartStateTable.split(new long[]{2 * MB, 2 * MB}, 9 * MB, MB);
+        assertEquals(7, table.size());
+        assertEquals(2 * MB, table.size(0));
+        assertEquals(2 * MB, table.offset(1));
+        assertEquals(2 * MB, table.size(1));
+        assertEquals(4 * MB, table.offset(2));
+        assertEquals(MB, table.size(2));
+        assertEquals(8 * MB, table.offset(6));
+        assertEquals(MB, table.size(6));
+    }
+
+    @Test
+    public void testLeadingPartsCoverAllData() {
+        PartStateTable table = PartStateTable.split(new long[]{3 * MB, 2 * MB}, 5 * MB, MB);
+        assertEquals(2, table.size());
+        assertEquals(3 * MB, table.offset(1));
+        assertEquals(5 * MB - 1, table.end(1));
+    }
+
+    @Test
+    public void testSplitExtents() {
+        // 断点中尚未写入的区间 [0, 3M) 和 [5M, 5.5M)
+        List<long[]> gaps = Arrays.asList(new long[]{0, 3 * MB}, new long[]{5 * MB, 5 * MB + MB / 2});
+        PartStateTable table = PartStateTable.split(gaps, 2 * MB);
+        assertEquals(3, table.size());
+        assertEquals(0, table.offset(0));
+        assertEquals(2 * MB, table.size(0));
+        assertEquals(2 * MB, table.offset(1));
+        assertEquals(MB, table.size(1));
+        assertEquals(5 * MB, table.offset(2));
+        assertEquals(MB / 2, table.size(2));
+
+        assertEquals(0, PartStateTable.split(new ArrayList<long[]>(), MB).size());
+    }
+
+    @Test
+    public void testIndexOf() {
+        PartStateTable table = PartStateTable.split(3 * MB, MB);
+        assertEquals(0, table.indexOf(1));
+        assertEquals(2, table.indexOf(3));
+        assertEquals(-1, table.indexOf(0));
+        assertEquals(-1, table.indexOf(4));
+    }
+
+    @Test
+    public void testMarkCompletedAcrossBitmapWords() {
+        // 200 个分片跨越 4 个位图字
+        PartStateTable table = PartStateTable.split(200 * MB, MB);
+        int[] indexes = {0, 63, 64, 127, 128, 199};
+        for (int index : indexes) {
+            assertTrue(table.markCompleted(index, "etag-" + index));
+        }
+        assertFalse(table.markCompleted(64, "etag-64"));
+        assertEquals(indexes.length, table.completedCount());
+        for (int i = 0; i < table.size(); i++) {
+            assertEquals(Arrays.binarySearch(indexes, i) >= 0, table.isCompleted(i));
+        }
+        assertEquals("etag-127", table.eTag(127));
+        assertNull(table.eTag(1));
+        assertEquals(indexes.length * MB, table.completedLength());
+        assertFalse(table.isAllCompleted());
+    }
+
+    @Test
+    public void testNextPending() {
+        PartStateTable table = PartStateTable.split(5 * MB, MB);
+        table.markCompleted(0, "a");
+        table.markCompleted(1, "b");
+        table.markCompleted(3, "d");
+        assertEquals(2, table.nextPending(0));
+        assertEquals(4, table.nextPending(3));
+        table.markCompleted(2, "c");
+        table.markCompleted(4, "e");
+        assertEquals(-1, table.nextPending(0));
+        assertTrue(table.isAllCompleted());
+        assertEquals(5 * MB, table.completedLength());
+    }
+
+    @Test
+    public void testUpdateProgressReturnsDelta() {
+        PartStateTable table = PartStateTable.split(2 * MB, MB);
+        assertEquals(1000, table.updateProgress(0, 1000));
+        assertEquals(500, table.updateProgress(0, 1500));
+        assertEquals(1500, table.progress(0));
+        // 重试时进度回到 0
+        assertEquals(-1500, table.updateProgress(0, 0));
+        assertEquals(0, table.progress(1));
+    }
+
+    @Test
+    public void testFillCompleteRequestInPartNumberOrder() {
+        PartStateTable table = PartStateTable.split(3 * MB, MB);
+        table.markCompleted(2, "\"c\"");
+        table.markCompleted(0, "\"a\"");
+        table.markCompleted(1, "\"b\"");
+        CompleteMultiUploadRequest request = new CompleteMultiUploadRequest();
+        table.fillCompleteRequest(request);
+        List<CompleteMultipartUpload.Part> parts = request.getCompleteMultipartUpload().parts;
+        assertEquals(3, parts.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, parts.get(i).partNumber);
+        }
+        assertEquals("\"a\"", parts.get(0).eTag);
+        assertEquals("\"c\"", parts.get(2).eTag);
+    }
+
+    @Test
+    public void testConcurrentMarkCompleted() throws Exception {
+        final PartStateTable table = PartStateTable.split(1000 * MB, MB);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        // 每个线程都尝试标记所有分片, 每个分片只有一次首次标记
+                        int firsts = 0;
+                        for (int i = 0; i < table.size(); i++) {
+                            if (table.markCompleted(i, "etag")) {
+                                firsts++;
+                            }
+                        }
+                        return firsts;
+                    }
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> future : futures) {
+                total += future.get();
+            }
+            assertEquals(1000, total);
+            assertEquals(1000, table.completedCount());
+            assertTrue(table.isAllCompleted());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * ProgressAggregator 的汇总和回调节流
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class ProgressAggregatorTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final long ONE_HOUR = 3600 * 1000L;
+
+    @Test
+    public void testFirstAddReportsImmediately() {
+        RecordingListener listener = new RecordingListener();
+        ProgressAggregator aggregator = new ProgressAggregator(listener, 100 * MB, ONE_HOUR, 0);
+        aggregator.add(MB);
+        assertEquals(1, listener.size());
+        assertEquals(MB, listener.last());
+        assertEquals(100 * MB, listener.total);
+    }
+
+    @Test
+    public void testIntervalThrottlesReports() {
+        RecordingListener listener = new RecordingListener();
+        ProgressAggregator aggregator = new ProgressAggregator(listener, 100 * MB, ONE_HOUR, 0);
+        for (int i = 0; i < 100; i++) {
+            aggregator.add(MB);
+        }
+        assertEquals(1, listener.size());
+        assertEquals(100 * MB, aggregator.sum());
+
+        // 传输结束时总能得到最终进度
+        aggregator.flush();
+        assertEquals(2, listener.size());
+        assertEquals(100 * MB, listener.last());
+    }
+
+    @Test
+    public void testZeroIntervalReportsEveryAdd() {
+        RecordingListener listener = new RecordingListener();
+        ProgressAggregator aggregator = new ProgressAggregator(listener, 10 * MB, 0, 0);
+        for (int i = 0; i < 10; i++) {
+            aggregator.add(MB);
+        }
+        assertEquals(10, listener.size());
+        assertEquals(10 * MB, listener.last());
+    }
+
+    @Test
+    public void testStepPercentBypassesInterval() {
+        RecordingListener listener = new RecordingListener();
+        ProgressAggregator aggregator = new ProgressAggregator(listener, 100 * MB, ONE_HOUR, 10);
+        aggregator.add(MB);
+        assertEquals(1, listener.size());
+        // 1M -> 10M 只增加了 9%
+        for (int i = 0; i < 9; i++) {
+            aggregator.add(MB);
+        }
+        assertEquals(1, listener.size());
+        aggregator.add(MB);
+        assertEquals(2, listener.size());
+        assertEquals(11 * MB, listener.last());
+    }
+
+    @Test
+    public void testStepPercentNeedsKnownTotal() {
+        RecordingListener listener = new RecordingListener();
+        ProgressAggregator aggregator = new ProgressAggregator(listener, -1, ONE_HOUR, 10);
+        for (int i = 0; i < 50; i++) {
+            aggregator.add(MB);
+        }
+        assertEquals(1, listener.size());
+
+        // 流式上传结束后才知道总长度
+        aggregator.setTotal(50 * MB);
+        aggregator.flush();
+        assertEquals(50 * MB, listener.last());
+        assertEquals(50 * MB, listener.total);
+    }
+
+    @Test
+    public void testRetryDoesNotReportBackwards() {
+        RecordingListener listener = new RecordingListener();
+        ProgressAggregator aggregator = new ProgressAggregator(listener, 10 * MB, 0, 0);
+        aggregator.add(3 * MB);
+        // 分片重试时撤销已经计入的进度
+        aggregator.add(-2 * MB);
+        assertEquals(MB, aggregator.sum());
+        assertEquals(1, listener.size());
+        aggregator.add(4 * MB);
+        assertEquals(5 * MB, listener.last());
+    }
+
+    @Test
+    public void testWithoutListener() {
+        ProgressAggregator aggregator = new ProgressAggregator(null, 10, 0, 0);
+        aggregator.add(10);
+        aggregator.flush();
+        assertEquals(10, aggregator.sum());
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        final int threads = 8;
+        final int addsPerThread = 10000;
+        final RecordingListener listener = new RecordingListener();
+        final ProgressAggregator aggregator = new ProgressAggregator(listener, threads * addsPerThread * 1024L, 0, 1);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        for (int i = 0; i < addsPerThread; i++) {
+                            aggregator.add(1024);
+                        }
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        aggregator.flush();
+
+        assertEquals(threads * addsPerThread * 1024L, aggregator.sum());
+        assertEquals(threads * addsPerThread * 1024L, listener.last());
+        List<Long> reports = listener.snapshot();
+        for (int i = 1; i < reports.size(); i++) {
+            assertTrue(reports.get(i) >= reports.get(i - 1));
+        }
+    }
+
+    private static final class RecordingListener implements CosXmlProgressListener {
+        private final List<Long> reports = Collections.synchronizedList(new ArrayList<Long>());
+        volatile long total;
+
+        @Override
+        public void onProgress(long complete, long target) {
+            reports.add(complete);
+            total = target;
+        }
+
+        int size() {
+            return reports.size();
+        }
+
+        long last() {
+            return reports.get(reports.size() - 1);
+        }
+
+        List<Long> snapshot() {
+            synchronized (reports) {
+                return new ArrayList<>(reports);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.common.COSRequestHeaderKey;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.model.object.GetObjectStreamRequest;
+import com.tencent.cos.xml.model.object.GetObjectStreamResult;
+import com.tencent.cos.xml.model.object.HeadObjectRequest;
+import com.tencent.cos.xml.model.object.HeadObjectResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * <p>
+ * RandomAccessObject 的预读、按最近使用淘汰的块缓存和跨块读取
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class RandomAccessObjectTest {
+
+    private static final int BLOCK_SIZE = 4;
+    private static final String ETAG = "\"v1\"";
+
+    private CosXmlSimpleService cosXmlService;
+    private final byte[] object = new byte[100];
+    /** 每次 GET 的范围 [start, end) */
+    private final List<String> fetchedRanges = Collections.synchronizedList(new ArrayList<String>());
+    private volatile boolean isChanged;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < object.length; i++) {
+            object[i] = (byte) (i * 7 + 1);
+        }
+        cosXmlService = mock(CosXmlSimpleService.class);
+        HeadObjectResult headObjectResult = new HeadObjectResult();
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("Content-Length", Collections.singletonList(String.valueOf(object.length)));
+        headers.put("ETag", Collections.singletonList(ETAG));
+        headObjectResult.headers = headers;
+        doReturn(headObjectResult).when(cosXmlService).headObject(any(HeadObjectRequest.class));
+        doAnswer(new Answer<GetObjectStreamResult>() {
+            @Override
+            public GetObjectStreamResult answer(InvocationOnMock invocation) throws Throwable {
+                GetObjectStreamRequest request = (GetObjectStreamRequest) invocation.getArguments()[0];
+                assertEquals(ETAG, request.getRequestHeaders().get(COSRequestHeaderKey.IF_MATCH).get(0));
+                if (isChanged) {
+                    CosXmlServiceException exception = new CosXmlServiceException("PreconditionFailed");
+                    exception.setStatusCode(412);
+                    throw exception;
+                }
+                int start = (int) request.getRange().getStart();
+                int end = (int) request.getRange().getEnd() + 1;
+                fetchedRanges.add(start + "-" + end);
+                Buffer buffer = new Buffer().write(object, start, end - start);
+                request.getSink().write(buffer, buffer.size());
+                return new GetObjectStreamResult();
+            }
+        }).when(cosXmlService).getObjectStream(any(GetObjectStreamRequest.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveMaxCachedBlocks() {
+        new RandomAccessObject(cosXmlService, "examplebucket-1250000000", "object", BLOCK_SIZE, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveBlockSize() {
+        new RandomAccessObject(cosXmlService, "examplebucket-1250000000", "object", 0, 4);
+    }
+
+    @Test
+    public void testSequentialReadsGrowReadAhead() throws Exception {
+        RandomAccessObject randomAccessObject = open(32);
+        assertEquals(object.length, randomAccessObject.size());
+        assertEquals(ETAG, randomAccessObject.getETag());
+
+        byte[] read = new byte[object.length];
+        ByteBuffer dst = ByteBuffer.allocate(BLOCK_SIZE);
+        int offset = 0;
+        int len;
+        while ((len = randomAccessObject.read(dst)) > 0) {
+            dst.flip();
+            dst.get(read, offset, len);
+            offset += len;
+            dst.clear();
+        }
+        assertArrayEquals(object, read);
+        assertEquals(object.length, randomAccessObject.position());
+        // 每次顺序读取预读的块数翻倍, 最多 8 块, 预读到对象末尾为止
+        assertEquals(Arrays.asList("0-4", "4-12", "12-44", "44-76", "76-100"), fetchedRanges);
+        assertEquals(5, randomAccessObject.getMissCount());
+        assertEquals(20, randomAccessObject.getHitCount());
+    }
+
+    @Test
+    public void testRandomReadResetsReadAhead() throws Exception {
+        RandomAccessObject randomAccessObject = open(32);
+        byte[] dst = new byte[BLOCK_SIZE];
+        randomAccessObject.read(0, dst, 0, BLOCK_SIZE);
+        randomAccessObject.read(4, dst, 0, BLOCK_SIZE);
+        randomAccessObject.read(80, dst, 0, BLOCK_SIZE);
+        assertArrayEquals(Arrays.copyOfRange(object, 80, 84), dst);
+        assertEquals(Arrays.asList("0-4", "4-12", "80-84"), fetchedRanges);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedBlockEvicted() throws Exception {
+        RandomAccessObject randomAccessObject = open(2);
+        byte[] dst = new byte[BLOCK_SIZE];
+        randomAccessObject.read(0, dst, 0, BLOCK_SIZE);
+        randomAccessObject.read(20, dst, 0, BLOCK_SIZE);
+        // 再次访问第 0 块, 最久未访问的变为第 5 块
+        randomAccessObject.read(0, dst, 0, BLOCK_SIZE);
+        randomAccessObject.read(40, dst, 0, BLOCK_SIZE);
+        assertEquals(Arrays.asList("0-4", "20-24", "40-44"), fetchedRanges);
+
+        randomAccessObject.read(0, dst, 0, BLOCK_SIZE);
+        assertArrayEquals(Arrays.copyOfRange(object, 0, 4), dst);
+        assertEquals(3, fetchedRanges.size());
+        randomAccessObject.read(20, dst, 0, BLOCK_SIZE);
+        assertArrayEquals(Arrays.copyOfRange(object, 20, 24), dst);
+        assertEquals(Arrays.asList("0-4", "20-24", "40-44", "20-24"), fetchedRanges);
+        assertEquals(2, randomAccessObject.getHitCount());
+        assertEquals(4, randomAccessObject.getMissCount());
+    }
+
+    @Test
+    public void testReadAheadLimitedBySmallCache() throws Exception {
+        // 缓存只有 2 块, 预读也不超过 2 块, 顺序读取不会重复请求已读取的块
+        RandomAccessObject randomAccessObject = open(2);
+        byte[] dst = new byte[BLOCK_SIZE];
+        for (int position = 0; position < 40; position += BLOCK_SIZE) {
+            assertEquals(BLOCK_SIZE, randomAccessObject.read(position, dst, 0, BLOCK_SIZE));
+            assertArrayEquals(Arrays.copyOfRange(object, position, position + BLOCK_SIZE), dst);
+        }
+        assertEquals(Arrays.asList("0-4", "4-12", "12-20", "20-28", "28-36", "36-44"), fetchedRanges);
+    }
+
+    @Test
+    public void testReadSpanningBlocks() throws Exception {
+        RandomAccessObject randomAccessObject = open(32);
+        byte[] dst = new byte[20];
+        // 从第 0 块中间读到第 2 块中间
+        assertEquals(9, randomAccessObject.read(2, dst, 5, 9));
+        assertArrayEquals(Arrays.copyOfRange(object, 2, 11), Arrays.copyOfRange(dst, 5, 14));
+        assertEquals(Arrays.asList("0-4", "4-8", "8-12"), fetchedRanges);
+
+        // 读到对象末尾时只返回剩余的部分, 之后返回 -1
+        assertEquals(3, randomAccessObject.read(97, dst, 0, 10));
+        assertArrayEquals(Arrays.copyOfRange(object, 97, 100), Arrays.copyOf(dst, 3));
+        assertEquals(-1, randomAccessObject.read(100, dst, 0, 10));
+
+        // 直接缓冲区每次最多读取一块, 位置随之后移
+        randomAccessObject.position(6);
+        ByteBuffer direct = ByteBuffer.allocateDirect(5);
+        assertEquals(BLOCK_SIZE, randomAccessObject.read(direct));
+        assertEquals(1, randomAccessObject.read(direct));
+        direct.flip();
+        byte[] bytes = new byte[5];
+        direct.get(bytes);
+        assertArrayEquals(Arrays.copyOfRange(object, 6, 11), bytes);
+        assertEquals(11, randomAccessObject.position());
+    }
+
+    @Test
+    public void testChangedObjectFailsRead() throws Exception {
+        RandomAccessObject randomAccessObject = open(32);
+        byte[] dst = new byte[BLOCK_SIZE];
+        randomAccessObject.read(0, dst, 0, BLOCK_SIZE);
+        isChanged = true;
+        try {
+            randomAccessObject.read(40, dst, 0, BLOCK_SIZE);
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("changed"));
+        }
+        // 缓存已清空, 之前的块也要重新请求
+        try {
+            randomAccessObject.read(0, dst, 0, BLOCK_SIZE);
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("changed"));
+        }
+    }
+
+    private RandomAccessObject open(int maxCachedBlocks) throws Exception {
+        RandomAccessObject randomAccessObject = new RandomAccessObject(cosXmlService, "examplebucket-1250000000",
+                "object", BLOCK_SIZE, maxCachedBlocks);
+        randomAccessObject.open();
+        return randomAccessObject;
+    }
+}
@@ -0,0 +1,123 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.CosXmlResult;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * <p>
+ * 记录模拟服务收到的异步请求 (request, listener), 由测试逐个应答, 或设置 responder 后收到即应答
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+final class RecordedCalls<R extends CosXmlRequest> implements Answer<Void> {
+
+    private final LinkedBlockingDeque<Call<R>> pending = new LinkedBlockingDeque<>();
+    private final List<R> requests = new ArrayList<>();
+    private final AtomicInteger count = new AtomicInteger();
+    /** 不为 null 时在请求线程中直接应答, 不进入待应答队列 */
+    volatile Responder<R> responder;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Void answer(InvocationOnMock invocation) {
+        Call<R> call = new Call<>((R) invocation.getArguments()[0],
+                (CosXmlResultListener) invocation.getArguments()[1]);
+        synchronized (requests) {
+            requests.add(call.request);
+        }
+        count.incrementAndGet();
+        Responder<R> current = responder;
+        if (current != null) {
+            current.respond(call);
+        } else {
+            pending.add(call);
+        }
+        return null;
+    }
+
+    /**
+     * 取出下一个待应答的请求, 最多等待 10 秒
+     */
+    Call<R> take() throws InterruptedException {
+        Call<R> call = pending.poll(10, TimeUnit.SECONDS);
+        assertNotNull("expected a request", call);
+        return call;
+    }
+
+    /**
+     * 取出下一个待应答的请求, 没有时返回 null
+     */
+    Call<R> poll() {
+        return pending.poll();
+    }
+
+    /**
+     * 等待 millis 毫秒, 期间收到请求时返回它, 否则返回 null
+     */
+    Call<R> poll(long millis) throws InterruptedException {
+        return pending.poll(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return 待应答的请求数
+     */
+    int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return 收到的请求总数
+     */
+    int count() {
+        return count.get();
+    }
+
+    /**
+     * @return 收到的所有请求, 按收到的顺序
+     */
+    List<R> requests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    interface Responder<R extends CosXmlRequest> {
+        void respond(Call<R> call);
+    }
+
+    static final class Call<R extends CosXmlRequest> {
+        final R request;
+        final CosXmlResultListener listener;
+
+        Call(R request, CosXmlResultListener listener) {
+            this.request = request;
+            this.listener = listener;
+        }
+
+        void succeed(CosXmlResult result) {
+            listener.onSuccess(request, result);
+        }
+
+        void fail(CosXmlClientException exception) {
+            listener.onFail(request, exception, null);
+        }
+
+        void fail(CosXmlServiceException exception) {
+            listener.onFail(request, null, exception);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.MTAProxy;
+import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlChunkListener;
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+import com.tencent.cos.xml.model.object.GetObjectStreamRequest;
+import com.tencent.cos.xml.model.object.GetObjectStreamResult;
+import com.tencent.qcloud.core.common.QCloudClientException;
+import com.tencent.qcloud.core.common.QCloudServiceException;
+import com.tencent.qcloud.core.http.HttpResponse;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSink;
+import okio.Okio;
+import okio.Sink;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * ResponseSinkConverter 把响应按块写入调用方的 sink, 回调进度; 失败时不关闭调用方的 sink
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class ResponseSinkConverterTest {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @BeforeClass
+    public static void setUpClass() {
+        MTAProxy.init(null);
+    }
+
+    @Test
+    public void testStreamsIntoSink() throws Exception {
+        byte[] data = data(3 * CHUNK_SIZE + 100);
+        TrackingSink sink = new TrackingSink(new Buffer());
+        GetObjectStreamResult result = new GetObjectStreamResult();
+
+        Object converted = convert(result, sink, null, response(200, data));
+
+        assertSame(result, converted);
+        assertArrayEquals(data, ((Buffer) sink.delegate()).readByteArray());
+        assertEquals(data.length, result.bytesTransferred);
+        assertEquals(200, result.httpCode);
+        // 下载结束后 flush, 但 sink 由调用方关闭
+        assertTrue(sink.flushCount > 0);
+        assertFalse(sink.isClosed);
+        // 写入的块不超过 CHUNK_SIZE, 内存占用不超过一块
+        assertTrue(sink.maxWriteLength <= CHUNK_SIZE);
+    }
+
+    @Test
+    public void testProgress() throws Exception {
+        byte[] data = data(2 * CHUNK_SIZE + 1);
+        RecordingProgress progress = new RecordingProgress();
+        convert(new GetObjectStreamResult(), new Buffer(), progress, response(200, data));
+
+        assertFalse(progress.completes.isEmpty());
+        long previous = 0;
+        for (long complete : progress.completes) {
+            assertTrue(complete > previous);
+            previous = complete;
+        }
+        assertEquals(data.length, previous);
+        for (long target : progress.targets) {
+            assertEquals(data.length, target);
+        }
+    }
+
+    @Test
+    public void testOutputStreamAndChunkListenerSinks() throws Exception {
+        byte[] data = data(CHUNK_SIZE * 2 + 10);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        GetObjectStreamRequest streamRequest = new GetObjectStreamRequest("examplebucket-1250000000", "object",
+                outputStream);
+        convert(new GetObjectStreamResult(), streamRequest.getSink(), null, response(200, data));
+        assertArrayEquals(data, outputStream.toByteArray());
+
+        final ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        final int[] maxChunk = new int[1];
+        GetObjectStreamRequest chunkRequest = new GetObjectStreamRequest("examplebucket-1250000000", "object",
+                new CosXmlChunkListener() {
+                    @Override
+                    public void onChunk(byte[] chunk, int offset, int length) {
+                        chunks.write(chunk, offset, length);
+                        maxChunk[0] = Math.max(maxChunk[0], length);
+                    }
+                });
+        convert(new GetObjectStreamResult(), chunkRequest.getSink(), null, response(200, data));
+        assertArrayEquals(data, chunks.toByteArray());
+        assertTrue(maxChunk[0] <= CHUNK_SIZE);
+    }
+
+    @Test
+    public void testBodyFailureLeavesSinkOpen() throws Exception {
+        byte[] data = data(CHUNK_SIZE * 2);
+        TrackingSink sink = new TrackingSink(new Buffer());
+        GetObjectStreamResult result = new GetObjectStreamResult();
+        FailingInputStream body = new FailingInputStream(data, CHUNK_SIZE + 10);
+        try {
+            convert(result, sink, null, response(200, body, data.length));
+            fail("expected CosXmlClientException");
+        } catch (CosXmlClientException e) {
+            assertEquals(ClientErrorCode.IO_ERROR.getCode(), e.errorCode);
+        }
+        // 已写入的数据留在 sink 中, sink 不被关闭, 响应流被关闭
+        assertFalse(sink.isClosed);
+        assertTrue(body.isClosed);
+        assertEquals(result.bytesTransferred, ((Buffer) sink.delegate()).size());
+        assertTrue(result.bytesTransferred > 0 && result.bytesTransferred < data.length);
+    }
+
+    @Test
+    public void testSinkFailureLeavesSinkOpen() throws Exception {
+        TrackingSink sink = new TrackingSink(new Buffer());
+        sink.failAfter = CHUNK_SIZE;
+        try {
+            convert(new GetObjectStreamResult(), sink, null, response(200, data(CHUNK_SIZE * 3)));
+            fail("expected CosXmlClientException");
+        } catch (CosXmlClientException e) {
+            assertEquals(ClientErrorCode.IO_ERROR.getCode(), e.errorCode);
+        }
+        assertFalse(sink.isClosed);
+    }
+
+    @Test
+    public void testErrorResponseNotWrittenToSink() throws Exception {
+        String error = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>NoSuchKey</Code>"
+                + "<Message>The specified key does not exist.</Message><Resource>object</Resource>"
+                + "<RequestId>requestId</RequestId></Error>";
+        TrackingSink sink = new TrackingSink(new Buffer());
+        try {
+            convert(new GetObjectStreamResult(), sink, null, response(404, error.getBytes(TestFiles.UTF_8)));
+            fail("expected CosXmlServiceException");
+        } catch (CosXmlServiceException e) {
+            assertEquals(404, e.getStatusCode());
+            assertEquals("NoSuchKey", e.getErrorCode());
+        }
+        assertEquals(0, ((Buffer) sink.delegate()).size());
+        assertFalse(sink.isClosed);
+    }
+
+    @Test
+    public void testNullSinkRejected() throws Exception {
+        try {
+            convert(new GetObjectStreamResult(), null, null, response(200, data(10)));
+            fail("expected CosXmlClientException");
+        } catch (CosXmlClientException e) {
+            assertEquals(ClientErrorCode.INVALID_ARGUMENT.getCode(), e.errorCode);
+        }
+    }
+
+    private static Object convert(GetObjectStreamResult result, Sink sink, CosXmlProgressListener progressListener,
+                                  Response response) throws QCloudClientException, QCloudServiceException {
+        ResponseSinkConverter<Object> converter = new ResponseSinkConverter<>(result, sink, progressListener);
+        return converter.convert(new HttpResponse<Object>(null, response));
+    }
+
+    private static Response response(int code, byte[] data) {
+        return response(code, new Buffer().write(data), data.length);
+    }
+
+    private static Response response(int code, InputStream body, long contentLength) {
+        return response(code, Okio.buffer(Okio.source(body)), contentLength);
+    }
+
+    private static Response response(int code, BufferedSource body, long contentLength) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("https://examplebucket-1250000000.cos.ap-guangzhou.myqcloud.com/object").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(code == 200 ? "OK" : "Not Found")
+                .body(ResponseBody.create(MediaType.parse("application/octet-stream"), contentLength, body))
+                .build();
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 13 + 5);
+        }
+        return data;
+    }
+
+    private static final class TrackingSink extends ForwardingSink {
+        int flushCount;
+        long maxWriteLength;
+        long written;
+        long failAfter = -1;
+        boolean isClosed;
+
+        TrackingSink(Sink delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            if (failAfter >= 0 && written + byteCount > failAfter) {
+                throw new IOException("disk full");
+            }
+            maxWriteLength = Math.max(maxWriteLength, byteCount);
+            written += byteCount;
+            super.write(source, byteCount);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushCount++;
+            super.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            isClosed = true;
+            super.close();
+        }
+    }
+
+    private static final class RecordingProgress implements CosXmlProgressListener {
+        final List<Long> completes = new ArrayList<>();
+        final List<Long> targets = new ArrayList<>();
+
+        @Override
+        public void onProgress(long complete, long target) {
+            completes.add(complete);
+            targets.add(target);
+        }
+    }
+
+    /**
+     * 读到 failAt 之后抛出 IOException, 模拟连接中断
+     */
+    private static final class FailingInputStream extends InputStream {
+        private final byte[] data;
+        private final int failAt;
+        private int position;
+        boolean isClosed;
+
+        FailingInputStream(byte[] data, int failAt) {
+            this.data = data;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= failAt) {
+                throw new IOException("connection reset");
+            }
+            int length = Math.min(len, Math.min(failAt, data.length) - position);
+            System.arraycopy(data, position, b, off, length);
+            position += length;
+            return length;
+        }
+
+        @Override
+        public void close() {
+            isClosed = true;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.tencent.cos.xml.transfer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * 测试中读写本地文件的工具方法
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+final class TestFiles {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private TestFiles() {
+    }
+
+    static void write(File file, byte[] data) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(data);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    static void append(File file, String content) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file, true);
+        try {
+            outputStream.write(content.getBytes(UTF_8));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    static byte[] read(File file) throws IOException {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int len = inputStream.read(data, offset, data.length - offset);
+                if (len == -1) break;
+                offset += len;
+            }
+            return data;
+        } finally {
+            inputStream.close();
+        }
+    }
+}
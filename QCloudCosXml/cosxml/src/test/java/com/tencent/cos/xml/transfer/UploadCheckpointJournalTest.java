@@ -0,0 +1,244 @@
+package com.tencent.cos.xml.transfer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * UploadCheckpointJournal 的读取、恢复和续写
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class UploadCheckpointJournalTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final String BUCKET = "examplebucket-1250000000";
+    private static final String UPLOAD_ID = "1527661730c15dc2a5f4ea7d7c5f8b4b1a4e6e1b0f7a6f6c7c5f0b0c0d3e4a58";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private File srcFile;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.getRoot();
+        srcFile = new File(directory, "video.mp4");
+        TestFiles.write(srcFile, new byte[1000]);
+    }
+
+    @Test
+    public void testDisabledWithoutDirectory() {
+        assertNull(UploadCheckpointJournal.open(null, BUCKET, "/video.mp4", srcFile));
+        assertNull(UploadCheckpointJournal.openForCopy(null, BUCKET, "/b", "a.cos.ap-guangzhou.myqcloud.com/a",
+                100, "\"etag\""));
+        // 源对象没有 ETag 时无法判断断点是否过期
+        assertNull(UploadCheckpointJournal.openForCopy(checkpointDir(), BUCKET, "/b",
+                "a.cos.ap-guangzhou.myqcloud.com/a", 100, null));
+    }
+
+    @Test
+    public void testLoadWithoutJournal() {
+        assertFalse(open().load());
+    }
+
+    @Test
+    public void testRecordAndLoad() {
+        UploadCheckpointJournal journal = open();
+        journal.begin(UPLOAD_ID, MB);
+        journal.recordPart(1, 0, MB, "\"e1\"");
+        journal.recordPart(3, 2 * MB, MB, "\"e3\"");
+        // 没有 ETag 的分片不记录
+        journal.recordPart(2, MB, MB, null);
+        journal.close();
+
+        UploadCheckpointJournal loaded = open();
+        assertTrue(loaded.load());
+        assertEquals(UPLOAD_ID, loaded.getUploadId());
+        assertEquals(MB, loaded.getSliceSize());
+
+        PartStateTable table = PartStateTable.split(4 * MB + 10, MB);
+        assertEquals(2 * MB, loaded.restore(table));
+        assertEquals("\"e1\"", table.eTag(0));
+        assertFalse(table.isCompleted(1));
+        assertEquals("\"e3\"", table.eTag(2));
+        assertEquals(1, table.nextPending(0));
+    }
+
+    @Test
+    public void testRestoreIgnoresMismatchedRanges() {
+        UploadCheckpointJournal journal = open();
+        journal.begin(UPLOAD_ID, MB);
+        journal.recordPart(1, 0, MB, "\"e1\"");
+        journal.recordPart(2, MB, MB, "\"e2\"");
+        journal.recordPart(9, 8 * MB, MB, "\"e9\"");
+        journal.close();
+
+        UploadCheckpointJournal loaded = open();
+        assertTrue(loaded.load());
+        // 按 2M 切分时只有第 1 片的范围不同, 第 9 片超出分片表
+        PartStateTable table = PartStateTable.split(4 * MB, 2 * MB);
+        assertEquals(0, loaded.restore(table));
+        assertEquals(0, table.completedCount());
+
+        PartStateTable uniform = PartStateTable.split(4 * MB, MB);
+        assertEquals(2 * MB, loaded.restore(uniform));
+        // 已经完成的分片不重复计算
+        assertEquals(0, loaded.restore(uniform));
+    }
+
+    @Test
+    public void testBeginOverwritesOldJournal() {
+        UploadCheckpointJournal journal = open();
+        journal.begin("old-upload", MB);
+        journal.recordPart(1, 0, MB, "\"old\"");
+        journal.begin(UPLOAD_ID, 2 * MB);
+        journal.close();
+
+        UploadCheckpointJournal loaded = open();
+        assertTrue(loaded.load());
+        assertEquals(UPLOAD_ID, loaded.getUploadId());
+        assertEquals(2 * MB, loaded.getSliceSize());
+        assertEquals(0, loaded.restore(PartStateTable.split(4 * MB, 2 * MB)));
+    }
+
+    @Test
+    public void testReopenAppendsAfterResume() {
+        UploadCheckpointJournal journal = open();
+        journal.begin(UPLOAD_ID, MB);
+        journal.recordPart(1, 0, MB, "\"e1\"");
+        journal.close();
+
+        UploadCheckpointJournal resumed = open();
+        assertTrue(resumed.load());
+        resumed.reopen();
+        resumed.recordPart(2, MB, MB, "\"e2\"");
+        resumed.close();
+
+        UploadCheckpointJournal loaded = open();
+        assertTrue(loaded.load());
+        assertEquals(UPLOAD_ID, loaded.getUploadId());
+        PartStateTable table = PartStateTable.split(3 * MB, MB);
+        assertEquals(2 * MB, loaded.restore(table));
+        assertEquals(2, table.nextPending(0));
+    }
+
+    @Test
+    public void testReopenAfterPartialRecord() throws IOException {
+        UploadCheckpointJournal journal = open();
+        journal.begin(UPLOAD_ID, MB);
+        journal.recordPart(1, 0, MB, "\"e1\"");
+        journal.close();
+        // 进程在写第 2 片的记录时退出
+        TestFiles.append(journalFile(), "P 2 1048576 10");
+
+        UploadCheckpointJournal resumed = open();
+        assertTrue(resumed.load());
+        resumed.reopen();
+        resumed.recordPart(3, 2 * MB, MB, "\"e3\"");
+        resumed.close();
+
+        UploadCheckpointJournal loaded = open();
+        assertTrue(loaded.load());
+        PartStateTable table = PartStateTable.split(3 * MB, MB);
+        assertEquals(2 * MB, loaded.restore(table));
+        assertTrue(table.isCompleted(0));
+        assertFalse(table.isCompleted(1));
+        assertEquals("\"e3\"", table.eTag(2));
+    }
+
+    @Test
+    public void testCorruptedRecordsAreSkipped() throws IOException {
+        UploadCheckpointJournal journal = open();
+        journal.begin(UPLOAD_ID, MB);
+        journal.close();
+        TestFiles.append(journalFile(), "P x 0 1048576 \"bad\"\nP 2 1048576\nQ 1 2 3 4\nP 2 1048576 1048576 \"e2\"\n");
+
+        UploadCheckpointJournal loaded = open();
+        assertTrue(loaded.load());
+        PartStateTable table = PartStateTable.split(2 * MB, MB);
+        assertEquals(MB, loaded.restore(table));
+        assertEquals("\"e2\"", table.eTag(1));
+    }
+
+    @Test
+    public void testPartsBeforeHeaderAreIgnored() throws IOException {
+        UploadCheckpointJournal journal = open();
+        journal.begin(UPLOAD_ID, MB);
+        journal.close();
+        // 只有分片记录而没有 U 记录的日志无效
+        File file = journalFile();
+        assertTrue(file.delete());
+        TestFiles.append(file, "P 1 0 1048576 \"e1\"\n");
+        assertFalse(open().load());
+    }
+
+    @Test
+    public void testJournalChangesWithSource() throws IOException {
+        UploadCheckpointJournal journal = open();
+        journal.begin(UPLOAD_ID, MB);
+        journal.close();
+        assertTrue(open().load());
+
+        // 本地文件被修改后旧的断点失效
+        TestFiles.append(srcFile, "more");
+        assertFalse(open().load());
+        assertFalse(UploadCheckpointJournal.open(checkpointDir(), BUCKET, "/other.mp4", srcFile).load());
+    }
+
+    @Test
+    public void testCopyJournal() {
+        String source = "sourcebucket-1250000000.cos.ap-guangzhou.myqcloud.com/a.zip";
+        UploadCheckpointJournal journal = UploadCheckpointJournal.openForCopy(checkpointDir(), BUCKET, "/b.zip",
+                source, 3 * MB, "\"source-etag\"");
+        journal.begin(UPLOAD_ID, MB);
+        journal.recordPart(1, 0, MB, "\"e1\"");
+        journal.close();
+
+        UploadCheckpointJournal loaded = UploadCheckpointJournal.openForCopy(checkpointDir(), BUCKET, "/b.zip",
+                source, 3 * MB, "\"source-etag\"");
+        assertTrue(loaded.load());
+        assertEquals(MB, loaded.restore(PartStateTable.split(3 * MB, MB)));
+        // 源对象被覆盖后 ETag 变化
+        assertFalse(UploadCheckpointJournal.openForCopy(checkpointDir(), BUCKET, "/b.zip",
+                source, 3 * MB, "\"new-etag\"").load());
+    }
+
+    @Test
+    public void testDelete() {
+        UploadCheckpointJournal journal = open();
+        journal.begin(UPLOAD_ID, MB);
+        journal.recordPart(1, 0, MB, "\"e1\"");
+        journal.delete();
+        assertNull(journal.getUploadId());
+        assertFalse(open().load());
+        assertEquals(0, new File(checkpointDir()).listFiles().length);
+    }
+
+    private UploadCheckpointJournal open() {
+        return UploadCheckpointJournal.open(checkpointDir(), BUCKET, "/video.mp4", srcFile);
+    }
+
+    private String checkpointDir() {
+        return new File(directory, "checkpoint").getPath();
+    }
+
+    private File journalFile() {
+        File[] files = new File(checkpointDir()).listFiles();
+        assertNotNull(files);
+        for (File file : files) {
+            if (file.getName().endsWith(".upload")) {
+                return file;
+            }
+        }
+        throw new AssertionError("no journal in " + checkpointDir());
+    }
+}
@@ -0,0 +1,201 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlSimpleService;
+import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.object.CompleteMultiUploadRequest;
+import com.tencent.cos.xml.model.object.InitMultipartUploadRequest;
+import com.tencent.cos.xml.model.object.PutObjectRequest;
+import com.tencent.cos.xml.model.object.PutObjectResult;
+import com.tencent.cos.xml.model.object.UploadPartRequest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * <p>
+ * UploadService.upload 阻塞等待异步请求结束, 成功、失败、暂停和中断都会唤醒等待的线程
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class UploadServiceTest {
+
+    private static final String BUCKET = "examplebucket-1250000000";
+    private static final int SLICE_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CosXmlSimpleService cosXmlService;
+    private final RecordedCalls<PutObjectRequest> putCalls = new RecordedCalls<>();
+    private final RecordedCalls<UploadPartRequest> partCalls = new RecordedCalls<>();
+
+    @Before
+    public void setUp() throws Exception {
+        cosXmlService = mock(CosXmlSimpleService.class);
+        doAnswer(putCalls).when(cosXmlService).putObjectAsync(any(PutObjectRequest.class), any(CosXmlResultListener.class));
+        doAnswer(partCalls).when(cosXmlService).uploadPartAsync(any(UploadPartRequest.class), any(CosXmlResultListener.class));
+        doReturn(COSXMLUploadTaskTest.initResult()).when(cosXmlService).initMultipartUpload(any(InitMultipartUploadRequest.class));
+        doReturn(COSXMLUploadTaskTest.completeResult()).when(cosXmlService).completeMultiUpload(any(CompleteMultiUploadRequest.class));
+    }
+
+    @Test
+    public void testPutObjectWaitsForResult() throws Exception {
+        UploadThread uploadThread = upload(service(100));
+        RecordedCalls.Call<PutObjectRequest> put = putCalls.take();
+        assertFalse(uploadThread.isFinished.await(100, TimeUnit.MILLISECONDS));
+
+        PutObjectResult putResult = new PutObjectResult();
+        putResult.eTag = "\"etag\"";
+        put.succeed(putResult);
+        assertTrue(uploadThread.isFinished.await(10, TimeUnit.SECONDS));
+        assertNull(uploadThread.exception);
+        assertEquals("\"etag\"", uploadThread.result.eTag);
+    }
+
+    @Test
+    public void testPutObjectFailure() throws Exception {
+        UploadThread uploadThread = upload(service(100));
+        CosXmlServiceException serviceException = new CosXmlServiceException("Internal Error");
+        RecordedCalls.Call<PutObjectRequest> put = putCalls.take();
+        put.fail(serviceException);
+        assertTrue(uploadThread.isFinished.await(10, TimeUnit.SECONDS));
+        assertSame(serviceException, uploadThread.exception);
+        verify(cosXmlService).cancel(put.request);
+    }
+
+    @Test
+    public void testMultiUploadWaitsForAllParts() throws Exception {
+        UploadThread uploadThread = upload(service(3 * SLICE_SIZE + 100));
+        RecordedCalls.Call<UploadPartRequest> first = partCalls.take();
+        RecordedCalls.Call<UploadPartRequest> second = partCalls.take();
+        RecordedCalls.Call<UploadPartRequest> third = partCalls.take();
+
+        first.succeed(COSXMLUploadTaskTest.partResult(1));
+        third.succeed(COSXMLUploadTaskTest.partResult(3));
+        // 还有分片未完成, 继续等待
+        assertFalse(uploadThread.isFinished.await(100, TimeUnit.MILLISECONDS));
+        second.succeed(COSXMLUploadTaskTest.partResult(2));
+
+        assertTrue(uploadThread.isFinished.await(10, TimeUnit.SECONDS));
+        assertNull(uploadThread.exception);
+        assertEquals("\"etag-complete\"", uploadThread.result.eTag);
+        ArgumentCaptor<CompleteMultiUploadRequest> captor = ArgumentCaptor.forClass(CompleteMultiUploadRequest.class);
+        verify(cosXmlService).completeMultiUpload(captor.capture());
+        assertEquals(3, captor.getValue().getCompleteMultipartUpload().parts.size());
+    }
+
+    @Test
+    public void testPartFailureWakesWaiter() throws Exception {
+        UploadThread uploadThread = upload(service(3 * SLICE_SIZE + 100));
+        partCalls.take().succeed(COSXMLUploadTaskTest.partResult(1));
+        CosXmlClientException clientException = new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(),
+                "connection reset");
+        partCalls.take().fail(clientException);
+
+        assertTrue(uploadThread.isFinished.await(10, TimeUnit.SECONDS));
+        assertSame(clientException, uploadThread.exception);
+        verify(cosXmlService, never()).completeMultiUpload(any(CompleteMultiUploadRequest.class));
+    }
+
+    @Test
+    public void testPauseWakesWaiter() throws Exception {
+        UploadService uploadService = service(3 * SLICE_SIZE + 100);
+        UploadThread uploadThread = upload(uploadService);
+        List<UploadPartRequest> parts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            parts.add(partCalls.take().request);
+        }
+
+        UploadService.ResumeData resumeData = uploadService.pause();
+        assertEquals(COSXMLUploadTaskTest.initResult().initMultipartUpload.uploadId, resumeData.uploadId);
+        assertTrue(uploadThread.isFinished.await(10, TimeUnit.SECONDS));
+        assertTrue(uploadThread.exception instanceof CosXmlClientException);
+        assertEquals(ClientErrorCode.USER_CANCELLED.getCode(),
+                ((CosXmlClientException) uploadThread.exception).errorCode);
+        assertTrue(uploadThread.exception.getMessage().contains("pause"));
+        // 等待被唤醒后取消进行中的分片
+        for (UploadPartRequest part : parts) {
+            verify(cosXmlService).cancel(part);
+        }
+    }
+
+    @Test
+    public void testInterruptWakesWaiter() throws Exception {
+        UploadThread uploadThread = upload(service(100));
+        RecordedCalls.Call<PutObjectRequest> put = putCalls.take();
+        uploadThread.interrupt();
+
+        assertTrue(uploadThread.isFinished.await(10, TimeUnit.SECONDS));
+        assertTrue(uploadThread.exception instanceof CosXmlClientException);
+        assertEquals(ClientErrorCode.USER_CANCELLED.getCode(),
+                ((CosXmlClientException) uploadThread.exception).errorCode);
+        // 保留中断状态, 并取消进行中的请求
+        assertTrue(uploadThread.wasInterrupted);
+        verify(cosXmlService).cancel(put.request);
+    }
+
+    private UploadService service(int length) throws Exception {
+        File file = temporaryFolder.newFile();
+        TestFiles.write(file, new byte[length]);
+        UploadService.ResumeData resumeData = new UploadService.ResumeData();
+        resumeData.bucket = BUCKET;
+        resumeData.cosPath = "object.bin";
+        resumeData.srcPath = file.getPath();
+        resumeData.sliceSize = SLICE_SIZE;
+        return new UploadService(cosXmlService, resumeData);
+    }
+
+    private static UploadThread upload(UploadService uploadService) {
+        UploadThread uploadThread = new UploadThread(uploadService);
+        uploadThread.start();
+        return uploadThread;
+    }
+
+    /**
+     * 在单独的线程中调用阻塞的 upload, 记录结果或异常
+     */
+    private static final class UploadThread extends Thread {
+        private final UploadService uploadService;
+        final CountDownLatch isFinished = new CountDownLatch(1);
+        volatile UploadService.UploadServiceResult result;
+        volatile Exception exception;
+        volatile boolean wasInterrupted;
+
+        UploadThread(UploadService uploadService) {
+            this.uploadService = uploadService;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                result = uploadService.upload();
+            } catch (Exception e) {
+                exception = e;
+            } finally {
+                wasInterrupted = isInterrupted();
+                isFinished.countDown();
+            }
+        }
+    }
+}
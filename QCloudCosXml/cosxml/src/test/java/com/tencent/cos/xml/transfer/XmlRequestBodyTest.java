@@ -0,0 +1,112 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.model.tag.CompleteMultipartUpload;
+import com.tencent.qcloud.core.common.QCloudDigistListener;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.ByteString;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * XmlRequestBody 写出的文档、长度和 Content-MD5
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class XmlRequestBodyTest {
+
+    @Test
+    public void testCompleteMultipartUpload() throws Exception {
+        CompleteMultipartUpload completeMultipartUpload = completeMultipartUpload(3);
+        RequestBody body = XmlSlimBuilder.completeMultipartUploadBody(completeMultipartUpload).body();
+
+        String expected = "<CompleteMultipartUpload>"
+                + "<Part><PartNumber>1</PartNumber><ETag>\"etag-1\"</ETag></Part>"
+                + "<Part><PartNumber>2</PartNumber><ETag>\"etag-2\"</ETag></Part>"
+                + "<Part><PartNumber>3</PartNumber><ETag>\"etag-3\"</ETag></Part>"
+                + "</CompleteMultipartUpload>";
+        assertEquals(expected, written(body));
+        assertEquals("application/xml", body.contentType().type() + "/" + body.contentType().subtype());
+        assertLengthAndMd5(body, expected);
+    }
+
+    @Test
+    public void testSkipsNullPartsAndETags() throws Exception {
+        // 与 XmlSlimBuilder.buildCompleteMultipartUpload 一致: 跳过 null 分片, 不写出 null 的 ETag
+        CompleteMultipartUpload completeMultipartUpload = completeMultipartUpload(2);
+        completeMultipartUpload.parts.add(1, null);
+        completeMultipartUpload.parts.get(2).eTag = null;
+        RequestBody body = XmlSlimBuilder.completeMultipartUploadBody(completeMultipartUpload).body();
+
+        String expected = "<CompleteMultipartUpload>"
+                + "<Part><PartNumber>1</PartNumber><ETag>\"etag-1\"</ETag></Part>"
+                + "<Part><PartNumber>2</PartNumber></Part>"
+                + "</CompleteMultipartUpload>";
+        assertEquals(expected, written(body));
+        assertLengthAndMd5(body, expected);
+    }
+
+    @Test
+    public void testNoParts() throws Exception {
+        RequestBody body = XmlSlimBuilder.completeMultipartUploadBody(new CompleteMultipartUpload()).body();
+        assertEquals("<CompleteMultipartUpload></CompleteMultipartUpload>", written(body));
+        assertNull(XmlSlimBuilder.completeMultipartUploadBody(null));
+    }
+
+    @Test
+    public void testEscapesText() throws Exception {
+        RequestBody body = new XmlRequestBody() {
+            @Override
+            void write() throws IOException {
+                startTag("Object");
+                element("Key", "a<b>&c\r\n目录/\"d\"'e'");
+                element("VersionId", null);
+                endTag("Object");
+            }
+        };
+        String expected = "<Object><Key>a&lt;b&gt;&amp;c&#13;\n目录/\"d\"'e'</Key></Object>";
+        assertEquals(expected, written(body));
+        assertLengthAndMd5(body, expected);
+    }
+
+    @Test
+    public void testRepeatedWrites() throws Exception {
+        // 重试时同一个请求体会再写出一次, MD5 只计算一次
+        RequestBody body = XmlSlimBuilder.completeMultipartUploadBody(completeMultipartUpload(2)).body();
+        String md5 = ((QCloudDigistListener) body).onGetMd5();
+        String first = written(body);
+        assertEquals(first, written(body));
+        assertSame(md5, ((QCloudDigistListener) body).onGetMd5());
+    }
+
+    private static CompleteMultipartUpload completeMultipartUpload(int partCount) {
+        CompleteMultipartUpload completeMultipartUpload = new CompleteMultipartUpload();
+        completeMultipartUpload.parts = new ArrayList<>();
+        for (int i = 1; i <= partCount; i++) {
+            CompleteMultipartUpload.Part part = new CompleteMultipartUpload.Part();
+            part.partNumber = i;
+            part.eTag = "\"etag-" + i + "\"";
+            completeMultipartUpload.parts.add(part);
+        }
+        return completeMultipartUpload;
+    }
+
+    private static void assertLengthAndMd5(RequestBody body, String expected) throws IOException {
+        ByteString bytes = ByteString.encodeUtf8(expected);
+        assertEquals(bytes.size(), body.contentLength());
+        assertEquals(bytes.md5().base64(), ((QCloudDigistListener) body).onGetMd5());
+    }
+
+    private static String written(RequestBody body) throws IOException {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        return buffer.readUtf8();
+    }
+}
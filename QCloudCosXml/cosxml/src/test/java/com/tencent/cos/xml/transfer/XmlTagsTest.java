@@ -0,0 +1,97 @@
+package com.tencent.cos.xml.transfer;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * XmlTags 的完美哈希查找
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class XmlTagsTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 与 XmlTags 中最后一个常量对应 */
+    private static final int TAG_COUNT = XmlTags.TRACE_ID + 1;
+
+    @Test
+    public void testEveryNameMapsToItsConstant() {
+        for (int tag = 0; tag < TAG_COUNT; tag++) {
+            String name = XmlTags.name(tag);
+            assertNotNull(name);
+            assertEquals(name, tag, lookup(name));
+        }
+    }
+
+    @Test
+    public void testConstantsMatchNames() {
+        assertEquals("Contents", XmlTags.name(XmlTags.CONTENTS));
+        assertEquals("ETag", XmlTags.name(XmlTags.ETAG));
+        assertEquals("Encoding-Type", XmlTags.name(XmlTags.ENCODING_TYPE));
+        assertEquals("CommonPrefixes", XmlTags.name(XmlTags.COMMON_PREFIXES));
+        assertEquals("CommonPrefixs", XmlTags.name(XmlTags.COMMON_PREFIXS));
+        assertEquals("DeleteMarkerVersionId", XmlTags.name(XmlTags.DELETE_MARKER_VERSION_ID));
+        assertEquals("TraceId", XmlTags.name(XmlTags.TRACE_ID));
+        assertNull(XmlTags.name(XmlTags.UNKNOWN));
+    }
+
+    @Test
+    public void testLookupIgnoresAsciiCase() {
+        assertEquals(XmlTags.ETAG, lookup("etag"));
+        assertEquals(XmlTags.ETAG, lookup("ETAG"));
+        assertEquals(XmlTags.IS_TRUNCATED, lookup("isTruncated"));
+        assertEquals(XmlTags.CORS_RULE, lookup("CorsRule"));
+        assertEquals(XmlTags.ID, lookup("Id"));
+    }
+
+    @Test
+    public void testUnknownNames() {
+        assertEquals(XmlTags.UNKNOWN, lookup(""));
+        assertEquals(XmlTags.UNKNOWN, lookup("ListBucketResult"));
+        assertEquals(XmlTags.UNKNOWN, lookup("Ke"));
+        assertEquals(XmlTags.UNKNOWN, lookup("Keys"));
+        assertEquals(XmlTags.UNKNOWN, lookup("Kez"));
+        assertEquals(XmlTags.UNKNOWN, lookup("NextMarke"));
+        assertEquals(XmlTags.UNKNOWN, lookup("CommonPrefixess"));
+        assertEquals(XmlTags.UNKNOWN, lookup("键"));
+    }
+
+    @Test
+    public void testCaseFoldingIsAsciiOnly() {
+        // 只折叠 A-Z, 非字母和非 ASCII 字符都不匹配 "ID"
+        assertEquals(XmlTags.UNKNOWN, lookup("I$"));
+        assertEquals(XmlTags.UNKNOWN, lookup("I\u00c4"));
+        assertEquals(XmlTags.UNKNOWN, lookup("\u0130D"));
+    }
+
+    @Test
+    public void testLookupUsesOnlyGivenLength() {
+        byte[] buffer = "KeyMarker".getBytes(UTF_8);
+        assertEquals(XmlTags.KEY, XmlTags.lookup(buffer, 3));
+        assertEquals(XmlTags.KEY_MARKER, XmlTags.lookup(buffer, buffer.length));
+        assertEquals(XmlTags.UNKNOWN, XmlTags.lookup(buffer, 4));
+    }
+
+    @Test
+    public void testLookupDoesNotModifyName() {
+        byte[] name = "LastModified".getBytes(UTF_8);
+        assertEquals(XmlTags.LAST_MODIFIED, XmlTags.lookup(name, name.length));
+        assertArrayEquals("LastModified".getBytes(UTF_8), name);
+    }
+
+    private static int lookup(String name) {
+        byte[] bytes = name.getBytes(UTF_8);
+        // 解析器复用更大的缓冲区, 末尾的内容不能影响结果
+        byte[] buffer = new byte[bytes.length + 8];
+        System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+        for (int i = bytes.length; i < buffer.length; i++) {
+            buffer[i] = 'x';
+        }
+        return XmlTags.lookup(buffer, bytes.length);
+    }
+}
@@ -0,0 +1,442 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.cos.xml.model.bucket.GetBucketResult;
+import com.tencent.cos.xml.model.bucket.ListBucketVersionsRequest;
+import com.tencent.cos.xml.model.bucket.ListBucketVersionsResult;
+import com.tencent.cos.xml.model.tag.ListBucket;
+import com.tencent.cos.xml.model.tag.ListBucketVersions;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * BucketListing 的翻页、预取、范围截断和失败处理, 列表请求由模拟的存储桶应答
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class BucketListingTest {
+
+    private static final String BUCKET = "examplebucket-1250000000";
+
+    private final List<BucketListing.ListingIterator<?>> iterators = new ArrayList<>();
+    private ExecutorService executor;
+
+    @After
+    public void tearDown() {
+        for (BucketListing.ListingIterator<?> iterator : iterators) {
+            iterator.close();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testListsAllPages() {
+        FakeBucket bucket = new FakeBucket(keys("photos/", 25));
+        BucketListing.ListingIterator<ListBucket.Contents> iterator = objects(bucket, request(null, null, 10), null, null, 1);
+
+        assertEquals(keys("photos/", 25), drain(iterator));
+        // 未设置 delimiter 时以每页最后一个 key 作为下一页的 marker
+        assertEquals(Arrays.asList(null, "photos/0009", "photos/0019"), bucket.markers);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testNextAfterEnd() {
+        FakeBucket bucket = new FakeBucket(keys("a/", 3));
+        BucketListing.ListingIterator<ListBucket.Contents> iterator = objects(bucket, request(null, null, 10), null, null, 1);
+        drain(iterator);
+        iterator.next();
+    }
+
+    @Test
+    public void testEmptyBucket() {
+        FakeBucket bucket = new FakeBucket(Collections.<String>emptyList());
+        BucketListing.ListingIterator<ListBucket.Contents> iterator = objects(bucket, request(null, null, 10), null, null, 1);
+        assertFalse(iterator.hasNext());
+        assertEquals(1, bucket.markers.size());
+    }
+
+    @Test
+    public void testFirstRequestWaitsForHasNext() {
+        FakeBucket bucket = new FakeBucket(keys("a/", 30));
+        BucketListing.ListingIterator<ListBucket.Contents> iterator = objects(bucket, request(null, null, 10), null, null, 1);
+        assertTrue(bucket.markers.isEmpty());
+
+        // 处理第 1 页时第 2 页已经请求, 但不会多预取
+        assertTrue(iterator.hasNext());
+        assertEquals(2, bucket.markers.size());
+        for (int i = 0; i < 10; i++) {
+            iterator.next();
+        }
+        assertEquals(2, bucket.markers.size());
+        assertTrue(iterator.hasNext());
+        assertEquals(3, bucket.markers.size());
+    }
+
+    @Test
+    public void testPrefetchPages() {
+        FakeBucket bucket = new FakeBucket(keys("a/", 100));
+        BucketListing.ListingIterator<ListBucket.Contents> iterator = objects(bucket, request(null, null, 10), null, null, 3);
+        assertTrue(iterator.hasNext());
+        // 当前页加 3 个预取的页
+        assertEquals(4, bucket.markers.size());
+    }
+
+    @Test
+    public void testStartFromMarkerWithPrefix() {
+        List<String> keys = new ArrayList<>();
+        keys.addAll(keys("docs/", 5));
+        keys.addAll(keys("photos/", 12));
+        keys.addAll(keys("videos/", 5));
+        FakeBucket bucket = new FakeBucket(keys);
+        GetBucketRequest request = request("photos/", null, 5);
+
+        BucketListing.ListingIterator<ListBucket.Contents> iterator = objects(bucket, request, "photos/0003", null, 1);
+        assertEquals(keys("photos/", 12).subList(4, 12), drain(iterator));
+        assertEquals("photos/0003", bucket.markers.get(0));
+    }
+
+    @Test
+    public void testStopsAfterEndKey() {
+        FakeBucket bucket = new FakeBucket(keys("a/", 100));
+        BucketListing.ListingIterator<ListBucket.Contents> iterator = objects(bucket, request(null, null, 10), null, "a/0024", 1);
+
+        assertEquals(keys("a/", 25), drain(iterator));
+        // 第 3 页越过 endKey 之后不再请求
+        assertEquals(3, bucket.markers.size());
+    }
+
+    @Test
+    public void testEndKeyOnPageBoundary() {
+        FakeBucket bucket = new FakeBucket(keys("a/", 100));
+        BucketListing.ListingIterator<ListBucket.Contents> iterator = objects(bucket, request(null, null, 10), null, "a/0019", 1);
+        assertEquals(keys("a/", 20), drain(iterator));
+        assertEquals(2, bucket.markers.size());
+    }
+
+    @Test
+    public void testCommonPrefixesUseNextMarker() {
+        List<String> keys = new ArrayList<>();
+        keys.add("a.txt");
+        for (int i = 0; i < 7; i++) {
+            keys.add("dir" + i + "/x");
+            keys.add("dir" + i + "/y");
+        }
+        keys.add("z.txt");
+        FakeBucket bucket = new FakeBucket(keys);
+        GetBucketRequest request = request(null, "/", 3);
+
+        BucketListing.ListingIterator<ListBucket.CommonPrefixes> iterator = iterate(bucket,
+                new BucketListing.GetBucketPageSource<ListBucket.CommonPrefixes>(request, null, null) {
+                    @Override
+                    List<ListBucket.CommonPrefixes> items(ListBucket listBucket) {
+                        return listBucket.commonPrefixesList;
+                    }
+
+                    @Override
+                    String keyOf(ListBucket.CommonPrefixes item) {
+                        return item.prefix;
+                    }
+                }, 1);
+        List<String> prefixes = new ArrayList<>();
+        while (iterator.hasNext()) {
+            prefixes.add(iterator.next().prefix);
+        }
+        assertEquals(Arrays.asList("dir0/", "dir1/", "dir2/", "dir3/", "dir4/", "dir5/", "dir6/"), prefixes);
+        // 每个公共前缀只计为一个条目, 下一页从 NextMarker 继续
+        assertEquals(Arrays.asList(null, "dir1/", "dir4/"), bucket.markers);
+    }
+
+    @Test
+    public void testFailurePropagates() {
+        FakeBucket bucket = new FakeBucket(keys("a/", 30));
+        bucket.failAt = 2;
+        BucketListing.ListingIterator<ListBucket.Contents> iterator = objects(bucket, request(null, null, 10), null, null, 1);
+
+        // 已经取到的页照常返回
+        for (int i = 0; i < 10; i++) {
+            assertTrue(iterator.hasNext());
+            assertEquals(keys("a/", 10).get(i), iterator.next().key);
+        }
+        try {
+            iterator.hasNext();
+            fail("expected ListingException");
+        } catch (BucketListing.ListingException e) {
+            assertTrue(e.getCause() instanceof CosXmlServiceException);
+        }
+        assertEquals(2, bucket.markers.size());
+    }
+
+    @Test
+    public void testAsyncPages() {
+        executor = Executors.newSingleThreadExecutor();
+        FakeBucket bucket = new FakeBucket(keys("a/", 95));
+        bucket.executor = executor;
+        BucketListing.ListingIterator<ListBucket.Contents> iterator = objects(bucket, request(null, null, 10), null, null, 2);
+        assertEquals(keys("a/", 95), drain(iterator));
+        assertEquals(10, bucket.markers.size());
+    }
+
+    @Test
+    public void testCloseStopsListing() {
+        FakeBucket bucket = new FakeBucket(keys("a/", 100));
+        BucketListing.ListingIterator<ListBucket.Contents> iterator = objects(bucket, request(null, null, 10), null, null, 1);
+        assertTrue(iterator.hasNext());
+        iterator.next();
+        iterator.close();
+        assertFalse(iterator.hasNext());
+        assertEquals(2, bucket.markers.size());
+    }
+
+    @Test
+    public void testNewRequestCopiesTemplate() {
+        GetBucketRequest template = request("photos/", "/", 100);
+        template.setEncodingType("url");
+        template.setRegion("ap-guangzhou");
+        BucketListing.GetBucketPageSource<ListBucket.Contents> source = contentsSource(template, null, null);
+        GetBucketRequest request = (GetBucketRequest) source.newRequest(new String[]{"photos/0001"});
+        assertEquals(BUCKET, request.getBucket());
+        assertEquals("ap-guangzhou", request.getRegion());
+        assertEquals("photos/", request.getPrefix());
+        assertEquals("/", request.getDelimiter());
+        assertEquals("url", request.getEncodingType());
+        assertEquals(100, request.getMaxKeys());
+        assertEquals("photos/0001", request.getMarker());
+    }
+
+    @Test
+    public void testTruncatedPageWithoutKeysEnds() {
+        BucketListing.GetBucketPageSource<ListBucket.Contents> source = contentsSource(request(null, null, 10), null, null);
+        GetBucketResult result = new GetBucketResult();
+        result.listBucket = new ListBucket();
+        result.listBucket.isTruncated = true;
+        // 没有条目也没有 NextMarker 时无法翻页, 避免重复请求同一页
+        BucketListing.Page<ListBucket.Contents> page = source.toPage(result);
+        assertTrue(page.items.isEmpty());
+        assertNull(page.nextMarkers);
+
+        result.listBucket = null;
+        assertNull(source.toPage(result).nextMarkers);
+    }
+
+    @Test
+    public void testCompareKeysByCodePoint() {
+        assertTrue(BucketListing.GetBucketPageSource.compareKeys("a", "b") < 0);
+        assertTrue(BucketListing.GetBucketPageSource.compareKeys("a", "ab") < 0);
+        assertEquals(0, BucketListing.GetBucketPageSource.compareKeys("目录/a", "目录/a"));
+        // UTF-16 下代理对小于 U+FF01, 按码点（即 UTF-8 字节序）则更大
+        assertTrue("😀".compareTo("！") < 0);
+        assertTrue(BucketListing.GetBucketPageSource.compareKeys("😀", "！") > 0);
+        assertTrue(BucketListing.GetBucketPageSource.compareKeys("a😀", "a！b") > 0);
+    }
+
+    @Test
+    public void testVersionsPage() {
+        ListBucketVersionsRequest template = new ListBucketVersionsRequest(BUCKET);
+        template.setKeyMarker("a.txt");
+        template.setVersionIdMarker("MTg0NDUxNzc2ODQ4NzQyOTI3MzI");
+        BucketListing.VersionsPageSource source = new BucketListing.VersionsPageSource(template);
+        assertArrayEquals(new String[]{"a.txt", "MTg0NDUxNzc2ODQ4NzQyOTI3MzI"}, source.initialMarkers());
+
+        ListBucketVersionsResult result = new ListBucketVersionsResult();
+        result.listBucketVersions = new ListBucketVersions();
+        ListBucketVersions.Version version = new ListBucketVersions.Version();
+        version.key = "b.txt";
+        ListBucketVersions.DeleteMarker deleteMarker = new ListBucketVersions.DeleteMarker();
+        deleteMarker.key = "c.txt";
+        result.listBucketVersions.objectVersionList = Arrays.asList(version, deleteMarker);
+        result.listBucketVersions.isTruncated = true;
+        result.listBucketVersions.nextKeyMarker = "c.txt";
+        result.listBucketVersions.nextVersionIdMarker = "MTg0NDUxNzc2ODQ4NzQyOTI3MzM";
+
+        BucketListing.Page<ListBucketVersions.ObjectVersion> page = source.toPage(result);
+        assertEquals(2, page.items.size());
+        assertTrue(page.items.get(1) instanceof ListBucketVersions.DeleteMarker);
+        assertArrayEquals(new String[]{"c.txt", "MTg0NDUxNzc2ODQ4NzQyOTI3MzM"}, page.nextMarkers);
+        ListBucketVersionsRequest next = (ListBucketVersionsRequest) source.newRequest(page.nextMarkers);
+        assertEquals("c.txt", next.getKeyMarker());
+        assertEquals("MTg0NDUxNzc2ODQ4NzQyOTI3MzM", next.getVersionIdMarker());
+
+        result.listBucketVersions.isTruncated = false;
+        assertNull(source.toPage(result).nextMarkers);
+    }
+
+    private BucketListing.ListingIterator<ListBucket.Contents> objects(FakeBucket bucket, GetBucketRequest request,
+                                                                       String startMarker, String endKey, int prefetchPages) {
+        return iterate(bucket, contentsSource(request, startMarker, endKey), prefetchPages);
+    }
+
+    private <T> BucketListing.ListingIterator<T> iterate(FakeBucket bucket, BucketListing.GetBucketPageSource<T> source,
+                                                         int prefetchPages) {
+        BucketListing.ListingIterator<T> iterator = new BucketListing.ListingIterator<>(null, bucket.serve(source), prefetchPages);
+        iterators.add(iterator);
+        return iterator;
+    }
+
+    private static BucketListing.GetBucketPageSource<ListBucket.Contents> contentsSource(GetBucketRequest request,
+                                                                                        String startMarker, String endKey) {
+        return new BucketListing.GetBucketPageSource<ListBucket.Contents>(request, startMarker, endKey) {
+            @Override
+            List<ListBucket.Contents> items(ListBucket listBucket) {
+                return listBucket.contentsList;
+            }
+
+            @Override
+            String keyOf(ListBucket.Contents item) {
+                return item.key;
+            }
+        };
+    }
+
+    private static GetBucketRequest request(String prefix, String delimiter, long maxKeys) {
+        GetBucketRequest request = new GetBucketRequest(BUCKET);
+        request.setPrefix(prefix);
+        if (delimiter != null) {
+            request.setDelimiter(delimiter);
+        }
+        request.setMaxKeys(maxKeys);
+        return request;
+    }
+
+    private static List<String> drain(BucketListing.ListingIterator<ListBucket.Contents> iterator) {
+        List<String> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().key);
+        }
+        return keys;
+    }
+
+    private static List<String> keys(String prefix, int count) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(String.format("%s%04d", prefix, i));
+        }
+        return keys;
+    }
+
+    /**
+     * 按 GET Bucket 的语义应答列表请求: 按 key 排序, 从 marker 之后开始, 设置 delimiter 时合并公共前缀
+     */
+    private static final class FakeBucket {
+
+        private final List<String> keys;
+        /** 每个请求的 marker */
+        final List<String> markers = Collections.synchronizedList(new ArrayList<String>());
+        /** 第几个请求失败, 从 1 开始 */
+        int failAt;
+        /** 为 null 时在调用线程中同步应答 */
+        ExecutorService executor;
+
+        FakeBucket(List<String> keys) {
+            this.keys = new ArrayList<>(keys);
+            Collections.sort(this.keys);
+        }
+
+        <T> BucketListing.PageSource<T> serve(final BucketListing.GetBucketPageSource<T> source) {
+            return new BucketListing.PageSource<T>() {
+                @Override
+                public String[] initialMarkers() {
+                    return source.initialMarkers();
+                }
+
+                @Override
+                public CosXmlRequest newRequest(String[] markers) {
+                    return source.newRequest(markers);
+                }
+
+                @Override
+                public void fetch(CosXmlService cosXmlService, final CosXmlRequest request, final CosXmlResultListener listener) {
+                    Runnable response = new Runnable() {
+                        @Override
+                        public void run() {
+                            respond((GetBucketRequest) request, listener);
+                        }
+                    };
+                    if (executor != null) {
+                        executor.execute(response);
+                    } else {
+                        response.run();
+                    }
+                }
+
+                @Override
+                public BucketListing.Page<T> toPage(CosXmlResult result) {
+                    return source.toPage(result);
+                }
+            };
+        }
+
+        private void respond(GetBucketRequest request, CosXmlResultListener listener) {
+            markers.add(request.getMarker());
+            if (markers.size() == failAt) {
+                listener.onFail(request, null, new CosXmlServiceException("InternalError"));
+                return;
+            }
+            String prefix = request.getPrefix() != null ? request.getPrefix() : "";
+            String delimiter = request.getDelimiter();
+            String marker = request.getMarker();
+            long maxKeys = request.getMaxKeys();
+
+            ListBucket listBucket = new ListBucket();
+            listBucket.contentsList = new ArrayList<>();
+            listBucket.commonPrefixesList = new ArrayList<>();
+            String last = null;
+            int count = 0;
+            for (String key : keys) {
+                if (!key.startsWith(prefix) || (marker != null && key.compareTo(marker) <= 0)) {
+                    continue;
+                }
+                String commonPrefix = null;
+                int index = delimiter != null ? key.indexOf(delimiter, prefix.length()) : -1;
+                if (index >= 0) {
+                    commonPrefix = key.substring(0, index + delimiter.length());
+                    if (commonPrefix.equals(last) || (marker != null && marker.startsWith(commonPrefix))) {
+                        continue;
+                    }
+                }
+                if (count == maxKeys) {
+                    listBucket.isTruncated = true;
+                    break;
+                }
+                if (commonPrefix != null) {
+                    ListBucket.CommonPrefixes commonPrefixes = new ListBucket.CommonPrefixes();
+                    commonPrefixes.prefix = commonPrefix;
+                    listBucket.commonPrefixesList.add(commonPrefixes);
+                    last = commonPrefix;
+                } else {
+                    ListBucket.Contents contents = new ListBucket.Contents();
+                    contents.key = key;
+                    listBucket.contentsList.add(contents);
+                    last = key;
+                }
+                count++;
+            }
+            // COS 只在设置了 delimiter 时返回 NextMarker
+            if (listBucket.isTruncated && delimiter != null) {
+                listBucket.nextMarker = last;
+            }
+            GetBucketResult result = new GetBucketResult();
+            result.listBucket = listBucket;
+            listener.onSuccess(request, result);
+        }
+    }
+}
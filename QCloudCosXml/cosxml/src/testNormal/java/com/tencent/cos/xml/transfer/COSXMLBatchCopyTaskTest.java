@@ -0,0 +1,281 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.CosXmlServiceConfig;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.cos.xml.model.bucket.GetBucketResult;
+import com.tencent.cos.xml.model.object.CopyObjectRequest;
+import com.tencent.cos.xml.model.object.CopyObjectResult;
+import com.tencent.cos.xml.model.object.DeleteObjectRequest;
+import com.tencent.cos.xml.model.object.DeleteObjectResult;
+import com.tencent.cos.xml.model.object.HeadObjectRequest;
+import com.tencent.cos.xml.model.tag.ListBucket;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * <p>
+ * COSXMLBatchCopyTask 的列表与拷贝重叠、移动、待处理对象上限和续传 marker, 以及前缀重叠的检查;
+ * 列表请求由模拟的存储桶同步应答, 拷贝和删除请求由测试逐个应答
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class COSXMLBatchCopyTaskTest {
+
+    private static final String BUCKET = "examplebucket-1250000000";
+    private static final String BACKUP_BUCKET = "backupbucket-1250000000";
+    private static final String REGION = "ap-guangzhou";
+    private static final long DIVISION = 1000;
+
+    private final List<String> keys = new ArrayList<>();
+    /** 这些 key 是需要分片拷贝的大对象 */
+    private final Set<String> largeKeys = new HashSet<>();
+    private int listRequestCount;
+
+    private CosXmlService cosXmlService;
+    private final RecordedCalls<CopyObjectRequest> copyCalls = new RecordedCalls<>();
+    private final RecordedCalls<DeleteObjectRequest> deleteCalls = new RecordedCalls<>();
+    private final RecordedCalls<HeadObjectRequest> headCalls = new RecordedCalls<>();
+    private final RecordingListener listener = new RecordingListener();
+
+    @Before
+    public void setUp() {
+        cosXmlService = mock(CosXmlService.class);
+        doReturn(new CosXmlServiceConfig.Builder().setRegion(REGION).builder()).when(cosXmlService).getConfig();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                respond((GetBucketRequest) invocation.getArguments()[0],
+                        (CosXmlResultListener) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(cosXmlService).getBucketAsync(any(GetBucketRequest.class), any(CosXmlResultListener.class));
+        doAnswer(copyCalls).when(cosXmlService).copyObjectAsync(any(CopyObjectRequest.class), any(CosXmlResultListener.class));
+        doAnswer(deleteCalls).when(cosXmlService).deleteObjectAsync(any(DeleteObjectRequest.class),
+                any(CosXmlResultListener.class));
+        doAnswer(headCalls).when(cosXmlService).headObjectAsync(any(HeadObjectRequest.class), any(CosXmlResultListener.class));
+    }
+
+    @Test
+    public void testCopiesEveryListedObject() throws Exception {
+        addKeys("photos/", 2500);
+        COSXMLBatchCopyTask task = tool(4).copyPrefix(BUCKET, null, "photos/", BACKUP_BUCKET, "archive/", null, listener);
+
+        // 并发预算内的拷贝同时进行
+        assertEquals(4, copyCalls.pendingCount());
+        RecordedCalls.Call<CopyObjectRequest> first = copyCalls.poll();
+        assertEquals(BACKUP_BUCKET, first.request.getBucket());
+        assertEquals("archive/0000", first.request.getCosPath());
+        first.succeed(new CopyObjectResult());
+        drainCopies();
+
+        assertEquals(2500, listener.succeeded.size());
+        assertEquals(1, listener.finished.size());
+        COSXMLBatchCopyTask.BatchCopyStats stats = listener.finished.get(0);
+        assertEquals(2500, stats.listedCount);
+        assertEquals(2500, stats.succeedCount);
+        assertEquals(0, stats.failedCount);
+        assertEquals(0, stats.runningCount);
+        assertEquals("photos/2499", task.getResumeMarker());
+        assertEquals(3, listRequestCount);
+        assertEquals(0, deleteCalls.count());
+    }
+
+    @Test
+    public void testMoveDeletesSourceAfterCopy() throws Exception {
+        addKeys("photos/", 3);
+        COSXMLBatchCopyTask task = tool(4).movePrefix(BUCKET, null, "photos/", BUCKET, "archive/", null, listener);
+
+        copyCalls.take().succeed(new CopyObjectResult());
+        RecordedCalls.Call<DeleteObjectRequest> delete = deleteCalls.take();
+        assertTrue(delete.request.getPath(cosXmlService.getConfig()).endsWith("/photos/0000"));
+        delete.succeed(new DeleteObjectResult());
+
+        // 拷贝失败时不删除源对象
+        copyCalls.take().fail(new CosXmlServiceException("PreconditionFailed"));
+        copyCalls.take().succeed(new CopyObjectResult());
+        deleteCalls.take().fail(new CosXmlServiceException("AccessDenied"));
+
+        assertNull(deleteCalls.poll());
+        assertEquals(1, listener.succeeded.size());
+        assertEquals(2, listener.failed.size());
+        assertEquals(2, task.getFailedSources().size());
+        assertEquals("photos/0002", task.getResumeMarker());
+        assertEquals(1, listener.finished.get(0).succeedCount);
+        assertEquals(2, listener.finished.get(0).failedCount);
+    }
+
+    @Test
+    public void testOutstandingObjectsAreBounded() throws Exception {
+        // 队首是一直没有完成的分片拷贝, 后面的小对象陆续拷贝完, 续传 marker 停在队首之前
+        addKeys("photos/", 30000);
+        largeKeys.add("photos/00000");
+        COSXMLBatchCopyTask task = tool(4).copyPrefix(BUCKET, null, "photos/", BACKUP_BUCKET, "archive/", null, listener);
+        RecordedCalls.Call<HeadObjectRequest> head = headCalls.take();
+        assertTrue(head.request.getPath(cosXmlService.getConfig()).endsWith("/photos/00000"));
+        drainCopies();
+
+        int listedCount = task.getStats().listedCount;
+        assertTrue(String.valueOf(listedCount), listedCount <= COSXMLBatchCopyTask.MAX_OUTSTANDING + 1000);
+        assertTrue(listedCount < 30000);
+        assertEquals(listedCount - 1, listener.succeeded.size());
+        assertNull(task.getResumeMarker());
+        assertTrue(listener.finished.isEmpty());
+
+        // 队首处理完后继续列出
+        head.fail(new CosXmlServiceException("InternalError"));
+        drainCopies();
+        assertEquals(1, listener.finished.size());
+        assertEquals(30000, listener.finished.get(0).listedCount);
+        assertEquals(29999, listener.finished.get(0).succeedCount);
+        assertEquals(1, listener.finished.get(0).failedCount);
+        assertEquals("photos/00000", task.getFailedSources().get(0).key);
+        assertEquals("photos/29999", task.getResumeMarker());
+    }
+
+    @Test
+    public void testResumeFromMarker() throws Exception {
+        addKeys("photos/", 10);
+        COSXMLBatchCopyTask task = tool(4).copyPrefix(BUCKET, null, "photos/", BACKUP_BUCKET, "archive/", "photos/0006",
+                listener);
+        drainCopies();
+        assertEquals(3, listener.succeeded.size());
+        assertEquals("photos/0007", listener.succeeded.get(0).key);
+        assertEquals("photos/0009", task.getResumeMarker());
+    }
+
+    @Test
+    public void testRejectsOverlappingPrefixes() {
+        COSXMLTool tool = tool(4);
+        assertRejected(tool, "photos/", "photos/archive/");
+        assertRejected(tool, "photos/2018/", "photos/");
+        assertRejected(tool, "photos/", "photos/");
+        assertRejected(tool, "", "archive/");
+        assertRejected(tool, "photos", "photos-archive/");
+        assertEquals(0, listRequestCount);
+
+        // 不同的存储桶或互不包含的前缀
+        assertNotNull(tool.movePrefix(BUCKET, null, "photos/", BACKUP_BUCKET, "photos/archive/", null, listener));
+        assertNotNull(tool.movePrefix(BUCKET, null, "photos/", BUCKET, "archive/photos/", null, listener));
+        assertNotNull(tool.copyPrefix(BUCKET, "ap-beijing", "photos/", BUCKET, "photos/", null, listener));
+    }
+
+    private void assertRejected(COSXMLTool tool, String sourcePrefix, String prefix) {
+        try {
+            tool.movePrefix(BUCKET, REGION, sourcePrefix, BUCKET, prefix, null, listener);
+            fail("expected IllegalArgumentException for " + sourcePrefix + " -> " + prefix);
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            tool.copyPrefix(BUCKET, null, sourcePrefix, BUCKET, prefix, null, listener);
+            fail("expected IllegalArgumentException for " + sourcePrefix + " -> " + prefix);
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private COSXMLTool tool(int batchConcurrency) {
+        TransferConfig transferConfig = new TransferConfig.Builder()
+                .setDividsionForCopy(DIVISION)
+                .setSliceSizeForCopy(DIVISION)
+                .setMaxConcurrentParts(2)
+                .setBatchConcurrency(batchConcurrency)
+                .build();
+        return new COSXMLTool(cosXmlService, transferConfig);
+    }
+
+    /**
+     * 逐个应答进行中的拷贝, 直到没有新的拷贝请求
+     */
+    private void drainCopies() {
+        RecordedCalls.Call<CopyObjectRequest> call;
+        while ((call = copyCalls.poll()) != null) {
+            call.succeed(new CopyObjectResult());
+        }
+    }
+
+    private void addKeys(String prefix, int count) {
+        String format = count > 10000 ? "%s%05d" : "%s%04d";
+        for (int i = 0; i < count; i++) {
+            keys.add(String.format(format, prefix, i));
+        }
+        Collections.sort(keys);
+    }
+
+    /**
+     * 按 GET Bucket 的语义应答: 从 marker 之后开始, 不设置 delimiter 时不返回 NextMarker
+     */
+    private void respond(GetBucketRequest request, CosXmlResultListener listener) {
+        listRequestCount++;
+        String prefix = request.getPrefix() != null ? request.getPrefix() : "";
+        String marker = request.getMarker();
+        ListBucket listBucket = new ListBucket();
+        listBucket.contentsList = new ArrayList<>();
+        for (String key : keys) {
+            if (!key.startsWith(prefix) || (marker != null && key.compareTo(marker) <= 0)) {
+                continue;
+            }
+            if (listBucket.contentsList.size() == request.getMaxKeys()) {
+                listBucket.isTruncated = true;
+                break;
+            }
+            ListBucket.Contents contents = new ListBucket.Contents();
+            contents.key = key;
+            contents.size = largeKeys.contains(key) ? 10 * DIVISION : 10;
+            contents.eTag = "\"" + key.hashCode() + "\"";
+            listBucket.contentsList.add(contents);
+        }
+        GetBucketResult result = new GetBucketResult();
+        result.listBucket = listBucket;
+        listener.onSuccess(request, result);
+    }
+
+    private static final class RecordingListener implements COSXMLBatchCopyTask.BatchCopyListener {
+        final List<COSXMLBatchCopyTask.CopySource> succeeded = new ArrayList<>();
+        final List<COSXMLBatchCopyTask.CopySource> failed = new ArrayList<>();
+        final List<COSXMLBatchCopyTask.BatchCopyStats> finished = new ArrayList<>();
+
+        @Override
+        public synchronized void onSuccess(COSXMLBatchCopyTask.CopySource source, CosXmlResult result) {
+            succeeded.add(source);
+        }
+
+        @Override
+        public synchronized void onFail(COSXMLBatchCopyTask.CopySource source, CosXmlClientException exception,
+                                        CosXmlServiceException serviceException) {
+            failed.add(source);
+        }
+
+        @Override
+        public void onListFail(CosXmlClientException exception, CosXmlServiceException serviceException) {
+            throw new AssertionError("unexpected list failure");
+        }
+
+        @Override
+        public void onProgress(COSXMLBatchCopyTask.BatchCopyStats stats) {
+        }
+
+        @Override
+        public synchronized void onFinished(COSXMLBatchCopyTask.BatchCopyStats stats) {
+            finished.add(stats);
+        }
+    }
+}
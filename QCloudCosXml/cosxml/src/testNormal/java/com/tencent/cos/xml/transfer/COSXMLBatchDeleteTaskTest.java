@@ -0,0 +1,309 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.cos.xml.model.bucket.GetBucketResult;
+import com.tencent.cos.xml.model.object.DeleteMultiObjectRequest;
+import com.tencent.cos.xml.model.object.DeleteMultiObjectResult;
+import com.tencent.cos.xml.model.tag.DeleteResult;
+import com.tencent.cos.xml.model.tag.ListBucket;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * <p>
+ * COSXMLBatchDeleteTask 的流水线调度和失败汇总, 列表和批量删除请求由测试逐个应答
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class COSXMLBatchDeleteTaskTest {
+
+    private static final String BUCKET = "examplebucket-1250000000";
+    private static final String REGION = "ap-guangzhou";
+
+    private CosXmlService cosXmlService;
+    private final Deque<Call<GetBucketRequest>> listCalls = new ArrayDeque<>();
+    private final Deque<Call<DeleteMultiObjectRequest>> deleteCalls = new ArrayDeque<>();
+    private final RecordingListener listener = new RecordingListener();
+
+    @Before
+    public void setUp() {
+        cosXmlService = mock(CosXmlService.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                listCalls.add(new Call<>((GetBucketRequest) invocation.getArguments()[0],
+                        (CosXmlResultListener) invocation.getArguments()[1]));
+                return null;
+            }
+        }).when(cosXmlService).getBucketAsync(any(GetBucketRequest.class), any(CosXmlResultListener.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                deleteCalls.add(new Call<>((DeleteMultiObjectRequest) invocation.getArguments()[0],
+                        (CosXmlResultListener) invocation.getArguments()[1]));
+                return null;
+            }
+        }).when(cosXmlService).deleteMultiObjectAsync(any(DeleteMultiObjectRequest.class), any(CosXmlResultListener.class));
+    }
+
+    @Test
+    public void testDeletesEveryListedPage() {
+        start(4);
+
+        Call<GetBucketRequest> list = listCalls.poll();
+        assertEquals("logs/2018/", list.request.getPrefix());
+        assertNull(list.request.getMarker());
+        assertEquals(1000, list.request.getMaxKeys());
+        list.respond(page(keys("logs/2018/", 0, 1000), true));
+
+        // 删除第 1 页时已经在列第 2 页
+        Call<DeleteMultiObjectRequest> delete = deleteCalls.poll();
+        assertTrue(delete.request.getDelete().quiet);
+        assertEquals(1000, delete.request.getDelete().deleteObjects.size());
+        assertEquals("logs/2018/0000", delete.request.getDelete().deleteObjects.get(0).key);
+        list = listCalls.poll();
+        assertEquals("logs/2018/0999", list.request.getMarker());
+
+        list.respond(page(keys("logs/2018/", 1000, 1500), false));
+        assertTrue(listCalls.isEmpty());
+        delete.respond(deleted());
+        assertNull(listener.finished);
+        deleteCalls.poll().respond(deleted());
+
+        COSXMLBatchDeleteTask.BatchDeleteStats stats = listener.finished;
+        assertNotNull(stats);
+        assertEquals(1500, stats.listedCount);
+        assertEquals(1500, stats.deletedCount);
+        assertEquals(0, stats.failedCount);
+        assertEquals(0, stats.runningCount);
+        assertTrue(stats.failedCodeCounts.isEmpty());
+        assertEquals(2, listener.progressCount);
+        assertTrue(deleteCalls.isEmpty());
+    }
+
+    @Test
+    public void testEmptyPrefix() {
+        start(4);
+        listCalls.poll().respond(page(new ArrayList<String>(), false));
+        assertTrue(deleteCalls.isEmpty());
+        assertNotNull(listener.finished);
+        assertEquals(0, listener.finished.listedCount);
+    }
+
+    @Test
+    public void testAggregatesQuietErrors() {
+        COSXMLBatchDeleteTask task = start(4);
+        listCalls.poll().respond(page(keys("logs/", 0, 10), false));
+        // Quiet 模式下响应中只有删除失败的对象
+        deleteCalls.poll().respond(deleted(error("logs/0001", "AccessDenied"), error("logs/0004", "AccessDenied"),
+                error("logs/0007", null)));
+
+        COSXMLBatchDeleteTask.BatchDeleteStats stats = listener.finished;
+        assertEquals(10, stats.listedCount);
+        assertEquals(7, stats.deletedCount);
+        assertEquals(3, stats.failedCount);
+        assertEquals(Integer.valueOf(2), stats.failedCodeCounts.get("AccessDenied"));
+        assertEquals(Integer.valueOf(1), stats.failedCodeCounts.get("Unknown"));
+        List<DeleteResult.Error> failed = task.getFailedKeys();
+        assertEquals(3, failed.size());
+        assertEquals("logs/0001", failed.get(0).key);
+        assertEquals("logs/0007", failed.get(2).key);
+    }
+
+    @Test
+    public void testFailedRequestCountsWholeBatch() {
+        COSXMLBatchDeleteTask task = start(4);
+        listCalls.poll().respond(page(keys("a/", 0, 1000), true));
+        listCalls.poll().respond(page(keys("a/", 1000, 1200), false));
+
+        CosXmlServiceException slowDown = new CosXmlServiceException("Service Unavailable");
+        slowDown.setErrorCode("SlowDown");
+        slowDown.setErrorMessage("Please reduce your request rate.");
+        deleteCalls.poll().fail(null, slowDown);
+        deleteCalls.poll().fail(new CosXmlClientException(10004, "connection reset"), null);
+
+        COSXMLBatchDeleteTask.BatchDeleteStats stats = listener.finished;
+        assertEquals(1200, stats.listedCount);
+        assertEquals(0, stats.deletedCount);
+        assertEquals(1200, stats.failedCount);
+        assertEquals(Integer.valueOf(1000), stats.failedCodeCounts.get("SlowDown"));
+        assertEquals(Integer.valueOf(200), stats.failedCodeCounts.get("ClientError"));
+        assertEquals(Arrays.asList("SlowDown", "ClientError"), new ArrayList<>(stats.failedCodeCounts.keySet()));
+
+        // 只保留前 MAX_RECORDED_FAILURES 个失败的对象
+        List<DeleteResult.Error> failed = task.getFailedKeys();
+        assertEquals(COSXMLBatchDeleteTask.MAX_RECORDED_FAILURES, failed.size());
+        assertEquals("a/0000", failed.get(0).key);
+        assertEquals("Please reduce your request rate.", failed.get(0).message);
+    }
+
+    @Test
+    public void testConcurrentBatchesAreBounded() {
+        start(2);
+        for (int page = 0; page < 3; page++) {
+            listCalls.poll().respond(page(keys("a/", page * 1000, page * 1000 + 1000), true));
+        }
+        // 2 个批次在删除, 1 个等待发出, 第 4 页正在列
+        assertEquals(2, deleteCalls.size());
+        assertEquals(1, listCalls.size());
+        listCalls.poll().respond(page(keys("a/", 3000, 4000), true));
+        // 等待发出的批次达到上限后暂停列表
+        assertTrue(listCalls.isEmpty());
+        assertEquals(2, deleteCalls.size());
+
+        deleteCalls.poll().respond(deleted());
+        assertEquals(2, deleteCalls.size());
+        assertEquals(1, listCalls.size());
+        assertEquals("a/3999", listCalls.peek().request.getMarker());
+        listCalls.poll().respond(page(keys("a/", 4000, 4001), false));
+
+        while (!deleteCalls.isEmpty()) {
+            assertTrue(deleteCalls.size() <= 2);
+            deleteCalls.poll().respond(deleted());
+        }
+        assertEquals(4001, listener.finished.deletedCount);
+    }
+
+    @Test
+    public void testListFailureFinishesListedKeys() {
+        start(4);
+        listCalls.poll().respond(page(keys("a/", 0, 1000), true));
+        CosXmlServiceException accessDenied = new CosXmlServiceException("Forbidden");
+        accessDenied.setErrorCode("AccessDenied");
+        listCalls.poll().fail(null, accessDenied);
+
+        assertSame(accessDenied, listener.listServiceException);
+        assertTrue(listCalls.isEmpty());
+        assertNull(listener.finished);
+        deleteCalls.poll().respond(deleted());
+        assertEquals(1000, listener.finished.deletedCount);
+    }
+
+    @Test
+    public void testCancel() {
+        COSXMLBatchDeleteTask task = start(4);
+        listCalls.poll().respond(page(keys("a/", 0, 1000), true));
+        Call<DeleteMultiObjectRequest> delete = deleteCalls.poll();
+        Call<GetBucketRequest> list = listCalls.poll();
+
+        task.cancel();
+        verify(cosXmlService).cancel(delete.request);
+        verify(cosXmlService).cancel(list.request);
+        // 取消后到达的响应被忽略
+        delete.respond(deleted());
+        list.respond(page(keys("a/", 1000, 2000), false));
+        assertTrue(listCalls.isEmpty());
+        assertTrue(deleteCalls.isEmpty());
+        assertEquals(0, task.getStats().deletedCount);
+        assertNull(listener.finished);
+        assertEquals(0, listener.progressCount);
+    }
+
+    private COSXMLBatchDeleteTask start(int maxConcurrentDeleteBatches) {
+        TransferConfig transferConfig = new TransferConfig.Builder()
+                .setMaxConcurrentDeleteBatches(maxConcurrentDeleteBatches)
+                .build();
+        COSXMLBatchDeleteTask task = new COSXMLBatchDeleteTask(cosXmlService, transferConfig, BUCKET, REGION,
+                "logs/2018/", listener);
+        task.start();
+        return task;
+    }
+
+    private static GetBucketResult page(List<String> keys, boolean isTruncated) {
+        GetBucketResult result = new GetBucketResult();
+        result.listBucket = new ListBucket();
+        result.listBucket.isTruncated = isTruncated;
+        result.listBucket.contentsList = new ArrayList<>();
+        for (String key : keys) {
+            ListBucket.Contents contents = new ListBucket.Contents();
+            contents.key = key;
+            result.listBucket.contentsList.add(contents);
+        }
+        return result;
+    }
+
+    private static DeleteMultiObjectResult deleted(DeleteResult.Error... errors) {
+        DeleteMultiObjectResult result = new DeleteMultiObjectResult();
+        result.deleteResult = new DeleteResult();
+        if (errors.length > 0) {
+            result.deleteResult.errorList = new ArrayList<>(Arrays.asList(errors));
+        }
+        return result;
+    }
+
+    private static DeleteResult.Error error(String key, String code) {
+        DeleteResult.Error error = new DeleteResult.Error();
+        error.key = key;
+        error.code = code;
+        return error;
+    }
+
+    private static List<String> keys(String prefix, int from, int to) {
+        List<String> keys = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            keys.add(String.format("%s%04d", prefix, i));
+        }
+        return keys;
+    }
+
+    private static final class Call<R extends CosXmlRequest> {
+        final R request;
+        final CosXmlResultListener listener;
+
+        Call(R request, CosXmlResultListener listener) {
+            this.request = request;
+            this.listener = listener;
+        }
+
+        void respond(CosXmlResult result) {
+            listener.onSuccess(request, result);
+        }
+
+        void fail(CosXmlClientException clientException, CosXmlServiceException serviceException) {
+            listener.onFail(request, clientException, serviceException);
+        }
+    }
+
+    private static final class RecordingListener implements COSXMLBatchDeleteTask.BatchDeleteListener {
+        CosXmlServiceException listServiceException;
+        int progressCount;
+        COSXMLBatchDeleteTask.BatchDeleteStats finished;
+
+        @Override
+        public void onListFail(CosXmlClientException exception, CosXmlServiceException serviceException) {
+            listServiceException = serviceException;
+        }
+
+        @Override
+        public void onProgress(COSXMLBatchDeleteTask.BatchDeleteStats stats) {
+            progressCount++;
+        }
+
+        @Override
+        public void onFinished(COSXMLBatchDeleteTask.BatchDeleteStats stats) {
+            assertNull("finished twice", finished);
+            finished = stats;
+        }
+    }
+}
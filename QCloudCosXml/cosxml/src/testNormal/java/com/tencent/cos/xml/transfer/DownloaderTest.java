@@ -0,0 +1,144 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXml;
+import com.tencent.cos.xml.common.COSRequestHeaderKey;
+import com.tencent.cos.xml.common.ClientErrorCode;
+import com.tencent.cos.xml.exception.CosXmlClientException;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlProgressListener;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.CosXmlRequest;
+import com.tencent.cos.xml.model.CosXmlResult;
+import com.tencent.cos.xml.model.object.GetObjectRequest;
+import com.tencent.cos.xml.model.object.GetObjectResult;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * <p>
+ * Downloader 不先发 HEAD, 用保存的 ETag 带 If-Range 续传, 对象变化时从头下载
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class DownloaderTest {
+
+    private static final String BUCKET = "examplebucket-1250000000";
+    private static final String FILE_NAME = "object.bin";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CosXml cosXml;
+    private final RecordedCalls<GetObjectRequest> getCalls = new RecordedCalls<>();
+    private Downloader downloader;
+    private File downloadFile;
+    private volatile long[] lastProgress;
+    private volatile CosXmlResult result;
+
+    @Before
+    public void setUp() {
+        MemorySharedPreferences.INSTANCE.clear();
+        cosXml = mock(CosXml.class);
+        doAnswer(getCalls).when(cosXml).getObjectAsync(any(GetObjectRequest.class), any(CosXmlResultListener.class));
+        downloader = new Downloader(MemorySharedPreferences.context(), cosXml);
+        downloader.setProgress(new CosXmlProgressListener() {
+            @Override
+            public void onProgress(long complete, long target) {
+                lastProgress = new long[]{complete, target};
+            }
+        });
+        downloadFile = new File(temporaryFolder.getRoot(), FILE_NAME);
+    }
+
+    @Test
+    public void testDownloadWithoutSavedETag() throws Exception {
+        // 本地文件存在但没有保存 ETag, 不能确认是同一个对象, 整个下载
+        TestFiles.write(downloadFile, new byte[10]);
+        download();
+
+        RecordedCalls.Call<GetObjectRequest> call = getCalls.take();
+        assertNull(header(call.request, COSRequestHeaderKey.RANGE));
+        assertNull(header(call.request, COSRequestHeaderKey.IF_RANGE));
+        assertEquals(0, call.request.getFileOffset());
+
+        startResponse(call, 200, "\"v1\"", false);
+        assertEquals("\"v1\"", MemorySharedPreferences.INSTANCE.getString(downloadFile.getPath(), null));
+        call.succeed(new GetObjectResult());
+        assertNotNull(result);
+        assertNull(MemorySharedPreferences.INSTANCE.getString(downloadFile.getPath(), null));
+    }
+
+    @Test
+    public void testResumeWithIfRange() throws Exception {
+        TestFiles.write(downloadFile, new byte[10]);
+        MemorySharedPreferences.INSTANCE.edit().putString(downloadFile.getPath(), "\"v1\"").commit();
+        download();
+
+        RecordedCalls.Call<GetObjectRequest> call = getCalls.take();
+        assertEquals("bytes=10-", header(call.request, COSRequestHeaderKey.RANGE));
+        assertEquals("\"v1\"", header(call.request, COSRequestHeaderKey.IF_RANGE));
+        assertEquals(10, call.request.getFileOffset());
+        assertEquals(0, call.request.getRestartFileOffset());
+
+        // ETag 匹配, 进度包含已下载的部分
+        startResponse(call, 206, "\"v1\"", false);
+        call.request.getProgressListener().onProgress(5, 15);
+        assertArrayEquals(new long[]{15, 25}, lastProgress);
+        call.succeed(new GetObjectResult());
+        assertNotNull(result);
+    }
+
+    @Test
+    public void testIfRangeMismatchRecordsNewETag() throws Exception {
+        TestFiles.write(downloadFile, new byte[10]);
+        MemorySharedPreferences.INSTANCE.edit().putString(downloadFile.getPath(), "\"v1\"").commit();
+        download();
+
+        // 对象已变化, 服务端返回整个对象, 之后续传要用新的 ETag
+        RecordedCalls.Call<GetObjectRequest> call = getCalls.take();
+        startResponse(call, 200, "\"v2\"", true);
+        assertEquals("\"v2\"", MemorySharedPreferences.INSTANCE.getString(downloadFile.getPath(), null));
+        call.fail(new CosXmlClientException(ClientErrorCode.IO_ERROR.getCode(), "connection reset"));
+        assertNull(result);
+        assertEquals("\"v2\"", MemorySharedPreferences.INSTANCE.getString(downloadFile.getPath(), null));
+    }
+
+    private void download() {
+        downloader.download(BUCKET, "dir/" + FILE_NAME, temporaryFolder.getRoot().getPath(), FILE_NAME,
+                new CosXmlResultListener() {
+                    @Override
+                    public void onSuccess(CosXmlRequest request, CosXmlResult cosXmlResult) {
+                        result = cosXmlResult;
+                    }
+
+                    @Override
+                    public void onFail(CosXmlRequest request, CosXmlClientException exception,
+                                       CosXmlServiceException serviceException) {
+                    }
+                });
+    }
+
+    private static void startResponse(RecordedCalls.Call<GetObjectRequest> call, int httpCode, String eTag,
+                                      boolean isRestarted) {
+        Map<String, List<String>> headers = Collections.singletonMap("ETag", Collections.singletonList(eTag));
+        call.request.getOnResponseStartListener().onResponseStart(httpCode, headers, isRestarted);
+    }
+
+    private static String header(GetObjectRequest request, String name) {
+        List<String> values = request.getRequestHeaders().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
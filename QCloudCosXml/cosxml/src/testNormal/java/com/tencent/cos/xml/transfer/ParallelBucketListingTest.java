@@ -0,0 +1,272 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.CosXmlService;
+import com.tencent.cos.xml.exception.CosXmlServiceException;
+import com.tencent.cos.xml.listener.CosXmlResultListener;
+import com.tencent.cos.xml.model.bucket.GetBucketRequest;
+import com.tencent.cos.xml.model.bucket.GetBucketResult;
+import com.tencent.cos.xml.model.tag.ListBucket;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * <p>
+ * ParallelBucketListing 按 key 区间和公共前缀分区后的合并输出, 列表请求由模拟的存储桶同步应答
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class ParallelBucketListingTest {
+
+    private static final String BUCKET = "examplebucket-1250000000";
+
+    private final List<String> keys = new ArrayList<>();
+    /** 每个请求的 prefix 和 marker */
+    private final List<String> requests = new ArrayList<>();
+    /** 这个 prefix 的请求失败 */
+    private String failPrefix;
+    private CosXmlService cosXmlService;
+
+    @Before
+    public void setUp() {
+        cosXmlService = mock(CosXmlService.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                respond((GetBucketRequest) invocation.getArguments()[0],
+                        (CosXmlResultListener) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(cosXmlService).getBucketAsync(any(GetBucketRequest.class), any(CosXmlResultListener.class));
+    }
+
+    @Test
+    public void testKeyRangesInOrder() {
+        addKeys("a/", 100);
+        ParallelBucketListing listing = ParallelBucketListing.byKeyRanges(cosXmlService, request(null, 10),
+                Arrays.asList("a/0050", "a/0025", null, "a/0025", "a/0075")).setMaxConcurrentPartitions(2);
+
+        assertEquals(keys, drain(listing.iterator()));
+        // 重复和 null 的分割 key 被忽略, 每个区间从前一个分割 key 开始
+        assertEquals(1, Collections.frequency(requests, "|null"));
+        assertEquals(1, Collections.frequency(requests, "|a/0025"));
+        assertEquals(1, Collections.frequency(requests, "|a/0050"));
+        assertEquals(1, Collections.frequency(requests, "|a/0075"));
+        // 每个区间列到下一个分割 key 所在的页为止, 不会列到后面的区间
+        assertEquals(3 + 3 + 3 + 3, requests.size());
+    }
+
+    @Test
+    public void testKeyRangesStartAfterMarker() {
+        addKeys("a/", 100);
+        GetBucketRequest request = request(null, 10);
+        request.setMarker("a/0030");
+        ParallelBucketListing listing = ParallelBucketListing.byKeyRanges(cosXmlService, request,
+                Arrays.asList("a/0010", "a/0060"));
+
+        // 不大于 marker 的分割 key 被忽略
+        assertEquals(keys.subList(31, 100), drain(listing.iterator()));
+        assertFalse(requests.contains("|a/0010"));
+    }
+
+    @Test
+    public void testKeyRangesUnordered() {
+        addKeys("a/", 100);
+        ParallelBucketListing listing = ParallelBucketListing.byKeyRanges(cosXmlService, request(null, 7),
+                Arrays.asList("a/0033", "a/0066")).setOrdered(false).setPrefetchPages(2);
+
+        List<String> listed = drain(listing.iterator());
+        assertEquals(keys.size(), listed.size());
+        assertEquals(keys, sorted(listed));
+    }
+
+    @Test
+    public void testCommonPrefixes() {
+        keys.add("a.txt");
+        for (int i = 0; i < 5; i++) {
+            keys.add("dir" + i + "/x");
+            keys.add("dir" + i + "/sub/y");
+        }
+        keys.add("z.txt");
+        Collections.sort(keys);
+        GetBucketRequest request = request(null, 3);
+        request.setDelimiter("/");
+
+        List<String> listed = drain(ParallelBucketListing.byCommonPrefixes(cosXmlService, request)
+                .setMaxConcurrentPartitions(3).iterator());
+        // 先输出顶层对象, 再按顺序输出各个目录下的全部对象
+        List<String> expected = new ArrayList<>(Arrays.asList("a.txt", "z.txt"));
+        for (int i = 0; i < 5; i++) {
+            expected.add("dir" + i + "/sub/y");
+            expected.add("dir" + i + "/x");
+        }
+        assertEquals(expected, listed);
+
+        // 顶层只列一遍, 每个目录一个请求
+        int topLevelRequests = 0;
+        for (String r : requests) {
+            if (r.startsWith("|")) {
+                topLevelRequests++;
+            }
+        }
+        assertEquals(3, topLevelRequests);
+        assertTrue(requests.contains("dir3/|null"));
+        assertEquals(3 + 5, requests.size());
+    }
+
+    @Test
+    public void testCommonPrefixesResumeInsideMarkerDirectory() {
+        keys.addAll(Arrays.asList("dir0/a", "dir1/a", "dir1/b", "dir1/c", "dir2/a"));
+        GetBucketRequest request = request(null, 10);
+        request.setDelimiter("/");
+        request.setMarker("dir1/a");
+
+        // marker 落在目录中时从 marker 继续列这个目录
+        assertEquals(Arrays.asList("dir1/b", "dir1/c", "dir2/a"),
+                drain(ParallelBucketListing.byCommonPrefixes(cosXmlService, request).iterator()));
+        assertTrue(requests.contains("dir1/|dir1/a"));
+        assertTrue(requests.contains("dir2/|null"));
+    }
+
+    @Test
+    public void testFailureCancelsListing() {
+        addKeys("a/", 30);
+        addKeys("b/", 30);
+        failPrefix = "b/";
+        GetBucketRequest request = request(null, 10);
+        request.setDelimiter("/");
+        ParallelBucketListing.MergedIterator iterator = ParallelBucketListing.byCommonPrefixes(cosXmlService, request)
+                .iterator();
+        try {
+            drain(iterator);
+            fail("expected ListingException");
+        } catch (BucketListing.ListingException e) {
+            assertTrue(e.getCause() instanceof CosXmlServiceException);
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testCloseBeforeEnd() {
+        addKeys("a/", 100);
+        ParallelBucketListing.MergedIterator iterator = ParallelBucketListing.byKeyRanges(cosXmlService, request(null, 10),
+                Arrays.asList("a/0049")).iterator();
+        assertEquals("a/0000", iterator.next().key);
+        iterator.close();
+        assertFalse(iterator.hasNext());
+        iterator.close();
+    }
+
+    @Test
+    public void testInvalidRequests() {
+        GetBucketRequest withoutDelimiter = request(null, 10);
+        try {
+            ParallelBucketListing.byCommonPrefixes(cosXmlService, withoutDelimiter);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        GetBucketRequest withDelimiter = request(null, 10);
+        withDelimiter.setDelimiter("/");
+        try {
+            ParallelBucketListing.byKeyRanges(cosXmlService, withDelimiter, Arrays.asList("a"));
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private void addKeys(String prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            keys.add(String.format("%s%04d", prefix, i));
+        }
+        Collections.sort(keys);
+    }
+
+    /**
+     * 按 GET Bucket 的语义应答: 从 marker 之后开始, 设置 delimiter 时合并公共前缀并返回 NextMarker
+     */
+    private void respond(GetBucketRequest request, CosXmlResultListener listener) {
+        String prefix = request.getPrefix() != null ? request.getPrefix() : "";
+        String delimiter = request.getDelimiter();
+        String marker = request.getMarker();
+        requests.add(prefix + "|" + marker);
+        if (prefix.equals(failPrefix)) {
+            listener.onFail(request, null, new CosXmlServiceException("InternalError"));
+            return;
+        }
+
+        ListBucket listBucket = new ListBucket();
+        listBucket.contentsList = new ArrayList<>();
+        listBucket.commonPrefixesList = new ArrayList<>();
+        String last = null;
+        int count = 0;
+        for (String key : keys) {
+            if (!key.startsWith(prefix) || (marker != null && key.compareTo(marker) <= 0)) {
+                continue;
+            }
+            String commonPrefix = null;
+            int index = delimiter != null ? key.indexOf(delimiter, prefix.length()) : -1;
+            if (index >= 0) {
+                commonPrefix = key.substring(0, index + delimiter.length());
+                // 以公共前缀为 marker 时跳过整个公共前缀
+                if (commonPrefix.equals(last) || commonPrefix.equals(marker)) {
+                    continue;
+                }
+            }
+            if (count == request.getMaxKeys()) {
+                listBucket.isTruncated = true;
+                break;
+            }
+            if (commonPrefix != null) {
+                ListBucket.CommonPrefixes commonPrefixes = new ListBucket.CommonPrefixes();
+                commonPrefixes.prefix = commonPrefix;
+                listBucket.commonPrefixesList.add(commonPrefixes);
+                last = commonPrefix;
+            } else {
+                ListBucket.Contents contents = new ListBucket.Contents();
+                contents.key = key;
+                listBucket.contentsList.add(contents);
+                last = key;
+            }
+            count++;
+        }
+        if (listBucket.isTruncated && delimiter != null) {
+            listBucket.nextMarker = last;
+        }
+        GetBucketResult result = new GetBucketResult();
+        result.listBucket = listBucket;
+        listener.onSuccess(request, result);
+    }
+
+    private static GetBucketRequest request(String prefix, long maxKeys) {
+        GetBucketRequest request = new GetBucketRequest(BUCKET);
+        request.setPrefix(prefix);
+        request.setMaxKeys(maxKeys);
+        return request;
+    }
+
+    private static List<String> drain(ParallelBucketListing.MergedIterator iterator) {
+        List<String> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().key);
+        }
+        return keys;
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> sorted = new ArrayList<>(list);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,200 @@
+package com.tencent.cos.xml.transfer;
+
+import com.tencent.cos.xml.model.tag.DeleteResult;
+import com.tencent.cos.xml.model.tag.ListBucket;
+import com.tencent.cos.xml.model.tag.ListBucketVersions;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>
+ * 列表响应的逐条回调解析, 以及批量删除的结果
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class XmlParserTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String LIST_BUCKET_RESULT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<ListBucketResult>\n"
+            + "  <Name>examplebucket-1250000000</Name>\n"
+            + "  <Encoding-Type>url</Encoding-Type>\n"
+            + "  <Prefix>photos/</Prefix>\n"
+            + "  <Marker>photos/2017/</Marker>\n"
+            + "  <MaxKeys>3</MaxKeys>\n"
+            + "  <Delimiter>/</Delimiter>\n"
+            + "  <IsTruncated>true</IsTruncated>\n"
+            + "  <NextMarker>photos/2019/</NextMarker>\n"
+            + "  <Contents>\n"
+            + "    <Key>photos/a.jpg</Key>\n"
+            + "    <LastModified>2018-05-01T08:00:00.000Z</LastModified>\n"
+            + "    <ETag>&quot;a1b2&quot;</ETag>\n"
+            + "    <Size>1024</Size>\n"
+            + "    <Owner><ID>1250000000</ID><DisplayName>1250000000</DisplayName></Owner>\n"
+            + "    <StorageClass>STANDARD</StorageClass>\n"
+            + "  </Contents>\n"
+            + "  <Contents>\n"
+            + "    <Key>photos/b.jpg</Key>\n"
+            + "    <LastModified>2018-05-02T08:00:00.000Z</LastModified>\n"
+            + "    <ETag>&quot;c3d4&quot;</ETag>\n"
+            + "    <Size>2048</Size>\n"
+            + "    <Owner><ID>1250000000</ID><DisplayName>1250000000</DisplayName></Owner>\n"
+            + "    <StorageClass>STANDARD</StorageClass>\n"
+            + "  </Contents>\n"
+            + "  <CommonPrefixes><Prefix>photos/2018/</Prefix></CommonPrefixes>\n"
+            + "  <CommonPrefixes><Prefix>photos/2019/</Prefix></CommonPrefixes>\n"
+            + "</ListBucketResult>\n";
+
+    @Test
+    public void testListBucketVisitor() throws Exception {
+        final List<String> events = new ArrayList<>();
+        final List<ListBucket.Contents> contentsList = new ArrayList<>();
+        ListBucket listBucket = new ListBucket();
+        XmlParser.parseListBucketResult(stream(LIST_BUCKET_RESULT), listBucket, new XmlParser.ListBucketVisitor() {
+            @Override
+            public void onContents(ListBucket.Contents contents) {
+                events.add(contents.key);
+                contentsList.add(contents);
+            }
+
+            @Override
+            public void onCommonPrefixes(ListBucket.CommonPrefixes commonPrefixes) {
+                events.add(commonPrefixes.prefix);
+            }
+        });
+
+        // 条目按响应中的顺序回调, 结果中只有分页信息
+        assertEquals(4, events.size());
+        assertEquals("photos/a.jpg", events.get(0));
+        assertEquals("photos/b.jpg", events.get(1));
+        assertEquals("photos/2018/", events.get(2));
+        assertEquals("photos/2019/", events.get(3));
+        assertNull(listBucket.contentsList);
+        assertNull(listBucket.commonPrefixesList);
+        assertEquals("examplebucket-1250000000", listBucket.name);
+        assertEquals("url", listBucket.encodingType);
+        assertEquals("photos/", listBucket.prefix);
+        assertEquals("photos/2017/", listBucket.marker);
+        assertEquals(3, listBucket.maxKeys);
+        assertEquals("/", listBucket.delimiter);
+        assertTrue(listBucket.isTruncated);
+        assertEquals("photos/2019/", listBucket.nextMarker);
+
+        ListBucket.Contents first = contentsList.get(0);
+        assertEquals("2018-05-01T08:00:00.000Z", first.lastModified);
+        assertEquals("\"a1b2\"", first.eTag);
+        assertEquals(1024, first.size);
+        assertEquals("1250000000", first.owner.id);
+        assertEquals("STANDARD", first.storageClass);
+        // 重复的值共用同一个实例
+        assertSame(first.storageClass, contentsList.get(1).storageClass);
+        assertSame(first.owner.id, contentsList.get(1).owner.id);
+        assertNotSame(first.owner, contentsList.get(1).owner);
+    }
+
+    @Test
+    public void testListBucketCollectsEntries() throws Exception {
+        ListBucket listBucket = new ListBucket();
+        XmlParser.parseListBucketResult(stream(LIST_BUCKET_RESULT), listBucket);
+        assertEquals(2, listBucket.contentsList.size());
+        assertEquals("photos/b.jpg", listBucket.contentsList.get(1).key);
+        assertEquals(2, listBucket.commonPrefixesList.size());
+        assertEquals("photos/2018/", listBucket.commonPrefixesList.get(0).prefix);
+        // 公共前缀中的 Prefix 不覆盖请求的 prefix
+        assertEquals("photos/", listBucket.prefix);
+    }
+
+    @Test
+    public void testListBucketVersionsVisitor() throws Exception {
+        String xml = "<ListVersionsResult>"
+                + "<Name>examplebucket-1250000000</Name><Prefix/><KeyMarker/><VersionIdMarker/>"
+                + "<MaxKeys>2</MaxKeys><IsTruncated>true</IsTruncated>"
+                + "<NextKeyMarker>b.txt</NextKeyMarker><NextVersionIdMarker>MTg0NDUxNzc2ODQ4NzQyOTI3MzM</NextVersionIdMarker>"
+                + "<Version><Key>a.txt</Key><VersionId>MTg0NDUxNzc2ODQ4NzQyOTI3MzI</VersionId><IsLatest>true</IsLatest>"
+                + "<LastModified>2018-05-01T08:00:00.000Z</LastModified><ETag>&quot;e1&quot;</ETag><Size>10</Size>"
+                + "<Owner><UID>1250000000</UID></Owner><StorageClass>STANDARD</StorageClass></Version>"
+                + "<DeleteMarker><Key>b.txt</Key><VersionId>MTg0NDUxNzc2ODQ4NzQyOTI3MzM</VersionId><IsLatest>false</IsLatest>"
+                + "<LastModified>2018-05-02T08:00:00.000Z</LastModified><Owner><UID>1250000000</UID></Owner></DeleteMarker>"
+                + "</ListVersionsResult>";
+        final List<ListBucketVersions.ObjectVersion> versions = new ArrayList<>();
+        ListBucketVersions result = new ListBucketVersions();
+        XmlParser.parseListBucketVersions(stream(xml), result, new XmlParser.ListBucketVersionsVisitor() {
+            @Override
+            public void onObjectVersion(ListBucketVersions.ObjectVersion objectVersion) {
+                versions.add(objectVersion);
+            }
+        });
+
+        assertNull(result.objectVersionList);
+        assertTrue(result.isTruncated);
+        assertEquals(2, result.maxKeys);
+        assertEquals("b.txt", result.nextKeyMarker);
+        assertEquals("MTg0NDUxNzc2ODQ4NzQyOTI3MzM", result.nextVersionIdMarker);
+        assertEquals(2, versions.size());
+
+        ListBucketVersions.Version version = (ListBucketVersions.Version) versions.get(0);
+        assertEquals("a.txt", version.key);
+        assertTrue(version.isLatest);
+        assertEquals("\"e1\"", version.eTag);
+        assertEquals(10, version.size);
+        assertEquals("STANDARD", version.storageClass);
+        assertTrue(versions.get(1) instanceof ListBucketVersions.DeleteMarker);
+        assertFalse(versions.get(1).isLatest);
+        assertSame(version.owner.uid, versions.get(1).owner.uid);
+    }
+
+    @Test
+    public void testQuietDeleteResult() throws Exception {
+        // Quiet 模式下响应中只有删除失败的对象
+        String xml = "<DeleteResult>"
+                + "<Error><Key>logs/0001</Key><Code>AccessDenied</Code><Message>Access Denied.</Message></Error>"
+                + "<Error><Key>logs/&lt;0002&gt;</Key><VersionId>v1</VersionId><Code>InternalError</Code>"
+                + "<Message>We encountered an internal error. Please try again.</Message></Error>"
+                + "</DeleteResult>";
+        DeleteResult result = new DeleteResult();
+        XmlParser.parseDeleteResult(stream(xml), result);
+        assertTrue(result.deletedList.isEmpty());
+        assertEquals(2, result.errorList.size());
+        assertEquals("logs/0001", result.errorList.get(0).key);
+        assertEquals("AccessDenied", result.errorList.get(0).code);
+        assertEquals("Access Denied.", result.errorList.get(0).message);
+        assertEquals("logs/<0002>", result.errorList.get(1).key);
+        assertEquals("v1", result.errorList.get(1).versionId);
+    }
+
+    @Test
+    public void testDeleteResult() throws Exception {
+        String xml = "<DeleteResult>"
+                + "<Deleted><Key>a.txt</Key><DeleteMarker>true</DeleteMarker>"
+                + "<DeleteMarkerVersionId>MTg0NDUxNzc2ODQ4NzQyOTI3MzQ</DeleteMarkerVersionId></Deleted>"
+                + "<Deleted><Key>b.txt</Key><VersionId>v2</VersionId></Deleted>"
+                + "</DeleteResult>";
+        DeleteResult result = new DeleteResult();
+        XmlParser.parseDeleteResult(stream(xml), result);
+        assertTrue(result.errorList.isEmpty());
+        assertEquals(2, result.deletedList.size());
+        assertTrue(result.deletedList.get(0).deleteMarker);
+        assertEquals("MTg0NDUxNzc2ODQ4NzQyOTI3MzQ", result.deletedList.get(0).deleteMarkerVersionId);
+        assertEquals("v2", result.deletedList.get(1).versionId);
+    }
+
+    @Test(expected = XmlPullParserException.class)
+    public void testMalformedResponse() throws Exception {
+        XmlParser.parseListBucketResult(stream("<ListBucketResult><Name>a&nbsp;b</Name></ListBucketResult>"),
+                new ListBucket());
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,299 @@
+package com.tencent.qcloud.core.http;
+
+import com.tencent.qcloud.core.task.TaskExecutors;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okio.BufferedSource;
+
+/**
+ * <p>
+ * 下载的读写流水线。
+ * </p>
+ * 网络线程只负责把响应体读进缓冲区, 读满一块就放进队列, 由 {@link TaskExecutors#DISK_WRITE_EXECUTOR}
+ * 中的写入任务取出写入文件, 网络读取和磁盘写入互相重叠。写入任务按需提交, 队列写空后立即结束,
+ * 不会在整个响应期间占用写入线程; 同一个下载同时最多只有一个写入者, 缓冲区按顺序写入。
+ * 所有缓冲区都在队列中时网络线程等待, 形成反压; 如果此时写入任务还在线程池中排队,
+ * 网络线程直接接手写入, 不会因为其他下载占满写入线程而停顿。
+ * 缓冲区从全局缓冲池中借用, 下载结束后归还。
+ * 进度在数据真正写入文件后才回调, 断点记录不会超前于文件内容。
+ */
+final class DownloadWritePipeline {
+
+    static final int BUFFER_SIZE = 256 * 1024;
+    /** 每个下载可以同时占用的缓冲区数 */
+    static final int BUFFER_COUNT = 4;
+    /** 缓冲池最多保留的缓冲区数 */
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_BUFFER_COUNT = new AtomicInteger(0);
+
+    /** 没有待写入的数据 */
+    private static final int WRITER_IDLE = 0;
+    /** 写入任务已提交到线程池, 还没有开始执行 */
+    private static final int WRITER_SCHEDULED = 1;
+    /** 写入线程或网络线程正在写入 */
+    private static final int WRITER_WRITING = 2;
+
+    private final PositionalFileWriter fileWriter;
+    private final CountingSink countingSink;
+
+    /** 以下字段由 this 保护 */
+    private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>(BUFFER_COUNT);
+    private final ArrayDeque<ByteBuffer> filledBuffers = new ArrayDeque<>(BUFFER_COUNT);
+    private int writerState = WRITER_IDLE;
+    private long writerIdleSince;
+
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (DownloadWritePipeline.this) {
+                // 排队期间网络线程可能已经接手写完
+                if (writerState != WRITER_SCHEDULED) {
+                    return;
+                }
+                writerState = WRITER_WRITING;
+            }
+            drain();
+        }
+    };
+
+    /** 网络线程正在填充的缓冲区 */
+    private ByteBuffer current;
+    /** 已读入缓冲区的数据在文件中的结束位置, 只在网络线程中访问; 写入线程的位置会落后于它 */
+    private long submittedPosition;
+    private volatile IOException writeException;
+    private boolean isClosed;
+
+    /** 网络线程等待空闲缓冲区的耗时, 明显大于 0 说明受限于磁盘写入 */
+    private long networkWaitNanos;
+    /** 没有数据可写的时间, 明显大于 0 说明受限于网络 */
+    private volatile long writerIdleNanos;
+    private volatile long diskWriteNanos;
+    private int maxQueueDepth;
+    private long queueDepthSum;
+    private long queueDepthSamples;
+
+    DownloadWritePipeline(PositionalFileWriter fileWriter, CountingSink countingSink) {
+        this.fileWriter = fileWriter;
+        this.countingSink = countingSink;
+        this.submittedPosition = fileWriter.position();
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            freeBuffers.add(acquireBuffer());
+        }
+        writerIdleSince = System.nanoTime();
+    }
+
+    /**
+     * 从 source 读取最多 byteCount 个字节, 读满一块缓冲区后交给写入任务
+     * @return 读到的字节数, 数据源结束时返回 -1
+     */
+    int readFrom(BufferedSource source, long byteCount) throws IOException {
+        if (current == null) {
+            current = takeFreeBuffer();
+            current.clear();
+            current.limit(PositionalFileWriter.alignedLimit(submittedPosition, BUFFER_SIZE));
+        }
+        int readLen = (int) Math.min(current.remaining(), byteCount);
+        readLen = source.read(current.array(), current.position(), readLen);
+        if (readLen > 0) {
+            current.position(current.position() + readLen);
+            submittedPosition += readLen;
+            if (!current.hasRemaining()) {
+                submitCurrent();
+            }
+        }
+        return readLen;
+    }
+
+    /**
+     * 等待所有数据写入文件, 并按刷盘策略结束写入
+     */
+    void finish() throws IOException {
+        close();
+        if (writeException != null) {
+            throw writeException;
+        }
+        fileWriter.finish();
+    }
+
+    /**
+     * 把已读到的数据写完后结束流水线, 不抛出异常, 下载中断时调用
+     */
+    void close() {
+        if (isClosed) return;
+        isClosed = true;
+        try {
+            submitCurrent();
+        } catch (IOException e) {
+            // 写入失败, 由 finish 抛出
+        }
+        try {
+            awaitWriter(true);
+        } catch (InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            ByteBuffer buffer;
+            while ((buffer = freeBuffers.poll()) != null) {
+                releaseBuffer(buffer);
+            }
+        }
+    }
+
+    /**
+     * 把读写流水线的统计数据累加到 metrics
+     */
+    void dumpMetrics(HttpTaskMetrics metrics) {
+        metrics.networkWaitForDiskTookTime += networkWaitNanos;
+        metrics.diskWaitForNetworkTookTime += writerIdleNanos;
+        metrics.diskWriteTookTime += diskWriteNanos;
+        metrics.writeQueueDepthSum += queueDepthSum;
+        metrics.writeQueueDepthSamples += queueDepthSamples;
+        metrics.maxWriteQueueDepth = Math.max(metrics.maxWriteQueueDepth, maxQueueDepth);
+    }
+
+    private ByteBuffer takeFreeBuffer() throws IOException {
+        synchronized (this) {
+            ByteBuffer buffer = freeBuffers.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        long start = System.nanoTime();
+        awaitWriter(false);
+        networkWaitNanos += System.nanoTime() - start;
+        if (writeException != null) {
+            throw writeException;
+        }
+        synchronized (this) {
+            return freeBuffers.poll();
+        }
+    }
+
+    /**
+     * 在网络线程中等待写入: 写入任务还在排队时直接接手写入
+     * @param untilEmpty true 时等待所有缓冲区写完, 否则等到有空闲缓冲区
+     */
+    private void awaitWriter(boolean untilEmpty) throws InterruptedIOException {
+        while (true) {
+            synchronized (this) {
+                if (untilEmpty ? filledBuffers.isEmpty() && writerState == WRITER_IDLE : !freeBuffers.isEmpty()) {
+                    return;
+                }
+                if (writerState != WRITER_SCHEDULED) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("interrupted while waiting for disk writer");
+                    }
+                    continue;
+                }
+                writerState = WRITER_WRITING;
+            }
+            drain();
+        }
+    }
+
+    private void submitCurrent() throws IOException {
+        ByteBuffer buffer = current;
+        current = null;
+        if (buffer == null) {
+            return;
+        }
+        buffer.flip();
+        boolean schedule;
+        synchronized (this) {
+            if (!buffer.hasRemaining() || writeException != null) {
+                freeBuffers.add(buffer);
+                if (writeException != null) {
+                    throw writeException;
+                }
+                return;
+            }
+            filledBuffers.add(buffer);
+            int depth = filledBuffers.size();
+            queueDepthSum += depth;
+            queueDepthSamples++;
+            if (depth > maxQueueDepth) {
+                maxQueueDepth = depth;
+            }
+            schedule = writerState == WRITER_IDLE;
+            if (schedule) {
+                writerState = WRITER_SCHEDULED;
+                writerIdleNanos += System.nanoTime() - writerIdleSince;
+            }
+        }
+        if (schedule) {
+            try {
+                TaskExecutors.DISK_WRITE_EXECUTOR.execute(writeTask);
+            } catch (RejectedExecutionException e) {
+                // 写入线程池繁忙, 下一次等待缓冲区时由网络线程写入
+            }
+        }
+    }
+
+    /**
+     * 写入队列中的缓冲区直到队列为空, 调用前需要把 writerState 置为 WRITER_WRITING
+     */
+    private void drain() {
+        while (true) {
+            ByteBuffer buffer;
+            synchronized (this) {
+                buffer = filledBuffers.poll();
+                if (buffer == null) {
+                    writerState = WRITER_IDLE;
+                    writerIdleSince = System.nanoTime();
+                    notifyAll();
+                    return;
+                }
+            }
+            // 写入失败后只回收缓冲区, 让网络线程尽快看到异常
+            if (writeException == null) {
+                try {
+                    write(buffer);
+                } catch (IOException e) {
+                    writeException = e;
+                } catch (RuntimeException e) {
+                    writeException = new IOException(e);
+                }
+            }
+            synchronized (this) {
+                freeBuffers.add(buffer);
+                notifyAll();
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        long start = System.nanoTime();
+        int length = fileWriter.write(buffer);
+        diskWriteNanos += System.nanoTime() - start;
+        countingSink.writeBytesInternal(length);
+    }
+
+    private static ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = BUFFER_POOL.poll();
+        if (buffer != null) {
+            POOLED_BUFFER_COUNT.decrementAndGet();
+            return buffer;
+        }
+        return ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    private static void releaseBuffer(ByteBuffer buffer) {
+        if (POOLED_BUFFER_COUNT.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            buffer.clear();
+            BUFFER_POOL.offer(buffer);
+        } else {
+            POOLED_BUFFER_COUNT.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.tencent.qcloud.core.http;
+
+import com.tencent.qcloud.core.util.Base64Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import okhttp3.internal.Util;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * <p>
+ * 基于 {@link FileChannel} 的文件范围请求体。
+ * </p>
+ * 按 offset 直接定位读取（positional read），不需要为每个分片打开流再 skip 到分片起点；
+ * 数据直接读入 Okio 的 segment，不经过额外的缓冲区；计算 MD5 时将分片分段映射到内存，直接在映射区上计算。
+ */
+final class FileChannelRequestBody extends StreamingRequestBody {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** 超过该长度的分片计算 MD5 时使用内存映射 */
+    private static final long MAP_THRESHOLD = 256 * 1024;
+
+    /** 每次映射的最大长度，避免在 32 位地址空间中一次映射整个大文件失败 */
+    static final long MAP_WINDOW_SIZE = 4 * 1024 * 1024;
+
+    static FileChannelRequestBody file(File file, String contentType, long offset, long length) {
+        FileChannelRequestBody requestBody = new FileChannelRequestBody();
+        requestBody.file = file;
+        requestBody.contentType = contentType;
+        requestBody.offset = offset < 0 ? 0 : offset;
+        requestBody.requiredLength = length;
+
+        return requestBody;
+    }
+
+    private FileChannelRequestBody() {
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        RandomAccessFile randomAccessFile = null;
+        BufferedSink bufferedSink = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            long contentLength = contentLength();
+            countingSink = new CountingSink(sink, contentLength, progressListener);
+            bufferedSink = Okio.buffer(countingSink);
+            Source source = Okio.source(Channels.newInputStream(channel.position(offset)));
+            long remainLength = contentLength >= 0 ? contentLength : Long.MAX_VALUE;
+            while (remainLength > 0) {
+                long readLen = source.read(bufferedSink.buffer(), Math.min(remainLength, BUFFER_SIZE));
+                if (readLen == -1) {
+                    break;
+                }
+                bufferedSink.emitCompleteSegments();
+                remainLength -= readLen;
+            }
+            bufferedSink.flush();
+        } finally {
+            Util.closeQuietly(randomAccessFile);
+            Util.closeQuietly(countingSink);
+        }
+    }
+
+    @Override
+    public String onGetMd5() throws IOException {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            long remainLength = contentLength();
+            long position = offset;
+            if (remainLength >= MAP_THRESHOLD) {
+                while (remainLength > 0) {
+                    long windowLength = Math.min(remainLength, MAP_WINDOW_SIZE);
+                    MappedByteBuffer mappedByteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowLength);
+                    messageDigest.update(mappedByteBuffer);
+                    position += windowLength;
+                    remainLength -= windowLength;
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (remainLength > 0) {
+                    buffer.clear();
+                    if (remainLength < BUFFER_SIZE) {
+                        buffer.limit((int) remainLength);
+                    }
+                    int readLen = channel.read(buffer, position);
+                    if (readLen == -1) {
+                        break;
+                    }
+                    messageDigest.update(buffer.array(), 0, readLen);
+                    position += readLen;
+                    remainLength -= readLen;
+                }
+            }
+            return Base64Utils.encode(messageDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("unSupport Md5 algorithm", e);
+        } finally {
+            Util.closeQuietly(randomAccessFile);
+        }
+    }
+}
@@ -31,6 +31,18 @@ public class HttpTaskMetrics {
 
     long readResponseBodyTookTime;
 
+    long diskWriteTookTime;
+
+    long networkWaitForDiskTookTime;
+
+    long diskWaitForNetworkTookTime;
+
+    int maxWriteQueueDepth;
+
+    long writeQueueDepthSum;
+
+    long writeQueueDepthSamples;
+
     void onTaskStart() {
         fullTaskStartTime = System.nanoTime();
     }
@@ -137,6 +149,51 @@ public class HttpTaskMetrics {
         return toSeconds(writeRequestHeaderTookTime);
     }
 
+    /**
+     * 获取下载数据写入文件的耗时
+     *
+     * @return 写文件耗时，单位是秒
+     */
+    public double diskWriteTookTime() {
+        return toSeconds(diskWriteTookTime);
+    }
+
+    /**
+     * 获取网络读取线程等待磁盘写入腾出缓冲区的耗时，明显大于 0 说明下载受限于磁盘写入
+     *
+     * @return 网络读取等待耗时，单位是秒
+     */
+    public double networkWaitForDiskTookTime() {
+        return toSeconds(networkWaitForDiskTookTime);
+    }
+
+    /**
+     * 获取磁盘写入线程等待网络数据的耗时，明显大于 0 说明下载受限于网络
+     *
+     * @return 磁盘写入等待耗时，单位是秒
+     */
+    public double diskWaitForNetworkTookTime() {
+        return toSeconds(diskWaitForNetworkTookTime);
+    }
+
+    /**
+     * 获取下载写入队列的最大深度，接近缓冲区总数说明磁盘写入跟不上网络读取
+     *
+     * @return 写入队列最大深度
+     */
+    public int maxWriteQueueDepth() {
+        return maxWriteQueueDepth;
+    }
+
+    /**
+     * 获取下载写入队列的平均深度
+     *
+     * @return 写入队列平均深度
+     */
+    public double averageWriteQueueDepth() {
+        return writeQueueDepthSamples == 0 ? 0 : (double) writeQueueDepthSum / writeQueueDepthSamples;
+    }
+
     /**
      * 获取任务整体耗时
      *
@@ -169,7 +226,12 @@ public class HttpTaskMetrics {
                 .append("writeRequestHeaderTookTime : ").append(writeRequestHeaderTookTime()).append("\n")
                 .append("writeRequestBodyTookTime : ").append(writeRequestBodyTookTime()).append("\n")
                 .append("readResponseHeaderTookTime : ").append(readResponseHeaderTookTime()).append("\n")
-                .append("readResponseBodyTookTime : ").append(readResponseBodyTookTime())
+                .append("readResponseBodyTookTime : ").append(readResponseBodyTookTime()).append("\n")
+                .append("diskWriteTookTime : ").append(diskWriteTookTime()).append("\n")
+                .append("networkWaitForDiskTookTime : ").append(networkWaitForDiskTookTime()).append("\n")
+                .append("diskWaitForNetworkTookTime : ").append(diskWaitForNetworkTookTime()).append("\n")
+                .append("maxWriteQueueDepth : ").append(maxWriteQueueDepth()).append("\n")
+                .append("averageWriteQueueDepth : ").append(averageWriteQueueDepth())
                 .toString();
     }
 }
@@ -16,6 +16,8 @@ public class OkHttpProxy<T> extends NetworkProxy<T> {
     private Call httpCall;
     private Field eventListenerFiled;
     private OkHttpClient okHttpClient;
+    /** 下载任务在重试拦截器中已经转换过的结果, 不再重复转换 */
+    private volatile HttpResult<T> convertedResult;
 
     public OkHttpProxy(OkHttpClient okHttpClient){
         this.okHttpClient = okHttpClient;
@@ -36,6 +38,7 @@ public class OkHttpProxy<T> extends NetworkProxy<T> {
         Response response = null;
         CallMetricsListener eventListener = null;
         HttpResult<T> httpResult = null;
+        convertedResult = null;
 
         try {
             httpRequest.setOkHttpRequestTag(identifier);
@@ -56,6 +59,7 @@ public class OkHttpProxy<T> extends NetworkProxy<T> {
             response = httpCall.execute();
 
             if (response != null) {
+                httpResult = convertedResult;
                 if (httpResult == null) {
                     httpResult = convertResponse(httpRequest, response);
                 }
@@ -95,7 +99,16 @@ public class OkHttpProxy<T> extends NetworkProxy<T> {
         if (converter instanceof ProgressBody) {
             ((ProgressBody) converter).setProgressListener(mProgressListener);
         }
-        T content = converter.convert(httpResponse);
-        return new HttpResult<T>(httpResponse, content);
+        T content;
+        try {
+            content = converter.convert(httpResponse);
+        } finally {
+            if (converter instanceof ResponseFileConverter) {
+                ((ResponseFileConverter) converter).dumpMetrics(metrics);
+            }
+        }
+        HttpResult<T> httpResult = new HttpResult<T>(httpResponse, content);
+        convertedResult = httpResult;
+        return httpResult;
     }
 }
@@ -0,0 +1,100 @@
+package com.tencent.qcloud.core.http;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * 基于 {@link FileChannel} 的文件写入器。
+ * </p>
+ * 每次把一整块缓冲区按位置（positional write）写入文件, 减少系统调用次数;
+ * 第一块只写到 {@link #BLOCK_SIZE} 的整数倍为止, 之后每次写入都与存储块对齐。
+ * 是否以及何时把数据刷到存储上由 {@link ResponseFileConverter.Durability} 决定。
+ */
+final class PositionalFileWriter implements Closeable {
+
+    static final int BLOCK_SIZE = 4 * 1024;
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final ResponseFileConverter.Durability durability;
+    private final long checkpointBytes;
+
+    /** 下一次写入在文件中的位置 */
+    private long position;
+    private long unSyncedBytes;
+
+    /**
+     * @param file 目标文件
+     * @param position 写入的起始位置
+     * @param truncate 是否先清空文件
+     * @param durability 刷盘策略
+     * @param checkpointBytes {@link ResponseFileConverter.Durability#CHECKPOINT} 模式下每写入多少字节刷盘一次
+     */
+    PositionalFileWriter(File file, long position, boolean truncate,
+                         ResponseFileConverter.Durability durability, long checkpointBytes) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        this.durability = durability == null ? ResponseFileConverter.Durability.NONE : durability;
+        this.checkpointBytes = checkpointBytes;
+        this.position = position;
+        if (truncate) {
+            channel.truncate(position);
+        }
+    }
+
+    /**
+     * @return 下一次写入在文件中的位置, 只应在写入线程中或开始写入之前调用
+     */
+    long position() {
+        return position;
+    }
+
+    /**
+     * @param position 缓冲区在文件中的起始位置
+     * @return 缓冲区最多写入多少字节才能落在块边界上
+     */
+    static int alignedLimit(long position, int capacity) {
+        int unaligned = (int) (position % BLOCK_SIZE);
+        return unaligned == 0 ? capacity : Math.min(capacity, BLOCK_SIZE - unaligned);
+    }
+
+    /**
+     * 把缓冲区中剩余的数据全部写入文件
+     * @return 写入的字节数
+     */
+    int write(ByteBuffer buffer) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        unSyncedBytes += length;
+        if (durability == ResponseFileConverter.Durability.CHECKPOINT && unSyncedBytes >= checkpointBytes) {
+            sync();
+        }
+        return length;
+    }
+
+    /**
+     * 按刷盘策略结束写入
+     */
+    void finish() throws IOException {
+        if (durability != ResponseFileConverter.Durability.NONE && unSyncedBytes > 0) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        channel.force(false);
+        unSyncedBytes = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+}
@@ -75,7 +75,8 @@ public abstract class RequestBodySerializer{
         long contentLength = byteCount < 0 ? content.length - offset : Math.min(byteCount, content.length - offset);
         if (contentLength < 1024 * 200) { // 200KB
             // small content
-            return new BaseRequestBodyWrapper(RequestBody.create(parseType(contentType), content));
+            return new BaseRequestBodyWrapper(RequestBody.create(parseType(contentType), content,
+                    (int) offset, (int) contentLength));
         } else {
             // large content
             return new BaseRequestBodyWrapper(StreamingRequestBody.bytes(content, contentType, offset, byteCount));
@@ -91,7 +92,7 @@ public abstract class RequestBodySerializer{
             String extension = MimeTypeMap.getFileExtensionFromUrl(file.getPath());
             contentType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
         }
-        StreamingRequestBody fileRequestBody = StreamingRequestBody.file(file, contentType, offset, length);
+        StreamingRequestBody fileRequestBody = FileChannelRequestBody.file(file, contentType, offset, length);
 
         return new BaseRequestBodyWrapper(fileRequestBody);
     }
@@ -10,9 +10,7 @@ import java.io.*;
 import okhttp3.ResponseBody;
 import okhttp3.internal.Util;
 import okio.Buffer;
-import okio.BufferedSink;
-import okio.Okio;
-import okio.Source;
+import okio.BufferedSource;
 
 /**
  * 解析下载的字节流，并保存为文本
@@ -22,8 +20,32 @@ import okio.Source;
  */
 public class ResponseFileConverter<T> extends ResponseBodyConverter<T> implements ProgressBody {
 
+    /**
+     * 下载文件的刷盘策略
+     */
+    public enum Durability {
+        /**
+         * 不主动刷盘, 由系统决定何时写入存储
+         */
+        NONE,
+        /**
+         * 每写入 {@link #CHECKPOINT_BYTES} 刷盘一次, 结束时再刷盘一次
+         */
+        CHECKPOINT,
+        /**
+         * 只在下载结束时刷盘一次
+         */
+        END
+    }
+
+    /** {@link Durability#CHECKPOINT} 模式下的刷盘间隔 */
+    public static final long CHECKPOINT_BYTES = 1024 * 1024;
+
     private String filePath;
     private long offset;
+    /** 按 offset 写入已有文件, 不截断文件, 用于分段并行下载 */
+    private boolean writeInPlace;
+    private Durability durability = Durability.NONE;
 
     protected boolean isQuic = false;
 
@@ -31,11 +53,22 @@ public class ResponseFileConverter<T> extends ResponseBodyConverter<T> implement
 
     private CountingSink countingSink;
 
+    private DownloadWritePipeline writePipeline;
+
     public ResponseFileConverter(String filePath, long offset) {
         this.filePath = filePath;
         this.offset = offset;
     }
 
+    public ResponseFileConverter(String filePath, long offset, boolean writeInPlace) {
+        this(filePath, offset);
+        this.writeInPlace = writeInPlace;
+    }
+
+    public void setDurability(Durability durability) {
+        this.durability = durability == null ? Durability.NONE : durability;
+    }
+
     public void setProgressListener(QCloudProgressListener progressListener) {
         this.progressListener = progressListener;
     }
@@ -70,55 +103,61 @@ public class ResponseFileConverter<T> extends ResponseBodyConverter<T> implement
             throw new QCloudClientException("local file directory can not create.");
         }
 
-        BufferedSink sink = null;
-        Source source = null;
+        BufferedSource source = null;
+        PositionalFileWriter fileWriter = null;
+        DownloadWritePipeline writePipeline = null;
         ResponseBody body = response.response.body();
         if (body == null) {
             throw new QCloudServiceException("response body is empty !");
         }
+        long start = onResponseStart(response, offset);
         try {
             source = body.source();
-            if (offset <= 0) {
-                countingSink = new CountingSink(Okio.sink(downloadFilePath), contentLength,
-                        progressListener);
-                sink = Okio.buffer(countingSink);
-                if (contentLength > 0) {
-                    sink.write(source, contentLength);
-                } else {
-                    sink.writeAll(source);
+            // 从头下载和断点续传都走同一个写入器, 从头下载或改从新的起点重写时先清空文件
+            boolean truncate = start != offset || (start <= 0 && !writeInPlace);
+            fileWriter = new PositionalFileWriter(downloadFilePath, Math.max(start, 0), truncate,
+                    durability, CHECKPOINT_BYTES);
+            countingSink = new CountingSink(new Buffer(), contentLength, progressListener);
+            // 网络读取和磁盘写入分别在两个线程中进行
+            writePipeline = new DownloadWritePipeline(fileWriter, countingSink);
+            this.writePipeline = writePipeline;
+            long remainLength = contentLength > 0 ? contentLength : Long.MAX_VALUE;
+            while (remainLength > 0) {
+                int readLen = writePipeline.readFrom(source, remainLength);
+                if (readLen == -1) {
+                    break;
                 }
-                sink.flush();
-            } else {
-                writeRandomAccessFile(downloadFilePath, response.byteStream(), contentLength);
+                remainLength -= readLen;
             }
+            writePipeline.finish();
             return null;
         } catch (IOException e) {
             throw new QCloudClientException("write local file error for " + e.toString(), e);
         } finally {
-            Util.closeQuietly(sink);
+            if (writePipeline != null) {
+                writePipeline.close();
+            }
+            Util.closeQuietly(fileWriter);
             Util.closeQuietly(source);
         }
     }
 
-    private void writeRandomAccessFile(File downloadFilePath, InputStream inputStream, long contentLength)
-            throws IOException, QCloudClientException {
-        if (inputStream == null) {
-            throw new QCloudClientException("response body stream is null");
-        }
-        RandomAccessFile randomAccessFile = null;
-        try {
-            randomAccessFile = new RandomAccessFile(downloadFilePath, "rws");
-            randomAccessFile.seek(offset);
-            byte[] buffer = new byte[8192];
-            countingSink = new CountingSink(new Buffer(), contentLength, progressListener);
-            int len;
-            while ((len = inputStream.read(buffer)) != -1) {
-                randomAccessFile.write(buffer, 0, len);
-                countingSink.writeBytesInternal(len);
-            }
-        } finally {
-            Util.closeQuietly(inputStream);
-            Util.closeQuietly(randomAccessFile);
+    /**
+     * 开始写入文件前回调, 子类可以根据响应头决定写入的起点
+     * @param offset 构造时指定的起点
+     * @return 写入的起点, 与 offset 不同时从该起点截断文件后重写
+     */
+    protected long onResponseStart(HttpResponse<T> response, long offset) throws QCloudClientException, QCloudServiceException {
+        return offset;
+    }
+
+    /**
+     * 把读写流水线的统计数据累加到 metrics
+     */
+    void dumpMetrics(HttpTaskMetrics metrics) {
+        DownloadWritePipeline pipeline = writePipeline;
+        if (pipeline != null && metrics != null) {
+            pipeline.dumpMetrics(metrics);
         }
     }
 
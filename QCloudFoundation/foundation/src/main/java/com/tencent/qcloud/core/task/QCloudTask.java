@@ -8,6 +8,7 @@ import com.tencent.qcloud.core.common.QCloudTaskStateListener;
 import com.tencent.qcloud.core.logger.QCloudLogger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -49,7 +50,9 @@ public abstract class QCloudTask<T> implements Callable<T> {
     private Executor workerExecutor;
 
     private Set<QCloudResultListener<T>> mResultListeners = new HashSet<>(2);
-    private Set<QCloudProgressListener> mProgressListeners = new HashSet<>(2);
+    private static final QCloudProgressListener[] NO_PROGRESS_LISTENERS = new QCloudProgressListener[0];
+    // 进度回调很频繁，监听器保存在不可变数组中，修改时整体替换，回调时无需复制
+    private volatile QCloudProgressListener[] mProgressListeners = NO_PROGRESS_LISTENERS;
     private Set<QCloudTaskStateListener> mStateListeners = new HashSet<>(2);
 
     public QCloudTask(String identifier, Object tag) {
@@ -214,7 +217,7 @@ public abstract class QCloudTask<T> implements Callable<T> {
 
     public final void removeAllListeners() {
         mResultListeners.clear();
-        mProgressListeners.clear();
+        mProgressListeners = NO_PROGRESS_LISTENERS;
     }
 
     public final List<QCloudResultListener<T>> getAllResultListeners() {
@@ -222,30 +225,44 @@ public abstract class QCloudTask<T> implements Callable<T> {
     }
 
     public final List<QCloudProgressListener> getAllProgressListeners() {
-        return new ArrayList<>(mProgressListeners);
+        return new ArrayList<>(Arrays.asList(mProgressListeners));
     }
 
     public final List<QCloudTaskStateListener> getAllStateListeners() {
         return new ArrayList<>(mStateListeners);
     }
 
-    public final QCloudTask<T> addProgressListener(QCloudProgressListener progressListener) {
+    public final synchronized QCloudTask<T> addProgressListener(QCloudProgressListener progressListener) {
         if (progressListener != null) {
-            mProgressListeners.add(progressListener);
+            QCloudProgressListener[] listeners = mProgressListeners;
+            for (QCloudProgressListener listener : listeners) {
+                if (listener.equals(progressListener)) {
+                    return this;
+                }
+            }
+            QCloudProgressListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+            newListeners[listeners.length] = progressListener;
+            mProgressListeners = newListeners;
         }
         return this;
     }
 
     public final QCloudTask<T> addProgressListeners(List<QCloudProgressListener> progressListeners) {
         if (progressListeners != null) {
-            mProgressListeners.addAll(progressListeners);
+            for (QCloudProgressListener progressListener : progressListeners) {
+                addProgressListener(progressListener);
+            }
         }
         return this;
     }
 
-    public final QCloudTask<T> removeProgressListener(QCloudProgressListener progressListener) {
+    public final synchronized QCloudTask<T> removeProgressListener(QCloudProgressListener progressListener) {
         if (progressListener != null) {
-            mProgressListeners.remove(progressListener);
+            QCloudProgressListener[] listeners = mProgressListeners;
+            List<QCloudProgressListener> remains = new ArrayList<>(Arrays.asList(listeners));
+            if (remains.remove(progressListener)) {
+                mProgressListeners = remains.toArray(NO_PROGRESS_LISTENERS);
+            }
         }
         return this;
     }
@@ -304,19 +321,28 @@ public abstract class QCloudTask<T> implements Callable<T> {
     }
 
     protected void onProgress(final long complete, final long target) {
-        if (mProgressListeners.size() > 0) {
-            executeListener(new Runnable() {
+        final QCloudProgressListener[] listeners = mProgressListeners;
+        if (listeners.length == 0) {
+            return;
+        }
+        if (observerExecutor == null) {
+            dispatchProgress(listeners, complete, target);
+        } else {
+            observerExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
-                    List<QCloudProgressListener> listeners = new ArrayList<>(mProgressListeners);
-                    for (QCloudProgressListener progressListener : listeners) {
-                        progressListener.onProgress(complete, target);
-                    }
+                    dispatchProgress(listeners, complete, target);
                 }
             });
         }
     }
 
+    private static void dispatchProgress(QCloudProgressListener[] listeners, long complete, long target) {
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onProgress(complete, target);
+        }
+    }
+
     protected void onStateChanged(int newState) {
         setState(newState);
         if (mStateListeners.size() > 0) {
@@ -3,6 +3,8 @@ package com.tencent.qcloud.core.task;
 import android.support.annotation.NonNull;
 
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -23,6 +25,26 @@ public class TaskExecutors {
 
     public static final ThreadPoolExecutor DOWNLOAD_EXECUTOR;
 
+    /**
+     * 分片预处理（读取、计算 MD5）线程池，与网络请求线程分开
+     */
+    public static final ThreadPoolExecutor PREPARE_EXECUTOR;
+
+    /**
+     * 下载数据写盘线程池，网络读取线程只负责读取，写盘在这里进行
+     */
+    public static final ThreadPoolExecutor DISK_WRITE_EXECUTOR;
+
+    /**
+     * 读取调用方字节流的线程池，字节流可能长时间阻塞，每次读取单独占用一个线程，不占用命令线程
+     */
+    public static final ThreadPoolExecutor STREAM_READ_EXECUTOR;
+
+    /**
+     * 延迟执行重试的调度线程，只负责到时后重新发起请求，不执行耗时操作
+     */
+    public static final ScheduledThreadPoolExecutor RETRY_SCHEDULER;
+
     public static final UIThreadExecutor UI_THREAD_EXECUTOR;
 
     static {
@@ -35,11 +57,25 @@ public class TaskExecutors {
         DOWNLOAD_EXECUTOR = new ThreadPoolExecutor(3, 3, 5L,
                 TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(128),
                 new TaskThreadFactory("Download-"));
+        PREPARE_EXECUTOR = new ThreadPoolExecutor(2, 2, 5L,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(128),
+                new TaskThreadFactory("Prepare-"));
+        DISK_WRITE_EXECUTOR = new ThreadPoolExecutor(3, 3, 5L,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(128),
+                new TaskThreadFactory("DiskWrite-"));
+        STREAM_READ_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 5L,
+                TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new TaskThreadFactory("StreamRead-"));
+        RETRY_SCHEDULER = new ScheduledThreadPoolExecutor(1, new TaskThreadFactory("Retry-"));
         UI_THREAD_EXECUTOR = new UIThreadExecutor();
 
         UPLOAD_EXECUTOR.allowCoreThreadTimeOut(true);
         COMMAND_EXECUTOR.allowCoreThreadTimeOut(true);
         DOWNLOAD_EXECUTOR.allowCoreThreadTimeOut(true);
+        PREPARE_EXECUTOR.allowCoreThreadTimeOut(true);
+        DISK_WRITE_EXECUTOR.allowCoreThreadTimeOut(true);
+        RETRY_SCHEDULER.setKeepAliveTime(5L, TimeUnit.SECONDS);
+        RETRY_SCHEDULER.allowCoreThreadTimeOut(true);
     }
 
     static final class TaskThreadFactory implements ThreadFactory {
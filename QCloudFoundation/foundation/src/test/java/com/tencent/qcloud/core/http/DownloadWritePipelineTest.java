@@ -0,0 +1,257 @@
+package com.tencent.qcloud.core.http;
+
+import com.tencent.qcloud.core.common.QCloudProgressListener;
+import com.tencent.qcloud.core.task.TaskExecutors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+
+/**
+ * <p>
+ * DownloadWritePipeline 的读写重叠、写入线程繁忙时的接手写入和块对齐
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class DownloadWritePipelineTest {
+
+    private final List<File> files = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        files.clear();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWritesWholeBody() throws Exception {
+        byte[] content = randomBytes(3 * DownloadWritePipeline.BUFFER_SIZE + 1234, 1);
+        File file = newFile();
+        download(content, file, 0);
+        assertFileEquals(content, file, 0);
+    }
+
+    @Test
+    public void testWritesFromUnalignedOffset() throws Exception {
+        byte[] content = randomBytes(DownloadWritePipeline.BUFFER_SIZE + 100, 2);
+        File file = newFile();
+        download(content, file, 1000);
+        assertFileEquals(content, file, 1000);
+    }
+
+    @Test(timeout = 60000)
+    public void testMoreDownloadsThanWriterThreads() throws Exception {
+        int count = TaskExecutors.DISK_WRITE_EXECUTOR.getMaximumPoolSize() * 2 + 1;
+        ExecutorService network = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            final List<byte[]> contents = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final byte[] content = randomBytes(5 * DownloadWritePipeline.BUFFER_SIZE, 10 + i);
+                final File file = newFile();
+                contents.add(content);
+                futures.add(network.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        download(content, file, 0);
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < count; i++) {
+                futures.get(i).get(30, TimeUnit.SECONDS);
+                assertFileEquals(contents.get(i), files.get(i), 0);
+            }
+        } finally {
+            network.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testDoesNotWaitForBusyWriterThreads() throws Exception {
+        // 占满写入线程池, 下载不能因此停顿
+        int threads = TaskExecutors.DISK_WRITE_EXECUTOR.getMaximumPoolSize();
+        final CountDownLatch blocked = new CountDownLatch(threads);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            TaskExecutors.DISK_WRITE_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        try {
+            Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            byte[] content = randomBytes(6 * DownloadWritePipeline.BUFFER_SIZE, 3);
+            File file = newFile();
+            HttpTaskMetrics metrics = new HttpTaskMetrics();
+            download(content, file, 0, metrics);
+            assertFileEquals(content, file, 0);
+            Assert.assertTrue(metrics.networkWaitForDiskTookTime > 0);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testStaysAlignedWhileWriterIsBehind() throws Exception {
+        // 写入线程池被占满, 网络线程先填满所有缓冲区, 之后才开始写入;
+        // 从未对齐的位置续传时, 第一块之后的每次写入仍然要在块边界上结束
+        int threads = TaskExecutors.DISK_WRITE_EXECUTOR.getMaximumPoolSize();
+        final CountDownLatch blocked = new CountDownLatch(threads);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            TaskExecutors.DISK_WRITE_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        try {
+            Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            long offset = 5 * PositionalFileWriter.BLOCK_SIZE + 1000;
+            byte[] content = randomBytes(6 * DownloadWritePipeline.BUFFER_SIZE, 5);
+            File file = newFile();
+            PositionalFileWriter fileWriter = new PositionalFileWriter(file, offset, true,
+                    ResponseFileConverter.Durability.NONE, ResponseFileConverter.CHECKPOINT_BYTES);
+            // 总长度设为 1, 每次写入都回调进度
+            final List<Long> written = new ArrayList<>();
+            CountingSink countingSink = new CountingSink(new Buffer(), 1, new QCloudProgressListener() {
+                @Override
+                public void onProgress(long complete, long target) {
+                    written.add(complete);
+                }
+            });
+            DownloadWritePipeline pipeline = new DownloadWritePipeline(fileWriter, countingSink);
+            try {
+                Buffer source = new Buffer().write(content);
+                while (pipeline.readFrom(source, content.length) != -1) {
+                    // 读到结束
+                }
+                pipeline.finish();
+            } finally {
+                pipeline.close();
+                fileWriter.close();
+            }
+            assertFileEquals(content, file, offset);
+
+            Assert.assertEquals(PositionalFileWriter.BLOCK_SIZE - 1000, (long) written.get(0));
+            for (int i = 0; i < written.size() - 1; i++) {
+                Assert.assertEquals(0, (offset + written.get(i)) % PositionalFileWriter.BLOCK_SIZE);
+            }
+            Assert.assertEquals(content.length, (long) written.get(written.size() - 1));
+            Assert.assertEquals(7, written.size());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testCloseWritesPendingData() throws Exception {
+        byte[] content = randomBytes(DownloadWritePipeline.BUFFER_SIZE / 2, 4);
+        File file = newFile();
+        PositionalFileWriter fileWriter = new PositionalFileWriter(file, 0, true,
+                ResponseFileConverter.Durability.NONE, ResponseFileConverter.CHECKPOINT_BYTES);
+        CountingSink countingSink = new CountingSink(new Buffer(), content.length, null);
+        DownloadWritePipeline pipeline = new DownloadWritePipeline(fileWriter, countingSink);
+        Buffer source = new Buffer().write(content);
+        while (pipeline.readFrom(source, content.length) != -1) {
+            // 读到结束
+        }
+        // 中断时 close 也要把已读到的数据写完
+        pipeline.close();
+        pipeline.close();
+        fileWriter.close();
+        Assert.assertEquals(content.length, countingSink.getTotalTransferred());
+        assertFileEquals(content, file, 0);
+    }
+
+    private File newFile() throws IOException {
+        File file = File.createTempFile("pipeline", ".tmp");
+        files.add(file);
+        return file;
+    }
+
+    private static void download(byte[] content, File file, long offset) throws IOException {
+        download(content, file, offset, null);
+    }
+
+    private static void download(byte[] content, File file, long offset, HttpTaskMetrics metrics) throws IOException {
+        PositionalFileWriter fileWriter = new PositionalFileWriter(file, offset, true,
+                ResponseFileConverter.Durability.NONE, ResponseFileConverter.CHECKPOINT_BYTES);
+        CountingSink countingSink = new CountingSink(new Buffer(), content.length, null);
+        DownloadWritePipeline pipeline = new DownloadWritePipeline(fileWriter, countingSink);
+        try {
+            Buffer source = new Buffer().write(content);
+            long remain = content.length;
+            while (remain > 0) {
+                int readLen = pipeline.readFrom(source, remain);
+                if (readLen == -1) {
+                    break;
+                }
+                remain -= readLen;
+            }
+            pipeline.finish();
+            if (metrics != null) {
+                pipeline.dumpMetrics(metrics);
+            }
+        } finally {
+            pipeline.close();
+            fileWriter.close();
+        }
+        Assert.assertEquals(content.length, countingSink.getTotalTransferred());
+    }
+
+    private static void assertFileEquals(byte[] expected, File file, long offset) throws IOException {
+        Assert.assertEquals(offset + expected.length, file.length());
+        byte[] actual = new byte[expected.length];
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            randomAccessFile.seek(offset);
+            randomAccessFile.readFully(actual);
+        } finally {
+            randomAccessFile.close();
+        }
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
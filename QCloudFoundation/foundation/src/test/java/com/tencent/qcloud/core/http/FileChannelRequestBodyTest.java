@@ -0,0 +1,146 @@
+package com.tencent.qcloud.core.http;
+
+import com.tencent.qcloud.core.util.Base64Utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import okio.Buffer;
+
+/**
+ * <p>
+ * FileChannelRequestBody 与按流读取的 StreamingRequestBody 发送相同的范围和 Content-MD5
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class FileChannelRequestBodyTest {
+
+    private static final int FILE_LENGTH = 1024 * 1024 + 123;
+
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[FILE_LENGTH];
+        new Random(7).nextBytes(content);
+        file = File.createTempFile("file-channel-body", ".bin");
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testSmallPartInMiddle() throws Exception {
+        // 小于 64KB 的读缓冲区, 也不使用内存映射计算 MD5
+        assertSameAsStream(1000, 5000);
+    }
+
+    @Test
+    public void testPartSpanningSeveralReads() throws Exception {
+        assertSameAsStream(100, 200 * 1024 + 17);
+    }
+
+    @Test
+    public void testMappedMd5ForLargePart() throws Exception {
+        assertSameAsStream(4096 + 1, 512 * 1024);
+    }
+
+    @Test
+    public void testLastPartToEndOfFile() throws Exception {
+        assertSameAsStream(1024 * 1024, -1);
+    }
+
+    @Test
+    public void testLengthBeyondEndOfFile() throws Exception {
+        FileChannelRequestBody requestBody = FileChannelRequestBody.file(file, "application/octet-stream",
+                FILE_LENGTH - 100, 1000);
+        Assert.assertEquals(100, requestBody.contentLength());
+        Assert.assertArrayEquals(Arrays.copyOfRange(content, FILE_LENGTH - 100, FILE_LENGTH), body(requestBody));
+    }
+
+    @Test
+    public void testWholeFile() throws Exception {
+        FileChannelRequestBody requestBody = FileChannelRequestBody.file(file, "application/octet-stream", 0, -1);
+        Assert.assertEquals(FILE_LENGTH, requestBody.contentLength());
+        Assert.assertArrayEquals(content, body(requestBody));
+        Assert.assertEquals(md5(content, 0, FILE_LENGTH), requestBody.onGetMd5());
+    }
+
+    @Test
+    public void testMappedMd5InSeveralWindows() throws Exception {
+        // 大文件分多段映射计算 MD5, 最后一段不足一个映射窗口
+        int length = (int) (2 * FileChannelRequestBody.MAP_WINDOW_SIZE + 4099);
+        byte[] largeContent = new byte[length + 10];
+        new Random(11).nextBytes(largeContent);
+        File largeFile = File.createTempFile("file-channel-body", ".bin");
+        try {
+            FileOutputStream outputStream = new FileOutputStream(largeFile);
+            try {
+                outputStream.write(largeContent);
+            } finally {
+                outputStream.close();
+            }
+            FileChannelRequestBody requestBody = FileChannelRequestBody.file(largeFile, "application/octet-stream", 10, length);
+            Assert.assertEquals(md5(largeContent, 10, length), requestBody.onGetMd5());
+            Assert.assertArrayEquals(Arrays.copyOfRange(largeContent, 10, 10 + length), body(requestBody));
+        } finally {
+            largeFile.delete();
+        }
+    }
+
+    @Test
+    public void testBodyCanBeWrittenAgain() throws Exception {
+        // 重试时同一个请求体会再发送一次
+        FileChannelRequestBody requestBody = FileChannelRequestBody.file(file, "application/octet-stream", 10, 70000);
+        byte[] first = body(requestBody);
+        Assert.assertArrayEquals(first, body(requestBody));
+        Assert.assertEquals(70000, first.length);
+    }
+
+    private void assertSameAsStream(long offset, long length) throws Exception {
+        FileChannelRequestBody channelBody = FileChannelRequestBody.file(file, "application/octet-stream", offset, length);
+        StreamingRequestBody streamBody = StreamingRequestBody.file(file, "application/octet-stream", offset, length);
+
+        long expectedLength = length < 0 ? FILE_LENGTH - offset : length;
+        Assert.assertEquals(expectedLength, channelBody.contentLength());
+        Assert.assertEquals(streamBody.contentLength(), channelBody.contentLength());
+
+        byte[] expected = Arrays.copyOfRange(content, (int) offset, (int) (offset + expectedLength));
+        Assert.assertArrayEquals(expected, body(channelBody));
+        Assert.assertArrayEquals(expected, body(streamBody));
+
+        String md5 = md5(content, (int) offset, (int) expectedLength);
+        Assert.assertEquals(md5, channelBody.onGetMd5());
+        Assert.assertEquals(md5, streamBody.onGetMd5());
+    }
+
+    private static byte[] body(StreamingRequestBody requestBody) throws IOException {
+        Buffer buffer = new Buffer();
+        requestBody.writeTo(buffer);
+        return buffer.readByteArray();
+    }
+
+    private static String md5(byte[] bytes, int offset, int length) throws Exception {
+        MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+        messageDigest.update(bytes, offset, length);
+        return Base64Utils.encode(messageDigest.digest());
+    }
+}
@@ -0,0 +1,139 @@
+package com.tencent.qcloud.core.http;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * PositionalFileWriter 的块对齐、按位置写入和续传时保留已有数据
+ * </p>
+ * Copyright 2010-2017 Tencent Cloud. All Rights Reserved.
+ */
+public class PositionalFileWriterTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("positional-writer", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testAlignedLimit() throws IOException {
+        PositionalFileWriter writer = new PositionalFileWriter(file, 0, true,
+                ResponseFileConverter.Durability.NONE, 0);
+        try {
+            Assert.assertEquals(64 * 1024, PositionalFileWriter.alignedLimit(writer.position(), 64 * 1024));
+            // 写到块边界之前的 100 字节
+            writer.write(ByteBuffer.wrap(new byte[PositionalFileWriter.BLOCK_SIZE - 100]));
+            Assert.assertEquals(100, PositionalFileWriter.alignedLimit(writer.position(), 64 * 1024));
+            Assert.assertEquals(10, PositionalFileWriter.alignedLimit(writer.position(), 10));
+            writer.write(ByteBuffer.wrap(new byte[100]));
+            Assert.assertEquals(64 * 1024, PositionalFileWriter.alignedLimit(writer.position(), 64 * 1024));
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testUnalignedStartPosition() throws IOException {
+        // 从分段下载的起点开始写, 第一块只写到块边界
+        PositionalFileWriter writer = new PositionalFileWriter(file, 3 * PositionalFileWriter.BLOCK_SIZE + 1, false,
+                ResponseFileConverter.Durability.NONE, 0);
+        try {
+            Assert.assertEquals(PositionalFileWriter.BLOCK_SIZE - 1, PositionalFileWriter.alignedLimit(writer.position(), 64 * 1024));
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testWritesAtPosition() throws IOException {
+        PositionalFileWriter writer = new PositionalFileWriter(file, 1000, true,
+                ResponseFileConverter.Durability.CHECKPOINT, 8);
+        try {
+            Assert.assertEquals(5, writer.write(ByteBuffer.wrap("hello".getBytes("UTF-8"))));
+            ByteBuffer buffer = ByteBuffer.wrap(" world!".getBytes("UTF-8"));
+            buffer.limit(6);
+            Assert.assertEquals(6, writer.write(buffer));
+            Assert.assertFalse(buffer.hasRemaining());
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+        Assert.assertEquals(1011, file.length());
+        Assert.assertEquals("hello world", new String(read(1000, 11), "UTF-8"));
+    }
+
+    @Test
+    public void testResumeKeepsExistingData() throws IOException {
+        byte[] existing = new byte[8192];
+        Arrays.fill(existing, (byte) 'a');
+        write(existing);
+
+        // 续传时从已下载的位置继续写, 之前的数据和之后预分配的部分都不截断
+        PositionalFileWriter writer = new PositionalFileWriter(file, 4096, false,
+                ResponseFileConverter.Durability.END, 0);
+        try {
+            writer.write(ByteBuffer.wrap(new byte[]{'b', 'b'}));
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+        Assert.assertEquals(8192, file.length());
+        Assert.assertArrayEquals(new byte[]{'a', 'b', 'b', 'a'}, read(4095, 4));
+    }
+
+    @Test
+    public void testTruncateFromPosition() throws IOException {
+        byte[] existing = new byte[8192];
+        Arrays.fill(existing, (byte) 'a');
+        write(existing);
+
+        PositionalFileWriter writer = new PositionalFileWriter(file, 100, true,
+                ResponseFileConverter.Durability.NONE, 0);
+        try {
+            writer.write(ByteBuffer.wrap(new byte[]{'b'}));
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+        Assert.assertEquals(101, file.length());
+        Assert.assertArrayEquals(new byte[]{'a', 'b'}, read(99, 2));
+    }
+
+    private void write(byte[] content) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[length];
+            randomAccessFile.seek(position);
+            randomAccessFile.readFully(bytes);
+            return bytes;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}